@@ -1,12 +1,24 @@
 package org.mastodon.feature;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.mastodon.collection.RefList;
 import org.mastodon.feature.FeatureDependencyGraph.Edge;
@@ -43,9 +55,19 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 
 	private final FeatureComputationStatus status = new FeatureComputationStatus();
 
-	private String cancelReason;
+	private final ComputationProgress progress = new ComputationProgress( status );
 
-	private FeatureComputer currentFeatureComputer;
+	private volatile String cancelReason;
+
+	/**
+	 * The {@link FeatureComputer}s that are currently running, to forward
+	 * {@link #cancel(String)} to.
+	 */
+	private final Set< FeatureComputer > runningFeatureComputers = ConcurrentHashMap.newKeySet();
+
+	private Executor executor;
+
+	private volatile FeatureComputationReport report;
 
 	public DefaultFeatureComputerService()
 	{
@@ -186,6 +208,23 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 		return deps;
 	}
 
+	/**
+	 * Sets the {@link Executor} on which {@link FeatureComputer}s are run.
+	 * All computers whose dependencies are satisfied are submitted at the same
+	 * time, such that independent features are computed in parallel.
+	 * <p>
+	 * If {@code null} (the default), a thread pool is created for each
+	 * {@link #compute(Collection)} call. To compute features sequentially on
+	 * the calling thread, use {@code Runnable::run}.
+	 *
+	 * @param executor
+	 *            the executor to run feature computers on, or {@code null}.
+	 */
+	public void setExecutor( final Executor executor )
+	{
+		this.executor = executor;
+	}
+
 	@Override
 	public Map< FeatureSpec< ?, ? >, Feature< ? > > compute( final Collection< FeatureSpec< ?, ? > > featureKeys )
 	{
@@ -205,32 +244,184 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 		final FeatureDependencyGraph dependencyGraph = dependencies.subGraphFor( specs );
 		final RefList< FeatureDependencyGraph.Vertex > sequence = new TopologicalSort<>( dependencyGraph ).get();
 
-		final Map< FeatureSpec< ?, ? >, Feature< ? > > featureModel = new HashMap<>();
+		/*
+		 * Schedule computers as soon as all their dependencies are computed.
+		 * Computers are submitted in topological order, and results are
+		 * collected on this thread. Dependencies of a computer are only read
+		 * when it is submitted, that is, after they have been computed.
+		 */
+		final Map< FeatureDependencyGraph.Vertex, Integer > numMissingDependencies = new HashMap<>();
+		final ArrayDeque< FeatureDependencyGraph.Vertex > ready = new ArrayDeque<>();
 		for ( final FeatureDependencyGraph.Vertex vertex : sequence )
 		{
-			if ( isCanceled() )
-				break;
+			final int n = vertex.outgoingEdges().size();
+			numMissingDependencies.put( vertex, n );
+			if ( n == 0 )
+				ready.add( vertex );
+		}
 
-			currentFeatureComputer = vertex.getFeatureComputer();
-			final CommandInfo info = vertex.getFeatureComputerInfo();
-			final CommandModule module = new CommandModule( info, currentFeatureComputer );
-			for ( final ModuleItem< ? > item : info.inputs() )
+		final ExecutorService ownExecutor = executor == null ? Executors.newCachedThreadPool() : null;
+		final CompletionService< FeatureDependencyGraph.Vertex > completion =
+				new ExecutorCompletionService<>( executor == null ? ownExecutor : executor );
+		final Map< FeatureDependencyGraph.Vertex, CommandModule > modules = new HashMap<>();
+		final Map< FeatureSpec< ?, ? >, Feature< ? > > featureModel = new HashMap<>();
+		final FeatureComputationReport report = new FeatureComputationReport();
+		final long start = System.nanoTime();
+		progress.start( sequence.size() );
+		try
+		{
+			int numRunning = 0;
+			while ( true )
 			{
-				final Class< ? > klass = item.getType();
-				provideParameters( item, module, klass, featureModel );
+				while ( !ready.isEmpty() && !isCanceled() )
+				{
+					final FeatureDependencyGraph.Vertex vertex = ready.poll();
+					modules.put( vertex, submit( vertex, completion, featureModel, report ) );
+					++numRunning;
+				}
+				if ( numRunning == 0 )
+					break;
+
+				final FeatureDependencyGraph.Vertex vertex;
+				try
+				{
+					vertex = completion.take().get();
+				}
+				catch ( final InterruptedException e )
+				{
+					cancel( "Feature computation was interrupted." );
+					Thread.currentThread().interrupt();
+					break;
+				}
+				catch ( final ExecutionException e )
+				{
+					cancel( "Feature computation failed." );
+					final Throwable cause = e.getCause();
+					if ( cause instanceof RuntimeException )
+						throw ( RuntimeException ) cause;
+					if ( cause instanceof Error )
+						throw ( Error ) cause;
+					throw new RuntimeException( cause );
+				}
+				--numRunning;
+
+				final CommandInfo info = vertex.getFeatureComputerInfo();
+				final Feature< ? > output = ( Feature< ? > ) info.outputs().iterator().next().getValue( modules.get( vertex ) );
+				featureModel.put( vertex.getFeatureSpec(), output );
+
+				for ( final Edge edge : vertex.incomingEdges() )
+				{
+					final FeatureDependencyGraph.Vertex dependent = edge.getSource();
+					final int n = numMissingDependencies.get( dependent ) - 1;
+					numMissingDependencies.put( dependent, n );
+					if ( n == 0 )
+						ready.add( dependent );
+				}
 			}
+		}
+		finally
+		{
+			if ( ownExecutor != null )
+				ownExecutor.shutdown();
+			report.setWallNanos( System.nanoTime() - start );
+			this.report = report;
+			status.notifyClear();
+		}
+		return ( featureModel );
+	}
 
-			status.notifyStatus( vertex.getFeatureSpec().getKey() );
-			currentFeatureComputer.createOutput();
-			currentFeatureComputer.run();
+	@Override
+	public FeatureComputationReport getLastComputationReport()
+	{
+		return report;
+	}
 
-			final Feature< ? > output = ( Feature< ? > ) info.outputs().iterator().next().getValue( module );
-			featureModel.put( vertex.getFeatureSpec(), output );
+	/**
+	 * Provide the parameters of the {@link FeatureComputer} of the specified
+	 * vertex, and submit it for computation.
+	 *
+	 * The timing of the computer is added to the specified report when it
+	 * completes.
+	 *
+	 * @return the command module of the submitted computer, from which its
+	 *         output can be retrieved once it is completed.
+	 */
+	private CommandModule submit(
+			final FeatureDependencyGraph.Vertex vertex,
+			final CompletionService< FeatureDependencyGraph.Vertex > completion,
+			final Map< FeatureSpec< ?, ? >, Feature< ? > > featureModel,
+			final FeatureComputationReport report )
+	{
+		final FeatureComputer featureComputer = vertex.getFeatureComputer();
+		final String key = vertex.getFeatureSpec().getKey();
+		final CommandInfo info = vertex.getFeatureComputerInfo();
+		final CommandModule module = new CommandModule( info, featureComputer );
+		final ComputerStatus computerStatus = new ComputerStatus( key, progress );
+		for ( final ModuleItem< ? > item : info.inputs() )
+		{
+			final Class< ? > klass = item.getType();
+			if ( FeatureComputationStatus.class.isAssignableFrom( klass ) )
+			{
+				// Each computer reports to its own status, which is aggregated by progress.
+				@SuppressWarnings( "unchecked" )
+				final ModuleItem< FeatureComputationStatus > statusItem = ( ModuleItem< FeatureComputationStatus > ) item;
+				statusItem.setValue( module, computerStatus );
+			}
+			else
+				provideParameters( item, module, klass, featureModel );
 		}
 
-		currentFeatureComputer = null;
-		status.notifyClear();
-		return ( featureModel );
+		completion.submit( () -> {
+			runningFeatureComputers.add( featureComputer );
+			progress.started( key );
+			final long wallStart = System.nanoTime();
+			final long cpuStart = currentThreadCpuTime();
+			try
+			{
+				if ( !isCanceled() )
+				{
+					featureComputer.createOutput();
+					featureComputer.run();
+				}
+			}
+			finally
+			{
+				final long wall = System.nanoTime() - wallStart;
+				final long cpuEnd = currentThreadCpuTime();
+				final long cpu = ( cpuStart < 0 || cpuEnd < 0 ) ? -1 : cpuEnd - cpuStart;
+				report.add( new FeatureComputationReport.Entry(
+						vertex.getFeatureSpec(),
+						featureComputer.getClass(),
+						wall,
+						cpu,
+						computerStatus.getNumProcessed(),
+						isCanceled() ) );
+				runningFeatureComputers.remove( featureComputer );
+				progress.finished( key );
+			}
+			return vertex;
+		} );
+		return module;
+	}
+
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * @return the CPU time of the current thread in nanoseconds, or {@code -1}
+	 *         if not supported.
+	 */
+	private static long currentThreadCpuTime()
+	{
+		try
+		{
+			return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()
+					? THREAD_MX_BEAN.getCurrentThreadCpuTime()
+					: -1;
+		}
+		catch ( final UnsupportedOperationException e )
+		{
+			return -1;
+		}
 	}
 
 	/**
@@ -288,8 +479,9 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 	public void cancel( final String reason )
 	{
 		this.cancelReason = reason;
-		if ( currentFeatureComputer instanceof Cancelable )
-			( ( Cancelable ) currentFeatureComputer ).cancel( reason );
+		for ( final FeatureComputer featureComputer : runningFeatureComputers )
+			if ( featureComputer instanceof Cancelable )
+				( ( Cancelable ) featureComputer ).cancel( reason );
 	}
 
 	@Override
@@ -350,5 +542,138 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 		{
 			listeners.list.forEach( l -> l.clear() );
 		}
+
+		/**
+		 * Reports that some objects were processed, to measure the throughput
+		 * of the computer. May be called several times (and concurrently), the
+		 * numbers are summed up.
+		 *
+		 * @param numProcessed
+		 *            the number of objects processed since the last call.
+		 */
+		public void notifyProcessed( final long numProcessed )
+		{}
+	}
+
+	/**
+	 * The {@link FeatureComputationStatus} given to one {@link FeatureComputer}.
+	 * Reports progress to a {@link ComputationProgress}, where it is
+	 * aggregated with the progress of other computers running in parallel.
+	 */
+	private static class ComputerStatus extends FeatureComputationStatus
+	{
+		private final String key;
+
+		private final ComputationProgress progress;
+
+		/**
+		 * Number of processed objects reported, or {@code -1} if none was.
+		 */
+		private final AtomicLong numProcessed = new AtomicLong( -1 );
+
+		ComputerStatus( final String key, final ComputationProgress progress )
+		{
+			this.key = key;
+			this.progress = progress;
+		}
+
+		@Override
+		public void notifyProcessed( final long n )
+		{
+			numProcessed.accumulateAndGet( n, ( a, b ) -> Math.max( a, 0 ) + b );
+		}
+
+		long getNumProcessed()
+		{
+			return numProcessed.get();
+		}
+
+		@Override
+		public void notifyStatus( final String status )
+		{
+			progress.status( status );
+		}
+
+		@Override
+		public void notifyProgress( final double progress )
+		{
+			this.progress.progress( key, progress );
+		}
+
+		@Override
+		public void notifyClear()
+		{}
+	}
+
+	/**
+	 * Aggregates the progress of the {@link FeatureComputer}s of one
+	 * {@link DefaultFeatureComputerService#compute(Collection)} call. The
+	 * status lists the computers that are currently running, the progress is
+	 * the fraction of the total work done, assuming each computer has the same
+	 * amount of work.
+	 */
+	private static class ComputationProgress
+	{
+		private final FeatureComputationStatus status;
+
+		/**
+		 * Progress of the currently running computers, by feature key, in
+		 * order of starting.
+		 */
+		private final Map< String, Double > running = new LinkedHashMap<>();
+
+		private int numComputers;
+
+		private int numFinished;
+
+		ComputationProgress( final FeatureComputationStatus status )
+		{
+			this.status = status;
+		}
+
+		synchronized void start( final int numComputers )
+		{
+			this.numComputers = numComputers;
+			numFinished = 0;
+			running.clear();
+		}
+
+		synchronized void started( final String key )
+		{
+			running.put( key, 0. );
+			status.notifyStatus( String.join( ", ", running.keySet() ) );
+			notifyProgress();
+		}
+
+		synchronized void finished( final String key )
+		{
+			running.remove( key );
+			++numFinished;
+			if ( !running.isEmpty() )
+				status.notifyStatus( String.join( ", ", running.keySet() ) );
+			notifyProgress();
+		}
+
+		synchronized void progress( final String key, final double progress )
+		{
+			if ( running.containsKey( key ) )
+			{
+				running.put( key, progress );
+				notifyProgress();
+			}
+		}
+
+		synchronized void status( final String message )
+		{
+			status.notifyStatus( message );
+		}
+
+		private void notifyProgress()
+		{
+			double done = numFinished;
+			for ( final double p : running.values() )
+				done += p;
+			status.notifyProgress( numComputers == 0 ? 1 : done / numComputers );
+		}
 	}
 }
@@ -0,0 +1,135 @@
+package org.mastodon.feature;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.properties.DoublePropertyMap;
+
+import gnu.trove.map.TIntDoubleMap;
+
+/**
+ * Read-only primitive view over the {@link DoublePropertyMap} storing the
+ * values of a feature. Values can be read by object or by pool index, one at a
+ * time or in bulk into a {@code double[]}, without boxing nor interface calls
+ * per object.
+ *
+ * @param <O>
+ *            the feature target.
+ */
+public final class DoubleFeatureView< O >
+{
+	private final DoublePropertyMap< O > map;
+
+	public DoubleFeatureView( final DoublePropertyMap< O > map )
+	{
+		this.map = map;
+	}
+
+	/**
+	 * @return the number of objects for which a value is set.
+	 */
+	public int size()
+	{
+		return map.getMap().size();
+	}
+
+	public boolean isSet( final O obj )
+	{
+		return map.isSet( obj );
+	}
+
+	/**
+	 * @param obj
+	 *            the object.
+	 * @return the value for the specified object, or {@code NaN} if it is not
+	 *         set.
+	 */
+	public double get( final O obj )
+	{
+		return map.isSet( obj ) ? map.getDouble( obj ) : Double.NaN;
+	}
+
+	/**
+	 * @param id
+	 *            the pool index of an object.
+	 * @return whether a value is set for the object with the specified pool
+	 *         index.
+	 */
+	public boolean isSet( final int id )
+	{
+		return map.getMap().containsKey( id );
+	}
+
+	/**
+	 * @param id
+	 *            the pool index of an object.
+	 * @return the value for the object with the specified pool index, or
+	 *         {@code NaN} if it is not set.
+	 */
+	public double get( final int id )
+	{
+		return get( map.getMap(), id );
+	}
+
+	/**
+	 * Writes the values for the specified objects in the specified array, in
+	 * iteration order, starting at position {@code offset}. Objects for which
+	 * the value is not set yield {@code NaN}.
+	 *
+	 * @param objs
+	 *            the objects.
+	 * @param values
+	 *            the array to write to.
+	 * @param offset
+	 *            the position of the first value in the array.
+	 * @return the number of values written.
+	 */
+	public int get( final RefCollection< O > objs, final double[] values, final int offset )
+	{
+		final RefPool< O > pool = RefCollections.tryGetRefPool( objs );
+		int i = offset;
+		if ( null == pool )
+		{
+			for ( final O obj : objs )
+				values[ i++ ] = get( obj );
+			return i - offset;
+		}
+
+		final TIntDoubleMap m = map.getMap();
+		for ( final O obj : objs )
+			values[ i++ ] = get( m, pool.getId( obj ) );
+		return i - offset;
+	}
+
+	/**
+	 * Writes the values for the objects with pool index {@code fromId}
+	 * (inclusive) to {@code toId} (exclusive) in the specified array, starting
+	 * at position {@code offset}. Free indices and objects for which the value
+	 * is not set yield {@code NaN}.
+	 *
+	 * @param fromId
+	 *            the first pool index, inclusive.
+	 * @param toId
+	 *            the last pool index, exclusive.
+	 * @param values
+	 *            the array to write to.
+	 * @param offset
+	 *            the position of the first value in the array.
+	 */
+	public void get( final int fromId, final int toId, final double[] values, final int offset )
+	{
+		final TIntDoubleMap m = map.getMap();
+		for ( int id = fromId, i = offset; id < toId; id++, i++ )
+			values[ i ] = get( m, id );
+	}
+
+	/**
+	 * Looks up the value of {@code id}, with a single hash lookup unless the
+	 * stored value equals the no-entry value of the map.
+	 */
+	private static double get( final TIntDoubleMap m, final int id )
+	{
+		final double value = m.get( id );
+		return ( value == m.getNoEntryValue() && !m.containsKey( id ) ) ? Double.NaN : value;
+	}
+}
@@ -96,6 +96,17 @@ public abstract class DoubleScalarFeature< O > implements Feature< O >
 		values.remove( o );
 	}
 
+	/**
+	 * Returns a read-only primitive view over the values of this feature, for
+	 * bulk access by object or by pool index.
+	 *
+	 * @return a view over the values of this feature.
+	 */
+	public DoubleFeatureView< O > view()
+	{
+		return new DoubleFeatureView<>( values );
+	}
+
 	/**
 	 * Returns the values of the feature as an array of double values. Changes
 	 * to the array of values will not be reflected in the feature nor
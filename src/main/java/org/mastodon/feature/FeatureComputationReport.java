@@ -0,0 +1,189 @@
+package org.mastodon.feature;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Timings of the {@link FeatureComputer}s run by one
+ * {@link FeatureComputerService#compute(java.util.Collection)} call.
+ * <p>
+ * For each computer, the report lists the wall time, the CPU time of the
+ * thread that ran it, and the number of objects it processed if the computer
+ * reported it through
+ * {@link DefaultFeatureComputerService.FeatureComputationStatus#notifyProcessed(long)}.
+ * CPU time spent in threads started by the computer itself is not included.
+ */
+public class FeatureComputationReport
+{
+	/**
+	 * Timing of one {@link FeatureComputer} run.
+	 */
+	public static class Entry
+	{
+		private final FeatureSpec< ?, ? > spec;
+
+		private final Class< ? > computerClass;
+
+		private final long wallNanos;
+
+		private final long cpuNanos;
+
+		private final long numProcessed;
+
+		private final boolean canceled;
+
+		public Entry(
+				final FeatureSpec< ?, ? > spec,
+				final Class< ? > computerClass,
+				final long wallNanos,
+				final long cpuNanos,
+				final long numProcessed,
+				final boolean canceled )
+		{
+			this.spec = spec;
+			this.computerClass = computerClass;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.numProcessed = numProcessed;
+			this.canceled = canceled;
+		}
+
+		/**
+		 * @return the spec of the computed feature.
+		 */
+		public FeatureSpec< ?, ? > getFeatureSpec()
+		{
+			return spec;
+		}
+
+		/**
+		 * @return the class of the feature computer.
+		 */
+		public Class< ? > getComputerClass()
+		{
+			return computerClass;
+		}
+
+		/**
+		 * @return the wall time of the run, in nanoseconds.
+		 */
+		public long getWallNanos()
+		{
+			return wallNanos;
+		}
+
+		/**
+		 * @return the CPU time of the thread that ran the computer, in
+		 *         nanoseconds, or {@code -1} if CPU time measurement is not
+		 *         supported.
+		 */
+		public long getCpuNanos()
+		{
+			return cpuNanos;
+		}
+
+		/**
+		 * @return the number of objects processed, or {@code -1} if the
+		 *         computer did not report it.
+		 */
+		public long getNumProcessed()
+		{
+			return numProcessed;
+		}
+
+		/**
+		 * @return the number of objects processed per second of wall time, or
+		 *         {@code NaN} if the computer did not report the number of
+		 *         processed objects.
+		 */
+		public double getObjectsPerSecond()
+		{
+			if ( numProcessed < 0 )
+				return Double.NaN;
+			return wallNanos == 0 ? Double.POSITIVE_INFINITY : numProcessed * 1e9 / wallNanos;
+		}
+
+		/**
+		 * @return whether the computation was canceled while this computer
+		 *         ran.
+		 */
+		public boolean isCanceled()
+		{
+			return canceled;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "%-30s %10.1f %10s %12s %12s%s",
+					spec.getKey(),
+					wallNanos / 1e6,
+					cpuNanos < 0 ? "-" : String.format( "%.1f", cpuNanos / 1e6 ),
+					numProcessed < 0 ? "-" : Long.toString( numProcessed ),
+					numProcessed < 0 ? "-" : String.format( "%.0f", getObjectsPerSecond() ),
+					canceled ? "  (canceled)" : "" );
+		}
+	}
+
+	private final List< Entry > entries = new ArrayList<>();
+
+	private long wallNanos;
+
+	synchronized void add( final Entry entry )
+	{
+		entries.add( entry );
+	}
+
+	synchronized void setWallNanos( final long wallNanos )
+	{
+		this.wallNanos = wallNanos;
+	}
+
+	/**
+	 * Returns the timings of the computers, in the order they finished.
+	 *
+	 * @return the report entries.
+	 */
+	public synchronized List< Entry > getEntries()
+	{
+		return Collections.unmodifiableList( new ArrayList<>( entries ) );
+	}
+
+	/**
+	 * Returns the timing of the computer of the specified feature.
+	 *
+	 * @param spec
+	 *            the feature spec.
+	 * @return the entry, or {@code null} if the feature was not computed.
+	 */
+	public synchronized Entry getEntry( final FeatureSpec< ?, ? > spec )
+	{
+		for ( final Entry entry : entries )
+			if ( entry.getFeatureSpec().equals( spec ) )
+				return entry;
+		return null;
+	}
+
+	/**
+	 * Returns the wall time of the whole computation. This is less than the
+	 * sum of the wall times of the computers if they ran in parallel.
+	 *
+	 * @return the wall time in nanoseconds.
+	 */
+	public synchronized long getWallNanos()
+	{
+		return wallNanos;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		final StringBuilder str = new StringBuilder();
+		str.append( String.format( "%-30s %10s %10s %12s %12s\n", "Feature", "Wall (ms)", "CPU (ms)", "Objects", "Objects/s" ) );
+		for ( final Entry entry : entries )
+			str.append( entry ).append( '\n' );
+		str.append( String.format( "%-30s %10.1f\n", "Total", wallNanos / 1e6 ) );
+		return str.toString();
+	}
+}
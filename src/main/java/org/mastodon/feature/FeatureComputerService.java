@@ -46,4 +46,15 @@ public interface FeatureComputerService extends Cancelable, SciJavaService
 	 * @return the dependencies.
 	 */
 	public Collection< FeatureSpec< ?, ? > > getDependencies( FeatureSpec< ?, ? > spec );
+
+	/**
+	 * Returns the timings of the feature computers run by the last
+	 * {@link #compute(Collection)} call.
+	 *
+	 * @return the report, or {@code null} if no report is available.
+	 */
+	public default FeatureComputationReport getLastComputationReport()
+	{
+		return null;
+	}
 }
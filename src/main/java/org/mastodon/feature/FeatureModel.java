@@ -3,12 +3,17 @@ package org.mastodon.feature;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.scijava.listeners.Listeners;
 
 /**
  * Class that manage a collection of features in a model graph.
+ * <p>
+ * This class is thread-safe, so that features can be published from a
+ * background computation while they are read for display.
  *
  * @author Jean-Yves Tinevez
  */
@@ -42,9 +47,30 @@ public class FeatureModel
 
 	private final Map< FeatureSpec< ?, ? >, Feature< ? > > features;
 
+	/**
+	 * Cached statistics, by projection, with the objects they were computed
+	 * over. Entries are removed when the feature of the projection is
+	 * declared, replaced or removed.
+	 */
+	private final Map< FeatureProjection< ? >, CachedStatistics > statistics;
+
+	/**
+	 * Version of each feature, that is the value of {@link #modCount} when it
+	 * was last declared or invalidated.
+	 */
+	private final Map< FeatureSpec< ?, ? >, Long > versions;
+
+	/**
+	 * Incremented at each change of a feature. Used to detect changes while
+	 * statistics are computed, and to stamp feature versions.
+	 */
+	private long modCount;
+
 	public FeatureModel()
 	{
 		this.features = new HashMap<>();
+		this.statistics = new HashMap<>();
+		this.versions = new HashMap<>();
 		this.listeners = new Listeners.SynchronizedList<>();
 	}
 
@@ -53,8 +79,17 @@ public class FeatureModel
 	 */
 	public void clear()
 	{
-		features.clear();
-		notifyFeatureModelChanged();
+		final boolean notify;
+		synchronized ( this )
+		{
+			features.clear();
+			statistics.clear();
+			versions.clear();
+			++modCount;
+			notify = featureModelChanged();
+		}
+		if ( notify )
+			notifyListeners();
 	}
 
 	/**
@@ -65,9 +100,16 @@ public class FeatureModel
 	 */
 	public void clear( final FeatureSpec< ?, ? > key )
 	{
-		final boolean removed = features.remove( key ) != null;
-		if ( removed )
-			notifyFeatureModelChanged();
+		final boolean notify;
+		synchronized ( this )
+		{
+			final Feature< ? > removed = features.remove( key );
+			featureChanged( removed );
+			versions.remove( key );
+			notify = removed != null && featureModelChanged();
+		}
+		if ( notify )
+			notifyListeners();
 	}
 
 	/**
@@ -78,8 +120,15 @@ public class FeatureModel
 	 */
 	public void declareFeature( final Feature< ? > feature )
 	{
-		features.put( feature.getSpec(), feature );
-		notifyFeatureModelChanged();
+		final boolean notify;
+		synchronized ( this )
+		{
+			featureChanged( features.put( feature.getSpec(), feature ) );
+			featureChanged( feature );
+			notify = featureModelChanged();
+		}
+		if ( notify )
+			notifyListeners();
 	}
 
 	/**
@@ -90,7 +139,7 @@ public class FeatureModel
 	 * @return the feature, or {@code null} if a feature with the specified
 	 *         key is not registered in this model.
 	 */
-	public Feature< ? > getFeature( final FeatureSpec< ?, ? > key )
+	public synchronized Feature< ? > getFeature( final FeatureSpec< ?, ? > key )
 	{
 		return features.get( key );
 	}
@@ -102,9 +151,163 @@ public class FeatureModel
 	 * @return the collection of the {@link FeatureSpec}s declared in this
 	 *         feature model.
 	 */
-	public Collection< FeatureSpec< ?, ? > > getFeatureSpecs()
+	public synchronized Collection< FeatureSpec< ?, ? > > getFeatureSpecs()
+	{
+		return Collections.unmodifiableSet( new HashSet<>( features.keySet() ) );
+	}
+
+	/**
+	 * Atomically removes the features with the specified specifications and
+	 * registers the specified features. Readers never observe a state where
+	 * only some of the features were replaced, and listeners are notified
+	 * once.
+	 *
+	 * @param toClear
+	 *            the {@link FeatureSpec}s of the features to remove.
+	 * @param toDeclare
+	 *            the features to register.
+	 */
+	public void replaceFeatures( final Collection< FeatureSpec< ?, ? > > toClear, final Collection< Feature< ? > > toDeclare )
+	{
+		final boolean notify;
+		synchronized ( this )
+		{
+			for ( final FeatureSpec< ?, ? > spec : toClear )
+			{
+				featureChanged( features.remove( spec ) );
+				versions.remove( spec );
+			}
+			for ( final Feature< ? > feature : toDeclare )
+			{
+				featureChanged( features.put( feature.getSpec(), feature ) );
+				featureChanged( feature );
+			}
+			notify = featureModelChanged();
+		}
+		if ( notify )
+			notifyListeners();
+	}
+
+	/**
+	 * Returns the statistics of the values of the specified projection over
+	 * the specified objects. Statistics are computed at the first request, and
+	 * cached until the feature of the projection is declared again (for
+	 * instance, after it was recomputed), replaced, removed or invalidated
+	 * with {@link #invalidateStatistics(FeatureSpec)}. Repeated requests
+	 * therefore do not iterate over the objects. Features whose values change
+	 * with the graph must be invalidated at each change, see
+	 * {@link org.mastodon.feature.update.GraphFeatureUpdateListeners#statisticsInvalidator(FeatureModel, FeatureSpec...)}.
+	 * <p>
+	 * One result is cached per projection, together with the identity of the
+	 * collection it was computed over. Requesting the statistics of a
+	 * projection over another collection computes them again, and replaces the
+	 * cached result.
+	 *
+	 * @param projection
+	 *            the projection, of a feature declared in this model.
+	 * @param objs
+	 *            the objects to compute the statistics over if they are not
+	 *            cached.
+	 * @param <O>
+	 *            the type of objects.
+	 * @return the statistics.
+	 */
+	public < O > FeatureStatistics getStatistics( final FeatureProjection< O > projection, final Iterable< O > objs )
+	{
+		final long generation;
+		synchronized ( this )
+		{
+			final CachedStatistics cached = statistics.get( projection );
+			if ( cached != null && cached.objs == objs )
+				return cached.statistics;
+			generation = modCount;
+		}
+
+		// Compute without holding the lock.
+		final FeatureStatistics computed = FeatureStatistics.compute( objs, projection );
+
+		synchronized ( this )
+		{
+			// Only cache if the projection was not invalidated in the meantime.
+			if ( generation == modCount )
+				statistics.put( projection, new CachedStatistics( objs, computed ) );
+		}
+		return computed;
+	}
+
+	/**
+	 * Discards the cached statistics of the feature with the specified
+	 * specification, and increments its version. This must be called when the
+	 * values of a feature are modified without declaring the feature again.
+	 *
+	 * @param key
+	 *            the {@link FeatureSpec} of the feature.
+	 */
+	public synchronized void invalidateStatistics( final FeatureSpec< ?, ? > key )
+	{
+		featureChanged( features.get( key ) );
+	}
+
+	/**
+	 * Returns the version of the feature with the specified specification.
+	 * The version increases each time the feature is declared (for instance,
+	 * after it was recomputed) or invalidated with
+	 * {@link #invalidateStatistics(FeatureSpec)}. Clients can compare versions
+	 * to find out whether a feature changed, for instance since it was last
+	 * saved.
+	 *
+	 * @param key
+	 *            the {@link FeatureSpec} of the feature.
+	 * @return the version, or 0 if the feature is not declared.
+	 */
+	public synchronized long getFeatureVersion( final FeatureSpec< ?, ? > key )
 	{
-		return Collections.unmodifiableSet( features.keySet() );
+		final Long version = versions.get( key );
+		return version == null ? 0 : version.longValue();
+	}
+
+	/**
+	 * Returns a counter incremented at each change of this feature model:
+	 * declaration, removal or invalidation of a feature.
+	 *
+	 * @return the modification count.
+	 */
+	public synchronized long getModCount()
+	{
+		return modCount;
+	}
+
+	/**
+	 * Stamps a new version of the specified feature, and discards its cached
+	 * statistics. Must be called while holding the lock on this instance.
+	 */
+	private void featureChanged( final Feature< ? > feature )
+	{
+		if ( feature == null )
+			return;
+		++modCount;
+		versions.put( feature.getSpec(), modCount );
+		if ( statistics.isEmpty() )
+			return;
+		final Set< ? extends FeatureProjection< ? > > projections = feature.projections();
+		if ( projections != null )
+			statistics.keySet().removeAll( projections );
+	}
+
+	/**
+	 * Statistics of a projection, with the objects they were computed over.
+	 */
+	private static final class CachedStatistics
+	{
+		private final Iterable< ? > objs;
+
+		private final FeatureStatistics statistics;
+
+		CachedStatistics( final Iterable< ? > objs, final FeatureStatistics statistics )
+		{
+			this.objs = objs;
+			this.statistics = statistics;
+		}
 	}
 
 	/*
@@ -116,8 +319,9 @@ public class FeatureModel
 
 	/**
 	 * Exposes the list of listeners that are notified when a change happens to
-	 * this feature model. Events are fired for every call to {@link #clear()}
-	 * or {@link #declareFeature(Feature)} methods.
+	 * this feature model. Events are fired for every call to {@link #clear()},
+	 * {@link #declareFeature(Feature)} or
+	 * {@link #replaceFeatures(Collection, Collection)} methods.
 	 *
 	 * @return the list of the listeners.
 	 */
@@ -129,7 +333,7 @@ public class FeatureModel
 	/**
 	 * Pause sending events from this feature model.
 	 */
-	public void pauseListeners()
+	public synchronized void pauseListeners()
 	{
 		emitEvents = false;
 	}
@@ -141,19 +345,38 @@ public class FeatureModel
 	 */
 	public void resumeListeners()
 	{
-		emitEvents = true;
-		if ( shouldEmitEvent )
+		final boolean notify;
+		synchronized ( this )
 		{
-			listeners.list.forEach( FeatureModelListener::featureModelChanged );
+			emitEvents = true;
+			notify = shouldEmitEvent;
 			shouldEmitEvent = false;
 		}
+		if ( notify )
+			notifyListeners();
 	}
 
-	private void notifyFeatureModelChanged()
+	/**
+	 * Records a change. Must be called while holding the lock on this
+	 * instance.
+	 *
+	 * @return whether listeners should be notified (after releasing the lock).
+	 */
+	private boolean featureModelChanged()
 	{
 		if ( emitEvents )
-			listeners.list.forEach( FeatureModelListener::featureModelChanged );
-		else
-			shouldEmitEvent = true;
+			return true;
+		shouldEmitEvent = true;
+		return false;
+	}
+
+	/**
+	 * Notifies listeners. Not called while holding the lock on this instance,
+	 * so that listeners may safely hand over to other threads that read this
+	 * feature model.
+	 */
+	private void notifyListeners()
+	{
+		listeners.list.forEach( FeatureModelListener::featureModelChanged );
 	}
 }
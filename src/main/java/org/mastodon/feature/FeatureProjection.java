@@ -1,5 +1,8 @@
 package org.mastodon.feature;
 
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollection;
+
 /**
  *
  * @param <T>
@@ -37,4 +40,62 @@ public interface FeatureProjection< T >
 	 */
 	public String units();
 
+	/**
+	 * Writes the values of this projection for the specified objects in the
+	 * specified array, in iteration order, starting at position
+	 * {@code offset}. Objects for which the value is not set yield
+	 * {@code NaN}.
+	 * <p>
+	 * Projections backed by a property map override this method to read the
+	 * map directly, without a per-object interface call.
+	 *
+	 * @param objs
+	 *            the objects.
+	 * @param values
+	 *            the array to write to, of length at least
+	 *            {@code offset + objs.size()}.
+	 * @param offset
+	 *            the position of the first value in the array.
+	 * @return the number of values written.
+	 */
+	public default int values( final RefCollection< T > objs, final double[] values, final int offset )
+	{
+		int i = offset;
+		for ( final T obj : objs )
+			values[ i++ ] = isSet( obj ) ? value( obj ) : Double.NaN;
+		return i - offset;
+	}
+
+	/**
+	 * Writes the values of this projection for the objects with pool index
+	 * {@code fromId} (inclusive) to {@code toId} (exclusive) in the specified
+	 * array, starting at position {@code offset}. Objects for which the value
+	 * is not set yield {@code NaN}.
+	 * <p>
+	 * All indices in the range must denote objects that exist in the pool,
+	 * except for projections backed by a property map, that yield
+	 * {@code NaN} for free indices.
+	 *
+	 * @param pool
+	 *            the pool of objects.
+	 * @param fromId
+	 *            the first pool index, inclusive.
+	 * @param toId
+	 *            the last pool index, exclusive.
+	 * @param values
+	 *            the array to write to, of length at least
+	 *            {@code offset + toId - fromId}.
+	 * @param offset
+	 *            the position of the first value in the array.
+	 */
+	public default void values( final RefPool< T > pool, final int fromId, final int toId, final double[] values, final int offset )
+	{
+		final T ref = pool.createRef();
+		for ( int id = fromId, i = offset; id < toId; id++, i++ )
+		{
+			final T obj = pool.getObject( id, ref );
+			values[ i ] = isSet( obj ) ? value( obj ) : Double.NaN;
+		}
+		pool.releaseRef( ref );
+	}
 }
@@ -1,5 +1,7 @@
 package org.mastodon.feature;
 
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollection;
 import org.mastodon.properties.DoublePropertyMap;
 import org.mastodon.properties.IntPropertyMap;
 
@@ -25,12 +27,15 @@ public class FeatureProjections
 
 		private final IntPropertyMap< T > map;
 
+		private final IntFeatureView< T > view;
+
 		private final String units;
 
 		public MyIntPropertyProjection( final FeatureProjectionKey key, final IntPropertyMap< T > map, final String units )
 		{
 			this.key = key;
 			this.map = map;
+			this.view = new IntFeatureView<>( map );
 			this.units = units;
 		}
 
@@ -57,6 +62,18 @@ public class FeatureProjections
 		{
 			return units;
 		}
+
+		@Override
+		public int values( final RefCollection< T > objs, final double[] values, final int offset )
+		{
+			return view.get( objs, values, offset );
+		}
+
+		@Override
+		public void values( final RefPool< T > pool, final int fromId, final int toId, final double[] values, final int offset )
+		{
+			view.get( fromId, toId, values, offset );
+		}
 	}
 
 	private static final class MyDoublePropertyProjection< T > implements FeatureProjection< T >
@@ -66,12 +83,15 @@ public class FeatureProjections
 
 		private final DoublePropertyMap< T > map;
 
+		private final DoubleFeatureView< T > view;
+
 		private final String units;
 
 		public MyDoublePropertyProjection( final FeatureProjectionKey key, final DoublePropertyMap< T > map, final String units )
 		{
 			this.key = key;
 			this.map = map;
+			this.view = new DoubleFeatureView<>( map );
 			this.units = units;
 		}
 
@@ -98,5 +118,17 @@ public class FeatureProjections
 		{
 			return units;
 		}
+
+		@Override
+		public int values( final RefCollection< T > objs, final double[] values, final int offset )
+		{
+			return view.get( objs, values, offset );
+		}
+
+		@Override
+		public void values( final RefPool< T > pool, final int fromId, final int toId, final double[] values, final int offset )
+		{
+			view.get( fromId, toId, values, offset );
+		}
 	}
 }
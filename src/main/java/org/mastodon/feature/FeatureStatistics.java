@@ -0,0 +1,209 @@
+package org.mastodon.feature;
+
+import java.util.Arrays;
+
+import org.mastodon.collection.RefCollection;
+
+/**
+ * Summary statistics of the values of a {@link FeatureProjection} over a
+ * collection of objects: number of objects for which the projection is set,
+ * min, max, mean and a histogram with {@link #NUM_BINS} bins spanning
+ * {@code [min, max]}.
+ * <p>
+ * Instances are immutable. They are cached by the {@link FeatureModel} (see
+ * {@link FeatureModel#getStatistics(FeatureProjection, Iterable)}), such that
+ * repeated requests do not iterate over the objects again.
+ */
+public class FeatureStatistics
+{
+	/**
+	 * Number of histogram bins.
+	 */
+	public static final int NUM_BINS = 64;
+
+	private final long count;
+
+	private final double min;
+
+	private final double max;
+
+	private final double mean;
+
+	private final long[] histogram;
+
+	private FeatureStatistics( final long count, final double min, final double max, final double mean, final long[] histogram )
+	{
+		this.count = count;
+		this.min = min;
+		this.max = max;
+		this.mean = mean;
+		this.histogram = histogram;
+	}
+
+	/**
+	 * Computes the statistics of the specified projection over the specified
+	 * objects. Objects for which the projection is not set, or whose value is
+	 * {@code NaN}, are ignored.
+	 * <p>
+	 * If {@code objs} is a {@link RefCollection}, the values are first read in
+	 * bulk with {@link FeatureProjection#values(RefCollection, double[], int)}.
+	 *
+	 * @param objs
+	 *            the objects.
+	 * @param projection
+	 *            the projection.
+	 * @param <O>
+	 *            the type of objects.
+	 * @return new statistics.
+	 */
+	public static < O > FeatureStatistics compute( final Iterable< O > objs, final FeatureProjection< O > projection )
+	{
+		if ( objs instanceof RefCollection )
+		{
+			final RefCollection< O > collection = ( RefCollection< O > ) objs;
+			final double[] values = new double[ collection.size() ];
+			final int n = projection.values( collection, values, 0 );
+			return compute( values, 0, n );
+		}
+
+		long count = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		double sum = 0.;
+		for ( final O obj : objs )
+		{
+			if ( !projection.isSet( obj ) )
+				continue;
+			final double value = projection.value( obj );
+			if ( Double.isNaN( value ) )
+				continue;
+			++count;
+			sum += value;
+			if ( value < min )
+				min = value;
+			if ( value > max )
+				max = value;
+		}
+
+		final long[] histogram = new long[ NUM_BINS ];
+		if ( count > 0 )
+		{
+			final double scale = max > min ? NUM_BINS / ( max - min ) : 0.;
+			for ( final O obj : objs )
+			{
+				if ( !projection.isSet( obj ) )
+					continue;
+				final double value = projection.value( obj );
+				if ( Double.isNaN( value ) )
+					continue;
+				++histogram[ Math.min( NUM_BINS - 1, ( int ) ( ( value - min ) * scale ) ) ];
+			}
+		}
+		return new FeatureStatistics( count, min, max, count == 0 ? Double.NaN : sum / count, histogram );
+	}
+
+	/**
+	 * Computes the statistics of the values in {@code values} from position
+	 * {@code from} (inclusive) to {@code to} (exclusive). {@code NaN} values
+	 * are ignored.
+	 *
+	 * @param values
+	 *            the values.
+	 * @param from
+	 *            the first position, inclusive.
+	 * @param to
+	 *            the last position, exclusive.
+	 * @return new statistics.
+	 */
+	public static FeatureStatistics compute( final double[] values, final int from, final int to )
+	{
+		long count = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		double sum = 0.;
+		for ( int i = from; i < to; i++ )
+		{
+			final double value = values[ i ];
+			if ( Double.isNaN( value ) )
+				continue;
+			++count;
+			sum += value;
+			min = Math.min( min, value );
+			max = Math.max( max, value );
+		}
+
+		final long[] histogram = new long[ NUM_BINS ];
+		if ( count > 0 )
+		{
+			final double scale = max > min ? NUM_BINS / ( max - min ) : 0.;
+			for ( int i = from; i < to; i++ )
+			{
+				final double value = values[ i ];
+				if ( Double.isNaN( value ) )
+					continue;
+				++histogram[ Math.min( NUM_BINS - 1, ( int ) ( ( value - min ) * scale ) ) ];
+			}
+		}
+		return new FeatureStatistics( count, min, max, count == 0 ? Double.NaN : sum / count, histogram );
+	}
+
+	/**
+	 * @return the number of objects for which the projection is set.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return the minimal value, or {@code +Infinity} if {@link #getCount()}
+	 *         is 0.
+	 */
+	public double getMin()
+	{
+		return min;
+	}
+
+	/**
+	 * @return the maximal value, or {@code -Infinity} if {@link #getCount()}
+	 *         is 0.
+	 */
+	public double getMax()
+	{
+		return max;
+	}
+
+	/**
+	 * @return the mean value, or {@code NaN} if {@link #getCount()} is 0.
+	 */
+	public double getMean()
+	{
+		return mean;
+	}
+
+	/**
+	 * Returns the histogram of values. Bin {@code i} counts the values in
+	 * {@code [min + i * w, min + (i+1) * w)}, where {@code w} is
+	 * {@link #getBinWidth()}. The last bin includes {@code max}.
+	 *
+	 * @return a copy of the histogram.
+	 */
+	public long[] getHistogram()
+	{
+		return histogram.clone();
+	}
+
+	/**
+	 * @return the width of a histogram bin.
+	 */
+	public double getBinWidth()
+	{
+		return count == 0 ? 0. : ( max - min ) / NUM_BINS;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "count = %d, min = %g, max = %g, mean = %g, histogram = %s", count, min, max, mean, Arrays.toString( histogram ) );
+	}
+}
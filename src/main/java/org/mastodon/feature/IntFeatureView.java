@@ -0,0 +1,167 @@
+package org.mastodon.feature;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.properties.IntPropertyMap;
+
+import gnu.trove.map.TIntIntMap;
+
+/**
+ * Read-only primitive view over the {@link IntPropertyMap} storing the values
+ * of a feature. Values can be read by object or by pool index, one at a time
+ * or in bulk into an {@code int[]} or a {@code double[]}, without boxing nor
+ * interface calls per object.
+ *
+ * @param <O>
+ *            the feature target.
+ */
+public final class IntFeatureView< O >
+{
+	private final IntPropertyMap< O > map;
+
+	public IntFeatureView( final IntPropertyMap< O > map )
+	{
+		this.map = map;
+	}
+
+	/**
+	 * @return the number of objects for which a value is set.
+	 */
+	public int size()
+	{
+		return map.getMap().size();
+	}
+
+	/**
+	 * @return the value returned by {@link #get(int)} for objects whose value
+	 *         is not set.
+	 */
+	public int getNoEntryValue()
+	{
+		return map.getMap().getNoEntryValue();
+	}
+
+	public boolean isSet( final O obj )
+	{
+		return map.isSet( obj );
+	}
+
+	/**
+	 * @param obj
+	 *            the object.
+	 * @return the value for the specified object, or
+	 *         {@link #getNoEntryValue()} if it is not set.
+	 */
+	public int get( final O obj )
+	{
+		return map.getInt( obj );
+	}
+
+	/**
+	 * @param id
+	 *            the pool index of an object.
+	 * @return whether a value is set for the object with the specified pool
+	 *         index.
+	 */
+	public boolean isSet( final int id )
+	{
+		return map.getMap().containsKey( id );
+	}
+
+	/**
+	 * @param id
+	 *            the pool index of an object.
+	 * @return the value for the object with the specified pool index, or
+	 *         {@link #getNoEntryValue()} if it is not set.
+	 */
+	public int get( final int id )
+	{
+		return map.getMap().get( id );
+	}
+
+	/**
+	 * Writes the values for the objects with pool index {@code fromId}
+	 * (inclusive) to {@code toId} (exclusive) in the specified array, starting
+	 * at position {@code offset}. Free indices and objects for which the value
+	 * is not set yield {@link #getNoEntryValue()}.
+	 *
+	 * @param fromId
+	 *            the first pool index, inclusive.
+	 * @param toId
+	 *            the last pool index, exclusive.
+	 * @param values
+	 *            the array to write to.
+	 * @param offset
+	 *            the position of the first value in the array.
+	 */
+	public void get( final int fromId, final int toId, final int[] values, final int offset )
+	{
+		final TIntIntMap m = map.getMap();
+		for ( int id = fromId, i = offset; id < toId; id++, i++ )
+			values[ i ] = m.get( id );
+	}
+
+	/**
+	 * Writes the values for the specified objects in the specified array, in
+	 * iteration order, starting at position {@code offset}. Objects for which
+	 * the value is not set yield {@code NaN}.
+	 *
+	 * @param objs
+	 *            the objects.
+	 * @param values
+	 *            the array to write to.
+	 * @param offset
+	 *            the position of the first value in the array.
+	 * @return the number of values written.
+	 */
+	public int get( final RefCollection< O > objs, final double[] values, final int offset )
+	{
+		final RefPool< O > pool = RefCollections.tryGetRefPool( objs );
+		int i = offset;
+		if ( null == pool )
+		{
+			for ( final O obj : objs )
+				values[ i++ ] = map.isSet( obj ) ? map.getInt( obj ) : Double.NaN;
+			return i - offset;
+		}
+
+		final TIntIntMap m = map.getMap();
+		for ( final O obj : objs )
+			values[ i++ ] = get( m, pool.getId( obj ) );
+		return i - offset;
+	}
+
+	/**
+	 * Writes the values for the objects with pool index {@code fromId}
+	 * (inclusive) to {@code toId} (exclusive) in the specified array, starting
+	 * at position {@code offset}. Free indices and objects for which the value
+	 * is not set yield {@code NaN}.
+	 *
+	 * @param fromId
+	 *            the first pool index, inclusive.
+	 * @param toId
+	 *            the last pool index, exclusive.
+	 * @param values
+	 *            the array to write to.
+	 * @param offset
+	 *            the position of the first value in the array.
+	 */
+	public void get( final int fromId, final int toId, final double[] values, final int offset )
+	{
+		final TIntIntMap m = map.getMap();
+		for ( int id = fromId, i = offset; id < toId; id++, i++ )
+			values[ i ] = get( m, id );
+	}
+
+	/**
+	 * Looks up the value of {@code id} as a {@code double}, with a single
+	 * hash lookup unless the stored value equals the no-entry value of the
+	 * map.
+	 */
+	private static double get( final TIntIntMap m, final int id )
+	{
+		final int value = m.get( id );
+		return ( value == m.getNoEntryValue() && !m.containsKey( id ) ) ? Double.NaN : value;
+	}
+}
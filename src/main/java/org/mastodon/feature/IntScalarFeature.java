@@ -95,4 +95,15 @@ public abstract class IntScalarFeature< O > implements Feature< O >
 	{
 		values.remove( o );
 	}
+
+	/**
+	 * Returns a read-only primitive view over the values of this feature, for
+	 * bulk access by object or by pool index.
+	 *
+	 * @return a view over the values of this feature.
+	 */
+	public IntFeatureView< O > view()
+	{
+		return new IntFeatureView<>( values );
+	}
 }
@@ -66,4 +66,26 @@ public interface FeatureSerializer< F extends Feature< O >, O > extends SciJavaP
 	 */
 	public F deserialize( final FileIdToObjectMap< O > idmap, final RefCollection< O > pool, ObjectInputStream ois ) throws IOException, ClassNotFoundException;
 
+	/**
+	 * Returns a copy of the specified feature, that can be serialized while
+	 * the feature and the objects it is defined for are modified. Objects are
+	 * identified by their pool index in the copy, so it must be serialized
+	 * with an {@link ObjectToFileIdMap} taken at the same time.
+	 * <p>
+	 * The default implementation does not support copying and returns
+	 * {@code null}.
+	 *
+	 * @param feature
+	 *            the feature to copy.
+	 * @param pool
+	 *            the {@link RefCollection} used to create property maps inside
+	 *            the copy.
+	 * @return a copy of the feature, or {@code null} if this serializer cannot
+	 *         copy features.
+	 */
+	public default F copy( final F feature, final RefCollection< O > pool )
+	{
+		return null;
+	}
+
 }
@@ -1,7 +1,15 @@
 package org.mastodon.feature.ui;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.swing.JDialog;
 import javax.swing.JFrame;
@@ -11,6 +19,7 @@ import javax.swing.SwingUtilities;
 
 import org.mastodon.feature.DefaultFeatureComputerService.FeatureComputationStatusListener;
 import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureComputationReport;
 import org.mastodon.feature.FeatureComputer;
 import org.mastodon.feature.FeatureComputerService;
 import org.mastodon.feature.FeatureSpec;
@@ -18,9 +27,27 @@ import org.mastodon.graph.GraphChangeListener;
 import org.mastodon.revised.ui.util.EverythingDisablerAndReenabler;
 import org.scijava.command.CommandService;
 
+/**
+ * Controller for the feature computation dialog.
+ * <p>
+ * Features are computed when the user presses the compute button. In addition,
+ * a live update mode can be enabled (see {@link #setLiveUpdate(boolean)}). In
+ * this mode, graph changes are debounced: once the graph did not change for
+ * {@link #getLiveUpdateDelay()} milliseconds, the selected features that are
+ * out of date are recomputed on a low-priority background thread. Feature
+ * computers that support incremental computation only process the objects
+ * changed since their last computation. A live computation that is overtaken
+ * by a new graph change is canceled and rescheduled. The same happens when the
+ * computer service discards the results of a computation because the model
+ * changed while it was running.
+ */
 public class FeatureComputationController implements GraphChangeListener
 {
 
+	private static final long DEFAULT_LIVE_UPDATE_DELAY = 500;
+
+	private static final String USER_CANCEL_REASON = "User pressed cancel button.";
+
 	private final JDialog dialog;
 
 	private final FeatureComputationPanel gui;
@@ -31,6 +58,27 @@ public class FeatureComputationController implements GraphChangeListener
 
 	private final FeatureComputationStatusListener computationStatusListener;
 
+	/**
+	 * Serializes manual and live computations.
+	 */
+	private final ReentrantLock computationLock = new ReentrantLock();
+
+	/**
+	 * Incremented at each graph change. Used to detect whether the graph
+	 * changed during a live computation.
+	 */
+	private final AtomicLong graphModCount = new AtomicLong();
+
+	private ScheduledExecutorService liveUpdateExecutor;
+
+	private ScheduledFuture< ? > scheduledLiveUpdate;
+
+	private volatile boolean liveUpdate = false;
+
+	private volatile boolean liveComputationRunning = false;
+
+	private long liveUpdateDelay = DEFAULT_LIVE_UPDATE_DELAY;
+
 	public FeatureComputationController( final FeatureComputerService computerService, final Collection< Class< ? > > targets )
 	{
 		this.computerService = computerService;
@@ -42,30 +90,50 @@ public class FeatureComputationController implements GraphChangeListener
 
 		gui.btnCompute.addActionListener( ( e ) -> compute() );
 		gui.btnCancel.addActionListener( ( e ) -> cancel() );
+		gui.chkboxLiveUpdate.addActionListener( ( e ) -> setLiveUpdate( gui.chkboxLiveUpdate.isSelected() ) );
 
 		gui.progressBar.setString( "" );
 		computationStatusListener = new FeatureComputationStatusListener()
 		{
+			/**
+			 * Last status message. Only accessed on the EDT.
+			 */
+			private String status = "";
+
 			@Override
 			public void status( final String status )
 			{
-				SwingUtilities.invokeLater( () -> gui.progressBar.setString( status ) );
+				SwingUtilities.invokeLater( () -> {
+					this.status = status;
+					showProgress();
+				} );
 			}
 
 			@Override
 			public void progress( final double progress )
 			{
-				SwingUtilities.invokeLater( () -> gui.progressBar.setValue( ( int ) ( 100 * progress ) ) );
+				SwingUtilities.invokeLater( () -> {
+					gui.progressBar.setValue( ( int ) ( 100 * progress ) );
+					showProgress();
+				} );
 			}
 
 			@Override
 			public void clear()
 			{
 				SwingUtilities.invokeLater( () -> {
+					status = "";
 					gui.progressBar.setValue( 0 );
 					gui.progressBar.setString( "" );
 				} );
 			}
+
+			private void showProgress()
+			{
+				gui.progressBar.setString( status.isEmpty()
+						? gui.progressBar.getValue() + "%"
+						: status + " - " + gui.progressBar.getValue() + "%" );
+			}
 		};
 	}
 
@@ -76,7 +144,7 @@ public class FeatureComputationController implements GraphChangeListener
 
 	private void cancel()
 	{
-		computerService.cancel( "User pressed cancel button." );
+		computerService.cancel( USER_CANCEL_REASON );
 	}
 
 	private synchronized void compute()
@@ -93,19 +161,191 @@ public class FeatureComputationController implements GraphChangeListener
 			@Override
 			public void run()
 			{
-				final Map< FeatureSpec< ?, ? >, Feature< ? > > computed =
-						computerService.compute( model.getSelectedFeatureKeys() );
-				SwingUtilities.invokeLater( () -> {
-					gui.btnCancel.setVisible( false );
-					gui.btnCompute.setVisible( true );
-					reenabler.reenable();
-					if ( !computerService.isCanceled() )
-						model.setUptodate( computed.keySet() );
-				} );
+				computationLock.lock();
+				try
+				{
+					final Map< FeatureSpec< ?, ? >, Feature< ? > > computed =
+							computerService.compute( model.getSelectedFeatureKeys() );
+					SwingUtilities.invokeLater( () -> {
+						gui.btnCancel.setVisible( false );
+						gui.btnCompute.setVisible( true );
+						reenabler.reenable();
+						if ( !computerService.isCanceled() )
+							model.setUptodate( computed.keySet() );
+						showReport();
+					} );
+					rescheduleIfDiscarded( computed );
+				}
+				finally
+				{
+					computationLock.unlock();
+				}
 			};
 		}.start();
 	}
 
+	/**
+	 * Enables or disables live update of the features. When enabled, out of
+	 * date features are immediately scheduled for computation.
+	 *
+	 * @param liveUpdate
+	 *            whether to recompute features in the background after graph
+	 *            changes.
+	 */
+	public synchronized void setLiveUpdate( final boolean liveUpdate )
+	{
+		if ( this.liveUpdate == liveUpdate )
+			return;
+
+		this.liveUpdate = liveUpdate;
+		if ( gui.chkboxLiveUpdate.isSelected() != liveUpdate )
+			SwingUtilities.invokeLater( () -> gui.chkboxLiveUpdate.setSelected( liveUpdate ) );
+		if ( liveUpdate )
+		{
+			if ( null == liveUpdateExecutor )
+				liveUpdateExecutor = Executors.newSingleThreadScheduledExecutor( r -> {
+					final Thread thread = new Thread( r, "Feature live update thread" );
+					thread.setPriority( Thread.MIN_PRIORITY );
+					thread.setDaemon( true );
+					return thread;
+				} );
+			scheduleLiveUpdate();
+		}
+		else
+		{
+			if ( null != scheduledLiveUpdate )
+				scheduledLiveUpdate.cancel( false );
+			if ( liveComputationRunning )
+				computerService.cancel( "Live update disabled." );
+		}
+	}
+
+	public boolean isLiveUpdate()
+	{
+		return liveUpdate;
+	}
+
+	/**
+	 * Sets how long the graph must stay unchanged before a live update starts.
+	 *
+	 * @param delay
+	 *            the delay in milliseconds.
+	 */
+	public synchronized void setLiveUpdateDelay( final long delay )
+	{
+		liveUpdateDelay = delay;
+	}
+
+	public synchronized long getLiveUpdateDelay()
+	{
+		return liveUpdateDelay;
+	}
+
+	/**
+	 * (Re)starts the debounce delay of the live update. A running live
+	 * computation is canceled, because its results would be out of date.
+	 */
+	private synchronized void scheduleLiveUpdate()
+	{
+		if ( liveComputationRunning )
+			computerService.cancel( "Graph changed." );
+		if ( null != scheduledLiveUpdate )
+			scheduledLiveUpdate.cancel( false );
+		scheduledLiveUpdate = liveUpdateExecutor.schedule( this::liveCompute, liveUpdateDelay, TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * Recomputes the selected features that are out of date. Runs on the live
+	 * update thread.
+	 */
+	private void liveCompute()
+	{
+		// A manual computation is running, and will compute everything.
+		if ( !computationLock.tryLock() )
+			return;
+		try
+		{
+			final Set< FeatureSpec< ?, ? > > stale = new HashSet<>();
+			for ( final FeatureSpec< ?, ? > spec : model.getSelectedFeatureKeys() )
+				if ( !model.isUptodate( spec ) )
+					stale.add( spec );
+			if ( stale.isEmpty() || !liveUpdate )
+				return;
+
+			final long modCount = graphModCount.get();
+			final Map< FeatureSpec< ?, ? >, Feature< ? > > computed;
+			liveComputationRunning = true;
+			try
+			{
+				computed = computerService.compute( stale );
+			}
+			finally
+			{
+				liveComputationRunning = false;
+			}
+
+			/*
+			 * Only mark as up to date if the graph did not change in the
+			 * meantime. Otherwise another live update is already scheduled.
+			 */
+			if ( null != computed && !computerService.isCanceled() && modCount == graphModCount.get() )
+			{
+				SwingUtilities.invokeLater( () -> {
+					model.setUptodate( computed.keySet() );
+					showReport();
+					gui.repaint();
+				} );
+			}
+			else
+			{
+				rescheduleIfDiscarded( computed );
+			}
+		}
+		finally
+		{
+			computationLock.unlock();
+		}
+	}
+
+	/**
+	 * Schedules a live update if the computer service discarded the results of
+	 * the last computation, for instance because the model changed while it
+	 * was running. Computations canceled by the user are not rescheduled.
+	 *
+	 * @param computed
+	 *            the results of the last computation, or {@code null}.
+	 */
+	private synchronized void rescheduleIfDiscarded( final Map< FeatureSpec< ?, ? >, Feature< ? > > computed )
+	{
+		if ( !liveUpdate || ( null != computed && !computerService.isCanceled() ) )
+			return;
+		if ( USER_CANCEL_REASON.equals( computerService.getCancelReason() ) )
+			return;
+		scheduleLiveUpdate();
+	}
+
+	/**
+	 * Shows the timings of the last computation in the panel. Must be called
+	 * on the EDT.
+	 */
+	private void showReport()
+	{
+		final FeatureComputationReport report = computerService.getLastComputationReport();
+		gui.reportArea.setText( null == report ? "" : report.toString() );
+		gui.reportArea.setCaretPosition( 0 );
+	}
+
+	/**
+	 * Returns the timings of the feature computers run by the last manual or
+	 * live computation.
+	 *
+	 * @return the report, or {@code null} if no report is available.
+	 */
+	public FeatureComputationReport getLastComputationReport()
+	{
+		return computerService.getLastComputationReport();
+	}
+
 	private FeatureComputationModel createModel( final Collection< Class< ? > > targets )
 	{
 		final CommandService commandService = computerService.getContext().getService( CommandService.class );
@@ -130,8 +370,11 @@ public class FeatureComputationController implements GraphChangeListener
 	@Override
 	public void graphChanged()
 	{
+		graphModCount.incrementAndGet();
 		model.setOutofdate();
 		gui.repaint();
+		if ( liveUpdate )
+			scheduleLiveUpdate();
 	}
 
 	public JDialog getDialog()
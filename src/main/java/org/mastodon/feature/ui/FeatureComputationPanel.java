@@ -18,12 +18,14 @@ import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
+import javax.swing.JTextArea;
 import javax.swing.ScrollPaneConstants;
 
 import org.mastodon.feature.FeatureProjectionSpec;
@@ -43,6 +45,10 @@ public class FeatureComputationPanel extends JPanel
 
 	final JProgressBar progressBar;
 
+	final JCheckBox chkboxLiveUpdate;
+
+	final JTextArea reportArea;
+
 	final JPanel panelConfig;
 
 	public FeatureComputationPanel(
@@ -89,6 +95,27 @@ public class FeatureComputationPanel extends JPanel
 		final Component horizontalStrut_2 = Box.createHorizontalStrut( 5 );
 		panelButton.add( horizontalStrut_2 );
 
+		chkboxLiveUpdate = new JCheckBox( "Live update" );
+		chkboxLiveUpdate.setToolTipText( "<html>Recompute the selected features in the background<br>"
+				+ "shortly after each change to the model.</html>" );
+		panelButton.add( chkboxLiveUpdate );
+
+		final Component horizontalStrut_3 = Box.createHorizontalStrut( 5 );
+		panelButton.add( horizontalStrut_3 );
+
+		reportArea = new JTextArea( 4, 60 );
+		reportArea.setEditable( false );
+		reportArea.setFont( new Font( Font.MONOSPACED, Font.PLAIN, getFont().getSize() - 2 ) );
+		reportArea.setToolTipText( "Timings of the last feature computation." );
+		final JScrollPane scrollPaneReport = new JScrollPane( reportArea );
+		final GridBagConstraints gbc_scrollPaneReport = new GridBagConstraints();
+		gbc_scrollPaneReport.gridwidth = 2;
+		gbc_scrollPaneReport.insets = new Insets( 0, 10, 10, 10 );
+		gbc_scrollPaneReport.fill = GridBagConstraints.BOTH;
+		gbc_scrollPaneReport.gridx = 0;
+		gbc_scrollPaneReport.gridy = 1;
+		panelComputation.add( scrollPaneReport, gbc_scrollPaneReport );
+
 		final JPanel panelTitle = new JPanel( new FlowLayout( FlowLayout.LEADING ) );
 		add( panelTitle, BorderLayout.NORTH );
 
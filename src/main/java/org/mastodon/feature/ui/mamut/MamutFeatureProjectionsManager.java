@@ -4,6 +4,7 @@ import static org.mastodon.feature.ui.AvailableFeatureProjectionsImp.createAvail
 
 import org.mastodon.feature.FeatureModel;
 import org.mastodon.feature.FeatureSpecsService;
+import org.mastodon.feature.FeatureStatistics;
 import org.mastodon.feature.ui.AvailableFeatureProjections;
 import org.mastodon.feature.ui.FeatureProjectionsManager;
 import org.mastodon.revised.model.mamut.Link;
@@ -73,8 +74,8 @@ public class MamutFeatureProjectionsManager implements FeatureProjectionsManager
 		{
 			final FeatureModel featureModel = model.getFeatureModel();
 			final Projections projections = new ProjectionsFromFeatureModel( featureModel );
-			featureRangeCalculator.vertexCalculator = new DefaultFeatureRangeCalculator<>( model.getGraph().vertices(), projections );
-			featureRangeCalculator.edgeCalculator = new DefaultFeatureRangeCalculator<>( model.getGraph().edges(), projections );
+			featureRangeCalculator.vertexCalculator = new DefaultFeatureRangeCalculator<>( model.getGraph().vertices(), projections, featureModel );
+			featureRangeCalculator.edgeCalculator = new DefaultFeatureRangeCalculator<>( model.getGraph().edges(), projections, featureModel );
 			featureModel.listeners().add( this::notifyAvailableFeatureProjectionsChanged );
 		}
 		else
@@ -138,6 +139,20 @@ public class MamutFeatureProjectionsManager implements FeatureProjectionsManager
 						: edgeCalculator.computeMinMax( projection );
 			}
 		}
+
+		@Override
+		public FeatureStatistics getStatistics( final FeatureProjectionId projection )
+		{
+			if ( projection == null )
+				return null;
+
+			final FeatureRangeCalculator calculator = projection.getTargetType() == TargetType.VERTEX
+					? vertexCalculator
+					: edgeCalculator;
+			return calculator == null
+					? null
+					: calculator.getStatistics( projection );
+		}
 	};
 
 	@Override
@@ -1,5 +1,7 @@
 package org.mastodon.feature.update;
 
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureSpec;
 import org.mastodon.graph.Edge;
 import org.mastodon.graph.GraphListener;
 import org.mastodon.graph.Vertex;
@@ -72,6 +74,27 @@ public class GraphFeatureUpdateListeners
 		return new MyEdgePropertyChangeListener<>( vertexUpdates, edgeUpdates, vref );
 	}
 
+	/**
+	 * Returns a new {@link GraphListener} that discards the cached statistics
+	 * of the specified features at each change of the graph structure. This is
+	 * needed for features whose values are live views of the graph structure,
+	 * and change without being declared again in the feature model.
+	 *
+	 * @param <V>
+	 *            the type of vertices in the graph to listen to.
+	 * @param <E>
+	 *            the type of edges in the graph to listen to.
+	 * @param featureModel
+	 *            the feature model caching the statistics.
+	 * @param featureSpecs
+	 *            the specs of the features to invalidate.
+	 * @return a new {@link GraphListener}.
+	 */
+	public static < V extends Vertex< E >, E extends Edge< V > > GraphListener< V, E > statisticsInvalidator( final FeatureModel featureModel, final FeatureSpec< ?, ? >... featureSpecs )
+	{
+		return new StatisticsInvalidator<>( featureModel, featureSpecs );
+	}
+
 	private static class MyGraphListener< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >
 	{
 
@@ -124,6 +147,55 @@ public class GraphFeatureUpdateListeners
 		}
 	}
 
+	private static final class StatisticsInvalidator< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >
+	{
+		private final FeatureModel featureModel;
+
+		private final FeatureSpec< ?, ? >[] featureSpecs;
+
+		public StatisticsInvalidator( final FeatureModel featureModel, final FeatureSpec< ?, ? >[] featureSpecs )
+		{
+			this.featureModel = featureModel;
+			this.featureSpecs = featureSpecs;
+		}
+
+		private void invalidate()
+		{
+			for ( final FeatureSpec< ?, ? > featureSpec : featureSpecs )
+				featureModel.invalidateStatistics( featureSpec );
+		}
+
+		@Override
+		public void graphRebuilt()
+		{
+			invalidate();
+		}
+
+		@Override
+		public void vertexAdded( final V vertex )
+		{
+			invalidate();
+		}
+
+		@Override
+		public void vertexRemoved( final V vertex )
+		{
+			invalidate();
+		}
+
+		@Override
+		public void edgeAdded( final E edge )
+		{
+			invalidate();
+		}
+
+		@Override
+		public void edgeRemoved( final E edge )
+		{
+			invalidate();
+		}
+	}
+
 	private static final class MyVertexPropertyChangeListener< V extends Vertex< E >, E extends Edge< V > > implements PropertyChangeListener< V >
 	{
 
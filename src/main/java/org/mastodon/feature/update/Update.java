@@ -46,13 +46,6 @@ public class Update< O >
 		neighbors.add( obj );
 	}
 
-	void concatenate( final Update< O > other )
-	{
-		modified.addAll( other.modified );
-		neighbors.addAll( other.neighbors );
-		neighbors.removeAll( modified );
-	}
-
 	public RefSet< O > get()
 	{
 		return modified;
@@ -2,15 +2,15 @@ package org.mastodon.feature.update;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.UncheckedIOException;
 
 import org.mastodon.collection.RefCollection;
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefSet;
 import org.mastodon.io.FileIdToObjectMap;
-import org.mastodon.io.ObjectToFileIdMap;
 
+/**
+ * Reads {@link Update}s written in the former {@link UpdateStack} file format.
+ */
 class UpdateSerialization
 {
 
@@ -45,43 +45,4 @@ class UpdateSerialization
 		}
 		idmap.releaseRef( ref );
 	}
-
-	static < O > void serialize(
-			final Update< O > update,
-			final ObjectToFileIdMap< O > idmap,
-			final ObjectOutputStream oos )
-			throws IOException
-	{
-		serialize( update.get(), idmap, oos );
-		serialize( update.getNeighbors(), idmap, oos );
-	}
-
-	private static < O > void serialize(
-			final RefSet< O > collection,
-			final ObjectToFileIdMap< O > idmap,
-			final ObjectOutputStream oos )
-			throws IOException
-	{
-		// NUMBER OF ENTRIES
-		oos.writeInt( collection.size() );
-
-		// ENTRIES
-		try
-		{
-			collection.forEach( ( final O key ) -> {
-				try
-				{
-					oos.writeInt( idmap.getId( key ) );
-				}
-				catch ( final IOException e )
-				{
-					throw new UncheckedIOException( e );
-				}
-			} );
-		}
-		catch ( final UncheckedIOException e )
-		{
-			throw e.getCause();
-		}
-	}
 }
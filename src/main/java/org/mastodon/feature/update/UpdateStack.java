@@ -1,57 +1,134 @@
 package org.mastodon.feature.update;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
 import org.mastodon.feature.DefaultFeatureComputerService;
 import org.mastodon.feature.Feature;
 import org.mastodon.feature.FeatureProjection;
 import org.mastodon.feature.FeatureProjectionKey;
 import org.mastodon.feature.FeatureSpec;
+import org.mastodon.properties.IntPropertyMap;
 
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Tracks the objects modified since each feature was last computed.
+ * <p>
+ * Changes are stamped with a generation number, that is incremented before
+ * each computation with {@link #newGeneration()}. Each object stores the generation of its last
+ * modification, and the generation of the last modification of one of its
+ * neighbors. Each feature stores the generation at which it was last computed.
+ * The changes relevant to a feature are then the objects stamped with a later
+ * generation.
+ * <p>
+ * To retrieve them without scanning all the objects, each object is also
+ * appended to a change log the first time it is stamped in a generation, and
+ * the start of each generation in the log is recorded. A feature then only
+ * iterates over the log entries of the generations after its own. The log is
+ * trimmed when all features have caught up with its oldest generations. If it
+ * grows larger than the objects themselves, it is dropped, and features older
+ * than the drop fall back to a scan over the objects.
+ * <p>
+ * Contrary to storing a set of changed objects per commit, the cost of a
+ * modification does not depend on the number of commits, and changes are
+ * never forgotten: a feature can catch up on any number of commits.
+ *
+ * @param <O>
+ *            the type of objects whose modifications are tracked.
+ */
 public abstract class UpdateStack< O > implements Feature< O >
 {
 
 	/**
-	 * Number of graph update commits we store before triggering a full
-	 * recalculation.
+	 * Value of the generation maps for objects that were not modified.
 	 */
-	static final int BUFFER_SIZE = 10;
+	private static final int NO_GENERATION = 0;
 
-	private final SizedDeque< UpdateState< O > > stateStack;
+	/**
+	 * The change log is dropped when it holds more than this number of
+	 * entries plus twice the number of objects.
+	 */
+	private static final int MIN_LOG_CAPACITY = 1024;
 
 	private final RefCollection< O > pool;
 
-	protected UpdateStack( final RefCollection< O > pool )
-	{
-		this( pool, new SizedDeque<>( BUFFER_SIZE ) );
-		clear();
-	}
+	/**
+	 * The generation of the changes recorded now.
+	 */
+	private int generation;
 
 	/**
-	 * For deserialization only.
-	 *
-	 * @param pool
-	 *            the {@link RefCollection} used to create the object
-	 *            collections in the stack.
-	 * @param stateStack
-	 *            the stack to use to store incremental changes.
+	 * The generation of the last recorded change.
+	 */
+	private int lastChangeGeneration;
+
+	/**
+	 * Generation of the last modification of each object.
+	 */
+	private final IntPropertyMap< O > modifiedGeneration;
+
+	/**
+	 * Generation of the last modification of a neighbor of each object.
+	 */
+	private final IntPropertyMap< O > neighborGeneration;
+
+	/**
+	 * Generation at which each feature was last computed.
+	 */
+	private final Map< FeatureSpec< ?, ? >, Integer > computedGeneration;
+
+	/**
+	 * Objects stamped in each generation after {@link #logSince}, in
+	 * generation order. Objects removed since are still listed, and are
+	 * skipped because their generations were cleared.
+	 */
+	private RefList< O > changeLog;
+
+	/**
+	 * The generations that have entries in the {@link #changeLog}, in
+	 * increasing order.
+	 */
+	private final TIntArrayList logGenerations;
+
+	/**
+	 * For each of the {@link #logGenerations}, the index of its first entry in
+	 * the {@link #changeLog}.
 	 */
-	protected UpdateStack( final RefCollection< O > pool, final SizedDeque< UpdateState< O > > stateStack )
+	private final TIntArrayList logOffsets;
+
+	/**
+	 * The {@link #changeLog} holds all the changes of the generations after
+	 * this one.
+	 */
+	private int logSince;
+
+	protected UpdateStack( final RefCollection< O > pool )
 	{
 		this.pool = pool;
-		this.stateStack = stateStack;
+		this.modifiedGeneration = new IntPropertyMap<>( pool, NO_GENERATION );
+		this.neighborGeneration = new IntPropertyMap<>( pool, NO_GENERATION );
+		this.computedGeneration = new HashMap<>();
+		this.changeLog = RefCollections.createRefList( pool );
+		this.logGenerations = new TIntArrayList();
+		this.logOffsets = new TIntArrayList();
+		this.generation = NO_GENERATION + 1;
+		this.lastChangeGeneration = NO_GENERATION;
+		this.logSince = NO_GENERATION;
 	}
 
 	/**
 	 * This method should only be called by the
 	 * {@link DefaultFeatureComputerService} after the computation step.
 	 * <p>
-	 * It stacks the current changes and mark them for the specified feature
-	 * keys, then starts building a new one.
+	 * It marks the specified features as up to date with the current changes,
+	 * then starts a new generation of changes.
 	 *
 	 * @param featureKeys
 	 *            the keys of the features that were computed before this
@@ -59,7 +136,48 @@ public abstract class UpdateStack< O > implements Feature< O >
 	 */
 	public void commit( final Collection< FeatureSpec< ?, ? > > featureKeys )
 	{
-		stateStack.push( new UpdateState<>( new ArrayList<>( featureKeys ), new Update<>( pool ) ) );
+		commit( featureKeys, newGeneration() );
+	}
+
+	/**
+	 * Starts a new generation of changes. To be called before a computation
+	 * step, so that changes made during the computation are not considered
+	 * by the {@link #commit(Collection, int)} that follows it.
+	 *
+	 * @return the generation of the changes made before this call.
+	 */
+	public int newGeneration()
+	{
+		return generation++;
+	}
+
+	/**
+	 * This method should only be called by the
+	 * {@link DefaultFeatureComputerService} after the computation step.
+	 * <p>
+	 * It marks the specified features as up to date with the changes up to
+	 * the specified generation, as returned by {@link #newGeneration()} before
+	 * the computation step.
+	 *
+	 * @param featureKeys
+	 *            the keys of the features that were computed.
+	 * @param upToGeneration
+	 *            the last generation of changes the features were computed
+	 *            with.
+	 */
+	public void commit( final Collection< FeatureSpec< ?, ? > > featureKeys, final int upToGeneration )
+	{
+		for ( final FeatureSpec< ?, ? > featureKey : featureKeys )
+		{
+			final Integer computed = computedGeneration.get( featureKey );
+			if ( null == computed || computed.intValue() < upToGeneration )
+				computedGeneration.put( featureKey, upToGeneration );
+		}
+
+		int oldest = generation - 1;
+		for ( final Integer computed : computedGeneration.values() )
+			oldest = Math.min( oldest, computed.intValue() );
+		trimLog( oldest );
 	}
 
 	/**
@@ -79,37 +197,146 @@ public abstract class UpdateStack< O > implements Feature< O >
 	 */
 	public Update< O > changesFor( final FeatureSpec< ?, ? > featureSpec )
 	{
+		final Integer computed = computedGeneration.get( featureSpec );
+		if ( null == computed )
+			return null;
+
 		final Update< O > changes = new Update<>( pool );
-		for ( final UpdateState< O > updateState : stateStack )
+		final int since = computed.intValue();
+		if ( lastChangeGeneration <= since )
+			return changes;
+
+		if ( since >= logSince )
 		{
-			changes.concatenate( updateState.getChanges() );
-			if ( updateState.contains( featureSpec ) )
+			final int from = firstLogOffsetAfter( since );
+			if ( changeLog.size() - from <= pool.size() )
+			{
+				final O ref = changeLog.createRef();
+				for ( int i = from; i < changeLog.size(); i++ )
+					addChange( changeLog.get( i, ref ), since, changes );
+				changeLog.releaseRef( ref );
 				return changes;
+			}
 		}
-		return null;
+
+		for ( final O obj : pool )
+			addChange( obj, since, changes );
+		return changes;
 	}
 
+	private void addChange( final O obj, final int since, final Update< O > changes )
+	{
+		if ( modifiedGeneration.getInt( obj ) > since )
+			changes.add( obj );
+		else if ( neighborGeneration.getInt( obj ) > since )
+			changes.addAsNeighbor( obj );
+	}
+
+	/**
+	 * Forgets all changes and the generations at which features were
+	 * computed. After this call, all features need to be recomputed for all
+	 * objects.
+	 */
 	public void clear()
 	{
-		stateStack.clear();
-		commit( Collections.emptyList() );
+		modifiedGeneration.beforeClearPool();
+		neighborGeneration.beforeClearPool();
+		computedGeneration.clear();
+		generation++;
+		clearLog( generation - 1 );
 	}
 
 	public void addModified( final O obj )
 	{
-		stateStack.getFirst().getChanges().add( obj );
+		log( obj );
+		modifiedGeneration.set( obj, generation );
+		lastChangeGeneration = generation;
 	}
 
 	public void addNeighbor( final O obj )
 	{
-		stateStack.getFirst().getChanges().addAsNeighbor( obj );
+		log( obj );
+		neighborGeneration.set( obj, generation );
+		lastChangeGeneration = generation;
 	}
 
 	public void remove( final O obj )
 	{
-		// Walk through the stack and remove trace of it.
-		for ( final UpdateState< O > state : stateStack )
-			state.getChanges().remove( obj );
+		modifiedGeneration.remove( obj );
+		neighborGeneration.remove( obj );
+	}
+
+	/**
+	 * Appends the specified object to the change log, unless it was already
+	 * stamped in the current generation.
+	 */
+	private void log( final O obj )
+	{
+		if ( modifiedGeneration.getInt( obj ) == generation || neighborGeneration.getInt( obj ) == generation )
+			return;
+
+		if ( changeLog.size() >= 2 * pool.size() + MIN_LOG_CAPACITY )
+			clearLog( generation );
+
+		if ( logGenerations.isEmpty() || logGenerations.get( logGenerations.size() - 1 ) != generation )
+		{
+			logGenerations.add( generation );
+			logOffsets.add( changeLog.size() );
+		}
+		changeLog.add( obj );
+	}
+
+	/**
+	 * Returns the index of the first entry of the change log with a
+	 * generation after the specified one.
+	 */
+	private int firstLogOffsetAfter( final int since )
+	{
+		int g = logGenerations.binarySearch( since + 1 );
+		if ( g < 0 )
+			g = -g - 1;
+		return g < logGenerations.size() ? logOffsets.get( g ) : changeLog.size();
+	}
+
+	/**
+	 * Removes the entries of the generations up to the specified one from the
+	 * change log, because no feature needs them anymore.
+	 */
+	private void trimLog( final int upToGeneration )
+	{
+		if ( upToGeneration <= logSince )
+			return;
+		logSince = upToGeneration;
+
+		int g = logGenerations.binarySearch( upToGeneration + 1 );
+		if ( g < 0 )
+			g = -g - 1;
+		if ( g == 0 )
+			return;
+
+		final int from = g < logGenerations.size() ? logOffsets.get( g ) : changeLog.size();
+		final RefList< O > remaining = RefCollections.createRefList( pool, changeLog.size() - from );
+		final O ref = changeLog.createRef();
+		for ( int i = from; i < changeLog.size(); i++ )
+			remaining.add( changeLog.get( i, ref ) );
+		changeLog.releaseRef( ref );
+		changeLog = remaining;
+		logGenerations.remove( 0, g );
+		logOffsets.remove( 0, g );
+		for ( int i = 0; i < logOffsets.size(); i++ )
+			logOffsets.setQuick( i, logOffsets.getQuick( i ) - from );
+	}
+
+	/**
+	 * Empties the change log, that then holds the changes of the generations
+	 * after the specified one.
+	 */
+	private void clearLog( final int since )
+	{
+		changeLog.clear();
+		logGenerations.clear();
+		logOffsets.clear();
+		logSince = since;
 	}
 
 	/*
@@ -128,63 +355,51 @@ public abstract class UpdateStack< O > implements Feature< O >
 		return Collections.emptySet();
 	}
 
-	/**
-	 * Simple data class used to store graph updates in a stack along with the
-	 * feature keys they are up-to-date for.
-	 *
-	 * @author Jean-Yves Tinevez
-	 *
-	 * @param <O>
-	 *            the type of objects whose modification are tracked.
-	 */
-	public static final class UpdateState< O >
+	static class SerialisationAccess< O >
 	{
 
-		private final Collection< FeatureSpec< ?, ? > > featureKeys;
-
-		private final Update< O > changes;
+		private final UpdateStack< O > updateStack;
 
-		public UpdateState( final Collection< FeatureSpec< ?, ? > > featureKeys, final Update< O > changes )
+		SerialisationAccess( final UpdateStack< O > updateStack )
 		{
-			this.featureKeys = featureKeys;
-			this.changes = changes;
+			this.updateStack = updateStack;
 		}
 
-		public boolean contains( final FeatureSpec< ?, ? > featureKey )
+		RefCollection< O > getPool()
 		{
-			return featureKeys.contains( featureKey );
+			return updateStack.pool;
 		}
 
-		@Override
-		public String toString()
+		int getGeneration()
 		{
-			return super.toString() + " -> " + featureKeys.toString();
+			return updateStack.generation;
 		}
 
-		public Update< O > getChanges()
+		IntPropertyMap< O > getModifiedGeneration()
 		{
-			return changes;
+			return updateStack.modifiedGeneration;
 		}
 
-		Collection< FeatureSpec< ?, ? > > getFeatureKeys()
+		IntPropertyMap< O > getNeighborGeneration()
 		{
-			return featureKeys;
+			return updateStack.neighborGeneration;
 		}
-	}
 
-	static class SerialisationAccess< O >
-	{
-
-		private final UpdateStack< O > updateStack;
-
-		SerialisationAccess( final UpdateStack< O > updateStack )
+		Map< FeatureSpec< ?, ? >, Integer > getComputedGeneration()
 		{
-			this.updateStack = updateStack;
+			return updateStack.computedGeneration;
 		}
 
-		SizedDeque< UpdateState< O > > getStateStack()
+		/**
+		 * Sets the current generation, after the generation maps were
+		 * filled. The changes read are not in the change log, so that
+		 * features computed before fall back to a scan of the objects.
+		 */
+		void setGeneration( final int generation )
 		{
-			return updateStack.stateStack;
+			updateStack.generation = generation;
+			updateStack.lastChangeGeneration = generation;
+			updateStack.clearLog( generation );
 		}
 	}
 }
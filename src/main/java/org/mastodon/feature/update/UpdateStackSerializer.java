@@ -3,59 +3,167 @@ package org.mastodon.feature.update;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Map;
 
 import org.mastodon.collection.RefCollection;
 import org.mastodon.feature.FeatureSpec;
 import org.mastodon.feature.io.FeatureSerializer;
 import org.mastodon.feature.update.UpdateStack.SerialisationAccess;
-import org.mastodon.feature.update.UpdateStack.UpdateState;
 import org.mastodon.io.FileIdToObjectMap;
 import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.properties.IntPropertyMap;
 
+/**
+ * Base class for {@link UpdateStack} serializers.
+ * <p>
+ * Only the objects modified after the oldest feature computation are written,
+ * as {@code (id, modified generation, neighbor generation)} triplets. Files
+ * written in the former format, that stored a stack of change sets, can still
+ * be read.
+ *
+ * @param <F>
+ *            the type of the update stack.
+ * @param <O>
+ *            the type of objects whose modifications are tracked.
+ */
 public abstract class UpdateStackSerializer< F extends UpdateStack< O >, O > implements FeatureSerializer< F, O >
 {
 
+	/**
+	 * Written first, to distinguish this format from the former one, that
+	 * starts with the (non-negative) size of the stack.
+	 */
+	private static final int GENERATION_FORMAT = -1;
+
 	@Override
 	public void serialize( final F feature, final ObjectToFileIdMap< O > idmap, final ObjectOutputStream oos ) throws IOException
 	{
-		// Write current update.
-		final SizedDeque< UpdateState< O > > stack = new SerialisationAccess<>( feature ).getStateStack();
-		// Write size of stack.
-		oos.writeInt( stack.size() );
-		for ( final UpdateState< O > updateState : stack )
+		final SerialisationAccess< O > access = new SerialisationAccess<>( feature );
+		final int generation = access.getGeneration();
+		final Map< FeatureSpec< ?, ? >, Integer > computedGeneration = access.getComputedGeneration();
+		final IntPropertyMap< O > modifiedGeneration = access.getModifiedGeneration();
+		final IntPropertyMap< O > neighborGeneration = access.getNeighborGeneration();
+
+		oos.writeInt( GENERATION_FORMAT );
+		oos.writeInt( generation );
+
+		// Write the generation of each feature.
+		oos.writeInt( computedGeneration.size() );
+		int oldest = generation;
+		for ( final Map.Entry< FeatureSpec< ?, ? >, Integer > entry : computedGeneration.entrySet() )
+		{
+			FeatureSpecSerialization.serialize( entry.getKey(), oos );
+			oos.writeInt( entry.getValue().intValue() );
+			oldest = Math.min( oldest, entry.getValue().intValue() );
+		}
+
+		// Changes older than all the features are not needed anymore.
+		int n = 0;
+		for ( final O obj : access.getPool() )
+			if ( modifiedGeneration.getInt( obj ) > oldest || neighborGeneration.getInt( obj ) > oldest )
+				n++;
+		oos.writeInt( n );
+		for ( final O obj : access.getPool() )
+		{
+			final int modified = modifiedGeneration.getInt( obj );
+			final int neighbor = neighborGeneration.getInt( obj );
+			if ( modified > oldest || neighbor > oldest )
+			{
+				oos.writeInt( idmap.getId( obj ) );
+				oos.writeInt( modified );
+				oos.writeInt( neighbor );
+			}
+		}
+	}
+
+	/**
+	 * Reads the serialized changes into the specified update stack, that must
+	 * be empty.
+	 *
+	 * @param feature
+	 *            the update stack to fill.
+	 * @param idmap
+	 *            the map from file ids to objects.
+	 * @param ois
+	 *            the stream to read from.
+	 * @return the specified update stack.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading.
+	 * @throws ClassNotFoundException
+	 *             if a feature class cannot be found.
+	 */
+	protected F deserializeInto( final F feature, final FileIdToObjectMap< O > idmap, final ObjectInputStream ois ) throws IOException, ClassNotFoundException
+	{
+		final SerialisationAccess< O > access = new SerialisationAccess<>( feature );
+		final int header = ois.readInt();
+		if ( header != GENERATION_FORMAT )
+		{
+			readStack( header, access, idmap, ois );
+			return feature;
+		}
+
+		final int generation = ois.readInt();
+
+		final int nKeys = ois.readInt();
+		final Map< FeatureSpec< ?, ? >, Integer > computedGeneration = access.getComputedGeneration();
+		for ( int i = 0; i < nKeys; i++ )
 		{
-			final Collection< FeatureSpec< ?, ? > > featureKeys = updateState.getFeatureKeys();
-			// Write number of keys.
-			oos.writeInt( featureKeys.size() );
-			// Write each key.
-			for ( final FeatureSpec< ?, ? > featureKey : featureKeys )
-				FeatureSpecSerialization.serialize( featureKey, oos );
-
-			// Write changes.
-			UpdateSerialization.serialize( updateState.getChanges(), idmap, oos );
+			final FeatureSpec< ?, ? > featureKey = FeatureSpecSerialization.deserialize( ois );
+			computedGeneration.put( featureKey, Integer.valueOf( ois.readInt() ) );
 		}
+
+		final IntPropertyMap< O > modifiedGeneration = access.getModifiedGeneration();
+		final IntPropertyMap< O > neighborGeneration = access.getNeighborGeneration();
+		final int n = ois.readInt();
+		final O ref = idmap.createRef();
+		for ( int i = 0; i < n; i++ )
+		{
+			final O obj = idmap.getObject( ois.readInt(), ref );
+			final int modified = ois.readInt();
+			final int neighbor = ois.readInt();
+			if ( modified > 0 )
+				modifiedGeneration.set( obj, modified );
+			if ( neighbor > 0 )
+				neighborGeneration.set( obj, neighbor );
+		}
+		idmap.releaseRef( ref );
+
+		access.setGeneration( generation );
+		return feature;
 	}
 
-	protected SizedDeque< UpdateState< O > > deserializeStack( final FileIdToObjectMap< O > idmap, final RefCollection< O > pool, final ObjectInputStream ois ) throws IOException, ClassNotFoundException
+	/**
+	 * Reads the former format, a stack of change sets, newest first. Each set
+	 * holds the changes made after the features it lists were computed. The
+	 * set at position {@code k} in the stack is converted to generation
+	 * {@code size - k}, and its features are marked as computed at the
+	 * generation before.
+	 */
+	private void readStack( final int size, final SerialisationAccess< O > access, final FileIdToObjectMap< O > idmap, final ObjectInputStream ois ) throws IOException, ClassNotFoundException
 	{
-		final SizedDeque< UpdateState< O > > stateStack = new SizedDeque<>( UpdateStack.BUFFER_SIZE );
-		// Read size of stack.
-		final int size = ois.readInt();
-		for ( int i = 0; i < size; i++ )
+		final Map< FeatureSpec< ?, ? >, Integer > computedGeneration = access.getComputedGeneration();
+		final IntPropertyMap< O > modifiedGeneration = access.getModifiedGeneration();
+		final IntPropertyMap< O > neighborGeneration = access.getNeighborGeneration();
+		final RefCollection< O > pool = access.getPool();
+		for ( int k = 0; k < size; k++ )
 		{
+			final int generation = size - k;
+
 			// Read number of keys.
 			final int nKeys = ois.readInt();
-			final Collection< FeatureSpec< ?, ? > > featureKeys = new ArrayList<>( nKeys );
-			// Read each key.
+			// Read each key. Newer states come first and take precedence.
 			for ( int j = 0; j < nKeys; j++ )
-				featureKeys.add( FeatureSpecSerialization.deserialize( ois ) );
+				computedGeneration.putIfAbsent( FeatureSpecSerialization.deserialize( ois ), Integer.valueOf( generation - 1 ) );
 
 			// Read changes.
 			final Update< O > changes = UpdateSerialization.deserialize( pool, idmap, ois );
-			stateStack.add( new UpdateState<>( featureKeys, changes ) );
+			for ( final O obj : changes.get() )
+				if ( !modifiedGeneration.isSet( obj ) )
+					modifiedGeneration.set( obj, generation );
+			for ( final O obj : changes.getNeighbors() )
+				if ( !neighborGeneration.isSet( obj ) )
+					neighborGeneration.set( obj, generation );
 		}
-		return stateStack;
+		access.setGeneration( size + 1 );
 	}
 }
@@ -1,6 +1,8 @@
 package org.mastodon.mamut.feature;
 
+import org.mastodon.feature.DefaultFeatureComputerService.FeatureComputationStatus;
 import org.mastodon.feature.Dimension;
+import org.mastodon.feature.update.Update;
 import org.mastodon.properties.DoublePropertyMap;
 import org.mastodon.revised.model.mamut.Link;
 import org.mastodon.revised.model.mamut.Model;
@@ -17,9 +19,21 @@ public class LinkDisplacementFeatureComputer implements MamutFeatureComputer
 	@Parameter
 	private Model model;
 
+	@Parameter
+	private LinkUpdateStack update;
+
+	@Parameter
+	private FeatureComputationStatus status;
+
 	@Parameter( type = ItemIO.OUTPUT )
 	private LinkDisplacementFeature output;
 
+	/**
+	 * Whether the output was created since the last run, and therefore has to
+	 * be computed for all links.
+	 */
+	private boolean outputCreated;
+
 	@Override
 	public void createOutput()
 	{
@@ -27,32 +41,51 @@ public class LinkDisplacementFeatureComputer implements MamutFeatureComputer
 		{
 			final String units = Dimension.LENGTH.getUnits( model.getSpaceUnits(), model.getTimeUnits() );
 			output = new LinkDisplacementFeature( new DoublePropertyMap<>( model.getGraph().edges().getRefPool(), Double.NaN ), units );
+			outputCreated = true;
 		}
 	}
 
 	@Override
 	public void run()
 	{
-		output.map.beforeClearPool();
-
 		final ModelGraph graph = model.getGraph();
 		final Spot ref1 = graph.vertexRef();
 		final Spot ref2 = graph.vertexRef();
 
-		for ( final Link link : graph.edges() )
+		final Update< Link > changes = outputCreated ? null : update.changesFor( LinkDisplacementFeature.SPEC );
+		if ( null == changes )
 		{
-			final Spot source = link.getSource( ref1 );
-			final Spot target = link.getTarget( ref2 );
-			double d2 = 0.;
-			for ( int d = 0; d < 3; d++ )
-			{
-				final double dx = source.getDoublePosition( d ) - target.getDoublePosition( d );
-				d2 += dx * dx;
-			}
-			output.map.set( link, Math.sqrt( d2 ) );
+			// Redo all.
+			output.map.beforeClearPool();
+			for ( final Link link : graph.edges() )
+				compute( link, ref1, ref2 );
+			status.notifyProcessed( graph.edges().size() );
 		}
+		else
+		{
+			// Only process modified links and links of moved spots.
+			for ( final Link link : changes.get() )
+				compute( link, ref1, ref2 );
+			for ( final Link link : changes.getNeighbors() )
+				compute( link, ref1, ref2 );
+			status.notifyProcessed( changes.get().size() + changes.getNeighbors().size() );
+		}
+		outputCreated = false;
 
 		graph.releaseRef( ref1 );
 		graph.releaseRef( ref2 );
 	}
+
+	private void compute( final Link link, final Spot ref1, final Spot ref2 )
+	{
+		final Spot source = link.getSource( ref1 );
+		final Spot target = link.getTarget( ref2 );
+		double d2 = 0.;
+		for ( int d = 0; d < 3; d++ )
+		{
+			final double dx = source.getDoublePosition( d ) - target.getDoublePosition( d );
+			d2 += dx * dx;
+		}
+		output.map.set( link, Math.sqrt( d2 ) );
+	}
 }
@@ -47,4 +47,13 @@ public class LinkDisplacementFeatureSerializer implements FeatureSerializer< Lin
 		propertyMapSerializer.readPropertyMap( idmap, ois );
 		return new LinkDisplacementFeature( map, units );
 	}
+
+	@Override
+	public LinkDisplacementFeature copy( final LinkDisplacementFeature feature, final RefCollection< Link > pool )
+	{
+		final String units = feature.projections().iterator().next().units();
+		final DoublePropertyMap< Link > map = new DoublePropertyMap<>( pool, Double.NaN );
+		map.getMap().putAll( feature.map.getMap() );
+		return new LinkDisplacementFeature( map, units );
+	}
 }
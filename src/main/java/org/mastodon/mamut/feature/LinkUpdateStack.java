@@ -5,7 +5,6 @@ import org.mastodon.feature.FeatureModel;
 import org.mastodon.feature.FeatureProjectionSpec;
 import org.mastodon.feature.FeatureSpec;
 import org.mastodon.feature.Multiplicity;
-import org.mastodon.feature.update.SizedDeque;
 import org.mastodon.feature.update.UpdateStack;
 import org.mastodon.revised.model.mamut.Link;
 import org.scijava.plugin.Plugin;
@@ -26,14 +25,6 @@ public class LinkUpdateStack extends UpdateStack< Link >
 		super( pool );
 	}
 
-	/**
-	 * For deserialization only.
-	 */
-	LinkUpdateStack( final RefCollection< Link > pool, final SizedDeque< UpdateState< Link > > stateStack )
-	{
-		super( pool, stateStack );
-	}
-
 	public static LinkUpdateStack getOrCreate( final FeatureModel featureModel, final RefCollection< Link > pool )
 	{
 		final LinkUpdateStack retrieved = ( LinkUpdateStack ) featureModel.getFeature( LinkUpdateStack.SPEC );
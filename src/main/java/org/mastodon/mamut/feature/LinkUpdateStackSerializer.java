@@ -24,6 +24,6 @@ public class LinkUpdateStackSerializer extends UpdateStackSerializer< LinkUpdate
 	@Override
 	public LinkUpdateStack deserialize( final FileIdToObjectMap< Link > idmap, final RefCollection< Link > pool, final ObjectInputStream ois ) throws IOException, ClassNotFoundException
 	{
-		return new LinkUpdateStack( pool, deserializeStack( idmap, pool, ois ) );
+		return deserializeInto( new LinkUpdateStack( pool ), idmap, ois );
 	}
 }
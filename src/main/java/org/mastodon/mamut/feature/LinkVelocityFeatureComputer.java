@@ -1,6 +1,8 @@
 package org.mastodon.mamut.feature;
 
+import org.mastodon.feature.DefaultFeatureComputerService.FeatureComputationStatus;
 import org.mastodon.feature.Dimension;
+import org.mastodon.feature.update.Update;
 import org.mastodon.properties.DoublePropertyMap;
 import org.mastodon.revised.model.mamut.Link;
 import org.mastodon.revised.model.mamut.Model;
@@ -20,9 +22,21 @@ public class LinkVelocityFeatureComputer implements MamutFeatureComputer
 	@Parameter
 	private Model model;
 
+	@Parameter
+	private LinkUpdateStack update;
+
+	@Parameter
+	private FeatureComputationStatus status;
+
 	@Parameter( type = ItemIO.OUTPUT )
 	private LinkVelocityFeature output;
 
+	/**
+	 * Whether the output was created since the last run, and therefore has to
+	 * be computed for all links.
+	 */
+	private boolean outputCreated;
+
 	@Override
 	public void createOutput()
 	{
@@ -30,6 +44,7 @@ public class LinkVelocityFeatureComputer implements MamutFeatureComputer
 		{
 			final String units = Dimension.VELOCITY.getUnits( model.getSpaceUnits(), model.getTimeUnits() );
 			output = new LinkVelocityFeature( new DoublePropertyMap<>( model.getGraph().edges().getRefPool(), Double.NaN ), units );
+			outputCreated = true;
 		}
 	}
 
@@ -40,19 +55,38 @@ public class LinkVelocityFeatureComputer implements MamutFeatureComputer
 		final Spot ref1 = graph.vertexRef();
 		final Spot ref2 = graph.vertexRef();
 
-		for ( final Link link : graph.edges() )
+		final Update< Link > changes = outputCreated ? null : update.changesFor( LinkVelocityFeature.SPEC );
+		if ( null == changes )
+		{
+			// Redo all.
+			for ( final Link link : graph.edges() )
+				compute( link, ref1, ref2 );
+			status.notifyProcessed( graph.edges().size() );
+		}
+		else
 		{
-			if ( displacement.map.isSet( link ) )
-			{
-				final double disp = displacement.map.get( link );
-				final Spot source = link.getSource( ref1 );
-				final Spot target = link.getTarget( ref2 );
-				final double dt = Math.abs( source.getTimepoint() - target.getTimepoint() );
-				output.map.set( link, disp / dt );
-			}
+			// Only process modified links and links of moved spots.
+			for ( final Link link : changes.get() )
+				compute( link, ref1, ref2 );
+			for ( final Link link : changes.getNeighbors() )
+				compute( link, ref1, ref2 );
+			status.notifyProcessed( changes.get().size() + changes.getNeighbors().size() );
 		}
+		outputCreated = false;
 
 		graph.releaseRef( ref1 );
 		graph.releaseRef( ref2 );
 	}
+
+	private void compute( final Link link, final Spot ref1, final Spot ref2 )
+	{
+		if ( displacement.map.isSet( link ) )
+		{
+			final double disp = displacement.map.get( link );
+			final Spot source = link.getSource( ref1 );
+			final Spot target = link.getTarget( ref2 );
+			final double dt = Math.abs( source.getTimepoint() - target.getTimepoint() );
+			output.map.set( link, disp / dt );
+		}
+	}
 }
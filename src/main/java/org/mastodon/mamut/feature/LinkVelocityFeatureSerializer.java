@@ -47,4 +47,13 @@ public class LinkVelocityFeatureSerializer implements FeatureSerializer< LinkVel
 		propertyMapSerializer.readPropertyMap( idmap, ois );
 		return new LinkVelocityFeature( map, units );
 	}
+
+	@Override
+	public LinkVelocityFeature copy( final LinkVelocityFeature feature, final RefCollection< Link > pool )
+	{
+		final String units = feature.projections().iterator().next().units();
+		final DoublePropertyMap< Link > map = new DoublePropertyMap<>( pool, Double.NaN );
+		map.getMap().putAll( feature.map.getMap() );
+		return new LinkVelocityFeature( map, units );
+	}
 }
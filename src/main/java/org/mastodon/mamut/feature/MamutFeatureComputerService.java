@@ -2,6 +2,7 @@ package org.mastodon.mamut.feature;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 import org.mastodon.feature.DefaultFeatureComputerService;
 import org.mastodon.feature.Feature;
@@ -12,6 +13,7 @@ import org.mastodon.feature.update.GraphFeatureUpdateListeners;
 import org.mastodon.properties.PropertyChangeListener;
 import org.mastodon.revised.bdv.SharedBigDataViewerData;
 import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelChangeTracker;
 import org.mastodon.revised.model.mamut.ModelGraph;
 import org.mastodon.revised.model.mamut.Spot;
 import org.mastodon.revised.model.mamut.SpotPool;
@@ -36,21 +38,63 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 		super( MamutFeatureComputer.class );
 	}
 
+	/**
+	 * Computes the specified features without holding the lock of the model
+	 * graph, so that the graph can be edited during the computation.
+	 * <p>
+	 * If the model changed while the features were computed, the results are
+	 * discarded, the computation is canceled and {@code null} is returned. The
+	 * update stacks are not committed in that case, so that the changes are
+	 * processed by the next computation.
+	 */
 	@Override
 	public Map< FeatureSpec< ?, ? >, Feature< ? > > compute( final Collection< FeatureSpec< ?, ? > > featureKeys )
 	{
-		final Map< FeatureSpec< ?, ? >, Feature< ? > > results = super.compute( featureKeys );
-		if ( isCanceled() )
-			return null;
-
-		// Store updates.
 		final ModelGraph graph = model.getGraph();
 		final FeatureModel featureModel = model.getFeatureModel();
 		final SpotUpdateStack spotUpdates = SpotUpdateStack.getOrCreate( featureModel, graph.vertices() );
 		final LinkUpdateStack linkUpdates = LinkUpdateStack.getOrCreate( featureModel, graph.edges() );
-		spotUpdates.commit( featureKeys );
-		linkUpdates.commit( featureKeys );
-		return results;
+		final ModelChangeTracker changeTracker = model.getChangeTracker();
+
+		final Lock lock = graph.getLock().readLock();
+		final int spotGeneration;
+		final int linkGeneration;
+		final long modCount;
+		lock.lock();
+		try
+		{
+			// Changes made from now on are not seen by this computation.
+			spotGeneration = spotUpdates.newGeneration();
+			linkGeneration = linkUpdates.newGeneration();
+			modCount = changeTracker.getModCount();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		final Map< FeatureSpec< ?, ? >, Feature< ? > > results = super.compute( featureKeys );
+		if ( isCanceled() )
+			return null;
+
+		lock.lock();
+		try
+		{
+			if ( changeTracker.getModCount() != modCount )
+			{
+				cancel( "Model changed during feature computation." );
+				return null;
+			}
+
+			// Store updates.
+			spotUpdates.commit( featureKeys, spotGeneration );
+			linkUpdates.commit( featureKeys, linkGeneration );
+			return results;
+		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 
 	@Override
@@ -116,6 +160,8 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 		final LinkUpdateStack linkUpdates = LinkUpdateStack.getOrCreate( featureModel, graph.edges() );
 
 		graph.addGraphListener( GraphFeatureUpdateListeners.graphListener( spotUpdates, linkUpdates, graph.vertexRef() ) );
+		// Track IDs and sizes are live views of the track index, spot frames are read from the spots.
+		graph.addGraphListener( GraphFeatureUpdateListeners.statisticsInvalidator( featureModel, TrackSizeFeature.SPEC, SpotTrackIDFeature.SPEC, SpotFrameFeature.SPEC ) );
 		// Listen to changes in spot properties.
 		final SpotPool spotPool = ( SpotPool ) graph.vertices().getRefPool();
 		final PropertyChangeListener< Spot > vertexPropertyListener = GraphFeatureUpdateListeners.vertexPropertyListener( spotUpdates, linkUpdates );
@@ -22,6 +22,7 @@ public class SpotFrameFeatureComputer implements MamutFeatureComputer
 	@Override
 	public void run()
 	{
-		// Nothing to do.
+		// Nothing to do. The feature reads the frame from the spot itself, so
+		// it is always up to date, also after incremental changes.
 	}
 }
@@ -7,6 +7,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.IntFunction;
 
 import org.mastodon.RefPool;
@@ -27,9 +31,11 @@ import org.scijava.plugin.Plugin;
 import bdv.util.Affine3DHelpers;
 import bdv.viewer.Source;
 import bdv.viewer.SourceAndConverter;
+import gnu.trove.list.array.TIntArrayList;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealPoint;
+import net.imglib2.img.cell.AbstractCellImg;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.RealType;
 
@@ -40,6 +46,28 @@ public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureCo
 	/** Convert from min radius to sigma by dividing radius by: */
 	static final double SIGMA_FACTOR = 2.;
 
+	/** Number of spots processed per task. */
+	private static final int CHUNK_SIZE = 1000;
+
+	/**
+	 * Minimal kernel sigma, in pixels, on the resolution level used to compute
+	 * the intensity of a spot. Coarser levels are only used if they sample the
+	 * kernel at least this finely.
+	 */
+	static final double MIN_SIGMA_PIXELS = 2.;
+
+	/** Block size used to order spots, if the image is not a cell image. */
+	private static final int DEFAULT_BLOCK_SIZE = 64;
+
+	/** Block coordinates are clamped to 13 bits for the Z-order key. */
+	private static final int MAX_BLOCK_COORDINATE = ( 1 << 13 ) - 1;
+
+	/**
+	 * Bits for the spot index in block-order sort keys (3 x 13 bits are used
+	 * for the block). Time-points with more spots are sorted without packing.
+	 */
+	private static final int INDEX_BITS = 24;
+
 	@Parameter
 	private SharedBigDataViewerData bdvData;
 
@@ -57,7 +85,12 @@ public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureCo
 
 	private boolean[] processSource;
 
-	private String cancelReason;
+	private volatile String cancelReason;
+
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	/** Fraction of work done, guarded by {@code this}. */
+	private double progress;
 
 	@Override
 	public void createOutput()
@@ -113,14 +146,118 @@ public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureCo
 			index = new MyIndex( changes, model.getGraph().vertices().getRefPool() );
 		}
 
-		// Calculation are made on resolution level 0.
-		final int level = 0;
+		final int numTimepoints = bdvData.getNumTimepoints();
+		int nSourcesToCompute = 0;
+		for ( final boolean process : processSource )
+			if (process)
+				nSourcesToCompute++;
+		final int todo = numTimepoints * nSourcesToCompute;
+		progress = 0.;
+
+		/*
+		 * The spots of each time-point are ordered by the image block they
+		 * hit, split into chunks, and each chunk is processed for each source
+		 * as a separate task. Tasks for one time-point are submitted while the
+		 * spots of the next time-point are collected.
+		 */
+		final RefPool< Spot > pool = model.getGraph().vertices().getRefPool();
+		final ArrayList< SourceAndConverter< ? > > sources = bdvData.getSources();
+		final int nSources = sources.size();
+		final ExecutorService executor = Executors.newFixedThreadPool( numThreads );
+		final List< Future< ? > > futures = new ArrayList<>();
+		try
+		{
+			for ( int t = 0; t < numTimepoints && !isCanceled(); t++ )
+			{
+				final int timepoint = t;
+				final TIntArrayList spots = new TIntArrayList();
+				for ( final Spot spot : index.apply( timepoint ) )
+					spots.add( pool.getId( spot ) );
+
+				for ( int s = 0; s < nSources; s++ )
+				{
+					if ( !processSource[ s ] )
+						continue;
+
+					final int iSource = s;
+					if ( spots.isEmpty() )
+					{
+						addProgress( 1. / todo );
+						continue;
+					}
+					final TIntArrayList ordered = blockOrder( sources.get( iSource ).getSpimSource(), timepoint, spots );
+					for ( int from = 0; from < ordered.size(); from += CHUNK_SIZE )
+					{
+						final int chunkFrom = from;
+						final int chunkTo = Math.min( from + CHUNK_SIZE, ordered.size() );
+						final double progressIncrement = ( double ) ( chunkTo - chunkFrom ) / ordered.size() / todo;
+						futures.add( executor.submit( () -> process( iSource, timepoint, ordered, chunkFrom, chunkTo, progressIncrement ) ) );
+					}
+				}
+			}
+
+			for ( final Future< ? > future : futures )
+				future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			cancel( "Interrupted." );
+			Thread.currentThread().interrupt();
+		}
+		catch ( final ExecutionException e )
+		{
+			cancel( "Failed." );
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new RuntimeException( cause );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Computes intensity mean and std for a chunk of the spots of one
+	 * time-point in one source. All holders (kernels, {@link RandomAccess},
+	 * eigenvalue decomposition) are local to this call, so that chunks can be
+	 * processed concurrently. Results are written to the output in one go at
+	 * the end.
+	 *
+	 * @param iSource
+	 *            the source index.
+	 * @param timepoint
+	 *            the time-point.
+	 * @param spots
+	 *            the pool indices of the spots of the time-point.
+	 * @param from
+	 *            the first spot to process (inclusive).
+	 * @param to
+	 *            the last spot to process (exclusive).
+	 * @param progressIncrement
+	 *            the progress to report when done.
+	 */
+	private void process( final int iSource, final int timepoint, final TIntArrayList spots, final int from, final int to, final double progressIncrement )
+	{
+		final RefPool< Spot > pool = model.getGraph().vertices().getRefPool();
+		final Source< ? > source = bdvData.getSources().get( iSource ).getSpimSource();
+
+		// Calculation are made on the coarsest level that resolves the kernel.
+		final int numLevels = source.getNumMipmapLevels();
 		// Covariance holder.
 		final double[][] cov = new double[ 3 ][ 3 ];
-		// Affine transform holder.
-		final AffineTransform3D transform = new AffineTransform3D();
-		// Physical calibration holder.
-		final double[] calibration = new double[ 3 ];
+		// Eigenvalue decomposition of covariance.
+		final JamaEigenvalueDecomposition eig = new JamaEigenvalueDecomposition( 3 );
+		// Affine transform holders, per level.
+		final AffineTransform3D[] transforms = new AffineTransform3D[ numLevels ];
+		// Physical calibration holders, per level.
+		final double[][] calibrations = new double[ numLevels ][ 3 ];
+		// Image and RandomAccess, per level, created when needed.
+		final List< RandomAccessibleInterval< RealType< ? > > > rais = new ArrayList<>( Collections.nCopies( numLevels, null ) );
+		final List< RandomAccess< RealType< ? > > > ras = new ArrayList<>( Collections.nCopies( numLevels, null ) );
 		// Half-kernel holder.
 		final double[][] kernels = new double[ 3 ][];
 		// Half-kernel size holder.
@@ -131,106 +268,247 @@ public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureCo
 		final RealPoint center = RealPoint.wrap( pos );
 		// Spot center position holder in integer image coords.
 		final long[] p = new long[ 3 ];
+		// Results holders.
+		final double[] means = new double[ to - from ];
+		final double[] stds = new double[ to - from ];
 
-		final int numTimepoints = bdvData.getNumTimepoints();
-		int nSourcesToCompute = 0;
-		for ( final boolean process : processSource )
-			if (process)
-				nSourcesToCompute++;
-		final int todo = numTimepoints * nSourcesToCompute;
+		for ( int l = 0; l < numLevels; l++ )
+		{
+			transforms[ l ] = new AffineTransform3D();
+			source.getSourceTransform( timepoint, l, transforms[ l ] );
+			for ( int d = 0; d < 3; d++ )
+				calibrations[ l ][ d ] = Affine3DHelpers.extractScale( transforms[ l ], d );
+		}
 
-		final ArrayList< SourceAndConverter< ? > > sources = bdvData.getSources();
-		final int nSources = sources.size();
-		int done = 0;
-		MAIN_LOOP: for ( int iSource = 0; iSource < nSources; iSource++ )
+		final Spot spot = model.getGraph().vertexRef();
+		int n = 0;
+		for ( int i = from; i < to; i++, n++ )
 		{
-			if ( !processSource[ iSource ] )
-				continue;
+			if ( isCanceled() )
+				break;
 
-			final Source< ? > source = sources.get( iSource ).getSpimSource();
-			for ( int timepoint = 0; timepoint < numTimepoints; timepoint++ )
-			{
+			pool.getObject( spots.getQuick( i ), spot );
 
-				status.notifyProgress( ( double ) done++ / todo );
+			// Kernel sigma, and the level to sample it on.
+			final double minRadius = minRadius( spot, cov, eig );
+			final double sigma = minRadius / SIGMA_FACTOR; // um
+			final int level = selectLevel( sigma, calibrations );
+			final double[] calibration = calibrations[ level ];
+			if ( ras.get( level ) == null )
+			{
+				@SuppressWarnings( "unchecked" )
+				final RandomAccessibleInterval< RealType< ? > > img = ( RandomAccessibleInterval< RealType< ? > > ) source.getSource( timepoint, level );
+				rais.set( level, img );
+				ras.set( level, img.randomAccess( img ) );
+			}
+			final RandomAccessibleInterval< RealType< ? > > rai = rais.get( level );
+			final RandomAccess< RealType< ? > > ra = ras.get( level );
 
-				source.getSourceTransform( timepoint, level, transform );
-				for ( int d = 0; d < calibration.length; d++ )
-					calibration[ d ] = Affine3DHelpers.extractScale( transform, d );
+			// Spot location in pixel units.
+			transforms[ level ].applyInverse( center, spot );
+			for ( int d = 0; d < pos.length; d++ )
+				p[ d ] = Math.round( pos[ d ] );
 
-				@SuppressWarnings( "unchecked" )
-				final RandomAccessibleInterval< RealType< ? > > rai = ( RandomAccessibleInterval< RealType< ? > > ) source.getSource( timepoint, level );
-				final RandomAccess< RealType< ? > > ra = rai.randomAccess( rai );
+			// Compute kernels.
+			for ( int d = 0; d < 3; d++ )
+			{
+				final double s = sigma / calibration[ d ];
+				halfkernelsizes[ d ] = Math.max( 2, ( int ) ( SIGMA_FACTOR * s + 0.5 ) + 1 );
+				kernels[ d ] = halfkernel( s, pos[ d ] - p[ d ], halfkernelsizes[ d ] );
+			}
 
-				for ( final Spot spot : index.apply( timepoint ) )
+			// Unsubtle loops.
+			final long minX = Math.max( rai.min( 0 ), p[ 0 ] - halfkernelsizes[ 0 ] + 1 );
+			final long maxX = Math.min( rai.max( 0 ), p[ 0 ] + halfkernelsizes[ 0 ] - 1 );
+			final long minY = Math.max( rai.min( 1 ), p[ 1 ] - halfkernelsizes[ 1 ] + 1 );
+			final long maxY = Math.min( rai.max( 1 ), p[ 1 ] + halfkernelsizes[ 1 ] - 1 );
+			final long minZ = Math.max( rai.min( 2 ), p[ 2 ] - halfkernelsizes[ 2 ] + 1 );
+			final long maxZ = Math.min( rai.max( 2 ), p[ 2 ] + halfkernelsizes[ 2 ] - 1 );
+
+			/*
+			 * Compute running mean & std.
+			 * https://en.wikipedia.org/wiki/
+			 * Algorithms_for_calculating_variance#
+			 * Weighted_incremental_algorithm
+			 */
+			double weightedMean = 0.;
+			double weightedSum = 0.;
+			double S = 0.;
+
+			for ( long z = minZ; z <= maxZ; z++ )
+			{
+				ra.setPosition( z, 2 );
+				final int iz = ( int ) ( z - minZ );
+				final double wz = kernels[ 2 ][ iz ];
+				for ( long y = minY; y <= maxY; y++ )
 				{
-					if ( isCanceled() )
-						break MAIN_LOOP;
-
-					// Spot location in pixel units.
-					transform.applyInverse( center, spot );
-					for ( int d = 0; d < pos.length; d++ )
-						p[ d ] = Math.round( pos[ d ] );
-
-					// Compute kernels.
-					final double minRadius = minRadius( spot, cov );
-					final double sigma = minRadius / SIGMA_FACTOR; // um
-					for ( int d = 0; d < 3; d++ )
+					ra.setPosition( y, 1 );
+					final int iy = ( int ) ( y - minY );
+					final double wy = kernels[ 1 ][ iy ];
+					for ( long x = minX; x <= maxX; x++ )
 					{
-						final double s = sigma / calibration[ d ];
-						halfkernelsizes[ d ] = Math.max( 2, ( int ) ( SIGMA_FACTOR * s + 0.5 ) + 1 );
-						kernels[ d ] = halfkernel( s, pos[ d ] - p[ d ], halfkernelsizes[ d ] );
+						ra.setPosition( x, 0 );
+						final int ix = ( int ) ( x - minX );
+						final double wx = kernels[ 0 ][ ix ];
+						final double val = ra.get().getRealDouble();
+						final double weight = wx * wy * wz;
+
+						weightedSum += weight;
+						final double oldWeightedMean = weightedMean;
+						weightedMean = oldWeightedMean + ( weight / weightedSum ) * ( val - oldWeightedMean );
+						S = S + weight * ( val - oldWeightedMean ) * ( val - weightedMean );
 					}
+				}
+			}
 
-					// Unsubtle loops.
-					final long minX = Math.max( rai.min( 0 ), p[ 0 ] - halfkernelsizes[ 0 ] + 1 );
-					final long maxX = Math.min( rai.max( 0 ), p[ 0 ] + halfkernelsizes[ 0 ] - 1 );
-					final long minY = Math.max( rai.min( 1 ), p[ 1 ] - halfkernelsizes[ 1 ] + 1 );
-					final long maxY = Math.min( rai.max( 1 ), p[ 1 ] + halfkernelsizes[ 1 ] - 1 );
-					final long minZ = Math.max( rai.min( 2 ), p[ 2 ] - halfkernelsizes[ 2 ] + 1 );
-					final long maxZ = Math.min( rai.max( 2 ), p[ 2 ] + halfkernelsizes[ 2 ] - 1 );
-
-					/*
-					 * Compute running mean & std.
-					 * https://en.wikipedia.org/wiki/
-					 * Algorithms_for_calculating_variance#
-					 * Weighted_incremental_algorithm
-					 */
-					double weightedMean = 0.;
-					double weightedSum = 0.;
-					double S = 0.;
-
-					for ( long z = minZ; z <= maxZ; z++ )
-					{
-						ra.setPosition( z, 2 );
-						final int iz = ( int ) ( z - minZ );
-						final double wz = kernels[ 2 ][ iz ];
-						for ( long y = minY; y <= maxY; y++ )
-						{
-							ra.setPosition( y, 1 );
-							final int iy = ( int ) ( y - minY );
-							final double wy = kernels[ 1 ][ iy ];
-							for ( long x = minX; x <= maxX; x++ )
-							{
-								ra.setPosition( x, 0 );
-								final int ix = ( int ) ( x - minX );
-								final double wx = kernels[ 0 ][ ix ];
-								final double val = ra.get().getRealDouble();
-								final double weight = wx * wy * wz;
-
-								weightedSum += weight;
-								final double oldWeightedMean = weightedMean;
-								weightedMean = oldWeightedMean + ( weight / weightedSum ) * ( val - oldWeightedMean );
-								S = S + weight * ( val - oldWeightedMean ) * ( val - weightedMean );
-							}
-						}
-					}
+			final double variance = S / weightedSum;
+			means[ n ] = weightedMean;
+			stds[ n ] = Math.sqrt( variance );
+		}
 
-					final double variance = S / weightedSum;
-					output.means.get( iSource ).set( spot, weightedMean );
-					output.stds.get( iSource ).set( spot, Math.sqrt( variance ) );
-				}
+		// Property maps are not thread-safe.
+		synchronized ( output )
+		{
+			final DoublePropertyMap< Spot > meanMap = output.means.get( iSource );
+			final DoublePropertyMap< Spot > stdMap = output.stds.get( iSource );
+			for ( int i = 0; i < n; i++ )
+			{
+				pool.getObject( spots.getQuick( from + i ), spot );
+				meanMap.set( spot, means[ i ] );
+				stdMap.set( spot, stds[ i ] );
 			}
 		}
+		model.getGraph().releaseRef( spot );
+
+		if ( !isCanceled() )
+		{
+			addProgress( progressIncrement );
+			status.notifyProcessed( n );
+		}
+	}
+
+	/**
+	 * Returns the coarsest resolution level on which a Gaussian kernel with
+	 * the specified sigma is still sampled with at least
+	 * {@link #MIN_SIGMA_PIXELS} pixels per sigma in every dimension. Level 0 is
+	 * returned if no level satisfies this.
+	 *
+	 * @param sigma
+	 *            the kernel sigma, in physical units.
+	 * @param calibrations
+	 *            the pixel sizes of each level, in physical units.
+	 * @return the level to sample on.
+	 */
+	static int selectLevel( final double sigma, final double[][] calibrations )
+	{
+		LEVELS: for ( int l = calibrations.length - 1; l > 0; l-- )
+		{
+			for ( int d = 0; d < 3; d++ )
+				if ( sigma / calibrations[ l ][ d ] < MIN_SIGMA_PIXELS )
+					continue LEVELS;
+			return l;
+		}
+		return 0;
+	}
+
+	/**
+	 * Orders the spots of a time-point by the image block (at level 0 of the
+	 * specified source) that contains their center. Blocks are ordered along a
+	 * Z-order curve, so that consecutive spots, and therefore the spots of one
+	 * chunk, touch few and nearby cache cells.
+	 * <p>
+	 * The block size is the cell size of the image, if it is a cell image, or
+	 * {@link #DEFAULT_BLOCK_SIZE} otherwise.
+	 *
+	 * @param source
+	 *            the source.
+	 * @param timepoint
+	 *            the time-point.
+	 * @param spots
+	 *            the pool indices of the spots.
+	 * @return the pool indices of the spots, in block order.
+	 */
+	private TIntArrayList blockOrder( final Source< ? > source, final int timepoint, final TIntArrayList spots )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		source.getSourceTransform( timepoint, 0, transform );
+		final RandomAccessibleInterval< ? > rai = source.getSource( timepoint, 0 );
+		final int[] blockSize = new int[ 3 ];
+		for ( int d = 0; d < 3; d++ )
+			blockSize[ d ] = rai instanceof AbstractCellImg
+					? ( ( AbstractCellImg< ?, ?, ?, ? > ) rai ).getCellGrid().cellDimension( d )
+					: DEFAULT_BLOCK_SIZE;
+
+		final RefPool< Spot > pool = model.getGraph().vertices().getRefPool();
+		final Spot spot = model.getGraph().vertexRef();
+		final double[] pos = new double[ 3 ];
+		final RealPoint center = RealPoint.wrap( pos );
+		final int[] block = new int[ 3 ];
+		final int n = spots.size();
+		final long[] keys = new long[ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			pool.getObject( spots.getQuick( i ), spot );
+			transform.applyInverse( center, spot );
+			for ( int d = 0; d < 3; d++ )
+				block[ d ] = ( int ) Math.max( 0, Math.min( MAX_BLOCK_COORDINATE, ( pos[ d ] - rai.min( d ) ) / blockSize[ d ] ) );
+			keys[ i ] = zOrder( block[ 0 ], block[ 1 ], block[ 2 ] );
+		}
+		model.getGraph().releaseRef( spot );
+
+		final TIntArrayList ordered = new TIntArrayList( n );
+		if ( n <= 1 << INDEX_BITS )
+		{
+			// Pack the spot index into the key, to sort primitive longs.
+			for ( int i = 0; i < n; i++ )
+				keys[ i ] = ( keys[ i ] << INDEX_BITS ) | i;
+			Arrays.sort( keys );
+			for ( final long key : keys )
+				ordered.add( spots.getQuick( ( int ) ( key & ( ( 1L << INDEX_BITS ) - 1 ) ) ) );
+		}
+		else
+		{
+			// Too many spots to pack their index: sort the indices by key.
+			final Integer[] indices = new Integer[ n ];
+			for ( int i = 0; i < n; i++ )
+				indices[ i ] = i;
+			Arrays.sort( indices, ( i1, i2 ) -> Long.compare( keys[ i1 ], keys[ i2 ] ) );
+			for ( final Integer i : indices )
+				ordered.add( spots.getQuick( i ) );
+		}
+		return ordered;
+	}
+
+	/**
+	 * Interleaves the lower 13 bits of the three coordinates.
+	 */
+	private static long zOrder( final int x, final int y, final int z )
+	{
+		long key = 0;
+		for ( int b = 0; b < 13; b++ )
+		{
+			key |= ( long ) ( ( x >> b ) & 1 ) << ( 3 * b );
+			key |= ( long ) ( ( y >> b ) & 1 ) << ( 3 * b + 1 );
+			key |= ( long ) ( ( z >> b ) & 1 ) << ( 3 * b + 2 );
+		}
+		return key;
+	}
+
+	private synchronized void addProgress( final double increment )
+	{
+		progress += increment;
+		status.notifyProgress( progress );
+	}
+
+	/**
+	 * Sets the number of threads used to compute intensities.
+	 *
+	 * @param numThreads
+	 *            the number of threads.
+	 */
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
 	}
 
 	public static final long nSpots( final IntFunction< Iterable< Spot > > index, final int numTimepoints )
@@ -293,9 +571,7 @@ public class SpotGaussFilteredIntensityFeatureComputer implements MamutFeatureCo
 		return kernel;
 	}
 
-	private static final JamaEigenvalueDecomposition eig = new JamaEigenvalueDecomposition( 3 );
-
-	private static final double minRadius( final Spot spot, final double[][] cov )
+	private static final double minRadius( final Spot spot, final double[][] cov, final JamaEigenvalueDecomposition eig )
 	{
 		// Best radius is smallest radius of ellipse.
 		spot.getCovariance( cov );
@@ -56,4 +56,23 @@ public class SpotGaussFilteredIntensityFeatureSerializer implements FeatureSeria
 		}
 		return new SpotGaussFilteredIntensityFeature( means, stds );
 	}
+
+	@Override
+	public SpotGaussFilteredIntensityFeature copy( final SpotGaussFilteredIntensityFeature feature, final RefCollection< Spot > pool )
+	{
+		final int nSources = feature.means.size();
+		final List< DoublePropertyMap< Spot > > means = new ArrayList<>( nSources );
+		final List< DoublePropertyMap< Spot > > stds = new ArrayList<>( nSources );
+		for ( int i = 0; i < nSources; i++ )
+		{
+			final DoublePropertyMap< Spot > meanMap = new DoublePropertyMap<>( pool, Double.NaN );
+			meanMap.getMap().putAll( feature.means.get( i ).getMap() );
+			means.add( meanMap );
+
+			final DoublePropertyMap< Spot > stdMap = new DoublePropertyMap<>( pool, Double.NaN );
+			stdMap.getMap().putAll( feature.stds.get( i ).getMap() );
+			stds.add( stdMap );
+		}
+		return new SpotGaussFilteredIntensityFeature( means, stds );
+	}
 }
@@ -1,5 +1,7 @@
 package org.mastodon.mamut.feature;
 
+import org.mastodon.feature.DefaultFeatureComputerService.FeatureComputationStatus;
+import org.mastodon.feature.update.Update;
 import org.mastodon.properties.IntPropertyMap;
 import org.mastodon.revised.model.mamut.ModelGraph;
 import org.mastodon.revised.model.mamut.Spot;
@@ -14,21 +16,52 @@ public class SpotNLinksFeatureComputer implements MamutFeatureComputer
 	@Parameter
 	private ModelGraph graph;
 
+	@Parameter
+	private SpotUpdateStack update;
+
+	@Parameter
+	private FeatureComputationStatus status;
+
 	@Parameter( type = ItemIO.OUTPUT )
 	private SpotNLinksFeature output;
 
+	/**
+	 * Whether the output was created since the last run, and therefore has to
+	 * be computed for all spots.
+	 */
+	private boolean outputCreated;
+
 	@Override
 	public void run()
 	{
-		output.map.beforeClearPool();
-		for ( final Spot spot : graph.vertices() )
-			output.map.set( spot, spot.edges().size() );
+		final Update< Spot > changes = outputCreated ? null : update.changesFor( SpotNLinksFeature.SPEC );
+		if ( null == changes )
+		{
+			// Redo all.
+			output.map.beforeClearPool();
+			for ( final Spot spot : graph.vertices() )
+				output.map.set( spot, spot.edges().size() );
+			status.notifyProcessed( graph.vertices().size() );
+		}
+		else
+		{
+			// Only process added spots and spots whose links changed.
+			for ( final Spot spot : changes.get() )
+				output.map.set( spot, spot.edges().size() );
+			for ( final Spot spot : changes.getNeighbors() )
+				output.map.set( spot, spot.edges().size() );
+			status.notifyProcessed( changes.get().size() + changes.getNeighbors().size() );
+		}
+		outputCreated = false;
 	}
 
 	@Override
 	public void createOutput()
 	{
 		if ( null == output )
+		{
 			output = new SpotNLinksFeature( new IntPropertyMap<>( graph.vertices().getRefPool(), -1 ) );
+			outputCreated = true;
+		}
 	}
 }
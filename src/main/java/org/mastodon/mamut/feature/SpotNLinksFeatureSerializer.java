@@ -39,4 +39,12 @@ public class SpotNLinksFeatureSerializer implements FeatureSerializer< SpotNLink
 		propertyMapSerializer.readPropertyMap( idmap, ois );
 		return new SpotNLinksFeature( map );
 	}
+
+	@Override
+	public SpotNLinksFeature copy( final SpotNLinksFeature feature, final RefCollection< Spot > pool )
+	{
+		final IntPropertyMap< Spot > map = new IntPropertyMap<>( pool, -1 );
+		map.getMap().putAll( feature.map.getMap() );
+		return new SpotNLinksFeature( map );
+	}
 }
@@ -1,22 +1,21 @@
 package org.mastodon.mamut.feature;
 
-import org.mastodon.graph.algorithm.traversal.BreadthFirstCrossComponentSearch;
-import org.mastodon.graph.algorithm.traversal.GraphSearch.SearchDirection;
-import org.mastodon.graph.algorithm.traversal.SearchListener;
-import org.mastodon.properties.IntPropertyMap;
-import org.mastodon.revised.model.mamut.Link;
-import org.mastodon.revised.model.mamut.ModelGraph;
-import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.mamut.Model;
 import org.scijava.ItemIO;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
+/**
+ * Exposes the track IDs maintained by the {@link Model}'s
+ * {@link org.mastodon.revised.model.mamut.TrackIndex TrackIndex} as a feature.
+ * The index is updated with each graph change, so there is nothing to compute.
+ */
 @Plugin( type = MamutFeatureComputer.class )
 public class SpotTrackIDFeatureComputer implements MamutFeatureComputer
 {
 
 	@Parameter
-	private ModelGraph graph;
+	private Model model;
 
 	@Parameter( type = ItemIO.OUTPUT )
 	private SpotTrackIDFeature output;
@@ -24,42 +23,11 @@ public class SpotTrackIDFeatureComputer implements MamutFeatureComputer
 	@Override
 	public void createOutput()
 	{
-		if ( null == output )
-			output = new SpotTrackIDFeature( new IntPropertyMap<>( graph.vertices().getRefPool(), -1 ) );
+		if ( null == output || output.map != model.getTrackIndex().getTrackIdMap() )
+			output = new SpotTrackIDFeature( model.getTrackIndex().getTrackIdMap() );
 	}
 
 	@Override
 	public void run()
-	{
-		output.map.beforeClearPool();
-		final BreadthFirstCrossComponentSearch< Spot, Link > search = new BreadthFirstCrossComponentSearch<>( graph, SearchDirection.UNDIRECTED );
-		final SearchListener< Spot, Link, BreadthFirstCrossComponentSearch< Spot, Link > > l =
-				new SearchListener< Spot, Link, BreadthFirstCrossComponentSearch< Spot, Link > >()
-		{
-
-			private int id = 0;
-
-			@Override
-			public void processVertexLate( final Spot spot, final BreadthFirstCrossComponentSearch< Spot, Link > search )
-			{}
-
-			@Override
-			public void processVertexEarly( final Spot spot, final BreadthFirstCrossComponentSearch< Spot, Link > search )
-			{
-				output.map.set( spot, id );
-			}
-
-			@Override
-			public void processEdge( final Link link, final Spot source, final Spot target, final BreadthFirstCrossComponentSearch< Spot, Link > search )
-			{}
-
-			@Override
-			public void crossComponent( final Spot endSpot, final Spot startSpot, final BreadthFirstCrossComponentSearch< Spot, Link > search )
-			{
-				id++;
-			}
-		};
-		search.setTraversalListener( l );
-		search.start( graph.vertices().iterator().next() );
-	}
+	{}
 }
@@ -39,4 +39,12 @@ public class SpotTrackIDFeatureSerializer implements FeatureSerializer< SpotTrac
 		propertyMapSerializer.readPropertyMap( idmap, ois );
 		return new SpotTrackIDFeature( map );
 	}
+
+	@Override
+	public SpotTrackIDFeature copy( final SpotTrackIDFeature feature, final RefCollection< Spot > pool )
+	{
+		final IntPropertyMap< Spot > map = new IntPropertyMap<>( pool, -1 );
+		map.getMap().putAll( feature.map.getMap() );
+		return new SpotTrackIDFeature( map );
+	}
 }
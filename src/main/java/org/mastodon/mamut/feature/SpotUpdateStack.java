@@ -5,7 +5,6 @@ import org.mastodon.feature.FeatureModel;
 import org.mastodon.feature.FeatureProjectionSpec;
 import org.mastodon.feature.FeatureSpec;
 import org.mastodon.feature.Multiplicity;
-import org.mastodon.feature.update.SizedDeque;
 import org.mastodon.feature.update.UpdateStack;
 import org.mastodon.revised.model.mamut.Spot;
 import org.scijava.plugin.Plugin;
@@ -26,14 +25,6 @@ public class SpotUpdateStack extends UpdateStack< Spot >
 		super( pool );
 	}
 
-	/**
-	 * For deserialization only.
-	 */
-	SpotUpdateStack( final RefCollection< Spot > pool, final SizedDeque< UpdateState< Spot > > stateStack )
-	{
-		super( pool, stateStack );
-	}
-
 	public static SpotUpdateStack getOrCreate( final FeatureModel featureModel, final RefCollection< Spot > pool )
 	{
 		final SpotUpdateStack retrieved = ( SpotUpdateStack ) featureModel.getFeature( SpotUpdateStack.SPEC );
@@ -24,6 +24,6 @@ public class SpotUpdateStackSerializer extends UpdateStackSerializer< SpotUpdate
 	@Override
 	public SpotUpdateStack deserialize( final FileIdToObjectMap< Spot > idmap, final RefCollection< Spot > pool, final ObjectInputStream ois ) throws IOException, ClassNotFoundException
 	{
-		return new SpotUpdateStack( pool, deserializeStack( idmap, pool, ois ) );
+		return deserializeInto( new SpotUpdateStack( pool ), idmap, ois );
 	}
 }
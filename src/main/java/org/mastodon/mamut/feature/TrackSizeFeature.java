@@ -10,12 +10,11 @@ import org.mastodon.feature.Feature;
 import org.mastodon.feature.FeatureProjection;
 import org.mastodon.feature.FeatureProjectionKey;
 import org.mastodon.feature.FeatureProjectionSpec;
-import org.mastodon.feature.FeatureProjections;
 import org.mastodon.feature.FeatureSpec;
 import org.mastodon.feature.IntFeatureProjection;
 import org.mastodon.feature.Multiplicity;
-import org.mastodon.properties.IntPropertyMap;
 import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.mamut.TrackIndex;
 import org.scijava.plugin.Plugin;
 
 public class TrackSizeFeature implements Feature< Spot >
@@ -29,7 +28,10 @@ public class TrackSizeFeature implements Feature< Spot >
 
 	public static final Spec SPEC = new Spec();
 
-	final IntPropertyMap< Spot > map;
+	/**
+	 * The track index this feature is a view of.
+	 */
+	final TrackIndex index;
 
 	private final IntFeatureProjection< Spot > projection;
 
@@ -48,10 +50,18 @@ public class TrackSizeFeature implements Feature< Spot >
 		}
 	}
 
-	TrackSizeFeature( final IntPropertyMap< Spot > map )
+	/**
+	 * Creates a feature that reads track sizes directly from the specified
+	 * index, and therefore is always up to date. The feature is not saved with
+	 * the project, but recreated from the index when the project is loaded.
+	 *
+	 * @param index
+	 *            the track index.
+	 */
+	public TrackSizeFeature( final TrackIndex index )
 	{
-		this.map = map;
-		this.projection = FeatureProjections.project( key( PROJECTION_SPEC ), map, Dimension.NONE_UNITS );
+		this.index = index;
+		this.projection = new TrackIndexProjection( key( PROJECTION_SPEC ), index );
 	}
 
 	@Override
@@ -71,4 +81,41 @@ public class TrackSizeFeature implements Feature< Spot >
 	{
 		return SPEC;
 	}
+
+	private static final class TrackIndexProjection implements IntFeatureProjection< Spot >
+	{
+		private final FeatureProjectionKey key;
+
+		private final TrackIndex index;
+
+		public TrackIndexProjection( final FeatureProjectionKey key, final TrackIndex index )
+		{
+			this.key = key;
+			this.index = index;
+		}
+
+		@Override
+		public FeatureProjectionKey getKey()
+		{
+			return key;
+		}
+
+		@Override
+		public boolean isSet( final Spot spot )
+		{
+			return index.getTrackId( spot ) >= 0;
+		}
+
+		@Override
+		public double value( final Spot spot )
+		{
+			return index.getTrackSize( spot );
+		}
+
+		@Override
+		public String units()
+		{
+			return Dimension.NONE_UNITS;
+		}
+	}
 }
@@ -1,25 +1,21 @@
 package org.mastodon.mamut.feature;
 
-import org.mastodon.pool.PoolCollectionWrapper;
-import org.mastodon.properties.IntPropertyMap;
-import org.mastodon.revised.model.mamut.ModelGraph;
-import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.mamut.Model;
 import org.scijava.ItemIO;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
-import gnu.trove.map.TIntIntMap;
-import gnu.trove.map.hash.TIntIntHashMap;
-
+/**
+ * Exposes the track sizes maintained by the {@link Model}'s
+ * {@link org.mastodon.revised.model.mamut.TrackIndex TrackIndex} as a feature.
+ * The index is updated with each graph change, so there is nothing to compute.
+ */
 @Plugin( type = MamutFeatureComputer.class )
 public class TrackSizeFeatureComputer implements MamutFeatureComputer
 {
 
 	@Parameter
-	private ModelGraph graph;
-
-	@Parameter
-	private SpotTrackIDFeature trackID;
+	private Model model;
 
 	@Parameter( type = ItemIO.OUTPUT )
 	private TrackSizeFeature output;
@@ -27,25 +23,11 @@ public class TrackSizeFeatureComputer implements MamutFeatureComputer
 	@Override
 	public void createOutput()
 	{
-		if ( null == output )
-			output = new TrackSizeFeature( new IntPropertyMap<>( graph.vertices().getRefPool(), -1 ) );
+		if ( null == output || output.index != model.getTrackIndex() )
+			output = new TrackSizeFeature( model.getTrackIndex() );
 	}
 
 	@Override
 	public void run()
-	{
-		output.map.beforeClearPool();
-
-		final TIntIntMap nSpots = new TIntIntHashMap();
-		final PoolCollectionWrapper< Spot > vertices = graph.vertices();
-		for ( final Spot spot : vertices )
-		{
-			final int id = trackID.map.get( spot );
-			if ( !nSpots.increment( id ) )
-				nSpots.put( id, 1 );
-		}
-
-		for ( final Spot spot : vertices )
-			output.map.set( spot, nSpots.get( trackID.map.get( spot ) ) );
-	}
+	{}
 }
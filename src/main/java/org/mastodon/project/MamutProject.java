@@ -8,10 +8,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class MamutProject
@@ -38,14 +42,45 @@ public class MamutProject
 	 */
 	private String timeUnits;
 
-	static final String PROJECT_FILE_NAME = "project.xml";
+	public static final String PROJECT_FILE_NAME = "project.xml";
 
 	static final String RAW_MODEL_FILE_NAME = "model.raw";
 
+	static final String COLUMNAR_MODEL_FILE_NAME = "model.cols";
+
 	static final String RAW_TAGS_FILE_NAME = "tags.raw";
 
 	static final String FEATURE_FOLDER_NAME = "features";
 
+	/**
+	 * Written by incremental saves of directory projects. Maps each part of
+	 * the project (model, features) to the file currently holding it. When
+	 * present, it takes precedence over the fixed file names above.
+	 */
+	public static final String MANIFEST_FILE_NAME = "manifest.properties";
+
+	/**
+	 * Manifest key of the save generation, incremented by each save.
+	 */
+	public static final String MANIFEST_GENERATION_KEY = "generation";
+
+	/**
+	 * Manifest key of the columnar model directory file.
+	 */
+	public static final String MANIFEST_MODEL_KEY = "model";
+
+	/**
+	 * Prefix of the manifest keys of feature files, followed by the feature
+	 * key.
+	 */
+	public static final String MANIFEST_FEATURE_KEY_PREFIX = "feature.";
+
+	private static final String MODEL_DIRECTORY_FILE_PREFIX = "model.dir.";
+
+	private static final String MODEL_DATA_FILE_PREFIX = "model.cols.";
+
+	private static final String FEATURE_FILE_INFIX = ".raw.";
+
 	public MamutProject( final String projectRoot )
 	{
 		this( new File( projectRoot ), null );
@@ -120,6 +155,126 @@ public class MamutProject
 		this.timeUnits = timeUnits;
 	}
 
+	/**
+	 * Returns the name of the columnar model directory file written by the
+	 * incremental save of the specified generation.
+	 *
+	 * @param generation
+	 *            the save generation.
+	 * @return the file name, relative to the project folder.
+	 */
+	public static String getModelDirectoryFileName( final long generation )
+	{
+		return MODEL_DIRECTORY_FILE_PREFIX + generation;
+	}
+
+	/**
+	 * Returns the name of the columnar model data file written by the
+	 * incremental save of the specified generation.
+	 *
+	 * @param generation
+	 *            the save generation.
+	 * @return the file name, relative to the project folder.
+	 */
+	public static String getModelDataFileName( final long generation )
+	{
+		return MODEL_DATA_FILE_PREFIX + generation;
+	}
+
+	/**
+	 * Returns the name of the feature file written by the incremental save of
+	 * the specified generation.
+	 *
+	 * @param featureKey
+	 *            the feature key.
+	 * @param generation
+	 *            the save generation.
+	 * @return the file name, relative to the project folder.
+	 */
+	public static String getFeatureFileName( final String featureKey, final long generation )
+	{
+		return FEATURE_FOLDER_NAME + "/" + featureKey + FEATURE_FILE_INFIX + generation;
+	}
+
+	/**
+	 * Reads the manifest of the specified project folder.
+	 *
+	 * @param projectRoot
+	 *            the project folder.
+	 * @return the manifest, or {@code null} if the project has none.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading.
+	 */
+	public static Properties readManifest( final File projectRoot ) throws IOException
+	{
+		final File file = new File( projectRoot, MANIFEST_FILE_NAME );
+		if ( !file.isFile() )
+			return null;
+		final Properties manifest = new Properties();
+		try ( final InputStream is = new FileInputStream( file ) )
+		{
+			manifest.load( is );
+		}
+		return manifest;
+	}
+
+	/**
+	 * Removes the files written by the incremental save of the
+	 * specified project folder, if any: the manifest, the model directory and
+	 * data files, and the versioned feature files.
+	 *
+	 * @param projectRoot
+	 *            the project folder.
+	 */
+	public static void deleteManifest( final File projectRoot )
+	{
+		new File( projectRoot, MANIFEST_FILE_NAME ).delete();
+		deleteVersionedFiles( projectRoot, Collections.emptySet() );
+	}
+
+	/**
+	 * Removes the model directory and data files, and the versioned feature
+	 * files of the specified project folder, except the specified ones.
+	 *
+	 * @param projectRoot
+	 *            the project folder.
+	 * @param keep
+	 *            the files to keep, relative to the project folder, typically
+	 *            the files referenced by the current manifest.
+	 */
+	public static void deleteVersionedFiles( final File projectRoot, final Set< String > keep )
+	{
+		final File[] modelFiles = projectRoot.listFiles( ( dir, name ) -> name.startsWith( MODEL_DIRECTORY_FILE_PREFIX ) || name.startsWith( MODEL_DATA_FILE_PREFIX ) );
+		if ( modelFiles != null )
+			for ( final File file : modelFiles )
+				if ( !keep.contains( file.getName() ) )
+					file.delete();
+		final File[] featureFiles = new File( projectRoot, FEATURE_FOLDER_NAME ).listFiles( ( dir, name ) -> name.contains( FEATURE_FILE_INFIX ) );
+		if ( featureFiles != null )
+			for ( final File file : featureFiles )
+				if ( !keep.contains( FEATURE_FOLDER_NAME + "/" + file.getName() ) )
+					file.delete();
+	}
+
+	/**
+	 * Removes the files of the specified project folder that a full save
+	 * writes, but that are replaced by the manifest after an incremental
+	 * save: the model and tags files, and the unversioned feature files.
+	 *
+	 * @param projectRoot
+	 *            the project folder.
+	 */
+	public static void deleteUnversionedFiles( final File projectRoot )
+	{
+		new File( projectRoot, COLUMNAR_MODEL_FILE_NAME ).delete();
+		new File( projectRoot, RAW_MODEL_FILE_NAME ).delete();
+		new File( projectRoot, RAW_TAGS_FILE_NAME ).delete();
+		final File[] featureFiles = new File( projectRoot, FEATURE_FOLDER_NAME ).listFiles( ( dir, name ) -> name.toLowerCase().endsWith( ".raw" ) );
+		if ( featureFiles != null )
+			for ( final File file : featureFiles )
+				file.delete();
+	}
+
 	@Override
 	public String toString()
 	{
@@ -136,10 +291,26 @@ public class MamutProject
 	}
 
 	public ProjectWriter openForWriting() throws IOException
+	{
+		return openForWriting( WriteZip.DEFAULT_LEVEL );
+	}
+
+	/**
+	 * Opens the project for writing. If the project is a {@code .mastodon}
+	 * file, entries are compressed with the specified level.
+	 *
+	 * @param zipCompressionLevel
+	 *            the compression level, see {@link WriteZip#WriteZip(File, int)}.
+	 *            {@link WriteZip#STORED} is the fastest.
+	 * @return the project writer.
+	 * @throws IOException
+	 *             if the project cannot be opened.
+	 */
+	public ProjectWriter openForWriting( final int zipCompressionLevel ) throws IOException
 	{
 		return projectRoot.isDirectory()
 				? new WriteToDirectory()
-				: new WriteToZip();
+				: new WriteToZip( zipCompressionLevel );
 	}
 
 	public interface ProjectReader extends Closeable
@@ -148,6 +319,50 @@ public class MamutProject
 
 		InputStream getRawModelInputStream() throws IOException;
 
+		/**
+		 * Opens the model file in the columnar format.
+		 *
+		 * @return the input stream.
+		 * @throws java.io.FileNotFoundException
+		 *             if the project was saved in the former format, that
+		 *             uses {@link #getRawModelInputStream()} and
+		 *             {@link #getRawTagsInputStream()}.
+		 * @throws IOException
+		 *             if an I/O error occurs.
+		 */
+		InputStream getColumnarModelInputStream() throws IOException;
+
+		/**
+		 * Opens the model file in the columnar format as a {@link FileChannel},
+		 * that can be memory-mapped. This is only possible for projects stored
+		 * in a directory.
+		 *
+		 * @return the channel, or {@code null} if the project is not stored
+		 *         in a directory.
+		 * @throws FileNotFoundException
+		 *             if the project was saved in the former format.
+		 * @throws IOException
+		 *             if an I/O error occurs.
+		 */
+		default FileChannel getColumnarModelChannel() throws IOException
+		{
+			return null;
+		}
+
+		/**
+		 * Returns the columnar model directory file listed in the manifest of
+		 * an incrementally saved project. The model is then read from the
+		 * files listed in the directory file, and
+		 * {@link #getColumnarModelInputStream()} must not be used.
+		 *
+		 * @return the directory file, or {@code null} if the project has no
+		 *         manifest.
+		 */
+		default File getColumnarModelDirectoryFile()
+		{
+			return null;
+		}
+
 		InputStream getRawTagsInputStream() throws IOException;
 
 		InputStream getFeatureInputStream( String featureKey ) throws IOException;
@@ -167,6 +382,8 @@ public class MamutProject
 
 		OutputStream getRawModelOutputStream() throws IOException;
 
+		OutputStream getColumnarModelOutputStream() throws IOException;
+
 		OutputStream getRawTagsOutputStream() throws IOException;
 
 		OutputStream getFeatureOutputStream( String featureKey ) throws IOException;
@@ -174,6 +391,16 @@ public class MamutProject
 
 	private class ReadFromDirectory implements ProjectReader
 	{
+		/**
+		 * The manifest, or {@code null} if the project was saved in full.
+		 */
+		private final Properties manifest;
+
+		ReadFromDirectory() throws IOException
+		{
+			manifest = readManifest( projectRoot );
+		}
+
 		@Override
 		public InputStream getProjectXmlInputStream() throws FileNotFoundException
 		{
@@ -192,9 +419,40 @@ public class MamutProject
 			return new FileInputStream( new File( projectRoot, RAW_TAGS_FILE_NAME ) );
 		}
 
+		@Override
+		public InputStream getColumnarModelInputStream() throws FileNotFoundException
+		{
+			return new FileInputStream( new File( projectRoot, COLUMNAR_MODEL_FILE_NAME ) );
+		}
+
+		@Override
+		public FileChannel getColumnarModelChannel() throws IOException
+		{
+			final File file = new File( projectRoot, COLUMNAR_MODEL_FILE_NAME );
+			if ( !file.isFile() )
+				throw new FileNotFoundException( file.getAbsolutePath() );
+			return FileChannel.open( file.toPath(), StandardOpenOption.READ );
+		}
+
+		@Override
+		public File getColumnarModelDirectoryFile()
+		{
+			if ( manifest == null )
+				return null;
+			final String name = manifest.getProperty( MANIFEST_MODEL_KEY );
+			return name == null ? null : new File( projectRoot, name );
+		}
+
 		@Override
 		public InputStream getFeatureInputStream( final String featureKey ) throws IOException
 		{
+			if ( manifest != null )
+			{
+				final String name = manifest.getProperty( MANIFEST_FEATURE_KEY_PREFIX + featureKey );
+				if ( name == null )
+					throw new FileNotFoundException( "Feature " + featureKey + " is not listed in the manifest." );
+				return new FileInputStream( new File( projectRoot, name ) );
+			}
 			final File featureFolder = new File( projectRoot, FEATURE_FOLDER_NAME );
 			return new FileInputStream( new File( featureFolder, featureKey + ".raw" ) );
 		}
@@ -202,6 +460,12 @@ public class MamutProject
 		@Override
 		public Collection< String > getFeatureKeys()
 		{
+			if ( manifest != null )
+				return manifest.stringPropertyNames().stream()
+						.filter( key -> key.startsWith( MANIFEST_FEATURE_KEY_PREFIX ) )
+						.map( key -> key.substring( MANIFEST_FEATURE_KEY_PREFIX.length() ) )
+						.collect( Collectors.toList() );
+
 			final File featureFolder = new File( projectRoot, FEATURE_FOLDER_NAME );
 			if ( !featureFolder.exists() || !featureFolder.canRead() )
 				return Collections.emptyList();
@@ -245,6 +509,12 @@ public class MamutProject
 			return zip.getInputStream( RAW_TAGS_FILE_NAME );
 		}
 
+		@Override
+		public InputStream getColumnarModelInputStream() throws IOException
+		{
+			return zip.getInputStream( COLUMNAR_MODEL_FILE_NAME );
+		}
+
 		@Override
 		public InputStream getFeatureInputStream( final String featureKey ) throws IOException
 		{
@@ -268,17 +538,25 @@ public class MamutProject
 
 	private class WriteToDirectory implements ProjectWriter
 	{
+		/**
+		 * Whether the project xml and the model were completely written. A
+		 * full save replaces an incremental one, but the manifest, that
+		 * shadows the files written now, is only removed once they are.
+		 */
+		private boolean projectXmlWritten;
+
+		private boolean modelWritten;
 
 		@Override
 		public OutputStream getProjectXmlOutputStream() throws FileNotFoundException
 		{
-			return new FileOutputStream( new File( projectRoot, PROJECT_FILE_NAME ) );
+			return new CompletionTrackingOutputStream( new File( projectRoot, PROJECT_FILE_NAME ), () -> projectXmlWritten = true );
 		}
 
 		@Override
 		public OutputStream getRawModelOutputStream() throws FileNotFoundException
 		{
-			return new FileOutputStream( new File( projectRoot, RAW_MODEL_FILE_NAME ) );
+			return new CompletionTrackingOutputStream( new File( projectRoot, RAW_MODEL_FILE_NAME ), () -> modelWritten = true );
 		}
 
 		@Override
@@ -287,6 +565,16 @@ public class MamutProject
 			return new FileOutputStream( new File( projectRoot, RAW_TAGS_FILE_NAME ) );
 		}
 
+		@Override
+		public OutputStream getColumnarModelOutputStream() throws FileNotFoundException
+		{
+			// Remove files of the former format, so that older versions do not
+			// read outdated data.
+			new File( projectRoot, RAW_MODEL_FILE_NAME ).delete();
+			new File( projectRoot, RAW_TAGS_FILE_NAME ).delete();
+			return new CompletionTrackingOutputStream( new File( projectRoot, COLUMNAR_MODEL_FILE_NAME ), () -> modelWritten = true );
+		}
+
 		@Override
 		public OutputStream getFeatureOutputStream( final String featureKey ) throws IOException
 		{
@@ -298,16 +586,83 @@ public class MamutProject
 
 		@Override
 		public void close() throws IOException
-		{}
+		{
+			if ( projectXmlWritten && modelWritten )
+				deleteManifest( projectRoot );
+		}
+	}
+
+	/**
+	 * A file output stream that runs a callback when it is closed, unless a
+	 * write failed before.
+	 */
+	private static class CompletionTrackingOutputStream extends FileOutputStream
+	{
+		private final Runnable onCompletion;
+
+		private boolean failed;
+
+		private boolean closed;
+
+		CompletionTrackingOutputStream( final File file, final Runnable onCompletion ) throws FileNotFoundException
+		{
+			super( file );
+			this.onCompletion = onCompletion;
+		}
+
+		@Override
+		public void write( final int b ) throws IOException
+		{
+			try
+			{
+				super.write( b );
+			}
+			catch ( final IOException e )
+			{
+				failed = true;
+				throw e;
+			}
+		}
+
+		@Override
+		public void write( final byte[] b ) throws IOException
+		{
+			write( b, 0, b.length );
+		}
+
+		@Override
+		public void write( final byte[] b, final int off, final int len ) throws IOException
+		{
+			try
+			{
+				super.write( b, off, len );
+			}
+			catch ( final IOException e )
+			{
+				failed = true;
+				throw e;
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if ( closed )
+				return;
+			closed = true;
+			super.close();
+			if ( !failed )
+				onCompletion.run();
+		}
 	}
 
 	private class WriteToZip implements ProjectWriter
 	{
 		private final WriteZip zip;
 
-		WriteToZip() throws IOException
+		WriteToZip( final int level ) throws IOException
 		{
-			zip = new WriteZip( projectRoot );
+			zip = new WriteZip( projectRoot, level );
 		}
 
 		@Override
@@ -328,6 +683,12 @@ public class MamutProject
 			return zip.getOutputStream( RAW_TAGS_FILE_NAME );
 		}
 
+		@Override
+		public OutputStream getColumnarModelOutputStream() throws IOException
+		{
+			return zip.getOutputStream( COLUMNAR_MODEL_FILE_NAME );
+		}
+
 		@Override
 		public OutputStream getFeatureOutputStream( final String featureKey ) throws IOException
 		{
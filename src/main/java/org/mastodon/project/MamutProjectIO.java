@@ -23,13 +23,30 @@ public class MamutProjectIO
 	private static final String TIME_UNITS_TAG = "TimeUnits";
 
 	public void save( final MamutProject project, final MamutProject.ProjectWriter writer ) throws IOException
+	{
+		mkdirs( project.getProjectRoot().getParentFile().getAbsolutePath() );
+		save( project, writer.getProjectXmlOutputStream() );
+	}
+
+	/**
+	 * Writes the project xml to the specified stream, that is closed when
+	 * done.
+	 *
+	 * @param project
+	 *            the project.
+	 * @param os
+	 *            the stream to write to.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing.
+	 */
+	public void save( final MamutProject project, final OutputStream os ) throws IOException
 	{
 		final Document doc = new Document( toXml( project ) );
 		final XMLOutputter xout = new XMLOutputter( Format.getPrettyFormat() );
-		mkdirs( project.getProjectRoot().getParentFile().getAbsolutePath() );
-		final OutputStream os = writer.getProjectXmlOutputStream();
-		xout.output( doc, os );
-		os.close();
+		try ( final OutputStream out = os )
+		{
+			xout.output( doc, out );
+		}
 	}
 
 	public MamutProject load( final String projectPath ) throws IOException
@@ -1,87 +1,791 @@
 package org.mastodon.project;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
 
+/**
+ * Writes a zip file, compressing entries in parallel.
+ * <p>
+ * Entries are still written one after the other through
+ * {@link #getOutputStream(String)}, but their content is cut into chunks of
+ * {@link #CHUNK_SIZE} bytes that are compressed on a thread pool while the
+ * caller keeps writing. Each chunk is deflated independently, using the end of
+ * the previous chunk as dictionary, and ends with a sync flush, so that the
+ * concatenated chunks form a single deflate stream. The CRC of each chunk is
+ * computed in parallel too, and combined. Compressed chunks are appended to the
+ * file in order, and the local header of each entry is completed when the
+ * entry is done. The result is a regular zip file (with Zip64 extensions) that
+ * {@link ReadZip} and any zip tool can read.
+ * <p>
+ * How chunks are encoded is defined by a {@link Codec}. With
+ * {@link StoredCodec}, used for compression level {@link #STORED}, entries are
+ * stored uncompressed and only CRCs are computed in parallel.
+ */
 public class WriteZip implements Closeable
 {
-	private final ZipOutputStream zos;
+	/**
+	 * Compression level to store entries without compression.
+	 */
+	public static final int STORED = Deflater.NO_COMPRESSION;
+
+	/**
+	 * Compression level used by {@link #WriteZip(File)}.
+	 */
+	public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+	/**
+	 * Entries are compressed in chunks of this size.
+	 */
+	public static final int CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Initial size of the buffer of an entry, grown up to {@link #CHUNK_SIZE}
+	 * as needed, so that small entries do not allocate a whole chunk.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * Size of the deflate window, and thus of the useful dictionary.
+	 */
+	private static final int DICTIONARY_SIZE = 1 << 15;
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+	private static final int END_SIGNATURE = 0x06054b50;
+
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+	private static final int ZIP64_VERSION = 45;
+
+	/**
+	 * General purpose flag: names are UTF-8 encoded.
+	 */
+	private static final int FLAG_UTF8 = 0x0800;
+
+	private static final int METHOD_STORED = 0;
+
+	private static final int METHOD_DEFLATED = 8;
+
+	private static final long MAX_32 = 0xffffffffL;
+
+	private static final int MAX_16 = 0xffff;
+
+	private final FileChannel channel;
+
+	private final Codec codec;
+
+	private final ExecutorService executor;
+
+	private final boolean ownExecutor;
+
+	/**
+	 * Chunks submitted for compression, in file order.
+	 */
+	private final ArrayDeque< Pending > pending = new ArrayDeque<>();
+
+	/**
+	 * Maximal number of chunks being compressed or waiting to be written.
+	 */
+	private final int maxPending;
+
+	/**
+	 * Completed entries, for the central directory.
+	 */
+	private final List< Entry > entries = new ArrayList<>();
+
+	/**
+	 * Names of all entries, completed or not, to reject duplicates.
+	 */
+	private final Set< String > names = new HashSet<>();
+
+	private final int dosTime;
 
 	private ZipEntryStream current;
 
-	public WriteZip( String fn ) throws IOException
+	public WriteZip( final String fn ) throws IOException
 	{
 		this( new File( fn ) );
 	}
 
-	public WriteZip( File f ) throws IOException
+	public WriteZip( final File f ) throws IOException
+	{
+		this( f, DEFAULT_LEVEL );
+	}
+
+	/**
+	 * Creates a zip file, compressing entries on a thread pool with one
+	 * thread per processor.
+	 *
+	 * @param f
+	 *            the file to write.
+	 * @param level
+	 *            the compression level, from {@link Deflater#BEST_SPEED} to
+	 *            {@link Deflater#BEST_COMPRESSION}, or
+	 *            {@link Deflater#DEFAULT_COMPRESSION}, or {@link #STORED}.
+	 * @throws IOException
+	 *             if the file cannot be created.
+	 */
+	public WriteZip( final File f, final int level ) throws IOException
+	{
+		this( f, level, null );
+	}
+
+	/**
+	 * Creates a zip file, compressing entries with the specified executor.
+	 *
+	 * @param f
+	 *            the file to write.
+	 * @param level
+	 *            the compression level, from {@link Deflater#BEST_SPEED} to
+	 *            {@link Deflater#BEST_COMPRESSION}, or
+	 *            {@link Deflater#DEFAULT_COMPRESSION}, or {@link #STORED}.
+	 * @param executor
+	 *            the executor compressing chunks, or {@code null} to create a
+	 *            thread pool with one thread per processor, that is shut down
+	 *            by {@link #close()}.
+	 * @throws IOException
+	 *             if the file cannot be created.
+	 */
+	public WriteZip( final File f, final int level, final ExecutorService executor ) throws IOException
 	{
-		zos = new ZipOutputStream( new FileOutputStream( f ) );
-		zos.setMethod( ZipOutputStream.DEFLATED );
-		zos.setLevel( 0 );
+		this( f, codec( level ), executor );
+	}
+
+	/**
+	 * Creates a zip file, encoding entries with the specified codec and
+	 * executor.
+	 *
+	 * @param f
+	 *            the file to write.
+	 * @param codec
+	 *            the codec encoding the chunks of entries.
+	 * @param executor
+	 *            the executor encoding chunks, or {@code null} to create a
+	 *            thread pool with one thread per processor, that is shut down
+	 *            by {@link #close()}.
+	 * @throws IOException
+	 *             if the file cannot be created.
+	 */
+	public WriteZip( final File f, final Codec codec, final ExecutorService executor ) throws IOException
+	{
+		this.codec = codec;
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		this.ownExecutor = executor == null;
+		this.executor = ownExecutor
+				? Executors.newFixedThreadPool( numThreads, r -> {
+					final Thread thread = new Thread( r, "Mastodon zip writer" );
+					thread.setDaemon( true );
+					return thread;
+				} )
+				: executor;
+		this.maxPending = 2 * numThreads + 2;
+		this.dosTime = dosTime( System.currentTimeMillis() );
+		this.channel = FileChannel.open( f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
 		current = null;
 	}
 
-	public OutputStream getOutputStream( String fn ) throws IOException
+	public OutputStream getOutputStream( final String fn ) throws IOException
 	{
 		if ( current != null && current.isOpen )
-			throw new IOException( "OutputStream for previous entry \"" + current.entry + "\" is still open" );
-		current = new ZipEntryStream( new ZipEntry( fn ) );
+			throw new IOException( "OutputStream for previous entry \"" + current.entry.name + "\" is still open" );
+		if ( !names.add( fn ) )
+			throw new ZipException( "duplicate entry: " + fn );
+		current = new ZipEntryStream( new Entry( fn ) );
 		return current;
 	}
 
+	/**
+	 * Waits for all entries to be compressed and written, then writes the
+	 * central directory and closes the file.
+	 */
 	@Override
 	public void close() throws IOException
 	{
-		zos.close();
+		try
+		{
+			if ( current != null && current.isOpen )
+				current.close();
+			while ( !pending.isEmpty() )
+				writeNext();
+			writeCentralDirectory();
+		}
+		finally
+		{
+			if ( ownExecutor )
+				executor.shutdownNow();
+			channel.close();
+		}
+	}
+
+	/**
+	 * A zip entry, completed as its chunks are written.
+	 */
+	private static class Entry
+	{
+		final String name;
+
+		final byte[] nameBytes;
+
+		long headerOffset;
+
+		long crc;
+
+		long compressedSize;
+
+		long size;
+
+		Entry( final String name )
+		{
+			this.name = name;
+			this.nameBytes = name.getBytes( StandardCharsets.UTF_8 );
+		}
+	}
+
+	/**
+	 * An encoded chunk.
+	 */
+	private static class Chunk
+	{
+		final ByteBuffer data;
+
+		final long crc;
+
+		final int length;
+
+		Chunk( final ByteBuffer data, final long crc, final int length )
+		{
+			this.data = data;
+			this.crc = crc;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * A chunk submitted for compression. The first chunk of an entry writes
+	 * the local header, the last one completes it.
+	 */
+	private static class Pending
+	{
+		final Entry entry;
+
+		final Future< Chunk > chunk;
+
+		final boolean first;
+
+		final boolean last;
+
+		Pending( final Entry entry, final Future< Chunk > chunk, final boolean first, final boolean last )
+		{
+			this.entry = entry;
+			this.chunk = chunk;
+			this.first = first;
+			this.last = last;
+		}
 	}
 
 	private class ZipEntryStream extends OutputStream
 	{
 		boolean isOpen;
 
-		ZipEntry entry;
+		final Entry entry;
+
+		private byte[] buffer;
+
+		private int length;
+
+		private byte[] previous;
+
+		private int previousLength;
 
-		ZipEntryStream( ZipEntry entry ) throws IOException
+		private boolean first;
+
+		ZipEntryStream( final Entry entry )
 		{
-			zos.putNextEntry( entry );
+			this.entry = entry;
+			buffer = new byte[ INITIAL_BUFFER_SIZE ];
+			length = 0;
+			first = true;
 			isOpen = true;
 		}
 
 		@Override
 		public void write( final int b ) throws IOException
 		{
-			zos.write( b );
+			makeRoom( 1 );
+			buffer[ length++ ] = ( byte ) b;
+		}
+
+		@Override
+		public void write( final byte[] b, int off, int len ) throws IOException
+		{
+			while ( len > 0 )
+			{
+				makeRoom( len );
+				final int n = Math.min( len, buffer.length - length );
+				System.arraycopy( b, off, buffer, length, n );
+				length += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if ( !isOpen )
+				return;
+			isOpen = false;
+			submit( true );
+			buffer = null;
+			previous = null;
+		}
+
+		/**
+		 * If the buffer is full, grows it up to {@link #CHUNK_SIZE} to hold
+		 * {@code needed} more bytes, or submits it if it is a whole chunk.
+		 */
+		private void makeRoom( final int needed ) throws IOException
+		{
+			if ( length < buffer.length )
+				return;
+			if ( buffer.length < CHUNK_SIZE )
+			{
+				int size = buffer.length;
+				while ( size < CHUNK_SIZE && size - length < needed )
+					size <<= 1;
+				buffer = Arrays.copyOf( buffer, Math.min( size, CHUNK_SIZE ) );
+			}
+			else
+				submit( false );
+		}
+
+		private void submit( final boolean last ) throws IOException
+		{
+			final byte[] data = buffer;
+			final int dataLength = length;
+			final byte[] dictionary = previous;
+			final int dictionaryLength = previousLength;
+			final Future< Chunk > chunk = executor.submit( () -> compress( data, dataLength, dictionary, dictionaryLength, last ) );
+			pending.add( new Pending( entry, chunk, first, last ) );
+			first = false;
+			previous = data;
+			previousLength = dataLength;
+			if ( !last )
+			{
+				buffer = new byte[ INITIAL_BUFFER_SIZE ];
+				length = 0;
+			}
+			while ( pending.size() > maxPending )
+				writeNext();
+		}
+	}
+
+	/**
+	 * Computes the CRC of a chunk and encodes it. Runs on the executor.
+	 */
+	private Chunk compress( final byte[] data, final int length, final byte[] dictionary, final int dictionaryLength, final boolean last ) throws IOException
+	{
+		final CRC32 crc = new CRC32();
+		crc.update( data, 0, length );
+		final ByteBuffer encoded = codec.encode( data, length, dictionary, dictionaryLength, last );
+		return new Chunk( encoded, crc.getValue(), length );
+	}
+
+	/**
+	 * Waits for the oldest pending chunk and appends it to the file.
+	 */
+	private void writeNext() throws IOException
+	{
+		final Pending p = pending.poll();
+		final Chunk chunk;
+		try
+		{
+			chunk = p.chunk.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while compressing entry \"" + p.entry.name + "\"", e );
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new IOException( "Failed to compress entry \"" + p.entry.name + "\"", e.getCause() );
+		}
+
+		final Entry entry = p.entry;
+		if ( p.first )
+		{
+			entry.headerOffset = channel.position();
+			writeFully( localHeader( entry ), channel.position() );
+		}
+		final int compressedLength = chunk.data.remaining();
+		writeFully( chunk.data, channel.position() );
+		entry.crc = crc32Combine( entry.crc, chunk.crc, chunk.length );
+		entry.compressedSize += compressedLength;
+		entry.size += chunk.length;
+		if ( p.last )
+		{
+			final long end = channel.position();
+			writeFully( localHeader( entry ), entry.headerOffset );
+			channel.position( end );
+			entries.add( entry );
+		}
+	}
+
+	private void writeFully( final ByteBuffer buffer, final long position ) throws IOException
+	{
+		long pos = position;
+		while ( buffer.hasRemaining() )
+			pos += channel.write( buffer, pos );
+		if ( pos > channel.position() )
+			channel.position( pos );
+	}
+
+	/**
+	 * Local header, with a Zip64 extra field holding the sizes, since they
+	 * are not known when the header is first written.
+	 */
+	private ByteBuffer localHeader( final Entry entry )
+	{
+		final ByteBuffer b = ByteBuffer.allocate( 30 + entry.nameBytes.length + 20 ).order( ByteOrder.LITTLE_ENDIAN );
+		b.putInt( LOCAL_HEADER_SIGNATURE );
+		b.putShort( ( short ) ZIP64_VERSION );
+		b.putShort( ( short ) FLAG_UTF8 );
+		b.putShort( ( short ) codec.method() );
+		b.putInt( dosTime );
+		b.putInt( ( int ) entry.crc );
+		b.putInt( ( int ) MAX_32 );
+		b.putInt( ( int ) MAX_32 );
+		b.putShort( ( short ) entry.nameBytes.length );
+		b.putShort( ( short ) 20 );
+		b.put( entry.nameBytes );
+		b.putShort( ( short ) 1 );
+		b.putShort( ( short ) 16 );
+		b.putLong( entry.size );
+		b.putLong( entry.compressedSize );
+		b.flip();
+		return b;
+	}
+
+	private void writeCentralDirectory() throws IOException
+	{
+		final long start = channel.position();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for ( final Entry entry : entries )
+		{
+			final boolean zip64 = entry.size >= MAX_32 || entry.compressedSize >= MAX_32 || entry.headerOffset >= MAX_32;
+			final ByteBuffer b = ByteBuffer.allocate( 46 + entry.nameBytes.length + ( zip64 ? 28 : 0 ) ).order( ByteOrder.LITTLE_ENDIAN );
+			b.putInt( CENTRAL_HEADER_SIGNATURE );
+			b.putShort( ( short ) ZIP64_VERSION );
+			b.putShort( ( short ) ZIP64_VERSION );
+			b.putShort( ( short ) FLAG_UTF8 );
+			b.putShort( ( short ) codec.method() );
+			b.putInt( dosTime );
+			b.putInt( ( int ) entry.crc );
+			b.putInt( ( int ) ( zip64 ? MAX_32 : entry.compressedSize ) );
+			b.putInt( ( int ) ( zip64 ? MAX_32 : entry.size ) );
+			b.putShort( ( short ) entry.nameBytes.length );
+			b.putShort( ( short ) ( zip64 ? 28 : 0 ) );
+			b.putShort( ( short ) 0 ); // comment length
+			b.putShort( ( short ) 0 ); // disk number
+			b.putShort( ( short ) 0 ); // internal attributes
+			b.putInt( 0 ); // external attributes
+			b.putInt( ( int ) ( zip64 ? MAX_32 : entry.headerOffset ) );
+			b.put( entry.nameBytes );
+			if ( zip64 )
+			{
+				b.putShort( ( short ) 1 );
+				b.putShort( ( short ) 24 );
+				b.putLong( entry.size );
+				b.putLong( entry.compressedSize );
+				b.putLong( entry.headerOffset );
+			}
+			out.write( b.array() );
+		}
+		final long size = out.size();
+		final int n = entries.size();
+
+		final ByteBuffer b = ByteBuffer.allocate( 56 + 20 + 22 ).order( ByteOrder.LITTLE_ENDIAN );
+		if ( n >= MAX_16 || size >= MAX_32 || start >= MAX_32 )
+		{
+			final long zip64End = start + size;
+			b.putInt( ZIP64_END_SIGNATURE );
+			b.putLong( 44 );
+			b.putShort( ( short ) ZIP64_VERSION );
+			b.putShort( ( short ) ZIP64_VERSION );
+			b.putInt( 0 );
+			b.putInt( 0 );
+			b.putLong( n );
+			b.putLong( n );
+			b.putLong( size );
+			b.putLong( start );
+			b.putInt( ZIP64_LOCATOR_SIGNATURE );
+			b.putInt( 0 );
+			b.putLong( zip64End );
+			b.putInt( 1 );
 		}
+		b.putInt( END_SIGNATURE );
+		b.putShort( ( short ) 0 );
+		b.putShort( ( short ) 0 );
+		b.putShort( ( short ) Math.min( n, MAX_16 ) );
+		b.putShort( ( short ) Math.min( n, MAX_16 ) );
+		b.putInt( ( int ) Math.min( size, MAX_32 ) );
+		b.putInt( ( int ) Math.min( start, MAX_32 ) );
+		b.putShort( ( short ) 0 );
+		b.flip();
 
+		writeFully( ByteBuffer.wrap( out.toByteArray() ), start );
+		writeFully( b, channel.position() );
+	}
+
+	/**
+	 * Returns the codec for a compression level.
+	 *
+	 * @param level
+	 *            the compression level, from {@link Deflater#BEST_SPEED} to
+	 *            {@link Deflater#BEST_COMPRESSION}, or
+	 *            {@link Deflater#DEFAULT_COMPRESSION}, or {@link #STORED}.
+	 * @return a {@link StoredCodec} for {@link #STORED}, a
+	 *         {@link DeflatedCodec} otherwise.
+	 */
+	public static Codec codec( final int level )
+	{
+		return level == STORED ? new StoredCodec() : new DeflatedCodec( level );
+	}
+
+	/**
+	 * Encodes the chunks of zip entries. Chunks of an entry are encoded
+	 * independently and concurrently, and their encodings are concatenated
+	 * in order to form the entry data.
+	 */
+	public interface Codec
+	{
+		/**
+		 * Returns the zip compression method written in the entry headers.
+		 *
+		 * @return the compression method.
+		 */
+		public int method();
+
+		/**
+		 * Encodes a chunk of an entry. Called concurrently, from the threads
+		 * of the executor.
+		 *
+		 * @param data
+		 *            the chunk data. It is not modified after being passed to
+		 *            this method, so it can be returned wrapped.
+		 * @param length
+		 *            the length of the chunk data.
+		 * @param previous
+		 *            the data of the previous chunk of the entry, or
+		 *            {@code null} for the first chunk.
+		 * @param previousLength
+		 *            the length of the previous chunk data.
+		 * @param last
+		 *            whether this is the last chunk of the entry.
+		 * @return the encoded chunk.
+		 * @throws IOException
+		 *             if the chunk cannot be encoded.
+		 */
+		public ByteBuffer encode( byte[] data, int length, byte[] previous, int previousLength, boolean last ) throws IOException;
+	}
+
+	/**
+	 * Stores entries uncompressed.
+	 */
+	public static class StoredCodec implements Codec
+	{
 		@Override
-		public void write( final byte[] b ) throws IOException
+		public int method()
 		{
-			zos.write( b );
+			return METHOD_STORED;
 		}
 
 		@Override
-		public void write( final byte[] b, final int off, final int len ) throws IOException
+		public ByteBuffer encode( final byte[] data, final int length, final byte[] previous, final int previousLength, final boolean last )
 		{
-			zos.write( b, off, len );
+			return ByteBuffer.wrap( data, 0, length );
+		}
+	}
+
+	/**
+	 * Deflates entries. Each chunk is deflated using the end of the previous
+	 * chunk as dictionary, and all but the last end with a sync flush, so
+	 * that the concatenated chunks form a single deflate stream.
+	 */
+	public static class DeflatedCodec implements Codec
+	{
+		private final int level;
+
+		/**
+		 * @param level
+		 *            the compression level, from {@link Deflater#BEST_SPEED}
+		 *            to {@link Deflater#BEST_COMPRESSION}, or
+		 *            {@link Deflater#DEFAULT_COMPRESSION}.
+		 */
+		public DeflatedCodec( final int level )
+		{
+			if ( level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION )
+				throw new IllegalArgumentException( "Invalid compression level " + level );
+			this.level = level;
 		}
 
 		@Override
-		public void flush() throws IOException
+		public int method()
 		{
-			zos.flush();
+			return METHOD_DEFLATED;
 		}
 
 		@Override
-		public void close() throws IOException
+		public ByteBuffer encode( final byte[] data, final int length, final byte[] previous, final int previousLength, final boolean last )
 		{
-			zos.closeEntry();
-			isOpen = false;
+			final Deflater deflater = new Deflater( level, true );
+			try
+			{
+				if ( previous != null )
+				{
+					final int n = Math.min( DICTIONARY_SIZE, previousLength );
+					deflater.setDictionary( previous, previousLength - n, n );
+				}
+				deflater.setInput( data, 0, length );
+				final ByteArrayOutputStream out = new ByteArrayOutputStream( length / 2 + 64 );
+				final byte[] buf = new byte[ 64 * 1024 ];
+				if ( last )
+				{
+					deflater.finish();
+					while ( !deflater.finished() )
+					{
+						final int n = deflater.deflate( buf );
+						out.write( buf, 0, n );
+					}
+				}
+				else
+				{
+					// Byte-aligned, without marking the final block, so that
+					// the next chunk can be appended.
+					int n;
+					do
+					{
+						n = deflater.deflate( buf, 0, buf.length, Deflater.SYNC_FLUSH );
+						out.write( buf, 0, n );
+					}
+					while ( n == buf.length );
+				}
+				return ByteBuffer.wrap( out.toByteArray() );
+			}
+			finally
+			{
+				deflater.end();
+			}
 		}
 	}
+
+	private static int dosTime( final long millis )
+	{
+		final Calendar c = Calendar.getInstance();
+		c.setTimeInMillis( millis );
+		final int year = Math.max( 1980, c.get( Calendar.YEAR ) );
+		return ( year - 1980 ) << 25
+				| ( c.get( Calendar.MONTH ) + 1 ) << 21
+				| c.get( Calendar.DAY_OF_MONTH ) << 16
+				| c.get( Calendar.HOUR_OF_DAY ) << 11
+				| c.get( Calendar.MINUTE ) << 5
+				| c.get( Calendar.SECOND ) >> 1;
+	}
+
+	/**
+	 * Returns the CRC32 of the concatenation of two blocks of data, given the
+	 * CRC32 of each and the length of the second. This is the algorithm of
+	 * zlib's {@code crc32_combine}, that appends {@code length2} zeros to the
+	 * first CRC using the matrix of the CRC polynomial.
+	 *
+	 * @param crc1
+	 *            the CRC32 of the first block.
+	 * @param crc2
+	 *            the CRC32 of the second block.
+	 * @param length2
+	 *            the length of the second block.
+	 * @return the CRC32 of the concatenation.
+	 */
+	static long crc32Combine( long crc1, final long crc2, long length2 )
+	{
+		if ( length2 <= 0 )
+			return crc1;
+
+		final long[] even = new long[ 32 ];
+		final long[] odd = new long[ 32 ];
+
+		// Operator for one zero bit.
+		odd[ 0 ] = 0xedb88320L;
+		long row = 1;
+		for ( int n = 1; n < 32; n++ )
+		{
+			odd[ n ] = row;
+			row <<= 1;
+		}
+		// Two zero bits, then four zero bits.
+		gf2MatrixSquare( even, odd );
+		gf2MatrixSquare( odd, even );
+
+		// Apply length2 zero bytes, squaring the operator for each bit of
+		// length2.
+		do
+		{
+			gf2MatrixSquare( even, odd );
+			if ( ( length2 & 1 ) != 0 )
+				crc1 = gf2MatrixTimes( even, crc1 );
+			length2 >>= 1;
+			if ( length2 == 0 )
+				break;
+
+			gf2MatrixSquare( odd, even );
+			if ( ( length2 & 1 ) != 0 )
+				crc1 = gf2MatrixTimes( odd, crc1 );
+			length2 >>= 1;
+		}
+		while ( length2 != 0 );
+
+		return crc1 ^ crc2;
+	}
+
+	private static long gf2MatrixTimes( final long[] mat, long vec )
+	{
+		long sum = 0;
+		for ( int i = 0; vec != 0; i++, vec >>>= 1 )
+			if ( ( vec & 1 ) != 0 )
+				sum ^= mat[ i ];
+		return sum;
+	}
+
+	private static void gf2MatrixSquare( final long[] square, final long[] mat )
+	{
+		for ( int n = 0; n < 32; n++ )
+			square[ n ] = gf2MatrixTimes( mat, mat[ n ] );
+	}
 }
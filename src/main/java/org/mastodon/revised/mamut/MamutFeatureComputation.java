@@ -9,6 +9,7 @@ import java.util.Set;
 import javax.swing.JDialog;
 
 import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureComputationReport;
 import org.mastodon.feature.FeatureComputer;
 import org.mastodon.feature.FeatureComputerService;
 import org.mastodon.feature.FeatureModel;
@@ -111,7 +112,6 @@ public class MamutFeatureComputation
 			if ( wrapped.isCanceled() )
 				return null;
 
-			featureModel.pauseListeners();
 			// Clear feature we can compute
 			final Collection< FeatureSpec< ?, ? > > featureSpecs = featureModel.getFeatureSpecs();
 			final Collection< FeatureSpec< ?, ? > > toClear = new ArrayList<>();
@@ -119,13 +119,8 @@ public class MamutFeatureComputation
 				if ( null != wrapped.getFeatureComputerFor( featureSpec ) )
 					toClear.add( featureSpec );
 
-			for ( final FeatureSpec< ?, ? > featureSpec : toClear )
-				featureModel.clear( featureSpec );
-
-			// Pass the feature map to the feature model.
-			map.values().forEach( featureModel::declareFeature );
-
-			featureModel.resumeListeners();
+			// Pass the feature map to the feature model, in one step.
+			featureModel.replaceFeatures( toClear, map.values() );
 			return map;
 		}
 
@@ -140,5 +135,11 @@ public class MamutFeatureComputation
 		{
 			return wrapped.getDependencies( spec );
 		}
+
+		@Override
+		public FeatureComputationReport getLastComputationReport()
+		{
+			return wrapped.getLastComputationReport();
+		}
 	}
 }
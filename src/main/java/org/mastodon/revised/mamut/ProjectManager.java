@@ -3,6 +3,11 @@ package org.mastodon.revised.mamut;
 import java.awt.Component;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
 import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
@@ -11,9 +16,11 @@ import org.mastodon.project.MamutProject;
 import org.mastodon.project.MamutProjectIO;
 import org.mastodon.revised.bdv.SharedBigDataViewerData;
 import org.mastodon.revised.bdv.overlay.ui.RenderSettingsManager;
+import org.mastodon.revised.model.mamut.IncrementalProjectSaver;
 import org.mastodon.revised.model.mamut.Link;
 import org.mastodon.revised.model.mamut.MamutRawFeatureModelIO;
 import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ProjectAutosaver;
 import org.mastodon.revised.model.mamut.Spot;
 import org.mastodon.revised.model.mamut.trackmate.MamutExporter;
 import org.mastodon.revised.model.mamut.trackmate.TrackMateImporter;
@@ -50,6 +57,21 @@ public class ProjectManager
 	public static final String IMPORT_MAMUT = "import mamut";
 	public static final String EXPORT_MAMUT = "export mamut";
 
+	/**
+	 * Default interval between autosaves, in minutes.
+	 */
+	public static final long DEFAULT_AUTOSAVE_INTERVAL = 5;
+
+	/**
+	 * Number of autosave files kept.
+	 */
+	public static final int AUTOSAVE_GENERATIONS = 3;
+
+	/**
+	 * Folder of the autosave files of projects that were not saved yet.
+	 */
+	private static final String AUTOSAVE_PATH = System.getProperty( "user.home" ) + "/.mastodon/autosave/";
+
 	static final String[] CREATE_PROJECT_KEYS = new String[] { "not mapped" };
 	static final String[] LOAD_PROJECT_KEYS = new String[] { "not mapped" };
 	static final String[] SAVE_PROJECT_KEYS = new String[] { "not mapped" };
@@ -90,6 +112,19 @@ public class ProjectManager
 
 	private MamutProject project;
 
+	/**
+	 * Saves the project incrementally if it is stored in a folder, or
+	 * {@code null}.
+	 */
+	private IncrementalProjectSaver incrementalSaver;
+
+	private ProjectAutosaver autosaver;
+
+	/**
+	 * Interval between autosaves, in minutes, or 0 if autosave is disabled.
+	 */
+	private long autosaveInterval = DEFAULT_AUTOSAVE_INTERVAL;
+
 	private File proposedProjectRoot;
 
 	private final AbstractNamedAction createProjectAction;
@@ -238,15 +273,38 @@ public class ProjectManager
 		if ( project == null )
 			return;
 
+		final boolean rootChanged = !projectRoot.equals( project.getProjectRoot() );
 		project.setProjectRoot( projectRoot );
-		try (final MamutProject.ProjectWriter writer = project.openForWriting())
+		final Model model = windowManager.getAppModel().getModel();
+		if ( projectRoot.isDirectory() )
 		{
-			new MamutProjectIO().save( project, writer );
-			final Model model = windowManager.getAppModel().getModel();
-			final GraphToFileIdMap< Spot, Link > idmap = model.saveRaw( writer );
-			// Serialize feature model.
-			MamutRawFeatureModelIO.serialize( windowManager.getContext(), model.getFeatureModel(), idmap, writer );
+			// Only rewrite what changed since the last save. The first save to
+			// another folder is a full save, even if the folder holds a former
+			// save of this model.
+			if ( incrementalSaver == null || !projectRoot.equals( incrementalSaver.getProjectRoot() ) )
+				incrementalSaver = new IncrementalProjectSaver( project, model, windowManager.getContext() );
+			incrementalSaver.save();
+		}
+		else
+		{
+			incrementalSaver = null;
+			// Prevent edits from modifying the model while it is written.
+			final Lock lock = model.getGraph().getLock().readLock();
+			lock.lock();
+			try (final MamutProject.ProjectWriter writer = project.openForWriting())
+			{
+				new MamutProjectIO().save( project, writer );
+				final GraphToFileIdMap< Spot, Link > idmap = model.saveRaw( writer );
+				// Serialize feature model.
+				MamutRawFeatureModelIO.serialize( windowManager.getContext(), model.getFeatureModel(), idmap, writer );
+			}
+			finally
+			{
+				lock.unlock();
+			}
 		}
+		if ( rootChanged )
+			startAutosave();
 		updateEnabledActions();
 	}
 
@@ -306,6 +364,7 @@ public class ProjectManager
 		 */
 		final Model model = new Model( project.getSpaceUnits(), project.getTimeUnits() );
 		final boolean isNewProject = project.getProjectRoot() == null;
+		incrementalSaver = null;
 		if ( !isNewProject )
 		{
 			try (final MamutProject.ProjectReader reader = project.openForReading())
@@ -322,6 +381,10 @@ public class ProjectManager
 			{
 				e.printStackTrace();
 			}
+
+			// The loaded state of an incrementally saved project is clean.
+			if ( project.getProjectRoot().isDirectory() )
+				incrementalSaver = new IncrementalProjectSaver( project, model, windowManager.getContext(), true );
 		}
 
 		/*
@@ -355,9 +418,68 @@ public class ProjectManager
 
 		windowManager.setAppModel( appModel );
 		this.project = project;
+		startAutosave();
 		updateEnabledActions();
 	}
 
+	/**
+	 * Sets the interval between autosaves of the current and future projects.
+	 *
+	 * @param minutes
+	 *            the interval in minutes, or 0 to disable autosave.
+	 */
+	public synchronized void setAutosaveInterval( final long minutes )
+	{
+		autosaveInterval = minutes;
+		startAutosave();
+	}
+
+	/**
+	 * Autosave files are written next to the project. If the project was not
+	 * saved yet, they are written to the user autosave folder rather than next
+	 * to the image data.
+	 */
+	private void startAutosave()
+	{
+		if ( autosaver != null )
+			autosaver.dispose();
+		autosaver = null;
+		if ( project == null || autosaveInterval <= 0 )
+			return;
+
+		final File projectRoot = project.getProjectRoot();
+		final File reference = projectRoot != null ? projectRoot : project.getDatasetXmlFile();
+		final File folder = projectRoot != null ? projectRoot.getAbsoluteFile().getParentFile() : new File( AUTOSAVE_PATH );
+		final String baseName = stripExtensionIfPresent( stripExtensionIfPresent( reference.getName(), EXT_DOT_MASTODON ), ".xml" );
+		autosaver = new ProjectAutosaver(
+				project,
+				windowManager.getAppModel().getModel(),
+				windowManager.getContext(),
+				folder,
+				baseName,
+				AUTOSAVE_GENERATIONS );
+		autosaver.listeners().add( new ProjectAutosaver.AutosaveListener()
+		{
+			@Override
+			public void autosaved( final ProjectAutosaver.Result result )
+			{}
+
+			@Override
+			public void autosaveFailed( final Exception e, final boolean stopped )
+			{
+				System.err.println( "Autosave to " + folder + " failed: " + e.getMessage() );
+				if ( stopped )
+					SwingUtilities.invokeLater( () -> JOptionPane.showMessageDialog(
+							null,
+							"Autosave failed " + ProjectAutosaver.MAX_CONSECUTIVE_FAILURES + " times and was stopped.\n"
+									+ "Last error: " + e.getMessage(),
+							"Autosave stopped",
+							JOptionPane.WARNING_MESSAGE ) );
+			}
+		} );
+		autosaver.start( autosaveInterval, TimeUnit.MINUTES );
+	}
+
 	public synchronized void importTgmm()
 	{
 		if ( project == null )
@@ -0,0 +1,1177 @@
+package org.mastodon.revised.model.mamut;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.mastodon.RefPool;
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
+import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
+import org.mastodon.io.FileIdToObjectMap;
+import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.revised.model.tag.DefaultTagSetModel;
+import org.mastodon.revised.model.tag.RawTagSetModelIO;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Reads and writes the {@link ModelGraph} and tags of a {@link Model} in a
+ * versioned, columnar binary format.
+ * <p>
+ * The file starts with a header holding a directory of blocks. Each block
+ * stores one attribute (column) for a contiguous range of objects, and the
+ * directory gives its name, the range of timepoints and file ids it covers,
+ * and its byte offset and length in the file. Readers can therefore skip
+ * directly to the columns and timepoints they need.
+ * <p>
+ * Spots are numbered (given a file id) in the order of their timepoint, and
+ * split in groups of consecutive timepoints of about
+ * {@link #MAX_SPOTS_PER_BLOCK} spots. Links are numbered in the order of their
+ * source spot, then in the order of the outgoing edges of the source, and are
+ * grouped with their source spot. All spot blocks come first, then all link
+ * blocks, then the tags.
+ * <p>
+ * Layout, all values big-endian:
+ *
+ * <pre>
+ * int     magic
+ * int     version
+ * int     number of spots
+ * int     number of links
+ * int     number of blocks
+ * for each block:
+ *   UTF   column name
+ *   int   first timepoint (inclusive, -1 if not applicable)
+ *   int   last timepoint (inclusive, -1 if not applicable)
+ *   int   file id of the first object
+ *   int   number of objects
+ *   long  offset of the block from the start of the file
+ *   long  length of the block in bytes
+ * block data
+ * </pre>
+ *
+ * Columns:
+ * <ul>
+ * <li>{@value #SPOT_TIMEPOINT}: one {@code int} per spot.</li>
+ * <li>{@value #SPOT_POSITION}: three {@code double}s per spot.</li>
+ * <li>{@value #SPOT_COVARIANCE}: six {@code double}s per spot, the upper
+ * triangle of the covariance matrix, row by row.</li>
+ * <li>{@value #SPOT_RADIUS}: one {@code double} per spot, the squared bounding
+ * sphere radius.</li>
+ * <li>{@value #SPOT_LABEL}: per spot, the {@code int} length of the UTF-8
+ * encoded label followed by its bytes, or -1 if the label is not set.</li>
+ * <li>{@value #LINK_SOURCE}, {@value #LINK_TARGET}: one {@code int} spot file
+ * id per link.</li>
+ * <li>{@value #TAGS}: the tag set structure and tag assignments, as written by
+ * {@link RawTagSetModelIO}.</li>
+ * </ul>
+ * Features are not part of this file. They are stored one file per feature,
+ * and can already be read independently.
+ * <p>
+ * Blocks can also be spread over several data files, that hold only block
+ * data, and be listed in a separate directory file. This allows to rewrite
+ * only the modified blocks of a model (see {@link Writer#writeBlocks}). The
+ * directory file starts with {@code "MDIR"} instead of {@code "MCOL"}, and
+ * each block entry starts with the UTF name of its data file, relative to the
+ * directory file.
+ */
+public class ColumnarModelIO
+{
+	/**
+	 * "MCOL".
+	 */
+	private static final int MAGIC = 0x4d434f4c;
+
+	/**
+	 * "MDIR".
+	 */
+	private static final int MAGIC_DIRECTORY = 0x4d444952;
+
+	/**
+	 * The version of the format written by this class.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * A new group of spot blocks starts at the first timepoint after this
+	 * number of spots is reached.
+	 */
+	public static final int MAX_SPOTS_PER_BLOCK = 1 << 16;
+
+	public static final String SPOT_TIMEPOINT = "spot.timepoint";
+
+	public static final String SPOT_POSITION = "spot.position";
+
+	public static final String SPOT_COVARIANCE = "spot.covariance";
+
+	public static final String SPOT_RADIUS = "spot.boundingSphereRadiusSqu";
+
+	public static final String SPOT_LABEL = "spot.label";
+
+	public static final String LINK_SOURCE = "link.source";
+
+	public static final String LINK_TARGET = "link.target";
+
+	public static final String TAGS = "tags";
+
+	private static final List< String > SPOT_COLUMNS = Arrays.asList( SPOT_TIMEPOINT, SPOT_POSITION, SPOT_COVARIANCE, SPOT_RADIUS, SPOT_LABEL );
+
+	private static final List< String > LINK_COLUMNS = Arrays.asList( LINK_SOURCE, LINK_TARGET );
+
+	/**
+	 * A directory entry: the location of one column for a range of objects.
+	 */
+	public static final class Block
+	{
+		private final String name;
+
+		private final int firstTimepoint;
+
+		private final int lastTimepoint;
+
+		private final int firstIndex;
+
+		private final int count;
+
+		private long offset;
+
+		private final long length;
+
+		private final String file;
+
+		Block( final String name, final int firstTimepoint, final int lastTimepoint, final int firstIndex, final int count, final long offset, final long length )
+		{
+			this( name, firstTimepoint, lastTimepoint, firstIndex, count, offset, length, null );
+		}
+
+		Block( final String name, final int firstTimepoint, final int lastTimepoint, final int firstIndex, final int count, final long offset, final long length, final String file )
+		{
+			this.name = name;
+			this.firstTimepoint = firstTimepoint;
+			this.lastTimepoint = lastTimepoint;
+			this.firstIndex = firstIndex;
+			this.count = count;
+			this.offset = offset;
+			this.length = length;
+			this.file = file;
+		}
+
+		/**
+		 * @return the column name.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return the first timepoint covered by this block, inclusive, or -1
+		 *         if the column is not split by timepoints.
+		 */
+		public int getFirstTimepoint()
+		{
+			return firstTimepoint;
+		}
+
+		/**
+		 * @return the last timepoint covered by this block, inclusive, or -1
+		 *         if the column is not split by timepoints.
+		 */
+		public int getLastTimepoint()
+		{
+			return lastTimepoint;
+		}
+
+		/**
+		 * @return the file id of the first object in this block.
+		 */
+		public int getFirstIndex()
+		{
+			return firstIndex;
+		}
+
+		/**
+		 * @return the number of objects in this block.
+		 */
+		public int getCount()
+		{
+			return count;
+		}
+
+		/**
+		 * @return the name of the data file holding this block, relative to
+		 *         the directory file, or {@code null} if the block is stored in
+		 *         the same file as the directory.
+		 */
+		public String getFile()
+		{
+			return file;
+		}
+
+		/**
+		 * Whether this block holds the same column for the same objects as the
+		 * specified block.
+		 *
+		 * @param other
+		 *            the other block.
+		 * @return {@code true} if name, timepoints and file ids match.
+		 */
+		public boolean covers( final Block other )
+		{
+			return name.equals( other.name )
+					&& firstTimepoint == other.firstTimepoint
+					&& lastTimepoint == other.lastTimepoint
+					&& firstIndex == other.firstIndex
+					&& count == other.count;
+		}
+
+		/**
+		 * @return the offset of this block from the start of the file, in
+		 *         bytes.
+		 */
+		public long getOffset()
+		{
+			return offset;
+		}
+
+		/**
+		 * @return the length of this block, in bytes.
+		 */
+		public long getLength()
+		{
+			return length;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "%s [t=%d..%d, id=%d+%d] %s@%d+%d", name, firstTimepoint, lastTimepoint, firstIndex, count, file == null ? "" : file, offset, length );
+		}
+
+		private int headerSize()
+		{
+			return 2 + name.getBytes( StandardCharsets.UTF_8 ).length + 4 * 4 + 2 * 8;
+		}
+	}
+
+	/**
+	 * The header of a columnar model file.
+	 */
+	public static final class Directory
+	{
+		private final int version;
+
+		private final int numSpots;
+
+		private final int numLinks;
+
+		private final List< Block > blocks;
+
+		/**
+		 * Creates a directory with the same objects as this one, but with the
+		 * specified blocks, e.g. after some of the blocks were relocated.
+		 *
+		 * @param blocks
+		 *            the new blocks.
+		 * @return a new directory.
+		 */
+		public Directory withBlocks( final List< Block > blocks )
+		{
+			return new Directory( version, numSpots, numLinks, new ArrayList<>( blocks ) );
+		}
+
+		Directory( final int version, final int numSpots, final int numLinks, final List< Block > blocks )
+		{
+			this.version = version;
+			this.numSpots = numSpots;
+			this.numLinks = numLinks;
+			this.blocks = Collections.unmodifiableList( blocks );
+		}
+
+		public int getVersion()
+		{
+			return version;
+		}
+
+		public int getNumSpots()
+		{
+			return numSpots;
+		}
+
+		public int getNumLinks()
+		{
+			return numLinks;
+		}
+
+		/**
+		 * @return all blocks, in the order of their offsets.
+		 */
+		public List< Block > getBlocks()
+		{
+			return blocks;
+		}
+
+		/**
+		 * Returns the blocks of the specified column that hold objects of the
+		 * specified range of timepoints. The blocks may also hold objects of
+		 * other timepoints.
+		 *
+		 * @param name
+		 *            the column name.
+		 * @param fromTimepoint
+		 *            the first timepoint, inclusive.
+		 * @param toTimepoint
+		 *            the last timepoint, inclusive.
+		 * @return the list of blocks, in the order of their offsets.
+		 */
+		public List< Block > getBlocks( final String name, final int fromTimepoint, final int toTimepoint )
+		{
+			final List< Block > list = new ArrayList<>();
+			for ( final Block block : blocks )
+				if ( block.name.equals( name )
+						&& block.firstTimepoint <= toTimepoint
+						&& block.lastTimepoint >= fromTimepoint )
+					list.add( block );
+			return list;
+		}
+
+		/**
+		 * @return the size of the header in bytes, that is the offset of the
+		 *         first block.
+		 */
+		public long getHeaderSize()
+		{
+			long size = 5 * 4;
+			for ( final Block block : blocks )
+				size += block.headerSize();
+			return size;
+		}
+	}
+
+	/**
+	 * Writes the specified graph and tags to the specified stream. The stream
+	 * is closed when done.
+	 *
+	 * @param graph
+	 *            the graph to write.
+	 * @param tagSetModel
+	 *            the tags of the graph.
+	 * @param os
+	 *            the stream to write to.
+	 * @return the map from spots and links to the ids used in the file.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing.
+	 */
+	public static GraphToFileIdMap< Spot, Link > write(
+			final ModelGraph graph,
+			final DefaultTagSetModel< Spot, Link > tagSetModel,
+			final OutputStream os ) throws IOException
+	{
+		final Writer writer = new Writer( graph, tagSetModel );
+		writer.write( os );
+		return writer.getIdMap();
+	}
+
+	/**
+	 * Clears the specified graph and reads it from the specified stream. Tags
+	 * are read into the specified tag set model, that should be cleared and
+	 * have its listeners paused by the caller. The stream is closed when
+	 * done.
+	 *
+	 * @param graph
+	 *            the graph to read into.
+	 * @param tagSetModel
+	 *            the tag set model to read into.
+	 * @param is
+	 *            the stream to read from.
+	 * @return the map from the ids used in the file to spots and links.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading, or if the file is not
+	 *             in a supported format.
+	 */
+	public static FileIdToGraphMap< Spot, Link > read(
+			final ModelGraph graph,
+			final DefaultTagSetModel< Spot, Link > tagSetModel,
+			final InputStream is ) throws IOException
+	{
+		try ( final DataInputStream dis = new DataInputStream( new BufferedInputStream( is, 1024 * 1024 ) ) )
+		{
+			final Directory directory = readDirectory( dis );
+			final StreamBlockReader blockReader = new StreamBlockReader( dis, directory.getHeaderSize() );
+			return read( graph, tagSetModel, directory, blockReader );
+		}
+	}
+
+	/**
+	 * Clears the specified graph and reads it from the specified file channel.
+	 * Blocks are memory-mapped and decoded column by column with bulk copies,
+	 * instead of being read through a stream. Tags are read into the
+	 * specified tag set model, that should be cleared and have its listeners
+	 * paused by the caller. The channel is closed when done.
+	 *
+	 * @param graph
+	 *            the graph to read into.
+	 * @param tagSetModel
+	 *            the tag set model to read into.
+	 * @param channel
+	 *            the channel to read from.
+	 * @return the map from the ids used in the file to spots and links.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading, or if the file is not
+	 *             in a supported format.
+	 */
+	public static FileIdToGraphMap< Spot, Link > read(
+			final ModelGraph graph,
+			final DefaultTagSetModel< Spot, Link > tagSetModel,
+			final FileChannel channel ) throws IOException
+	{
+		try ( final FileChannel fc = channel )
+		{
+			final Directory directory = readDirectory( new DataInputStream( new BufferedInputStream( Channels.newInputStream( fc.position( 0 ) ) ) ) );
+			return read( graph, tagSetModel, directory, block -> map( fc, block ) );
+		}
+	}
+
+	/**
+	 * Clears the specified graph and reads it from the specified directory
+	 * file, written by {@link #writeDirectoryFile(Directory, OutputStream)}.
+	 * The data files listed in the directory are memory-mapped. Tags are read
+	 * into the specified tag set model, that should be cleared and have its
+	 * listeners paused by the caller.
+	 *
+	 * @param graph
+	 *            the graph to read into.
+	 * @param tagSetModel
+	 *            the tag set model to read into.
+	 * @param directoryFile
+	 *            the directory file.
+	 * @return the map from the ids used in the file to spots and links.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading, or if the files are
+	 *             not in a supported format.
+	 */
+	public static FileIdToGraphMap< Spot, Link > read(
+			final ModelGraph graph,
+			final DefaultTagSetModel< Spot, Link > tagSetModel,
+			final File directoryFile ) throws IOException
+	{
+		final Directory directory = readDirectoryFile( directoryFile );
+		final Map< String, FileChannel > channels = new HashMap<>();
+		try
+		{
+			return read( graph, tagSetModel, directory, block -> {
+				if ( block.file == null )
+					throw new IOException( "Block " + block + " does not specify a data file." );
+				FileChannel fc = channels.get( block.file );
+				if ( fc == null )
+				{
+					fc = FileChannel.open( new File( directoryFile.getParentFile(), block.file ).toPath(), StandardOpenOption.READ );
+					channels.put( block.file, fc );
+				}
+				return map( fc, block );
+			} );
+		}
+		finally
+		{
+			for ( final FileChannel fc : channels.values() )
+				fc.close();
+		}
+	}
+
+	private static ByteBuffer map( final FileChannel fc, final Block block ) throws IOException
+	{
+		if ( block.offset + block.length > fc.size() )
+			throw new EOFException( "Block " + block + " extends beyond the end of the file." );
+		return fc.map( MapMode.READ_ONLY, block.offset, block.length );
+	}
+
+	/**
+	 * Provides the data of blocks. Blocks are requested in the order of the
+	 * directory.
+	 */
+	@FunctionalInterface
+	private interface BlockReader
+	{
+		ByteBuffer read( Block block ) throws IOException;
+	}
+
+	private static FileIdToGraphMap< Spot, Link > read(
+			final ModelGraph graph,
+			final DefaultTagSetModel< Spot, Link > tagSetModel,
+			final Directory directory,
+			final BlockReader blockReader ) throws IOException
+	{
+		final TIntIntHashMap fileIdToSpot = new TIntIntHashMap( Math.max( 10, directory.numSpots ), 0.5f, -1, -1 );
+		final TIntIntHashMap fileIdToLink = new TIntIntHashMap( Math.max( 10, directory.numLinks ), 0.5f, -1, -1 );
+		final Map< String, ByteBuffer > columns = new HashMap<>();
+		ByteBuffer tags = null;
+
+		graph.pauseListeners();
+		graph.clear();
+		for ( final Block block : directory.blocks )
+		{
+			// Unknown columns are skipped.
+			if ( !SPOT_COLUMNS.contains( block.name ) && !LINK_COLUMNS.contains( block.name ) && !TAGS.equals( block.name ) )
+				continue;
+
+			final ByteBuffer buffer = blockReader.read( block );
+			if ( TAGS.equals( block.name ) )
+				tags = buffer;
+			else
+				columns.put( block.name, buffer );
+
+			if ( columns.keySet().containsAll( SPOT_COLUMNS ) )
+			{
+				addSpots( graph, block, columns, fileIdToSpot );
+				columns.clear();
+			}
+			else if ( columns.keySet().containsAll( LINK_COLUMNS ) )
+			{
+				addLinks( graph, block, columns, fileIdToSpot, fileIdToLink );
+				columns.clear();
+			}
+		}
+		graph.resumeListeners();
+
+		final FileIdToGraphMap< Spot, Link > idmap = new FileIdToGraphMap<>(
+				new FileIdToObjectMap<>( fileIdToSpot, graph.vertices().getRefPool() ),
+				new FileIdToObjectMap<>( fileIdToLink, graph.edges().getRefPool() ) );
+
+		if ( tags != null )
+		{
+			final byte[] bytes = new byte[ tags.remaining() ];
+			tags.get( bytes );
+			try ( final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bytes ) ) )
+			{
+				RawTagSetModelIO.read( tagSetModel, idmap, ois );
+			}
+		}
+
+		return idmap;
+	}
+
+	/**
+	 * Reads the header of a columnar model file. The stream is left positioned
+	 * at the end of the header, that is at offset
+	 * {@link Directory#getHeaderSize()}.
+	 *
+	 * @param dis
+	 *            the stream, positioned at the start of the file.
+	 * @return the directory.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading, or if the file is not
+	 *             in a supported format.
+	 */
+	public static Directory readDirectory( final DataInputStream dis ) throws IOException
+	{
+		if ( dis.readInt() != MAGIC )
+			throw new IOException( "Not a columnar model file." );
+		return readHeader( dis, false );
+	}
+
+	/**
+	 * Reads a directory file.
+	 *
+	 * @param file
+	 *            the directory file.
+	 * @return the directory. The data file of each block is set.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading, or if the file is not
+	 *             in a supported format.
+	 */
+	public static Directory readDirectoryFile( final File file ) throws IOException
+	{
+		try ( final DataInputStream dis = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) ) )
+		{
+			if ( dis.readInt() != MAGIC_DIRECTORY )
+				throw new IOException( "Not a columnar model directory file." );
+			return readHeader( dis, true );
+		}
+	}
+
+	/**
+	 * Writes a directory file, listing blocks stored in separate data files.
+	 * The stream is closed when done.
+	 *
+	 * @param directory
+	 *            the directory. The data file of each block must be set.
+	 * @param os
+	 *            the stream to write to.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing.
+	 */
+	public static void writeDirectoryFile( final Directory directory, final OutputStream os ) throws IOException
+	{
+		for ( final Block block : directory.blocks )
+			if ( block.file == null )
+				throw new IllegalArgumentException( "Block " + block + " does not specify a data file." );
+		try ( final DataOutputStream dos = new DataOutputStream( new BufferedOutputStream( os ) ) )
+		{
+			dos.writeInt( MAGIC_DIRECTORY );
+			writeHeader( directory, dos, true );
+		}
+	}
+
+	private static Directory readHeader( final DataInputStream dis, final boolean withFiles ) throws IOException
+	{
+		final int version = dis.readInt();
+		if ( version > VERSION )
+			throw new IOException( "Columnar model file version " + version + " is not supported. Latest supported version is " + VERSION + "." );
+		final int numSpots = dis.readInt();
+		final int numLinks = dis.readInt();
+		final int numBlocks = dis.readInt();
+		final List< Block > blocks = new ArrayList<>( numBlocks );
+		for ( int i = 0; i < numBlocks; i++ )
+		{
+			final String file = withFiles ? dis.readUTF() : null;
+			blocks.add( new Block(
+					dis.readUTF(),
+					dis.readInt(),
+					dis.readInt(),
+					dis.readInt(),
+					dis.readInt(),
+					dis.readLong(),
+					dis.readLong(),
+					file ) );
+		}
+		return new Directory( version, numSpots, numLinks, blocks );
+	}
+
+	private static void writeHeader( final Directory directory, final DataOutputStream dos, final boolean withFiles ) throws IOException
+	{
+		dos.writeInt( directory.version );
+		dos.writeInt( directory.numSpots );
+		dos.writeInt( directory.numLinks );
+		dos.writeInt( directory.blocks.size() );
+		for ( final Block block : directory.blocks )
+		{
+			if ( withFiles )
+				dos.writeUTF( block.file );
+			dos.writeUTF( block.name );
+			dos.writeInt( block.firstTimepoint );
+			dos.writeInt( block.lastTimepoint );
+			dos.writeInt( block.firstIndex );
+			dos.writeInt( block.count );
+			dos.writeLong( block.offset );
+			dos.writeLong( block.length );
+		}
+	}
+
+	/**
+	 * Decodes a column of {@code int}s.
+	 *
+	 * @param buffer
+	 *            the block data, positioned at the start of the block.
+	 * @param block
+	 *            the block.
+	 * @return one {@code int} per object of the block.
+	 */
+	public static int[] getInts( final ByteBuffer buffer, final Block block )
+	{
+		final int[] values = new int[ block.count ];
+		buffer.asIntBuffer().get( values );
+		return values;
+	}
+
+	/**
+	 * Decodes a column of {@code double}s.
+	 *
+	 * @param buffer
+	 *            the block data, positioned at the start of the block.
+	 * @param block
+	 *            the block.
+	 * @param components
+	 *            the number of {@code double}s per object.
+	 * @return {@code components} {@code double}s per object of the block.
+	 */
+	public static double[] getDoubles( final ByteBuffer buffer, final Block block, final int components )
+	{
+		final double[] values = new double[ block.count * components ];
+		buffer.asDoubleBuffer().get( values );
+		return values;
+	}
+
+	/**
+	 * Decodes a column of strings.
+	 *
+	 * @param buffer
+	 *            the block data, positioned at the start of the block.
+	 * @param block
+	 *            the block.
+	 * @return one string per object of the block, {@code null} if not set.
+	 */
+	public static String[] getStrings( final ByteBuffer buffer, final Block block )
+	{
+		final ByteBuffer b = buffer.duplicate();
+		final String[] values = new String[ block.count ];
+		for ( int i = 0; i < block.count; i++ )
+		{
+			final int length = b.getInt();
+			if ( length >= 0 )
+			{
+				final byte[] bytes = new byte[ length ];
+				b.get( bytes );
+				values[ i ] = new String( bytes, StandardCharsets.UTF_8 );
+			}
+		}
+		return values;
+	}
+
+	private static void addSpots( final ModelGraph graph, final Block block, final Map< String, ByteBuffer > columns, final TIntIntHashMap fileIdToSpot )
+	{
+		final int[] timepoints = getInts( columns.get( SPOT_TIMEPOINT ), block );
+		final double[] positions = getDoubles( columns.get( SPOT_POSITION ), block, 3 );
+		final double[] covariances = getDoubles( columns.get( SPOT_COVARIANCE ), block, 6 );
+		final double[] radii = getDoubles( columns.get( SPOT_RADIUS ), block, 1 );
+		final String[] labels = getStrings( columns.get( SPOT_LABEL ), block );
+
+		final SpotPool pool = graph.getVertexPool();
+		final Spot ref = graph.vertexRef();
+		final double[] pos = new double[ 3 ];
+		final double[] cov = new double[ 6 ];
+		for ( int i = 0; i < block.count; i++ )
+		{
+			System.arraycopy( positions, 3 * i, pos, 0, 3 );
+			System.arraycopy( covariances, 6 * i, cov, 0, 6 );
+			final Spot spot = graph.addVertex( ref ).init( timepoints[ i ], pos, cov, radii[ i ] );
+			if ( labels[ i ] != null )
+				pool.label.set( spot, labels[ i ] );
+			fileIdToSpot.put( block.firstIndex + i, spot.getInternalPoolIndex() );
+		}
+		graph.releaseRef( ref );
+	}
+
+	private static void addLinks( final ModelGraph graph, final Block block, final Map< String, ByteBuffer > columns, final TIntIntHashMap fileIdToSpot, final TIntIntHashMap fileIdToLink )
+	{
+		final int[] sources = getInts( columns.get( LINK_SOURCE ), block );
+		final int[] targets = getInts( columns.get( LINK_TARGET ), block );
+
+		final RefPool< Spot > spotPool = graph.vertices().getRefPool();
+		final Spot sref = graph.vertexRef();
+		final Spot tref = graph.vertexRef();
+		final Link eref = graph.edgeRef();
+		for ( int i = 0; i < block.count; i++ )
+		{
+			final Spot source = spotPool.getObject( fileIdToSpot.get( sources[ i ] ), sref );
+			final Spot target = spotPool.getObject( fileIdToSpot.get( targets[ i ] ), tref );
+			final Link link = graph.addEdge( source, target, eref ).init();
+			fileIdToLink.put( block.firstIndex + i, link.getInternalPoolIndex() );
+		}
+		graph.releaseRef( sref );
+		graph.releaseRef( tref );
+		graph.releaseRef( eref );
+	}
+
+	/**
+	 * Reads blocks sequentially from a stream, skipping the data between
+	 * them.
+	 */
+	private static class StreamBlockReader implements BlockReader
+	{
+		private final DataInputStream dis;
+
+		private long position;
+
+		StreamBlockReader( final DataInputStream dis, final long position )
+		{
+			this.dis = dis;
+			this.position = position;
+		}
+
+		@Override
+		public ByteBuffer read( final Block block ) throws IOException
+		{
+			if ( block.offset < position )
+				throw new IOException( "Blocks are not stored in the order of the directory." );
+			if ( block.length > Integer.MAX_VALUE )
+				throw new IOException( "Block " + block + " is too large." );
+
+			long n = block.offset - position;
+			while ( n > 0 )
+			{
+				final long skipped = dis.skip( n );
+				if ( skipped <= 0 )
+					throw new EOFException();
+				n -= skipped;
+			}
+
+			final byte[] bytes = new byte[ ( int ) block.length ];
+			dis.readFully( bytes );
+			position = block.offset + block.length;
+			return ByteBuffer.wrap( bytes );
+		}
+	}
+
+	/**
+	 * Collects the graph and tags into columns, then writes them, either as a
+	 * self-contained file with {@link #write(OutputStream)}, or selected blocks
+	 * into a data file with {@link #writeBlocks(List, String, OutputStream)}.
+	 * <p>
+	 * Spots and links are numbered, and all columns are copied into arrays,
+	 * when the writer is created. The graph is not accessed afterwards, so the
+	 * writer is a consistent snapshot of the graph if it is created while
+	 * holding the graph read lock, and can be written while the graph is
+	 * modified.
+	 */
+	public static final class Writer
+	{
+		private final ModelGraph graph;
+
+		private final int numSpots;
+
+		private final int numLinks;
+
+		/**
+		 * Pool index of each spot, by file id.
+		 */
+		private final int[] spotIds;
+
+		/**
+		 * Source and target spot file id of each link, by file id.
+		 */
+		private final int[] linkSources;
+
+		private final int[] linkTargets;
+
+		/**
+		 * Timepoint of each spot, by file id.
+		 */
+		private final int[] timepoints;
+
+		/**
+		 * Position (3 values), covariance (6 values) and squared bounding
+		 * sphere radius of each spot, by file id.
+		 */
+		private final double[] positions;
+
+		private final double[] covariances;
+
+		private final double[] radii;
+
+		/**
+		 * UTF-8 encoded label of each spot, by file id, or {@code null}.
+		 */
+		private final byte[][] labels;
+
+		private final TIntIntHashMap spotToFileId;
+
+		private final TIntIntHashMap linkToFileId;
+
+		private final List< Block > blocks = new ArrayList<>();
+
+		private final GraphToFileIdMap< Spot, Link > idmap;
+
+		private final ByteArrayOutputStream tags;
+
+		/**
+		 * Numbers the spots and links of the specified graph, serializes the
+		 * tags and creates the directory.
+		 *
+		 * @param graph
+		 *            the graph to write.
+		 * @param tagSetModel
+		 *            the tags of the graph.
+		 * @throws IOException
+		 *             if an I/O error occurs while serializing the tags.
+		 */
+		public Writer( final ModelGraph graph, final DefaultTagSetModel< Spot, Link > tagSetModel ) throws IOException
+		{
+			this.graph = graph;
+			numSpots = graph.vertices().size();
+			numLinks = graph.edges().size();
+			spotIds = new int[ numSpots ];
+			linkSources = new int[ numLinks ];
+			linkTargets = new int[ numLinks ];
+			timepoints = new int[ numSpots ];
+			positions = new double[ 3 * numSpots ];
+			covariances = new double[ 6 * numSpots ];
+			radii = new double[ numSpots ];
+			labels = new byte[ numSpots ][];
+			spotToFileId = new TIntIntHashMap( Math.max( 10, numSpots ), 0.5f, -1, -1 );
+			linkToFileId = new TIntIntHashMap( Math.max( 10, numLinks ), 0.5f, -1, -1 );
+
+			numberSpots();
+			numberLinks();
+
+			idmap = new GraphToFileIdMap<>(
+					new ObjectToFileIdMap<>( spotToFileId, graph.vertices().getRefPool() ),
+					new ObjectToFileIdMap<>( linkToFileId, graph.edges().getRefPool() ) );
+
+			tags = new ByteArrayOutputStream();
+			try ( final ObjectOutputStream oos = new ObjectOutputStream( tags ) )
+			{
+				RawTagSetModelIO.write( tagSetModel, idmap, oos );
+			}
+
+			createBlocks( tags.size() );
+		}
+
+		/**
+		 * @return the map from spots and links to the ids used in the file.
+		 */
+		public GraphToFileIdMap< Spot, Link > getIdMap()
+		{
+			return idmap;
+		}
+
+		/**
+		 * @return the directory of a self-contained file, as written by
+		 *         {@link #write(OutputStream)}.
+		 */
+		public Directory getDirectory()
+		{
+			return new Directory( VERSION, numSpots, numLinks, new ArrayList<>( blocks ) );
+		}
+
+		/**
+		 * @return the CRC32 checksum of the serialized tags, to detect changes
+		 *         of the tags between two saves.
+		 */
+		public long getTagsChecksum()
+		{
+			final CRC32 crc = new CRC32();
+			crc.update( tags.toByteArray() );
+			return crc.getValue();
+		}
+
+		/**
+		 * Writes a self-contained file, header and all blocks, to the
+		 * specified stream. The stream is closed when done.
+		 *
+		 * @param os
+		 *            the stream to write to.
+		 * @throws IOException
+		 *             if an I/O error occurs while writing.
+		 */
+		public void write( final OutputStream os ) throws IOException
+		{
+			try ( final DataOutputStream dos = new DataOutputStream( new BufferedOutputStream( os, 1024 * 1024 ) ) )
+			{
+				dos.writeInt( MAGIC );
+				writeHeader( getDirectory(), dos, false );
+				for ( final Block block : blocks )
+					writeBlock( block, dos );
+			}
+		}
+
+		/**
+		 * Writes the data of the specified blocks, without header, to the
+		 * specified stream, in the specified order. The stream is closed when
+		 * done.
+		 *
+		 * @param selected
+		 *            blocks of {@link #getDirectory()}.
+		 * @param file
+		 *            the name of the data file the stream writes to.
+		 * @param os
+		 *            the stream to write to.
+		 * @return the written blocks, located in {@code file}.
+		 * @throws IOException
+		 *             if an I/O error occurs while writing.
+		 */
+		public List< Block > writeBlocks( final List< Block > selected, final String file, final OutputStream os ) throws IOException
+		{
+			final List< Block > written = new ArrayList<>( selected.size() );
+			try ( final DataOutputStream dos = new DataOutputStream( new BufferedOutputStream( os, 1024 * 1024 ) ) )
+			{
+				long offset = 0;
+				for ( final Block block : selected )
+				{
+					writeBlock( block, dos );
+					written.add( new Block( block.name, block.firstTimepoint, block.lastTimepoint, block.firstIndex, block.count, offset, block.length, file ) );
+					offset += block.length;
+				}
+			}
+			return written;
+		}
+
+		/**
+		 * Assigns file ids to spots in the order of their timepoint, and copies
+		 * their attributes.
+		 */
+		private void numberSpots()
+		{
+			final long[] keys = new long[ numSpots ];
+			int i = 0;
+			for ( final Spot spot : graph.vertices() )
+				keys[ i++ ] = ( ( long ) spot.getTimepoint() << 32 ) | spot.getInternalPoolIndex();
+			Arrays.sort( keys );
+
+			final SpotPool pool = graph.getVertexPool();
+			final Spot ref = graph.vertexRef();
+			for ( i = 0; i < numSpots; i++ )
+			{
+				final int id = ( int ) keys[ i ];
+				spotIds[ i ] = id;
+				spotToFileId.put( id, i );
+				final Spot spot = pool.getObject( id, ref );
+				timepoints[ i ] = spot.getTimepoint();
+				for ( int d = 0; d < 3; d++ )
+					positions[ 3 * i + d ] = spot.getDoublePosition( d );
+				for ( int c = 0; c < 6; c++ )
+					covariances[ 6 * i + c ] = pool.covariance.get( spot, c );
+				radii[ i ] = spot.getBoundingSphereRadiusSquared();
+				if ( pool.label.isSet( spot ) )
+					labels[ i ] = pool.label.get( spot ).getBytes( StandardCharsets.UTF_8 );
+			}
+			graph.releaseRef( ref );
+		}
+
+		/**
+		 * Assigns file ids to links in the order of their source spot, then of
+		 * the outgoing edges of the source.
+		 */
+		private void numberLinks()
+		{
+			final SpotPool pool = graph.getVertexPool();
+			final Spot ref = graph.vertexRef();
+			final Spot tref = graph.vertexRef();
+			int l = 0;
+			for ( int i = 0; i < numSpots; i++ )
+			{
+				final Spot spot = pool.getObject( spotIds[ i ], ref );
+				for ( final Link link : spot.outgoingEdges() )
+				{
+					final int id = link.getInternalPoolIndex();
+					linkToFileId.put( id, l );
+					linkSources[ l ] = i;
+					linkTargets[ l ] = spotToFileId.get( link.getTarget( tref ).getInternalPoolIndex() );
+					++l;
+				}
+			}
+			graph.releaseRef( ref );
+			graph.releaseRef( tref );
+		}
+
+		/**
+		 * Groups spots by timepoint ranges and creates the directory.
+		 */
+		private void createBlocks( final int tagsLength )
+		{
+			final List< Block > linkBlocks = new ArrayList<>();
+			int from = 0;
+			int linkFrom = 0;
+			while ( from < numSpots )
+			{
+				final int firstTimepoint = timepoints[ from ];
+				int lastTimepoint = firstTimepoint;
+				int to = from + 1;
+				while ( to < numSpots )
+				{
+					final int t = timepoints[ to ];
+					if ( t != lastTimepoint && to - from >= MAX_SPOTS_PER_BLOCK )
+						break;
+					lastTimepoint = t;
+					++to;
+				}
+
+				final int n = to - from;
+				long labelsLength = 4L * n;
+				for ( int i = from; i < to; i++ )
+					if ( labels[ i ] != null )
+						labelsLength += labels[ i ].length;
+				blocks.add( new Block( SPOT_TIMEPOINT, firstTimepoint, lastTimepoint, from, n, 0, 4L * n ) );
+				blocks.add( new Block( SPOT_POSITION, firstTimepoint, lastTimepoint, from, n, 0, 3 * 8L * n ) );
+				blocks.add( new Block( SPOT_COVARIANCE, firstTimepoint, lastTimepoint, from, n, 0, 6 * 8L * n ) );
+				blocks.add( new Block( SPOT_RADIUS, firstTimepoint, lastTimepoint, from, n, 0, 8L * n ) );
+				blocks.add( new Block( SPOT_LABEL, firstTimepoint, lastTimepoint, from, n, 0, labelsLength ) );
+
+				int linkTo = linkFrom;
+				while ( linkTo < numLinks && linkSources[ linkTo ] < to )
+					++linkTo;
+				final int m = linkTo - linkFrom;
+				if ( m > 0 )
+				{
+					linkBlocks.add( new Block( LINK_SOURCE, firstTimepoint, lastTimepoint, linkFrom, m, 0, 4L * m ) );
+					linkBlocks.add( new Block( LINK_TARGET, firstTimepoint, lastTimepoint, linkFrom, m, 0, 4L * m ) );
+				}
+
+				from = to;
+				linkFrom = linkTo;
+			}
+			blocks.addAll( linkBlocks );
+			blocks.add( new Block( TAGS, -1, -1, 0, 0, 0, tagsLength ) );
+
+			long offset = new Directory( VERSION, numSpots, numLinks, blocks ).getHeaderSize();
+			for ( final Block block : blocks )
+			{
+				block.offset = offset;
+				offset += block.length;
+			}
+		}
+
+		private void writeBlock( final Block block, final DataOutputStream dos ) throws IOException
+		{
+			final int from = block.firstIndex;
+			final int to = from + block.count;
+			switch ( block.name )
+			{
+			case TAGS:
+				tags.writeTo( dos );
+				break;
+			case SPOT_TIMEPOINT:
+				for ( int i = from; i < to; i++ )
+					dos.writeInt( timepoints[ i ] );
+				break;
+			case SPOT_POSITION:
+				for ( int i = 3 * from; i < 3 * to; i++ )
+					dos.writeDouble( positions[ i ] );
+				break;
+			case SPOT_COVARIANCE:
+				for ( int i = 6 * from; i < 6 * to; i++ )
+					dos.writeDouble( covariances[ i ] );
+				break;
+			case SPOT_RADIUS:
+				for ( int i = from; i < to; i++ )
+					dos.writeDouble( radii[ i ] );
+				break;
+			case SPOT_LABEL:
+				for ( int i = from; i < to; i++ )
+				{
+					if ( labels[ i ] == null )
+						dos.writeInt( -1 );
+					else
+					{
+						dos.writeInt( labels[ i ].length );
+						dos.write( labels[ i ] );
+					}
+				}
+				break;
+			case LINK_SOURCE:
+				for ( int i = from; i < to; i++ )
+					dos.writeInt( linkSources[ i ] );
+				break;
+			case LINK_TARGET:
+				for ( int i = from; i < to; i++ )
+					dos.writeInt( linkTargets[ i ] );
+				break;
+			default:
+				throw new IllegalArgumentException( "Unknown column " + block.name );
+			}
+		}
+	}
+}
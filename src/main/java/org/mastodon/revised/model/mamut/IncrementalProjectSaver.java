@@ -0,0 +1,528 @@
+package org.mastodon.revised.model.mamut;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+import org.mastodon.collection.RefSet;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.project.MamutProject;
+import org.mastodon.project.MamutProjectIO;
+import org.mastodon.revised.model.mamut.ColumnarModelIO.Block;
+import org.mastodon.revised.model.mamut.ColumnarModelIO.Directory;
+import org.scijava.Context;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Saves a {@link Model} to a project folder, rewriting only the parts that
+ * changed since the last save.
+ * <p>
+ * Each save writes new, versioned files, then atomically replaces the
+ * {@link MamutProject#MANIFEST_FILE_NAME manifest} that lists the files making
+ * up the project. A crash during a save therefore leaves the previous save
+ * intact. Files no longer listed in the manifest are deleted afterwards.
+ * <p>
+ * The model is stored with {@link ColumnarModelIO} in a directory file and
+ * several data files. Between two saves:
+ * <ul>
+ * <li>if spots or links were added or removed, file ids change, so the whole
+ * model and all features are rewritten;</li>
+ * <li>otherwise, only the spot blocks holding modified spots and, if the tags
+ * changed, the tags block are written to a new data file. Unmodified blocks
+ * stay in the data files of former saves;</li>
+ * <li>features are rewritten if their {@link FeatureModel#getFeatureVersion(
+ * FeatureSpec) version} changed.</li>
+ * </ul>
+ * When the model is spread over more than {@link #MAX_DATA_FILES} data files,
+ * it is rewritten in full into a single one.
+ */
+public class IncrementalProjectSaver
+{
+	/**
+	 * Maximal number of model data files before the model is compacted.
+	 */
+	public static final int MAX_DATA_FILES = 8;
+
+	private final MamutProject project;
+
+	private final File projectRoot;
+
+	private final Model model;
+
+	private final Context context;
+
+	/**
+	 * The manifest of the last save, or {@code null} if the model was not
+	 * saved incrementally yet.
+	 */
+	private Properties manifest;
+
+	/**
+	 * The model directory of the last save.
+	 */
+	private Directory directory;
+
+	private long generation;
+
+	/**
+	 * Version of each feature at the last save, by feature key.
+	 */
+	private final Map< String, Long > savedFeatureVersions;
+
+	/**
+	 * Checksum of the tags at the last save, or -1 if unknown.
+	 */
+	private long tagsChecksum;
+
+	/**
+	 * Creates a saver for the specified project folder. The first save writes
+	 * the whole model and all features, and removes the files of a former save
+	 * to this folder, if any.
+	 *
+	 * @param project
+	 *            the project, whose root must be a folder.
+	 * @param model
+	 *            the model to save.
+	 * @param context
+	 *            the context providing the feature serializers.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading the manifest.
+	 */
+	public IncrementalProjectSaver( final MamutProject project, final Model model, final Context context ) throws IOException
+	{
+		this( project, model, context, false );
+	}
+
+	/**
+	 * Creates a saver for the specified project folder.
+	 * <p>
+	 * If {@code loaded} is {@code true}, the model must have been just loaded
+	 * from this folder, and not saved elsewhere since: the manifest of the
+	 * folder is then considered to describe the model, and the next save only
+	 * writes changes. Otherwise, the first save is a full save.
+	 *
+	 * @param project
+	 *            the project, whose root must be a folder.
+	 * @param model
+	 *            the model to save.
+	 * @param context
+	 *            the context providing the feature serializers.
+	 * @param loaded
+	 *            whether the model was just loaded from the project folder.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading the manifest.
+	 */
+	public IncrementalProjectSaver( final MamutProject project, final Model model, final Context context, final boolean loaded ) throws IOException
+	{
+		this.project = project;
+		this.projectRoot = project.getProjectRoot();
+		this.model = model;
+		this.context = context;
+		this.savedFeatureVersions = new HashMap<>();
+		this.tagsChecksum = -1;
+
+		final Properties existing = MamutProject.readManifest( projectRoot );
+		if ( existing == null )
+			return;
+
+		// Continue the numbering of the existing save, so that new files do
+		// not overwrite files it references before the manifest is swapped.
+		generation = Long.parseLong( existing.getProperty( MamutProject.MANIFEST_GENERATION_KEY, "0" ) );
+		if ( loaded )
+		{
+			manifest = existing;
+			final String modelFile = manifest.getProperty( MamutProject.MANIFEST_MODEL_KEY );
+			directory = modelFile == null ? null : ColumnarModelIO.readDirectoryFile( new File( projectRoot, modelFile ) );
+			final FeatureModel featureModel = model.getFeatureModel();
+			for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
+				savedFeatureVersions.put( spec.getKey(), featureModel.getFeatureVersion( spec ) );
+			model.getChangeTracker().reset();
+		}
+	}
+
+	/**
+	 * @return the project folder this saver writes to.
+	 */
+	public File getProjectRoot()
+	{
+		return projectRoot;
+	}
+
+	/**
+	 * Saves the changes of the model since the last save. Holds the read lock
+	 * of the model graph only while copying the model and serializing the
+	 * features to memory, and writes to disk after releasing it.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs while writing. The project then
+	 *             remains in the state of the last successful save.
+	 */
+	public synchronized void save() throws IOException
+	{
+		final Snapshot snapshot = takeSnapshot();
+		try
+		{
+			write( snapshot );
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			// The changes were forgotten with the snapshot: rewrite
+			// everything next time.
+			model.getChangeTracker().invalidate();
+			throw e;
+		}
+	}
+
+	/**
+	 * Copies the model columns, and serializes the features that must be
+	 * rewritten, while holding the graph read lock. Resets the change
+	 * tracker.
+	 */
+	private Snapshot takeSnapshot() throws IOException
+	{
+		final Lock lock = model.getGraph().getLock().readLock();
+		lock.lock();
+		try
+		{
+			final ModelChangeTracker tracker = model.getChangeTracker();
+			final ColumnarModelIO.Writer writer = new ColumnarModelIO.Writer( model.getGraph(), model.getDefaultTagSetModel() );
+			final boolean structureModified = manifest == null || directory == null || tracker.isStructureModified();
+
+			// Sorted file ids of modified spots.
+			int[] modifiedIds = null;
+			if ( !structureModified )
+			{
+				final ObjectToFileIdMap< Spot > spotIds = writer.getIdMap().vertices();
+				final RefSet< Spot > modifiedSpots = tracker.getModifiedSpots();
+				modifiedIds = new int[ modifiedSpots.size() ];
+				int n = 0;
+				for ( final Spot spot : modifiedSpots )
+					modifiedIds[ n++ ] = spotIds.getId( spot );
+				Arrays.sort( modifiedIds );
+			}
+
+			/*
+			 * Features. They are rewritten if they changed, or if file ids
+			 * changed.
+			 */
+			final FeatureModel featureModel = model.getFeatureModel();
+			final Map< String, Long > featureVersions = new LinkedHashMap<>();
+			final Map< String, byte[] > features = new HashMap<>();
+			for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
+			{
+				final long version = featureModel.getFeatureVersion( spec );
+				featureVersions.put( spec.getKey(), version );
+				if ( !isFeatureSaved( spec.getKey(), version, structureModified ) )
+				{
+					final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					if ( MamutRawFeatureModelIO.serialize( context, featureModel, spec, writer.getIdMap(), bytes ) )
+						features.put( spec.getKey(), bytes.toByteArray() );
+				}
+			}
+
+			final ByteArrayOutputStream projectXml = new ByteArrayOutputStream();
+			new MamutProjectIO().save( project, projectXml );
+
+			tracker.reset();
+			return new Snapshot( writer, structureModified, modifiedIds, featureVersions, features, projectXml.toByteArray() );
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Whether the file of the last save can be reused for the specified
+	 * feature.
+	 */
+	private boolean isFeatureSaved( final String featureKey, final long version, final boolean structureModified )
+	{
+		final Long savedVersion = savedFeatureVersions.get( featureKey );
+		return !structureModified
+				&& manifest.getProperty( MamutProject.MANIFEST_FEATURE_KEY_PREFIX + featureKey ) != null
+				&& savedVersion != null
+				&& savedVersion.longValue() == version;
+	}
+
+	private void write( final Snapshot snapshot ) throws IOException
+	{
+		final long gen = generation + 1;
+		final ColumnarModelIO.Writer writer = snapshot.writer;
+		final long newTagsChecksum = writer.getTagsChecksum();
+		final Properties newManifest = new Properties();
+		newManifest.setProperty( MamutProject.MANIFEST_GENERATION_KEY, Long.toString( gen ) );
+
+		/*
+		 * Model.
+		 */
+		Directory newDirectory = null;
+		if ( !snapshot.structureModified )
+			newDirectory = writeModifiedBlocks( writer, newTagsChecksum != tagsChecksum, snapshot.modifiedIds, gen );
+		if ( newDirectory == null )
+		{
+			final String dataFile = MamutProject.getModelDataFileName( gen );
+			final List< Block > blocks = writer.writeBlocks( writer.getDirectory().getBlocks(), dataFile, newFile( dataFile ) );
+			newDirectory = writer.getDirectory().withBlocks( blocks );
+		}
+		final String directoryFile = MamutProject.getModelDirectoryFileName( gen );
+		ColumnarModelIO.writeDirectoryFile( newDirectory, newFile( directoryFile ) );
+		newManifest.setProperty( MamutProject.MANIFEST_MODEL_KEY, directoryFile );
+
+		/*
+		 * Features.
+		 */
+		for ( final Map.Entry< String, Long > entry : snapshot.featureVersions.entrySet() )
+		{
+			final String featureKey = entry.getKey();
+			final String key = MamutProject.MANIFEST_FEATURE_KEY_PREFIX + featureKey;
+			final byte[] bytes = snapshot.features.get( featureKey );
+			if ( bytes != null )
+			{
+				final String featureFile = MamutProject.getFeatureFileName( featureKey, gen );
+				new File( projectRoot, featureFile ).getParentFile().mkdirs();
+				try ( final OutputStream os = newFile( featureFile ) )
+				{
+					os.write( bytes );
+				}
+				newManifest.setProperty( key, featureFile );
+			}
+			else if ( isFeatureSaved( featureKey, entry.getValue(), snapshot.structureModified ) )
+				newManifest.setProperty( key, manifest.getProperty( key ) );
+		}
+
+		/*
+		 * Project xml, then swap the manifest.
+		 */
+		try ( final OutputStream os = newFile( MamutProject.PROJECT_FILE_NAME + ".tmp" ) )
+		{
+			os.write( snapshot.projectXml );
+		}
+		replace( MamutProject.PROJECT_FILE_NAME + ".tmp", MamutProject.PROJECT_FILE_NAME );
+		try ( final OutputStream os = newFile( MamutProject.MANIFEST_FILE_NAME + ".tmp" ) )
+		{
+			newManifest.store( os, "Mastodon project manifest" );
+		}
+		replace( MamutProject.MANIFEST_FILE_NAME + ".tmp", MamutProject.MANIFEST_FILE_NAME );
+
+		/*
+		 * Delete files that are not referenced anymore.
+		 */
+		final Set< String > referenced = referencedFiles( newManifest, newDirectory );
+		if ( manifest == null )
+		{
+			// Files of a full save, or of a save of another model.
+			MamutProject.deleteUnversionedFiles( projectRoot );
+			MamutProject.deleteVersionedFiles( projectRoot, referenced );
+		}
+		else
+		{
+			for ( final String file : referencedFiles( manifest, directory ) )
+				if ( !referenced.contains( file ) )
+					new File( projectRoot, file ).delete();
+		}
+
+		manifest = newManifest;
+		directory = newDirectory;
+		generation = gen;
+		tagsChecksum = newTagsChecksum;
+		savedFeatureVersions.clear();
+		savedFeatureVersions.putAll( snapshot.featureVersions );
+	}
+
+	/**
+	 * Writes the blocks holding modified spots, and the tags block if the tags
+	 * changed, to a new data file.
+	 *
+	 * @return the new directory, or {@code null} if the model must be
+	 *         rewritten in full, because the layout of blocks changed or the
+	 *         model is spread over too many files.
+	 */
+	private Directory writeModifiedBlocks( final ColumnarModelIO.Writer writer, final boolean tagsModified, final int[] modifiedIds, final long gen ) throws IOException
+	{
+		final List< Block > blocks = writer.getDirectory().getBlocks();
+		final List< Block > savedBlocks = directory.getBlocks();
+		if ( blocks.size() != savedBlocks.size() )
+			return null;
+
+		final List< Block > modified = new ArrayList<>();
+		final TIntArrayList modifiedPositions = new TIntArrayList();
+		for ( int i = 0; i < blocks.size(); i++ )
+		{
+			final Block block = blocks.get( i );
+			final Block saved = savedBlocks.get( i );
+			if ( !block.covers( saved ) )
+				return null;
+			if ( isModified( block, tagsModified, modifiedIds ) )
+			{
+				modified.add( block );
+				modifiedPositions.add( i );
+			}
+			else if ( block.getLength() != saved.getLength() )
+				return null;
+		}
+
+		final List< Block > merged = new ArrayList<>( savedBlocks );
+		if ( !modified.isEmpty() )
+		{
+			final String dataFile = MamutProject.getModelDataFileName( gen );
+			final List< Block > written = writer.writeBlocks( modified, dataFile, newFile( dataFile ) );
+			for ( int i = 0; i < written.size(); i++ )
+				merged.set( modifiedPositions.get( i ), written.get( i ) );
+		}
+
+		final Set< String > files = new HashSet<>();
+		for ( final Block block : merged )
+			files.add( block.getFile() );
+		if ( files.size() > MAX_DATA_FILES )
+			return null;
+
+		return directory.withBlocks( merged );
+	}
+
+	/**
+	 * Spot attributes and tags can change without structural changes. Spot
+	 * timepoints and links cannot.
+	 */
+	private static boolean isModified( final Block block, final boolean tagsModified, final int[] sortedModifiedIds )
+	{
+		switch ( block.getName() )
+		{
+		case ColumnarModelIO.TAGS:
+			return tagsModified;
+		case ColumnarModelIO.SPOT_POSITION:
+		case ColumnarModelIO.SPOT_COVARIANCE:
+		case ColumnarModelIO.SPOT_RADIUS:
+		case ColumnarModelIO.SPOT_LABEL:
+			int i = Arrays.binarySearch( sortedModifiedIds, block.getFirstIndex() );
+			if ( i < 0 )
+				i = -i - 1;
+			return i < sortedModifiedIds.length && sortedModifiedIds[ i ] < block.getFirstIndex() + block.getCount();
+		default:
+			return false;
+		}
+	}
+
+	private static Set< String > referencedFiles( final Properties manifest, final Directory directory )
+	{
+		final Set< String > files = new HashSet<>();
+		for ( final String key : manifest.stringPropertyNames() )
+			if ( !MamutProject.MANIFEST_GENERATION_KEY.equals( key ) )
+				files.add( manifest.getProperty( key ) );
+		if ( directory != null )
+			for ( final Block block : directory.getBlocks() )
+				files.add( block.getFile() );
+		return files;
+	}
+
+	private OutputStream newFile( final String name ) throws IOException
+	{
+		return new SyncingFileOutputStream( new File( projectRoot, name ) );
+	}
+
+	private void replace( final String from, final String to ) throws IOException
+	{
+		try
+		{
+			Files.move( new File( projectRoot, from ).toPath(), new File( projectRoot, to ).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		}
+		catch ( final AtomicMoveNotSupportedException e )
+		{
+			Files.move( new File( projectRoot, from ).toPath(), new File( projectRoot, to ).toPath(), StandardCopyOption.REPLACE_EXISTING );
+		}
+	}
+
+	/**
+	 * A copy of the model and its changes since the last save, and the
+	 * serialized features and project xml, that does not reference the model
+	 * anymore.
+	 */
+	private static class Snapshot
+	{
+		private final ColumnarModelIO.Writer writer;
+
+		private final boolean structureModified;
+
+		/**
+		 * Sorted file ids of modified spots, or {@code null} if the structure
+		 * was modified.
+		 */
+		private final int[] modifiedIds;
+
+		/**
+		 * Version of each feature, by feature key.
+		 */
+		private final Map< String, Long > featureVersions;
+
+		/**
+		 * Serialized features that must be rewritten, by feature key.
+		 */
+		private final Map< String, byte[] > features;
+
+		private final byte[] projectXml;
+
+		Snapshot(
+				final ColumnarModelIO.Writer writer,
+				final boolean structureModified,
+				final int[] modifiedIds,
+				final Map< String, Long > featureVersions,
+				final Map< String, byte[] > features,
+				final byte[] projectXml )
+		{
+			this.writer = writer;
+			this.structureModified = structureModified;
+			this.modifiedIds = modifiedIds;
+			this.featureVersions = featureVersions;
+			this.features = features;
+			this.projectXml = projectXml;
+		}
+	}
+
+	/**
+	 * Flushes its content to the disk when closed, so that files referenced by
+	 * the new manifest are complete before the manifest is swapped.
+	 */
+	private static class SyncingFileOutputStream extends FileOutputStream
+	{
+		private boolean closed;
+
+		SyncingFileOutputStream( final File file ) throws IOException
+		{
+			super( file );
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if ( closed )
+				return;
+			closed = true;
+			try
+			{
+				getFD().sync();
+			}
+			finally
+			{
+				super.close();
+			}
+		}
+	}
+}
@@ -20,6 +20,7 @@ import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
 import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
 import org.mastodon.io.FileIdToObjectMap;
 import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.mamut.feature.TrackSizeFeature;
 import org.mastodon.project.MamutProject.ProjectReader;
 import org.mastodon.project.MamutProject.ProjectWriter;
 import org.scijava.Context;
@@ -44,14 +45,119 @@ public class MamutRawFeatureModelIO
 
 			final Class< ? > specTargetClass = spec.getTargetClass();
 			if ( specTargetClass == Spot.class )
-				write( rawFeature, rawSerializer, idmap.vertices(), writer );
+				write( rawFeature, rawSerializer, idmap.vertices(), writer.getFeatureOutputStream( spec.getKey() ) );
 			else if ( specTargetClass == Link.class )
-				write( rawFeature, rawSerializer, idmap.edges(), writer );
+				write( rawFeature, rawSerializer, idmap.edges(), writer.getFeatureOutputStream( spec.getKey() ) );
 			else
 				System.err.println( "Do not know how to serialize a feature that targets " + specTargetClass );
 		}
 	}
 
+	/**
+	 * Serializes one feature of the specified feature model to the specified
+	 * stream, that is closed when done.
+	 *
+	 * @param context
+	 *            the context providing the feature serializers.
+	 * @param featureModel
+	 *            the feature model.
+	 * @param spec
+	 *            the spec of the feature to serialize.
+	 * @param idmap
+	 *            the map from spots and links to the ids used in the model
+	 *            file.
+	 * @param os
+	 *            the stream to write to.
+	 * @return {@code false} if the feature cannot be serialized, in which case
+	 *         nothing is written and the stream is closed.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing.
+	 */
+	public static boolean serialize(
+			final Context context,
+			final FeatureModel featureModel,
+			final FeatureSpec< ?, ? > spec,
+			final GraphToFileIdMap< Spot, Link > idmap,
+			final OutputStream os )
+			throws IOException
+	{
+		return serialize( context, featureModel.getFeature( spec ), idmap, os );
+	}
+
+	/**
+	 * Serializes the specified feature, typically a copy made by
+	 * {@link #copy(Context, FeatureModel, FeatureSpec, ModelGraph)}, to the
+	 * specified stream, that is closed when done.
+	 *
+	 * @param context
+	 *            the context providing the feature serializers.
+	 * @param rawFeature
+	 *            the feature to serialize, may be {@code null}.
+	 * @param idmap
+	 *            the map from spots and links to the ids used in the model
+	 *            file.
+	 * @param os
+	 *            the stream to write to.
+	 * @return {@code false} if the feature cannot be serialized, in which case
+	 *         nothing is written and the stream is closed.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing.
+	 */
+	public static boolean serialize(
+			final Context context,
+			final Feature< ? > rawFeature,
+			final GraphToFileIdMap< Spot, Link > idmap,
+			final OutputStream os )
+			throws IOException
+	{
+		final FeatureSerializationService featureSerializationService = context.getService( FeatureSerializationService.class );
+		final FeatureSerializer< ?, ? > rawSerializer = rawFeature == null ? null : featureSerializationService.getFeatureSerializerFor( rawFeature.getSpec() );
+		final Class< ? > specTargetClass = rawFeature == null ? null : rawFeature.getSpec().getTargetClass();
+		if ( null == rawSerializer || ( specTargetClass != Spot.class && specTargetClass != Link.class ) )
+		{
+			os.close();
+			return false;
+		}
+		write( rawFeature, rawSerializer, specTargetClass == Spot.class ? idmap.vertices() : idmap.edges(), os );
+		return true;
+	}
+
+	/**
+	 * Copies one feature of the specified feature model, so that it can be
+	 * serialized without holding the graph lock. Must be called while holding
+	 * the read lock of the graph, and the copy must be serialized with an
+	 * {@link GraphToFileIdMap} taken while holding the same lock.
+	 *
+	 * @param context
+	 *            the context providing the feature serializers.
+	 * @param featureModel
+	 *            the feature model.
+	 * @param spec
+	 *            the spec of the feature to copy.
+	 * @param graph
+	 *            the graph the feature is defined on.
+	 * @return the copy, or {@code null} if the feature does not exist or its
+	 *         serializer cannot copy it.
+	 */
+	public static Feature< ? > copy(
+			final Context context,
+			final FeatureModel featureModel,
+			final FeatureSpec< ?, ? > spec,
+			final ModelGraph graph )
+	{
+		final FeatureSerializationService featureSerializationService = context.getService( FeatureSerializationService.class );
+		final Feature< ? > rawFeature = featureModel.getFeature( spec );
+		final FeatureSerializer< ?, ? > rawSerializer = rawFeature == null ? null : featureSerializationService.getFeatureSerializerFor( rawFeature.getSpec() );
+		if ( null == rawSerializer )
+			return null;
+		final Class< ? > specTargetClass = spec.getTargetClass();
+		if ( specTargetClass == Spot.class )
+			return copy( rawFeature, rawSerializer, graph.vertices() );
+		if ( specTargetClass == Link.class )
+			return copy( rawFeature, rawSerializer, graph.edges() );
+		return null;
+	}
+
 	public static void deserialize(
 			final Context context,
 			final Model model,
@@ -72,6 +178,9 @@ public class MamutRawFeatureModelIO
 				System.err.println( "Unkown feature: " + featureKey );
 				continue;
 			}
+			// Saved by former versions. Recreated from the track index below.
+			if ( TrackSizeFeature.SPEC.equals( spec ) )
+				continue;
 			final FeatureSerializer< ?, ? > serializer = featureSerializationService.getFeatureSerializerFor( spec );
 			if ( null == serializer )
 			{
@@ -101,22 +210,31 @@ public class MamutRawFeatureModelIO
 			}
 			featureModel.declareFeature( feature );
 		}
+		// Track sizes are a view of the track index, and are not saved.
+		featureModel.declareFeature( new TrackSizeFeature( model.getTrackIndex() ) );
 		featureModel.resumeListeners();
 	}
 
 	@SuppressWarnings( { "unchecked", "rawtypes" } )
-	private static void write( final Feature< ? > rawFeature, final FeatureSerializer< ?, ? > rawSerializer, final ObjectToFileIdMap< ? > idmap, final ProjectWriter writer ) throws IOException
+	private static void write( final Feature< ? > rawFeature, final FeatureSerializer< ?, ? > rawSerializer, final ObjectToFileIdMap< ? > idmap, final OutputStream os ) throws IOException
 	{
 		final Feature feature = rawFeature;
 		final FeatureSerializer serializer = rawSerializer;
 		try (
-				final OutputStream fos = writer.getFeatureOutputStream( rawFeature.getSpec().getKey() );
+				final OutputStream fos = os;
 				final ObjectOutputStream oos = new ObjectOutputStream( new BufferedOutputStream( fos, 1024 * 1024 ) ))
 		{
 			serializer.serialize( feature, idmap, oos );
 		}
 	}
 
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private static Feature copy( final Feature< ? > rawFeature, final FeatureSerializer< ?, ? > rawSerializer, final RefCollection< ? > pool )
+	{
+		final FeatureSerializer serializer = rawSerializer;
+		return serializer.copy( rawFeature, pool );
+	}
+
 	@SuppressWarnings( { "unchecked", "rawtypes" } )
 	private static Feature read( final FeatureSerializer< ?, ? > rawSerializer, final FileIdToObjectMap< ? > idmap, final RefCollection< ? > pool, final ProjectReader reader ) throws IOException, ClassNotFoundException
 	{
@@ -1,13 +1,12 @@
 package org.mastodon.revised.model.mamut;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -41,7 +40,8 @@ import net.imglib2.RealLocalizable;
  * <p>
  * On top of a graph structure for the spots, this model manages a
  * {@link SpatioTemporalIndex}, that can slice the model at some given
- * time-points.
+ * time-points, and a {@link TrackIndex}, that maintains the track each spot
+ * belongs to.
  * <p>
  * The model graph is only exposed as a {@link ReadOnlyGraph}. All updates to
  * the model graph are done through {@link Model}. This includes vertex and edge
@@ -57,6 +57,10 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	 */
 	private final SpatioTemporalIndex< Spot > index;
 
+	private final TrackIndex trackIndex;
+
+	private final ModelChangeTracker changeTracker;
+
 	private final ReentrantReadWriteLock lock;
 
 	private final GraphUndoRecorder< Spot, Link > undoRecorder;
@@ -86,6 +90,8 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		 */
 		new SpatioTemporalIndexImpRebuilderThread( "Rebuild spatial indices", theIndex, 100, 1000, true ).start();
 		index = theIndex;
+		trackIndex = new TrackIndex( modelGraph );
+		changeTracker = new ModelChangeTracker( modelGraph );
 		lock = modelGraph.getLock();
 
 		final int initialCapacity = 1024;
@@ -143,6 +149,49 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	 *             if an I/O error occurs while reading the file.
 	 */
 	public FileIdToGraphMap< Spot, Link > loadRaw( final MamutProject.ProjectReader reader ) throws IOException
+	{
+		// Incrementally saved directory project.
+		final File directoryFile = reader.getColumnarModelDirectoryFile();
+		if ( directoryFile != null )
+		{
+			tagSetModel.pauseListeners();
+			tagSetModel.clear();
+			final FileIdToGraphMap< Spot, Link > idmap = ColumnarModelIO.read( modelGraph, tagSetModel, directoryFile );
+			tagSetModel.resumeListeners();
+			return idmap;
+		}
+
+		// Memory-map the model file if the project is a directory, otherwise
+		// read it as a stream.
+		FileChannel channel = null;
+		InputStream is = null;
+		try
+		{
+			channel = reader.getColumnarModelChannel();
+			if ( channel == null )
+				is = reader.getColumnarModelInputStream();
+		}
+		catch ( final FileNotFoundException e )
+		{
+			// Project saved in the former format.
+			return loadRawStreams( reader );
+		}
+
+		tagSetModel.pauseListeners();
+		tagSetModel.clear();
+		final FileIdToGraphMap< Spot, Link > idmap = channel != null
+				? ColumnarModelIO.read( modelGraph, tagSetModel, channel )
+				: ColumnarModelIO.read( modelGraph, tagSetModel, is );
+		tagSetModel.resumeListeners();
+
+		return idmap;
+	}
+
+	/**
+	 * Loads the model from the {@code ObjectInputStream}-based raw files
+	 * written by former versions.
+	 */
+	private FileIdToGraphMap< Spot, Link > loadRawStreams( final MamutProject.ProjectReader reader ) throws IOException
 	{
 		final FileIdToGraphMap< Spot, Link > idmap = modelGraph.loadRaw( reader.getRawModelInputStream(), ModelSerializer.getInstance() );
 
@@ -173,16 +222,7 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	 */
 	public GraphToFileIdMap< Spot, Link > saveRaw( final MamutProject.ProjectWriter writer ) throws IOException
 	{
-		final GraphToFileIdMap< Spot, Link > idmap = modelGraph.saveRaw( writer.getRawModelOutputStream(), ModelSerializer.getInstance() );
-
-		try (
-				final OutputStream fos = writer.getRawTagsOutputStream();
-				final ObjectOutputStream oos = new ObjectOutputStream( new BufferedOutputStream( fos, 1024 * 1024 ) ))
-		{
-			RawTagSetModelIO.write( tagSetModel, idmap, oos );
-		}
-
-		return idmap;
+		return ColumnarModelIO.write( modelGraph, tagSetModel, writer.getColumnarModelOutputStream() );
 	}
 
 	/**
@@ -195,12 +235,24 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		return index;
 	}
 
+	/**
+	 * Exposes the track index of this model, that maintains the track ID and
+	 * track size of each spot.
+	 *
+	 * @return the track index.
+	 */
+	public TrackIndex getTrackIndex()
+	{
+		return trackIndex;
+	}
+
 	public void undo()
 	{
 		lock.writeLock().lock();
 		try
 		{
 			undoRecorder.undo();
+			changeTracker.invalidate();
 			modelGraph.notifyGraphChanged();
 		}
 		finally
@@ -215,6 +267,7 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		try
 		{
 			undoRecorder.redo();
+			changeTracker.invalidate();
 			modelGraph.notifyGraphChanged();
 		}
 		finally
@@ -229,6 +282,17 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		undoRecorder.setUndoPoint();
 	}
 
+	/**
+	 * Exposes the change tracker of this model, that records which parts of
+	 * the model changed since it was last saved.
+	 *
+	 * @return the change tracker.
+	 */
+	public ModelChangeTracker getChangeTracker()
+	{
+		return changeTracker;
+	}
+
 	public FeatureModel getFeatureModel()
 	{
 		return featureModel;
@@ -239,6 +303,11 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		return tagSetModel;
 	}
 
+	DefaultTagSetModel< Spot, Link > getDefaultTagSetModel()
+	{
+		return tagSetModel;
+	}
+
 	public String getSpaceUnits()
 	{
 		return spaceUnits;
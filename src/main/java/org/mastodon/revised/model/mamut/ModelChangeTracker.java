@@ -0,0 +1,133 @@
+package org.mastodon.revised.model.mamut;
+
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefSet;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.properties.PropertyChangeListener;
+
+/**
+ * Tracks the changes of a {@link ModelGraph} since the model was last saved,
+ * so that saving can rewrite only what changed.
+ * <p>
+ * Additions and removals of spots and links, and graph rebuilds, mark the
+ * structure as modified. Changes of the position, covariance, bounding sphere
+ * radius or label of a spot add the spot to the set of modified spots.
+ * <p>
+ * The tracker is created by the {@link Model} and registered as listener to
+ * its graph. Changes are recorded while holding the graph write lock, so
+ * clients should hold the read lock while querying and resetting it.
+ */
+public class ModelChangeTracker implements GraphListener< Spot, Link >, PropertyChangeListener< Spot >
+{
+	private final RefSet< Spot > modifiedSpots;
+
+	private boolean structureModified;
+
+	private long modCount;
+
+	ModelChangeTracker( final ModelGraph graph )
+	{
+		modifiedSpots = RefCollections.createRefSet( graph.vertices() );
+		structureModified = true;
+		graph.addGraphListener( this );
+		final SpotPool pool = graph.getVertexPool();
+		pool.positionProperty().addPropertyChangeListener( this );
+		pool.covarianceProperty().addPropertyChangeListener( this );
+		pool.boundingSphereRadiusSquProperty().addPropertyChangeListener( this );
+		graph.addVertexLabelListener( this );
+	}
+
+	/**
+	 * Whether spots or links were added or removed since the last
+	 * {@link #reset()}. A new tracker reports a modified structure, since
+	 * nothing was saved yet.
+	 *
+	 * @return {@code true} if the structure was modified.
+	 */
+	public synchronized boolean isStructureModified()
+	{
+		return structureModified;
+	}
+
+	/**
+	 * Returns the spots whose attributes were changed since the last
+	 * {@link #reset()}. This set is only meaningful if the structure was not
+	 * modified.
+	 *
+	 * @return the modified spots. The set is cleared by {@link #reset()}.
+	 */
+	public synchronized RefSet< Spot > getModifiedSpots()
+	{
+		return modifiedSpots;
+	}
+
+	/**
+	 * Returns a counter incremented at each change of the graph. Unlike the
+	 * modified state, it is not affected by {@link #reset()}, so that several
+	 * clients can find out independently whether the graph changed.
+	 *
+	 * @return the modification count.
+	 */
+	public synchronized long getModCount()
+	{
+		return modCount;
+	}
+
+	/**
+	 * Forgets all changes. Called after the model was saved or loaded.
+	 */
+	public synchronized void reset()
+	{
+		structureModified = false;
+		modifiedSpots.clear();
+	}
+
+	/**
+	 * Marks the whole model as modified, e.g. after an undo whose changes are
+	 * not tracked individually.
+	 */
+	public synchronized void invalidate()
+	{
+		++modCount;
+		structureModified = true;
+		modifiedSpots.clear();
+	}
+
+	@Override
+	public synchronized void propertyChanged( final Spot spot )
+	{
+		++modCount;
+		if ( !structureModified )
+			modifiedSpots.add( spot );
+	}
+
+	@Override
+	public void graphRebuilt()
+	{
+		invalidate();
+	}
+
+	@Override
+	public void vertexAdded( final Spot vertex )
+	{
+		invalidate();
+	}
+
+	@Override
+	public void vertexRemoved( final Spot vertex )
+	{
+		invalidate();
+	}
+
+	@Override
+	public void edgeAdded( final Link edge )
+	{
+		invalidate();
+	}
+
+	@Override
+	public void edgeRemoved( final Link edge )
+	{
+		invalidate();
+	}
+}
@@ -35,6 +35,28 @@ public class ModelGraph extends AbstractModelGraph< ModelGraph, SpotPool, LinkPo
 		return idmap;
 	}
 
+	/*
+	 * Overridden to make them accessible to ColumnarModelIO.
+	 */
+
+	@Override
+	protected void clear()
+	{
+		super.clear();
+	}
+
+	@Override
+	protected void pauseListeners()
+	{
+		super.pauseListeners();
+	}
+
+	@Override
+	protected void resumeListeners()
+	{
+		super.resumeListeners();
+	}
+
 	/**
 	 * Register a {@link PropertyChangeListener} that will be notified when
 	 * a {@code Spot}s label is changed.
@@ -0,0 +1,497 @@
+package org.mastodon.revised.model.mamut;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.project.MamutProject;
+import org.mastodon.project.MamutProjectIO;
+import org.mastodon.project.WriteZip;
+import org.mastodon.revised.model.tag.DefaultTagSetModel;
+import org.scijava.Context;
+import org.scijava.listeners.Listeners;
+
+/**
+ * Periodically saves a {@link Model} to rotating autosave files, without
+ * blocking edits for longer than it takes to copy the model in memory.
+ * <p>
+ * Each autosave first takes a snapshot of the model while holding the graph
+ * read lock: the model columns are copied by a {@link ColumnarModelIO.Writer},
+ * and the features are copied by their serializers. The lock is then released,
+ * the features and project xml are serialized to memory, and the snapshot is
+ * written to disk on the autosave thread while the user keeps editing.
+ * <p>
+ * Autosave files are regular zipped projects, named
+ * {@code <baseName>.autosave-<k>.mastodon} where {@code k} goes from 1 (the
+ * most recent) to the number of generations kept. A new autosave is written to
+ * a temporary file first, then generations are rotated, so that an
+ * interrupted autosave never destroys the former ones. Autosaves are skipped
+ * when the modification counts of the model, its features and its tags did not
+ * change since the last one, or since the autosaver was created.
+ * <p>
+ * Failed autosaves are reported to the {@link AutosaveListener}s. After
+ * {@link #MAX_CONSECUTIVE_FAILURES} consecutive failures, periodic autosaves
+ * are stopped until they are {@link #start(long, TimeUnit) started} again.
+ */
+public class ProjectAutosaver
+{
+	/**
+	 * Number of consecutive failed autosaves after which periodic autosaves
+	 * are stopped.
+	 */
+	public static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+	/**
+	 * Notified after each autosave.
+	 */
+	public interface AutosaveListener
+	{
+		void autosaved( Result result );
+
+		/**
+		 * Notified when a periodic autosave failed.
+		 *
+		 * @param e
+		 *            the cause of the failure.
+		 * @param stopped
+		 *            whether periodic autosaves were stopped, because the
+		 *            last {@link #MAX_CONSECUTIVE_FAILURES} autosaves failed.
+		 */
+		default void autosaveFailed( final Exception e, final boolean stopped )
+		{}
+	}
+
+	/**
+	 * Duration and size of one autosave.
+	 */
+	public static class Result
+	{
+		private final File file;
+
+		private final long snapshotNanos;
+
+		private final long writeNanos;
+
+		private final long size;
+
+		Result( final File file, final long snapshotNanos, final long writeNanos, final long size )
+		{
+			this.file = file;
+			this.snapshotNanos = snapshotNanos;
+			this.writeNanos = writeNanos;
+			this.size = size;
+		}
+
+		/**
+		 * @return the autosave file.
+		 */
+		public File getFile()
+		{
+			return file;
+		}
+
+		/**
+		 * @return the time spent taking the snapshot, that is copying the model
+		 *         while holding the graph read lock and serializing the
+		 *         features, in nanoseconds.
+		 */
+		public long getSnapshotNanos()
+		{
+			return snapshotNanos;
+		}
+
+		/**
+		 * @return the time spent writing the snapshot to disk, in
+		 *         nanoseconds.
+		 */
+		public long getWriteNanos()
+		{
+			return writeNanos;
+		}
+
+		/**
+		 * @return the size of the autosave file in bytes.
+		 */
+		public long getSize()
+		{
+			return size;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "Autosaved %s: %d bytes, snapshot %.1f ms, write %.1f ms",
+					file, size, snapshotNanos / 1e6, writeNanos / 1e6 );
+		}
+	}
+
+	private final MamutProject project;
+
+	private final Model model;
+
+	private final Context context;
+
+	private final File folder;
+
+	private final String baseName;
+
+	private final int generations;
+
+	private final ScheduledExecutorService executor;
+
+	private final Listeners.List< AutosaveListener > listeners;
+
+	private ScheduledFuture< ? > scheduled;
+
+	/**
+	 * Model, feature model and tag set model modification counts at the last
+	 * autosave, or when the autosaver was created.
+	 */
+	private long savedModelModCount;
+
+	private long savedFeatureModCount;
+
+	private long savedTagsModCount;
+
+	private int consecutiveFailures;
+
+	private Result lastResult;
+
+	/**
+	 * Creates an autosaver. Autosaves start with {@link #start(long, TimeUnit)}.
+	 * The current state of the model, typically just loaded or saved, is
+	 * considered saved: the first autosave only happens after it changed.
+	 *
+	 * @param project
+	 *            the project, providing the image data and units written to
+	 *            the autosave files. The project root is not used.
+	 * @param model
+	 *            the model to save.
+	 * @param context
+	 *            the context providing the feature serializers.
+	 * @param folder
+	 *            the folder to write autosave files to.
+	 * @param baseName
+	 *            the base name of autosave files.
+	 * @param generations
+	 *            the number of autosave files to keep.
+	 */
+	public ProjectAutosaver(
+			final MamutProject project,
+			final Model model,
+			final Context context,
+			final File folder,
+			final String baseName,
+			final int generations )
+	{
+		if ( generations < 1 )
+			throw new IllegalArgumentException( "At least one autosave generation must be kept." );
+		this.project = project;
+		this.model = model;
+		this.context = context;
+		this.folder = folder;
+		this.baseName = baseName;
+		this.generations = generations;
+		this.listeners = new Listeners.SynchronizedList<>();
+		this.executor = Executors.newSingleThreadScheduledExecutor( r -> {
+			final Thread thread = new Thread( r, "Mastodon autosave" );
+			thread.setDaemon( true );
+			thread.setPriority( Thread.MIN_PRIORITY );
+			return thread;
+		} );
+		savedModelModCount = model.getChangeTracker().getModCount();
+		savedFeatureModCount = model.getFeatureModel().getModCount();
+		savedTagsModCount = model.getDefaultTagSetModel().getModCount();
+	}
+
+	/**
+	 * (Re)starts periodic autosaves.
+	 *
+	 * @param interval
+	 *            the time between the end of an autosave and the start of the
+	 *            next.
+	 * @param unit
+	 *            the unit of {@code interval}.
+	 */
+	public synchronized void start( final long interval, final TimeUnit unit )
+	{
+		stop();
+		consecutiveFailures = 0;
+		scheduled = executor.scheduleWithFixedDelay( this::autosaveAndReport, interval, interval, unit );
+	}
+
+	/**
+	 * Stops periodic autosaves. An autosave in progress is completed.
+	 */
+	public synchronized void stop()
+	{
+		if ( scheduled != null )
+			scheduled.cancel( false );
+		scheduled = null;
+	}
+
+	/**
+	 * Stops autosaves and releases the autosave thread, after the autosave in
+	 * progress, if any, completed.
+	 */
+	public void dispose()
+	{
+		stop();
+		executor.shutdown();
+	}
+
+	/**
+	 * Runs an autosave now on the autosave thread.
+	 *
+	 * @return the future result, that is {@code null} if the model did not
+	 *         change since the last autosave.
+	 */
+	public Future< Result > autosaveNow()
+	{
+		return executor.submit( this::autosave );
+	}
+
+	public Listeners< AutosaveListener > listeners()
+	{
+		return listeners;
+	}
+
+	/**
+	 * @return the result of the last autosave, or {@code null} if none
+	 *         happened yet.
+	 */
+	public synchronized Result getLastResult()
+	{
+		return lastResult;
+	}
+
+	/**
+	 * Returns the autosave file of the specified generation.
+	 *
+	 * @param generation
+	 *            the generation, 1 for the most recent.
+	 * @return the autosave file.
+	 */
+	public File getAutosaveFile( final int generation )
+	{
+		return new File( folder, baseName + ".autosave-" + generation + ".mastodon" );
+	}
+
+	private void autosaveAndReport()
+	{
+		try
+		{
+			autosave();
+			synchronized ( this )
+			{
+				consecutiveFailures = 0;
+			}
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			final boolean stopped;
+			synchronized ( this )
+			{
+				stopped = ++consecutiveFailures >= MAX_CONSECUTIVE_FAILURES;
+				if ( stopped )
+					stop();
+			}
+			listeners.list.forEach( l -> l.autosaveFailed( e, stopped ) );
+		}
+	}
+
+	/**
+	 * Must be run on the autosave thread.
+	 */
+	private Result autosave() throws IOException
+	{
+		final long t0 = System.nanoTime();
+		final File file = getAutosaveFile( 1 );
+		final Snapshot snapshot = takeSnapshot( file );
+		if ( snapshot == null )
+			return null;
+		final long t1 = System.nanoTime();
+
+		folder.mkdirs();
+		final File tmp = new File( folder, baseName + ".autosave.tmp" );
+		try
+		{
+			snapshot.write( tmp );
+			rotate( tmp );
+		}
+		finally
+		{
+			tmp.delete();
+		}
+		final long t2 = System.nanoTime();
+
+		final Result result = new Result( file, t1 - t0, t2 - t1, file.length() );
+		synchronized ( this )
+		{
+			savedModelModCount = snapshot.modelModCount;
+			savedFeatureModCount = snapshot.featureModCount;
+			savedTagsModCount = snapshot.tagsModCount;
+			lastResult = result;
+		}
+		listeners.list.forEach( l -> l.autosaved( result ) );
+		return result;
+	}
+
+	/**
+	 * Copies the model and features while holding the graph read lock, then
+	 * serializes the features and project xml to memory.
+	 *
+	 * @return the snapshot, or {@code null} if the model did not change since
+	 *         the last autosave.
+	 */
+	private Snapshot takeSnapshot( final File file ) throws IOException
+	{
+		final FeatureModel featureModel = model.getFeatureModel();
+		final DefaultTagSetModel< Spot, Link > tagSetModel = model.getDefaultTagSetModel();
+		final long modelModCount;
+		final long featureModCount;
+		final long tagsModCount;
+		final ColumnarModelIO.Writer writer;
+		final List< Feature< ? > > copies = new ArrayList<>();
+		final Map< String, byte[] > features = new LinkedHashMap<>();
+
+		final Lock lock = model.getGraph().getLock().readLock();
+		lock.lock();
+		try
+		{
+			modelModCount = model.getChangeTracker().getModCount();
+			featureModCount = featureModel.getModCount();
+			tagsModCount = tagSetModel.getModCount();
+			synchronized ( this )
+			{
+				if ( modelModCount == savedModelModCount
+						&& featureModCount == savedFeatureModCount
+						&& tagsModCount == savedTagsModCount )
+					return null;
+			}
+
+			writer = new ColumnarModelIO.Writer( model.getGraph(), tagSetModel );
+			for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
+			{
+				final Feature< ? > copy = MamutRawFeatureModelIO.copy( context, featureModel, spec, model.getGraph() );
+				if ( copy != null )
+				{
+					copies.add( copy );
+					continue;
+				}
+
+				// The serializer cannot copy this feature: serialize it now.
+				final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				if ( MamutRawFeatureModelIO.serialize( context, featureModel, spec, writer.getIdMap(), bytes ) )
+					features.put( spec.getKey(), bytes.toByteArray() );
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		for ( final Feature< ? > copy : copies )
+		{
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			if ( MamutRawFeatureModelIO.serialize( context, copy, writer.getIdMap(), bytes ) )
+				features.put( copy.getSpec().getKey(), bytes.toByteArray() );
+		}
+
+		final MamutProject copy = new MamutProject( file, project.getDatasetXmlFile() );
+		copy.setDatasetXmlPathRelative( project.isDatasetXmlPathRelative() );
+		copy.setSpaceUnits( project.getSpaceUnits() );
+		copy.setTimeUnits( project.getTimeUnits() );
+		final ByteArrayOutputStream projectXml = new ByteArrayOutputStream();
+		new MamutProjectIO().save( copy, projectXml );
+
+		return new Snapshot( writer, features, projectXml.toByteArray(), modelModCount, featureModCount, tagsModCount );
+	}
+
+	/**
+	 * Shifts each autosave file to the next generation, dropping the oldest,
+	 * and moves the new autosave to generation 1.
+	 */
+	private void rotate( final File tmp ) throws IOException
+	{
+		getAutosaveFile( generations ).delete();
+		for ( int k = generations - 1; k >= 1; k-- )
+		{
+			final File from = getAutosaveFile( k );
+			if ( from.exists() )
+				Files.move( from.toPath(), getAutosaveFile( k + 1 ).toPath(), StandardCopyOption.REPLACE_EXISTING );
+		}
+		Files.move( tmp.toPath(), getAutosaveFile( 1 ).toPath(), StandardCopyOption.REPLACE_EXISTING );
+	}
+
+	/**
+	 * A copy of the model, features and project xml, that does not reference
+	 * the model anymore.
+	 */
+	private static class Snapshot
+	{
+		private final ColumnarModelIO.Writer writer;
+
+		private final Map< String, byte[] > features;
+
+		private final byte[] projectXml;
+
+		private final long modelModCount;
+
+		private final long featureModCount;
+
+		private final long tagsModCount;
+
+		Snapshot(
+				final ColumnarModelIO.Writer writer,
+				final Map< String, byte[] > features,
+				final byte[] projectXml,
+				final long modelModCount,
+				final long featureModCount,
+				final long tagsModCount )
+		{
+			this.writer = writer;
+			this.features = features;
+			this.projectXml = projectXml;
+			this.modelModCount = modelModCount;
+			this.featureModCount = featureModCount;
+			this.tagsModCount = tagsModCount;
+		}
+
+		void write( final File file ) throws IOException
+		{
+			// Favor speed over size: entries are stored, only CRCs are computed.
+			try ( final MamutProject.ProjectWriter pw = new MamutProject( file ).openForWriting( WriteZip.STORED ) )
+			{
+				try ( final OutputStream os = pw.getProjectXmlOutputStream() )
+				{
+					os.write( projectXml );
+				}
+				writer.write( pw.getColumnarModelOutputStream() );
+				for ( final Map.Entry< String, byte[] > entry : features.entrySet() )
+				{
+					try ( final OutputStream os = pw.getFeatureOutputStream( entry.getKey() ) )
+					{
+						os.write( entry.getValue() );
+					}
+				}
+			}
+		}
+	}
+}
@@ -56,6 +56,33 @@ public final class Spot extends AbstractSpot< Spot, Link, SpotPool, ByteMappedEl
 		super.initDone();
 	}
 
+	/**
+	 * Initialize a new {@link Spot} from stored values, without recomputing
+	 * the bounding sphere radius from the covariance. Only used for
+	 * deserialization.
+	 *
+	 * @param timepointId
+	 *            the time-point id.
+	 * @param pos
+	 *            the position of the spot.
+	 * @param cov
+	 *            the upper triangle of the covariance matrix, row by row.
+	 * @param boundingSphereRadiusSqu
+	 *            the squared bounding sphere radius.
+	 * @return this {@link Spot}.
+	 */
+	Spot init( final int timepointId, final double[] pos, final double[] cov, final double boundingSphereRadiusSqu )
+	{
+		super.partialInit( timepointId, pos );
+
+		for ( int i = 0; i < cov.length; i++ )
+			pool.covariance.setQuiet( this, i, cov[ i ] );
+		pool.boundingSphereRadiusSqu.setQuiet( this, boundingSphereRadiusSqu );
+
+		super.initDone();
+		return this;
+	}
+
 	/*
 	 * Public API
 	 */
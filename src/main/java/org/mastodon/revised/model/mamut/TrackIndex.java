@@ -0,0 +1,341 @@
+package org.mastodon.revised.model.mamut;
+
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.collection.RefSet;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.properties.IntPropertyMap;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * A class that keeps track of the connected components (tracks) of a
+ * {@link ModelGraph}, and serves the track ID and track size of each spot. This
+ * class keeps up to date with changes in the graph it monitors by registering
+ * as a {@link GraphListener}.
+ * <p>
+ * Each spot is labeled with the ID of its track. When an edge joins two
+ * tracks, the spots of the smaller track are relabeled with the ID of the
+ * larger one (weighted union, so each spot is relabeled at most
+ * <em>log(n)</em> times while a graph of <em>n</em> spots is built). When an
+ * edge is removed, two breadth-first searches are run alternately from its
+ * source and target. If they meet, the track is still connected. Otherwise,
+ * the search that finishes first has enumerated the smaller part, which is
+ * relabeled with a new ID. Both operations therefore only touch the smaller
+ * of the involved tracks.
+ * <p>
+ * Track IDs are not contiguous, and the ID of a track may change when it is
+ * joined with a larger track.
+ * <p>
+ * This class is not synchronized. It is updated while the graph write lock is
+ * held, and clients should hold the graph read lock while using it.
+ */
+public class TrackIndex implements GraphListener< Spot, Link >
+{
+	private final ModelGraph graph;
+
+	/**
+	 * Track ID of each spot.
+	 */
+	private final IntPropertyMap< Spot > trackIds;
+
+	/**
+	 * Maps track ID to the number of spots in the track.
+	 */
+	private final TIntIntHashMap trackSizes;
+
+	/**
+	 * Edges that were reported removed, but might still be in the graph. This
+	 * happens when a vertex is removed: its edges are reported one by one, but
+	 * are only removed together with the vertex.
+	 */
+	private final RefSet< Link > removedLinks;
+
+	private int nextTrackId;
+
+	/**
+	 * Creates a new track index for the specified graph. After this
+	 * constructor returns, track IDs and sizes are immediately available. The
+	 * returned instance is registered as a listener to changes in the graph.
+	 *
+	 * @param graph
+	 *            the graph to index.
+	 */
+	public TrackIndex( final ModelGraph graph )
+	{
+		this.graph = graph;
+		trackIds = new IntPropertyMap<>( graph.vertices().getRefPool(), -1 );
+		trackSizes = new TIntIntHashMap( 10, 0.5f, -1, 0 );
+		removedLinks = RefCollections.createRefSet( graph.edges() );
+		graph.addGraphListener( this );
+		init();
+	}
+
+	/**
+	 * Returns the ID of the track the specified spot belongs to.
+	 *
+	 * @param spot
+	 *            the spot.
+	 * @return the track ID.
+	 */
+	public int getTrackId( final Spot spot )
+	{
+		return trackIds.getInt( spot );
+	}
+
+	/**
+	 * Returns the number of spots in the track the specified spot belongs to.
+	 *
+	 * @param spot
+	 *            the spot.
+	 * @return the track size.
+	 */
+	public int getTrackSize( final Spot spot )
+	{
+		return trackSizes.get( trackIds.getInt( spot ) );
+	}
+
+	/**
+	 * Returns the number of tracks in the graph.
+	 *
+	 * @return the number of tracks.
+	 */
+	public int getNumTracks()
+	{
+		return trackSizes.size();
+	}
+
+	/**
+	 * Exposes the track IDs as a property map. This map is updated with the
+	 * graph, and must not be modified by clients.
+	 *
+	 * @return the map from spot to track ID.
+	 */
+	public IntPropertyMap< Spot > getTrackIdMap()
+	{
+		return trackIds;
+	}
+
+	/**
+	 * Returns the graph this index monitors.
+	 *
+	 * @return the graph.
+	 */
+	public ModelGraph getGraph()
+	{
+		return graph;
+	}
+
+	private void init()
+	{
+		trackIds.beforeClearPool();
+		trackSizes.clear();
+		removedLinks.clear();
+		nextTrackId = 0;
+		for ( final Spot spot : graph.vertices() )
+		{
+			if ( !trackIds.isSet( spot ) )
+			{
+				final int id = nextTrackId++;
+				trackSizes.put( id, relabel( spot, -1, id ) );
+			}
+		}
+	}
+
+	@Override
+	public void graphRebuilt()
+	{
+		init();
+	}
+
+	@Override
+	public void vertexAdded( final Spot spot )
+	{
+		removedLinks.clear();
+		final int id = nextTrackId++;
+		trackIds.set( spot, id );
+		trackSizes.put( id, 1 );
+	}
+
+	@Override
+	public void vertexRemoved( final Spot spot )
+	{
+		// Edges that were not reported removed before.
+		final RefList< Link > links = RefCollections.createRefList( graph.edges() );
+		for ( final Link link : spot.edges() )
+			if ( !removedLinks.contains( link ) )
+				links.add( link );
+		for ( final Link link : links )
+			edgeRemoved( link );
+
+		final int id = trackIds.getInt( spot );
+		final int size = trackSizes.get( id ) - 1;
+		if ( size > 0 )
+			trackSizes.put( id, size );
+		else
+			trackSizes.remove( id );
+		trackIds.remove( spot );
+		removedLinks.clear();
+	}
+
+	@Override
+	public void edgeAdded( final Link link )
+	{
+		removedLinks.clear();
+		final Spot ref1 = graph.vertexRef();
+		final Spot ref2 = graph.vertexRef();
+		final Spot source = link.getSource( ref1 );
+		final Spot target = link.getTarget( ref2 );
+		final int sourceId = trackIds.getInt( source );
+		final int targetId = trackIds.getInt( target );
+		if ( sourceId != targetId )
+		{
+			final int sourceSize = trackSizes.get( sourceId );
+			final int targetSize = trackSizes.get( targetId );
+			if ( sourceSize < targetSize )
+			{
+				relabel( source, sourceId, targetId );
+				trackSizes.put( targetId, sourceSize + targetSize );
+				trackSizes.remove( sourceId );
+			}
+			else
+			{
+				relabel( target, targetId, sourceId );
+				trackSizes.put( sourceId, sourceSize + targetSize );
+				trackSizes.remove( targetId );
+			}
+		}
+		graph.releaseRef( ref1 );
+		graph.releaseRef( ref2 );
+	}
+
+	@Override
+	public void edgeRemoved( final Link link )
+	{
+		removedLinks.add( link );
+		final Spot ref1 = graph.vertexRef();
+		final Spot ref2 = graph.vertexRef();
+		split( link.getSource( ref1 ), link.getTarget( ref2 ) );
+		graph.releaseRef( ref1 );
+		graph.releaseRef( ref2 );
+	}
+
+	/**
+	 * Assigns {@code toId} to all spots with track ID {@code fromId} that are
+	 * connected to {@code start} via spots with track ID {@code fromId}.
+	 *
+	 * @return the number of relabeled spots.
+	 */
+	private int relabel( final Spot start, final int fromId, final int toId )
+	{
+		final RefList< Spot > queue = RefCollections.createRefList( graph.vertices() );
+		final Spot ref1 = graph.vertexRef();
+		final Spot ref2 = graph.vertexRef();
+		trackIds.set( start, toId );
+		queue.add( start );
+		for ( int i = 0; i < queue.size(); i++ )
+		{
+			final Spot spot = queue.get( i, ref1 );
+			for ( final Link link : spot.edges() )
+			{
+				if ( removedLinks.contains( link ) )
+					continue;
+				final Spot other = opposite( link, spot, ref2 );
+				if ( trackIds.getInt( other ) == fromId )
+				{
+					trackIds.set( other, toId );
+					queue.add( other );
+				}
+			}
+		}
+		graph.releaseRef( ref1 );
+		graph.releaseRef( ref2 );
+		return queue.size();
+	}
+
+	/**
+	 * Called after an edge between {@code source} and {@code target} was
+	 * removed. Searches alternately from both ends. If the searches meet, the
+	 * track is still connected. Otherwise, the part that was enumerated
+	 * completely first gets a new track ID.
+	 */
+	private void split( final Spot source, final Spot target )
+	{
+		final RefList< Spot > sourceQueue = RefCollections.createRefList( graph.vertices() );
+		final RefList< Spot > targetQueue = RefCollections.createRefList( graph.vertices() );
+		final RefSet< Spot > sourceVisited = RefCollections.createRefSet( graph.vertices() );
+		final RefSet< Spot > targetVisited = RefCollections.createRefSet( graph.vertices() );
+		sourceQueue.add( source );
+		sourceVisited.add( source );
+		targetQueue.add( target );
+		targetVisited.add( target );
+		int sourceHead = 0;
+		int targetHead = 0;
+		while ( true )
+		{
+			if ( sourceHead == sourceQueue.size() )
+			{
+				separate( sourceQueue, trackIds.getInt( source ) );
+				return;
+			}
+			if ( expand( sourceQueue, sourceHead++, sourceVisited, targetVisited ) )
+				return;
+
+			if ( targetHead == targetQueue.size() )
+			{
+				separate( targetQueue, trackIds.getInt( target ) );
+				return;
+			}
+			if ( expand( targetQueue, targetHead++, targetVisited, sourceVisited ) )
+				return;
+		}
+	}
+
+	/**
+	 * Visits the neighbors of the spot at position {@code i} in
+	 * {@code queue}.
+	 *
+	 * @return {@code true} if a spot visited by the other search was reached.
+	 */
+	private boolean expand( final RefList< Spot > queue, final int i, final RefSet< Spot > visited, final RefSet< Spot > otherVisited )
+	{
+		final Spot ref1 = graph.vertexRef();
+		final Spot ref2 = graph.vertexRef();
+		boolean met = false;
+		final Spot spot = queue.get( i, ref1 );
+		for ( final Link link : spot.edges() )
+		{
+			if ( removedLinks.contains( link ) )
+				continue;
+			final Spot other = opposite( link, spot, ref2 );
+			if ( otherVisited.contains( other ) )
+			{
+				met = true;
+				break;
+			}
+			if ( visited.add( other ) )
+				queue.add( other );
+		}
+		graph.releaseRef( ref1 );
+		graph.releaseRef( ref2 );
+		return met;
+	}
+
+	/**
+	 * Moves the specified spots from track {@code oldId} to a new track.
+	 */
+	private void separate( final RefList< Spot > spots, final int oldId )
+	{
+		final int id = nextTrackId++;
+		for ( final Spot spot : spots )
+			trackIds.set( spot, id );
+		trackSizes.put( id, spots.size() );
+		trackSizes.put( oldId, trackSizes.get( oldId ) - spots.size() );
+	}
+
+	private static Spot opposite( final Link link, final Spot spot, final Spot ref )
+	{
+		final Spot source = link.getSource( ref );
+		return source.equals( spot ) ? link.getTarget( ref ) : source;
+	}
+}
@@ -22,7 +22,9 @@ import org.scijava.listeners.Listeners;
  * <p>
  * Assigns tags to vertices and edges of a graph, according to a {@link TagSetStructure}.
  * <p>
- * Provides facilities for serialization and undo/redo.
+ * Provides facilities for serialization and undo/redo. Changes of the tag set
+ * structure and of tag assignments increment a modification count, see
+ * {@link #getModCount()}.
  *
  * @param <V>
  * 		the type of the vertices in the graph.
@@ -52,6 +54,12 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 
 	private boolean emitEvents;
 
+	/**
+	 * Incremented at each change of the tag set structure or of the tags of
+	 * a vertex or edge.
+	 */
+	private long modCount;
+
 	public DefaultTagSetModel( final ReadOnlyGraph< V, E > graph )
 	{
 		this( graph, RefCollections.tryGetRefPool( graph.vertices() ), RefCollections.tryGetRefPool( graph.edges() ) );
@@ -67,6 +75,8 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 		edgeTags = new DefaultObjTags<>( edgeIdLabelSets, tagSetStructure );
 		listeners = new Listeners.SynchronizedList<>();
 		emitEvents = true;
+		vertexIdLabelSets.addPropertyChangeListener( v -> incrementModCount() );
+		edgeIdLabelSets.addPropertyChangeListener( e -> incrementModCount() );
 	}
 
 	@Override
@@ -111,6 +121,7 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 		tagSetStructure.set( tss );
 		vertexTags.update( tagSetStructure );
 		edgeTags.update( tagSetStructure );
+		incrementModCount();
 
 		if ( emitEvents )
 			listeners.list.forEach( TagSetModelListener::tagSetStructureChanged );
@@ -158,6 +169,25 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 	{
 		vertexIdLabelSets.clear();
 		edgeIdLabelSets.clear();
+		incrementModCount();
+	}
+
+	/**
+	 * Returns a counter incremented at each change of the tag set structure
+	 * and at each change of the tags assigned to a vertex or edge, including
+	 * changes made by undo/redo and deserialization. Clients can compare it to
+	 * a former value to find out whether the tags changed.
+	 *
+	 * @return the modification count.
+	 */
+	public synchronized long getModCount()
+	{
+		return modCount;
+	}
+
+	private synchronized void incrementModCount()
+	{
+		++modCount;
 	}
 
 	/**
@@ -192,6 +222,7 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 		{
 			tagSetModel.vertexTags.update( tagSetModel.tagSetStructure );
 			tagSetModel.edgeTags.update( tagSetModel.tagSetStructure );
+			tagSetModel.incrementModCount();
 		}
 	}
 
@@ -218,6 +249,7 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 			tagSetModel.getTagSetStructure().set( oldTss );
 			tagSetModel.vertexTags.update( tagSetModel.tagSetStructure );
 			tagSetModel.edgeTags.update( tagSetModel.tagSetStructure );
+			tagSetModel.incrementModCount();
 			tagSetModel.listeners.list.forEach( TagSetModelListener::tagSetStructureChanged );
 		}
 
@@ -227,6 +259,7 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 			tagSetModel.getTagSetStructure().set( newTss );
 			tagSetModel.vertexTags.update( tagSetModel.tagSetStructure );
 			tagSetModel.edgeTags.update( tagSetModel.tagSetStructure );
+			tagSetModel.incrementModCount();
 			tagSetModel.listeners.list.forEach( TagSetModelListener::tagSetStructureChanged );
 		}
 	}
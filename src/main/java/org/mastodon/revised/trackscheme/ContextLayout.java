@@ -4,6 +4,13 @@ import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefList;
 import org.mastodon.views.context.Context;
 
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
 /**
  * Algorithm:
  * <ol>
@@ -14,6 +21,14 @@ import org.mastodon.views.context.Context;
  * vertices (also ghosts) will have been marked with the
  * {@link LineageTreeLayout#getCurrentLayoutTimestamp()}).
  * </ol>
+ * <p>
+ * When only the time-point range changes (e.g., when scrolling through time
+ * with a linked context), the layout is updated incrementally: The inside
+ * vertices of time-points that are in both the previous and the new range are
+ * not requested from the context again. For each lineage tree, a hash of the
+ * marked vertices is compared to the previous layout, and the layout of
+ * unchanged trees is re-used (see
+ * {@link LineageTreeLayout#layout(java.util.Collection, int, TIntSet)}).
  *
  * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
  */
@@ -30,6 +45,26 @@ public class ContextLayout
 
 	private int previousMaxTimepoint;
 
+	/**
+	 * The {@link LineageTreeLayout#getCurrentLayoutVersion() version} of the
+	 * layout created by the previous {@link #buildContext} call. If the layout
+	 * version is different, the layout was changed by someone else, and
+	 * nothing can be re-used.
+	 */
+	private int previousLayoutVersion;
+
+	/**
+	 * Inside vertices of the context, by time-point, as retrieved in previous
+	 * calls. Only valid while the context and the graph do not change.
+	 */
+	private final TIntObjectMap< RefList< TrackSchemeVertex > > insideVertices;
+
+	/**
+	 * Maps the pool index of the graph root of each lineage tree in the
+	 * previous layout to a hash of the marked vertices of the tree.
+	 */
+	private TIntLongHashMap previousTreeHashes;
+
 	public ContextLayout(
 			final TrackSchemeGraph< ?, ? > graph,
 			final LineageTreeLayout layout )
@@ -38,6 +73,9 @@ public class ContextLayout
 		this.layout = layout;
 		this.previousMinTimepoint = -1;
 		this.previousMaxTimepoint = -1;
+		this.previousLayoutVersion = -1;
+		this.insideVertices = new TIntObjectHashMap<>();
+		this.previousTreeHashes = new TIntLongHashMap();
 	}
 
 	/**
@@ -47,6 +85,10 @@ public class ContextLayout
 	 * {@link ScreenTransform#getMaxY()} of {@code transform} determines the
 	 * time-point range to cover. If the time-point range is the same as in the
 	 * previous call nothing is updated, unless {@code forceUpdate == true}.
+	 * <p>
+	 * {@code forceUpdate == true} signals that the context itself changed.
+	 * Otherwise, the context is assumed to be the same as in the previous call,
+	 * and the layout is updated incrementally.
 	 *
 	 * @param context
 	 *            the context to layout.
@@ -71,22 +113,40 @@ public class ContextLayout
 		previousMinTimepoint = minTimepoint;
 		previousMaxTimepoint = maxTimepoint;
 
+		final boolean incremental = !forceUpdate && layout.getCurrentLayoutVersion() == previousLayoutVersion;
+		if ( !incremental )
+		{
+			insideVertices.clear();
+			previousTreeHashes.clear();
+		}
+
 		final int ghostmark = layout.nextLayoutTimestamp();
 		final int mark = layout.nextLayoutTimestamp();
 		final RefList< TrackSchemeVertex > roots = RefCollections.createRefList( graph.vertices() );
+		final RefList< TrackSchemeVertex > marked = RefCollections.createRefList( graph.vertices() );
 
 		context.readLock().lock();
 		try
 		{
+			insideVertices.retainEntries( ( t, vertices ) -> t >= minTimepoint && t <= maxTimepoint );
 			for ( int t = minTimepoint; t <= maxTimepoint; ++t )
 			{
-				for ( final TrackSchemeVertex tv : context.getInsideVertices( t ) )
+				RefList< TrackSchemeVertex > inside = insideVertices.get( t );
+				if ( inside == null )
+				{
+					inside = RefCollections.createRefList( graph.vertices() );
+					for ( final TrackSchemeVertex tv : context.getInsideVertices( t ) )
+						inside.add( tv );
+					insideVertices.put( t, inside );
+				}
+				for ( final TrackSchemeVertex tv : inside )
 				{
 					tv.setLayoutTimestamp( mark );
+					marked.add( tv );
 					if ( t == minTimepoint )
 						roots.add( tv );
 					else
-						buildContextTraceParents( tv, ghostmark, minTimepoint, roots );
+						buildContextTraceParents( tv, ghostmark, minTimepoint, roots, marked );
 				}
 			}
 		}
@@ -95,7 +155,47 @@ public class ContextLayout
 			context.readLock().unlock();
 		}
 
-		layout.layout( LexicographicalVertexOrder.sort( graph, roots ), mark );
+		final RefList< TrackSchemeVertex > sortedRoots = LexicographicalVertexOrder.sort( graph, roots );
+
+		/*
+		 * Hash marked vertices and roots by lineage tree. Trees with the same
+		 * hash as in the previous layout can be re-used, unless some tree
+		 * shares vertices with another tree.
+		 */
+		final TIntLongHashMap treeHashes = new TIntLongHashMap();
+		boolean shared = false;
+		final TrackSchemeVertex ref = graph.vertexRef();
+		for ( final TrackSchemeVertex v : marked )
+		{
+			if ( v.incomingEdges().size() > 1 )
+				shared = true;
+			for ( final TrackSchemeEdge e : v.outgoingEdges() )
+				if ( e.getTarget( ref ).incomingEdges().size() > 1 )
+					shared = true;
+			final long h = hash( v.getInternalPoolIndex(), v.getLayoutTimestamp() == mark ? 1 : 0 );
+			treeHashes.adjustOrPutValue( v.getLexOrderRoot(), h, h );
+		}
+		graph.releaseRef( ref );
+		for ( final TrackSchemeVertex v : roots )
+		{
+			final long h = hash( v.getInternalPoolIndex(), 2 );
+			treeHashes.adjustOrPutValue( v.getLexOrderRoot(), h, h );
+		}
+
+		final TIntSet reusableTrees = new TIntHashSet();
+		if ( incremental && !shared )
+		{
+			treeHashes.forEachEntry( ( tree, h ) -> {
+				if ( previousTreeHashes.containsKey( tree ) && previousTreeHashes.get( tree ) == h )
+					reusableTrees.add( tree );
+				return true;
+			} );
+		}
+
+		layout.layout( sortedRoots, mark, reusableTrees );
+
+		previousTreeHashes = treeHashes;
+		previousLayoutVersion = layout.getCurrentLayoutVersion();
 
 		return true;
 	}
@@ -108,29 +208,61 @@ public class ContextLayout
 	 * <li>(B) vertex is reached that has timepoint &lt;= minTimepoint.
 	 * </ul>
 	 *
-	 * Mark all recursively visited vertices as ghosts. In case (B), add the
-	 * final vertex to set of roots.
+	 * Mark all visited vertices as ghosts, and add them to {@code marked}. In
+	 * case (B), add the final vertex to set of roots.
 	 */
-	private void buildContextTraceParents( final TrackSchemeVertex tv, final int ghostmark, final int minTimepoint, final RefList< TrackSchemeVertex > roots )
+	private void buildContextTraceParents(
+			final TrackSchemeVertex tv,
+			final int ghostmark,
+			final int minTimepoint,
+			final RefList< TrackSchemeVertex > roots,
+			final RefList< TrackSchemeVertex > marked )
 	{
-		if( tv.incomingEdges().isEmpty() )
+		if ( tv.incomingEdges().isEmpty() )
+		{
 			roots.add( tv );
-		else
+			return;
+		}
+
+		final TIntArrayList stack = new TIntArrayList();
+		stack.add( tv.getInternalPoolIndex() );
+		final TrackSchemeVertex v = graph.vertexRef();
+		final TrackSchemeVertex parent = graph.vertexRef();
+		while ( !stack.isEmpty() )
 		{
-			final TrackSchemeVertex ref = graph.vertexRef();
-			for ( final TrackSchemeEdge te : tv.incomingEdges() )
+			graph.getVertexPool().getObject( stack.removeAt( stack.size() - 1 ), v );
+			for ( final TrackSchemeEdge te : v.incomingEdges() )
 			{
-				final TrackSchemeVertex parent = te.getSource( ref );
+				te.getSource( parent );
 				if ( parent.getLayoutTimestamp() < ghostmark )
 				{
 					parent.setLayoutTimestamp( ghostmark );
-					if ( parent.getTimepoint() <= minTimepoint )
+					marked.add( parent );
+					if ( parent.getTimepoint() <= minTimepoint || parent.incomingEdges().isEmpty() )
 						roots.add( parent );
 					else
-						buildContextTraceParents( parent, ghostmark, minTimepoint, roots );
+						stack.add( parent.getInternalPoolIndex() );
 				}
 			}
-			graph.releaseRef( ref );
 		}
+		graph.releaseRef( v );
+		graph.releaseRef( parent );
+	}
+
+	/**
+	 * Hash of a marked vertex, combining its pool index and how it was
+	 * marked. Hashes of all marked vertices of a tree are summed up, such
+	 * that the tree hash does not depend on the order of the vertices.
+	 */
+	private static long hash( final int index, final int type )
+	{
+		// finalizer of MurmurHash3
+		long h = ( ( long ) index << 2 ) | type;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
 	}
 }
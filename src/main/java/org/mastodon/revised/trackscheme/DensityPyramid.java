@@ -0,0 +1,304 @@
+package org.mastodon.revised.trackscheme;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.mastodon.model.SelectionModel;
+import org.mastodon.revised.ui.coloring.GraphColorGenerator;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Multi-resolution summary of the vertices of one {@link TrackSchemeVertexList}
+ * (i.e., one timepoint), used to find dense vertex ranges in zoomed-out
+ * TrackScheme views in time proportional to the number of visible pixels
+ * rather than the number of visible vertices.
+ * <p>
+ * Level <em>l</em> partitions the layoutX axis into buckets of width
+ * <em>2<sup>l</sup></em>, starting at the layoutX of the first vertex. Only
+ * non-empty buckets are stored, by the list index of their first vertex.
+ * Levels are built from {@link #MIN_LEVEL} upwards by merging pairs of buckets
+ * of the level below, until a single bucket remains.
+ * <p>
+ * In addition, prefix sums over the list indices of the number of selected
+ * vertices and of the colors of colored vertices summarize arbitrary index
+ * ranges in constant time. These are (re-)computed by
+ * {@link #updateAttributes(TrackSchemeVertexList, SelectionModel, GraphColorGenerator, int, TrackSchemeVertex)}
+ * when the attributes version or the color generator changes.
+ * <p>
+ * A {@link DensityPyramid} is only valid as long as the list and the layoutX
+ * coordinates of its vertices do not change. It is discarded by
+ * {@link TrackSchemeVertexList#invalidateCache()}.
+ */
+class DensityPyramid
+{
+	/**
+	 * The finest level. Buckets at this level are
+	 * <em>2<sup>MIN_LEVEL</sup></em> layout units wide.
+	 */
+	static final int MIN_LEVEL = 2;
+
+	/**
+	 * Whether dense ranges for the specified minimal screen vertex distance
+	 * (in layout units) should be computed from the pyramid. This is the case
+	 * if the distance is at least as large as the buckets of the finest level.
+	 * For finer zoom levels, the exact recursive subdivision in
+	 * {@link TrackSchemeVertexList} is cheap enough.
+	 *
+	 * @param allowedMinD
+	 *            vertices closer than this (in layout units) are summarized
+	 *            into ranges.
+	 * @return whether to use the pyramid.
+	 */
+	static boolean isApplicable( final double allowedMinD )
+	{
+		return allowedMinD >= ( 1 << MIN_LEVEL );
+	}
+
+	private final int size;
+
+	/**
+	 * {@code bucketKeys[l][b]} is the position of bucket {@code b} of level
+	 * {@code MIN_LEVEL + l}, in units of the bucket width.
+	 */
+	private final int[][] bucketKeys;
+
+	/**
+	 * {@code bucketStarts[l][b]} is the list index of the first vertex in
+	 * bucket {@code b} of level {@code MIN_LEVEL + l}. The last element is
+	 * the size of the list.
+	 */
+	private final int[][] bucketStarts;
+
+	private int attributesVersion;
+
+	private GraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator;
+
+	/**
+	 * {@code selectedPrefix[i]} is the number of selected vertices with list
+	 * index {@code < i}.
+	 */
+	private int[] selectedPrefix;
+
+	/**
+	 * {@code coloredPrefix[i]} is the number of colored vertices (with color
+	 * {@code != 0}) with list index {@code < i}.
+	 */
+	private int[] coloredPrefix;
+
+	/**
+	 * Prefix sums of the alpha, red, green, and blue components of colored
+	 * vertices, analogous to {@link #coloredPrefix}.
+	 */
+	private long[][] channelPrefix;
+
+	DensityPyramid( final TrackSchemeVertexList list, final TrackSchemeVertex ref )
+	{
+		size = list.size();
+		final double originX = size > 0 ? list.get( 0, ref ).getLayoutX() : 0;
+		attributesVersion = -1;
+
+		final ArrayList< int[] > keys = new ArrayList<>();
+		final ArrayList< int[] > starts = new ArrayList<>();
+
+		final double bucketWidth = 1 << MIN_LEVEL;
+		final TIntArrayList k = new TIntArrayList();
+		final TIntArrayList s = new TIntArrayList();
+		int prevKey = -1;
+		for ( int i = 0; i < size; ++i )
+		{
+			final int key = ( int ) ( ( list.get( i, ref ).getLayoutX() - originX ) / bucketWidth );
+			if ( key != prevKey )
+			{
+				k.add( key );
+				s.add( i );
+				prevKey = key;
+			}
+		}
+		s.add( size );
+		keys.add( k.toArray() );
+		starts.add( s.toArray() );
+
+		int[] lk = keys.get( 0 );
+		int[] ls = starts.get( 0 );
+		while ( lk.length > 1 )
+		{
+			k.resetQuick();
+			s.resetQuick();
+			prevKey = -1;
+			for ( int b = 0; b < lk.length; ++b )
+			{
+				final int key = lk[ b ] >> 1;
+				if ( key != prevKey )
+				{
+					k.add( key );
+					s.add( ls[ b ] );
+					prevKey = key;
+				}
+			}
+			s.add( size );
+			lk = k.toArray();
+			ls = s.toArray();
+			keys.add( lk );
+			starts.add( ls );
+		}
+
+		bucketKeys = keys.toArray( new int[ keys.size() ][] );
+		bucketStarts = starts.toArray( new int[ starts.size() ][] );
+	}
+
+	/**
+	 * Computes dense vertex ranges in the specified index range. Adjacent
+	 * non-empty buckets of the coarsest level with buckets not wider than
+	 * {@code allowedMinD} are merged into a range, if they contain at least
+	 * two vertices. Therefore, neighboring vertices in a range are less than
+	 * {@code 2 * allowedMinD} apart.
+	 *
+	 * @param fromIndex
+	 *            the lower boundary of the range (inclusive).
+	 * @param toIndex
+	 *            the upper boundary of the range (exclusive).
+	 * @param allowedMinD
+	 *            vertices closer than this (in layout units) are summarized
+	 *            into ranges. Should satisfy {@link #isApplicable(double)}.
+	 * @return list of dense ranges, as pairs of first and last index
+	 *         (inclusive), ordered by index.
+	 */
+	TIntArrayList getDenseRanges( final int fromIndex, final int toIndex, final double allowedMinD )
+	{
+		final TIntArrayList ranges = new TIntArrayList();
+		if ( fromIndex >= toIndex )
+			return ranges;
+
+		final int level = Math.max( 0, Math.min( bucketKeys.length - 1, Math.getExponent( allowedMinD ) - MIN_LEVEL ) );
+		final int[] keys = bucketKeys[ level ];
+		final int[] starts = bucketStarts[ level ];
+		final int numBuckets = keys.length;
+
+		// bucket containing fromIndex
+		int b = Arrays.binarySearch( starts, 0, numBuckets, fromIndex );
+		if ( b < 0 )
+			b = -b - 2;
+
+		while ( b < numBuckets && starts[ b ] < toIndex )
+		{
+			int e = b;
+			while ( e + 1 < numBuckets && starts[ e + 1 ] < toIndex && keys[ e + 1 ] == keys[ e ] + 1 )
+				++e;
+			final int first = Math.max( starts[ b ], fromIndex );
+			final int last = Math.min( starts[ e + 1 ], toIndex ) - 1;
+			if ( last > first )
+			{
+				ranges.add( first );
+				ranges.add( last );
+			}
+			b = e + 1;
+		}
+		return ranges;
+	}
+
+	/**
+	 * Recompute the selection and color prefix sums if {@code version} or
+	 * {@code colorGenerator} differ from the last call.
+	 *
+	 * @param list
+	 *            the list that this pyramid was built for.
+	 * @param selection
+	 *            the selection model.
+	 * @param colorGenerator
+	 *            the color generator.
+	 * @param version
+	 *            the version of selection, colors, and ghost state. Must be
+	 *            changed by the caller when any of these changes.
+	 * @param ref
+	 *            a vertex reference that is used internally.
+	 */
+	void updateAttributes(
+			final TrackSchemeVertexList list,
+			final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection,
+			final GraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator,
+			final int version,
+			final TrackSchemeVertex ref )
+	{
+		if ( version == attributesVersion && colorGenerator == this.colorGenerator )
+			return;
+
+		if ( selectedPrefix == null )
+		{
+			selectedPrefix = new int[ size + 1 ];
+			coloredPrefix = new int[ size + 1 ];
+			channelPrefix = new long[ 4 ][ size + 1 ];
+		}
+		final long[] a = channelPrefix[ 0 ];
+		final long[] r = channelPrefix[ 1 ];
+		final long[] g = channelPrefix[ 2 ];
+		final long[] b = channelPrefix[ 3 ];
+		for ( int i = 0; i < size; ++i )
+		{
+			list.get( i, ref );
+			selectedPrefix[ i + 1 ] = selectedPrefix[ i ] + ( selection.isSelected( ref ) ? 1 : 0 );
+			final int color = colorGenerator.color( ref );
+			if ( color == 0 )
+			{
+				coloredPrefix[ i + 1 ] = coloredPrefix[ i ];
+				a[ i + 1 ] = a[ i ];
+				r[ i + 1 ] = r[ i ];
+				g[ i + 1 ] = g[ i ];
+				b[ i + 1 ] = b[ i ];
+			}
+			else
+			{
+				coloredPrefix[ i + 1 ] = coloredPrefix[ i ] + 1;
+				a[ i + 1 ] = a[ i ] + ( ( color >>> 24 ) & 0xff );
+				r[ i + 1 ] = r[ i ] + ( ( color >> 16 ) & 0xff );
+				g[ i + 1 ] = g[ i ] + ( ( color >> 8 ) & 0xff );
+				b[ i + 1 ] = b[ i ] + ( color & 0xff );
+			}
+		}
+
+		attributesVersion = version;
+		this.colorGenerator = colorGenerator;
+	}
+
+	/**
+	 * Get the number of selected vertices in the specified index range. Only
+	 * valid after
+	 * {@link #updateAttributes(TrackSchemeVertexList, SelectionModel, GraphColorGenerator, int, TrackSchemeVertex)}.
+	 *
+	 * @param first
+	 *            first index of the range (inclusive).
+	 * @param last
+	 *            last index of the range (inclusive).
+	 * @return the number of selected vertices.
+	 */
+	int getSelectedCount( final int first, final int last )
+	{
+		return selectedPrefix[ last + 1 ] - selectedPrefix[ first ];
+	}
+
+	/**
+	 * Get the average ARGB color of the colored vertices in the specified index
+	 * range. Only valid after
+	 * {@link #updateAttributes(TrackSchemeVertexList, SelectionModel, GraphColorGenerator, int, TrackSchemeVertex)}.
+	 *
+	 * @param first
+	 *            first index of the range (inclusive).
+	 * @param last
+	 *            last index of the range (inclusive).
+	 * @return the average color, or {@code 0} if no vertex in the range is
+	 *         colored.
+	 */
+	int getColor( final int first, final int last )
+	{
+		final int n = coloredPrefix[ last + 1 ] - coloredPrefix[ first ];
+		if ( n == 0 )
+			return 0;
+		final int a = ( int ) ( ( channelPrefix[ 0 ][ last + 1 ] - channelPrefix[ 0 ][ first ] ) / n );
+		final int r = ( int ) ( ( channelPrefix[ 1 ][ last + 1 ] - channelPrefix[ 1 ][ first ] ) / n );
+		final int g = ( int ) ( ( channelPrefix[ 2 ][ last + 1 ] - channelPrefix[ 2 ][ first ] ) / n );
+		final int b = ( int ) ( ( channelPrefix[ 3 ][ last + 1 ] - channelPrefix[ 3 ][ first ] ) / n );
+		final int color = ( a << 24 ) | ( r << 16 ) | ( g << 8 ) | b;
+		// 0 means "not colored"
+		return color == 0 ? 0x01000000 : color;
+	}
+}
@@ -1,16 +1,19 @@
 package org.mastodon.revised.trackscheme;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Iterator;
 
 import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefList;
+import org.mastodon.collection.RefSet;
 import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.graph.GraphListener;
 import org.mastodon.revised.trackscheme.util.AlphanumCompare;
 
-import gnu.trove.iterator.TIntIterator;
-import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
 
 /**
  * Lexicographically order {@link TrackSchemeVertex} for root sorting in
@@ -21,115 +24,272 @@ import gnu.trove.list.array.TIntArrayList;
  * the key of the nodes parent and this node is the <em>i</em>th child of the
  * parent.
  * </ol>
+ * <p>
+ * (The parent of a vertex with several incoming edges is the source of the
+ * first incoming edge.)
+ * <p>
+ * Keys are not built explicitly. Instead, the order is maintained as a pair of
+ * attributes of each vertex in the {@link TrackSchemeGraph} vertex pool: The
+ * root of its tree, and the pre-order index of the vertex in its tree. Two
+ * vertices of the same tree are ordered by pre-order index, vertices of
+ * different trees by the labels of the roots. The {@link TrackSchemeGraph}
+ * registers its {@link LexicographicalVertexOrder} as a {@link GraphListener},
+ * and trees touched by graph changes are re-indexed lazily before the next
+ * {@link #sort(RefCollection)}.
+ * <p>
+ * Vertices of different trees whose roots have the same label are ordered by
+ * tree, not interleaved.
  *
  * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
  */
-public class LexicographicalVertexOrder
+public class LexicographicalVertexOrder implements GraphListener< TrackSchemeVertex, TrackSchemeEdge >
 {
+	/**
+	 * Sort vertices of a {@link TrackSchemeGraph} lexicographically.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param vertices
+	 *            the vertices to sort.
+	 * @return a new list of the sorted vertices.
+	 */
 	public static RefList< TrackSchemeVertex > sort(
 			final TrackSchemeGraph< ?, ? > graph,
 			final RefCollection< TrackSchemeVertex > vertices )
 	{
-		final ArrayList< VertexKey > keys = new ArrayList<>( vertices.size() );
-		for ( final TrackSchemeVertex v : vertices )
-			keys.add( VertexKey.build( v, graph ) );
-		Collections.sort( keys );
+		return graph.getVertexOrder().sort( vertices );
+	}
 
-		final RefArrayList< TrackSchemeVertex > sorted = new RefArrayList<>( graph.vertices().getRefPool(), vertices.size() );
-		final TIntArrayList indices = sorted.getIndexCollection();
-		for ( final VertexKey k : keys )
-			indices.add( k.getVertexInternalPoolIndex() );
+	private final TrackSchemeGraph< ?, ? > graph;
 
-		return sorted;
+	/**
+	 * Vertices whose trees need to be re-indexed.
+	 */
+	private final RefSet< TrackSchemeVertex > dirty;
+
+	/**
+	 * Whether all trees need to be re-indexed.
+	 */
+	private boolean rebuild;
+
+	private final ArrayList< StackFrame > stack;
+
+	LexicographicalVertexOrder( final TrackSchemeGraph< ?, ? > graph )
+	{
+		this.graph = graph;
+		dirty = RefCollections.createRefSet( graph.vertices() );
+		rebuild = true;
+		stack = new ArrayList<>();
 	}
 
-	private static class VertexKey implements Comparable< VertexKey >
+	/**
+	 * Sort vertices lexicographically.
+	 *
+	 * @param vertices
+	 *            the vertices to sort.
+	 * @return a new list of the sorted vertices.
+	 */
+	public synchronized RefList< TrackSchemeVertex > sort( final RefCollection< TrackSchemeVertex > vertices )
 	{
-		public static VertexKey build(
-				final TrackSchemeVertex v,
-				final TrackSchemeGraph< ?, ? > graph )
+		update();
+
+		/*
+		 * Find the distinct trees of the vertices, and for each tree the
+		 * largest pre-order index of the vertices to sort.
+		 */
+		final int n = vertices.size();
+		final int[] vertexIndices = new int[ n ];
+		final int[] vertexTrees = new int[ n ];
+		final int[] vertexOrderIndices = new int[ n ];
+		final TIntIntHashMap rootToTree = new TIntIntHashMap( 16, 0.5f, -1, -1 );
+		final TIntArrayList treeRoots = new TIntArrayList();
+		final TIntArrayList treeSizes = new TIntArrayList();
+		int i = 0;
+		for ( final TrackSchemeVertex v : vertices )
 		{
-			final VertexKey token;
-			if ( v.incomingEdges().isEmpty() )
-				token = new VertexKey( v.getLabel() );
-			else
+			final int root = v.getLexOrderRoot();
+			int tree = rootToTree.get( root );
+			if ( tree < 0 )
 			{
-				final TrackSchemeVertex ref = graph.vertexRef();
-
-				final TrackSchemeEdge parentEdge = v.incomingEdges().iterator().next();
-				final TrackSchemeVertex parent = parentEdge.getSource( ref );
-				token = build( parent, graph );
-
-				int i = 0;
-				for ( final TrackSchemeEdge e : parent.outgoingEdges() )
-					if ( e.equals( parentEdge ) )
-						break;
-					else
-						++i;
-				token.append( i );
-
-				graph.releaseRef( ref );
+				tree = treeRoots.size();
+				rootToTree.put( root, tree );
+				treeRoots.add( root );
+				treeSizes.add( 0 );
 			}
-			token.vertexInternalPoolIndex = v.getInternalPoolIndex();
-			return token;
+			final int index = v.getLexOrderIndex();
+			if ( index >= treeSizes.get( tree ) )
+				treeSizes.set( tree, index + 1 );
+			vertexIndices[ i ] = v.getInternalPoolIndex();
+			vertexTrees[ i ] = tree;
+			vertexOrderIndices[ i ] = index;
+			++i;
 		}
 
-		private final String rootName;
+		/*
+		 * Sort trees by root label, and compute the offset of each tree in the
+		 * combined order.
+		 */
+		final int numTrees = treeRoots.size();
+		final String[] labels = new String[ numTrees ];
+		final TrackSchemeVertex ref = graph.vertexRef();
+		for ( int t = 0; t < numTrees; ++t )
+			labels[ t ] = graph.getVertexPool().getObject( treeRoots.get( t ), ref ).getLabel();
+		graph.releaseRef( ref );
+		final Integer[] treeOrder = new Integer[ numTrees ];
+		for ( int t = 0; t < numTrees; ++t )
+			treeOrder[ t ] = t;
+		Arrays.sort( treeOrder, ( t1, t2 ) -> AlphanumCompare.compare( labels[ t1 ], labels[ t2 ] ) );
+		final int[] treeOffsets = new int[ numTrees ];
+		int offset = 0;
+		for ( final int t : treeOrder )
+		{
+			treeOffsets[ t ] = offset;
+			offset += treeSizes.get( t );
+		}
 
-		private final TIntList edgeSequence;
+		/*
+		 * Sort vertices by (tree offset + pre-order index). The position in
+		 * the input is packed into the lower bits to make the sort stable.
+		 */
+		final long[] keys = new long[ n ];
+		for ( i = 0; i < n; ++i )
+			keys[ i ] = ( ( long ) ( treeOffsets[ vertexTrees[ i ] ] + vertexOrderIndices[ i ] ) << 32 ) | i;
+		Arrays.sort( keys );
 
-		private int vertexInternalPoolIndex;
+		final RefArrayList< TrackSchemeVertex > sorted = new RefArrayList<>( graph.vertices().getRefPool(), n );
+		final TIntArrayList indices = sorted.getIndexCollection();
+		for ( i = 0; i < n; ++i )
+			indices.add( vertexIndices[ ( int ) keys[ i ] ] );
 
-		private VertexKey( final String rootName )
-		{
-			this.rootName = rootName;
-			edgeSequence = new TIntArrayList();
-		}
+		return sorted;
+	}
 
-		private void append( final int i )
+	/**
+	 * Re-index the trees touched by graph changes since the last update.
+	 */
+	private void update()
+	{
+		if ( rebuild )
 		{
-			edgeSequence.add( i );
+			dirty.clear();
+			for ( final TrackSchemeVertex root : graph.getRoots() )
+				reindex( root );
+			rebuild = false;
 		}
-
-		public int getVertexInternalPoolIndex()
+		else if ( !dirty.isEmpty() )
 		{
-			return vertexInternalPoolIndex;
+			final RefSet< TrackSchemeVertex > dirtyRoots = RefCollections.createRefSet( graph.vertices() );
+			final TrackSchemeVertex ref = graph.vertexRef();
+			for ( final TrackSchemeVertex v : dirty )
+			{
+				ref.refTo( v );
+				while ( !ref.incomingEdges().isEmpty() )
+					ref.incomingEdges().iterator().next().getSource( ref );
+				dirtyRoots.add( ref );
+			}
+			graph.releaseRef( ref );
+			dirty.clear();
+			for ( final TrackSchemeVertex root : dirtyRoots )
+				reindex( root );
 		}
+	}
 
-		@Override
-		public int compareTo( final VertexKey o )
+	private class StackFrame
+	{
+		final TrackSchemeVertex vertex = graph.vertexRef();
+
+		Iterator< TrackSchemeEdge > edges;
+	}
+
+	/**
+	 * Assign pre-order indices to the tree starting at {@code root}. Children
+	 * are visited in the order of outgoing edges, and only through the first
+	 * incoming edge of each child.
+	 */
+	private void reindex( final TrackSchemeVertex root )
+	{
+		final int rootIndex = root.getInternalPoolIndex();
+		int index = 0;
+		int depth = 0;
+		if ( stack.isEmpty() )
+			stack.add( new StackFrame() );
+		final StackFrame rootFrame = stack.get( 0 );
+		rootFrame.vertex.refTo( root );
+		rootFrame.vertex.setLexOrderRoot( rootIndex );
+		rootFrame.vertex.setLexOrderIndex( index++ );
+		rootFrame.edges = rootFrame.vertex.outgoingEdges().iterator();
+		while ( depth >= 0 )
 		{
-			final int rc = AlphanumCompare.compare( rootName, o.rootName );
-			if ( rc == 0 )
+			final StackFrame f = stack.get( depth );
+			if ( f.edges.hasNext() )
 			{
-				final TIntIterator it = edgeSequence.iterator();
-				final TIntIterator oit = o.edgeSequence.iterator();
-				while ( it.hasNext() )
+				final TrackSchemeEdge edge = f.edges.next();
+				if ( stack.size() == depth + 1 )
+					stack.add( new StackFrame() );
+				final StackFrame c = stack.get( depth + 1 );
+				edge.getTarget( c.vertex );
+				if ( c.vertex.incomingEdges().iterator().next().equals( edge ) )
 				{
-					if ( !oit.hasNext() )
-						return 1;
-					final int e = it.next() - oit.next();
-					if ( e != 0 )
-						return e;
+					c.vertex.setLexOrderRoot( rootIndex );
+					c.vertex.setLexOrderIndex( index++ );
+					c.edges = c.vertex.outgoingEdges().iterator();
+					++depth;
 				}
-				return oit.hasNext() ? -1 : 0;
 			}
 			else
-				return rc;
+				--depth;
+		}
+	}
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		dirty.clear();
+		rebuild = true;
+	}
+
+	@Override
+	public synchronized void vertexAdded( final TrackSchemeVertex vertex )
+	{
+		if ( !rebuild )
+			dirty.add( vertex );
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final TrackSchemeVertex vertex )
+	{
+		if ( !rebuild )
+		{
+			final TrackSchemeVertex ref = graph.vertexRef();
+			for ( final TrackSchemeEdge edge : vertex.incomingEdges() )
+				dirty.add( edge.getSource( ref ) );
+			for ( final TrackSchemeEdge edge : vertex.outgoingEdges() )
+				dirty.add( edge.getTarget( ref ) );
+			graph.releaseRef( ref );
+			dirty.remove( vertex );
 		}
+	}
+
+	@Override
+	public synchronized void edgeAdded( final TrackSchemeEdge edge )
+	{
+		touchEndpoints( edge );
+	}
 
-		@Override
-		public String toString()
+	@Override
+	public synchronized void edgeRemoved( final TrackSchemeEdge edge )
+	{
+		touchEndpoints( edge );
+	}
+
+	private void touchEndpoints( final TrackSchemeEdge edge )
+	{
+		if ( !rebuild )
 		{
-			final StringBuilder b = new StringBuilder( "[" + rootName );
-			final TIntIterator it = edgeSequence.iterator();
-			while ( it.hasNext() )
-			{
-				b.append( "," );
-				b.append( it.next() );
-			}
-			b.append( "]" );
-			return b.toString();
+			final TrackSchemeVertex ref = graph.vertexRef();
+			dirty.add( edge.getSource( ref ) );
+			dirty.add( edge.getTarget( ref ) );
+			graph.releaseRef( ref );
 		}
 	}
 }
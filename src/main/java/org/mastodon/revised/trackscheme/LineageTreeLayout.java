@@ -1,18 +1,22 @@
 package org.mastodon.revised.trackscheme;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefList;
 import org.mastodon.collection.RefSet;
 import org.mastodon.graph.Edges;
+import org.mastodon.graph.GraphListener;
 import org.mastodon.model.SelectionModel;
 import org.mastodon.revised.trackscheme.ScreenEdge.ScreenEdgePool;
 import org.mastodon.revised.trackscheme.ScreenVertex.ScreenVertexPool;
 import org.mastodon.revised.trackscheme.ScreenVertexRange.ScreenVertexRangePool;
+import org.mastodon.revised.trackscheme.util.AlphanumCompare;
 import org.mastodon.revised.ui.coloring.GraphColorGenerator;
 import org.scijava.listeners.Listeners;
 
@@ -23,6 +27,9 @@ import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TIntObjectArrayMap;
 import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 import net.imglib2.RealLocalizable;
 
 /**
@@ -45,6 +52,14 @@ import net.imglib2.RealLocalizable;
  *
  * We call vertices contained in the current layout <em>active</em>.
  *
+ * <p>
+ * After a full layout (see {@link #layout()}), the layout can be updated
+ * incrementally when the graph changes (see {@link #updateLayout()}). For this,
+ * changes of the {@link TrackSchemeGraph} are tracked in terms of the layout
+ * columns (one column per lineage tree) that they touch. Only the lineage trees
+ * in touched columns are laid out again, and the trees to their right are
+ * shifted to make room.
+ *
  *
  *
  * TODO TODO TODO
@@ -78,6 +93,24 @@ public class LineageTreeLayout
 	 */
 	private double rightmost;
 
+	/**
+	 * The {@link TrackSchemeVertex#getLayoutColumn() layout column} assigned to
+	 * vertices by {@link #layoutX_iterative(TrackSchemeVertex, TIntObjectMap)}.
+	 */
+	private int currentColumn;
+
+	/**
+	 * The number of layout columns used by the vertices of the current layout.
+	 * {@link #updateLayout()} assigns new columns after these.
+	 */
+	private int numLayoutColumns;
+
+	/**
+	 * Incremented whenever the layout changes, including incremental updates
+	 * that do not change the {@link #timestamp}.
+	 */
+	private int layoutVersion;
+
 	/**
 	 * The timestamp used in the current layout. This is incremented at the
 	 * beginning of {@link #layout(Collection, int)}. It is also incremented
@@ -137,9 +170,72 @@ public class LineageTreeLayout
 	 */
 	private final RefList< TrackSchemeVertex > currentLayoutColumnRoot;
 
+	/**
+	 * Whether the current layout is a full layout of all graph roots, that has
+	 * been kept in sync with graph changes since. Only then, the layout can be
+	 * updated incrementally by {@link #updateLayout()}.
+	 */
+	private boolean incrementalUpdatePossible;
+
+	/**
+	 * Indices (into {@link #currentLayoutColumnRoot}) of the columns touched by
+	 * graph changes since the last layout.
+	 */
+	private final TIntHashSet dirtyColumns;
+
+	/**
+	 * Vertices touched by graph changes since the last layout. These comprise
+	 * added vertices, the end points of added and removed edges, and the roots
+	 * of {@link #dirtyColumns}.
+	 */
+	private final RefSet< TrackSchemeVertex > touchedVertices;
+
+	/**
+	 * During {@link #updateLayout()}, the vertices laid out so far. Otherwise
+	 * {@code null}.
+	 */
+	private RefSet< TrackSchemeVertex > laidOutInUpdate;
+
+	/**
+	 * Set during {@link #updateLayout()} if a vertex is encountered that was
+	 * laid out as part of an unchanged lineage tree. Then the incremental update
+	 * is not equivalent to a full layout and is abandoned.
+	 */
+	private boolean updateConflict;
+
+	/**
+	 * If non-{@code null}, used by {@link #layout()} to lay out independent
+	 * lineage trees in parallel.
+	 */
+	private final ParallelLineageTreeLayout parallelLayout;
+
+	/**
+	 * Incremented by {@link #attributesChanged()}. Used to decide when the
+	 * selection and color summaries of dense vertex ranges must be
+	 * recomputed.
+	 */
+	private int attributesVersion;
+
 	public LineageTreeLayout(
 			final TrackSchemeGraph< ?, ? > graph,
 			final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection )
+	{
+		this( graph, selection, null );
+	}
+
+	/**
+	 * @param graph
+	 *            the graph to lay out.
+	 * @param selection
+	 *            the selection model.
+	 * @param forkJoinPool
+	 *            if non-{@code null}, full layouts (see {@link #layout()}) of
+	 *            several lineage trees are parallelized on this pool.
+	 */
+	public LineageTreeLayout(
+			final TrackSchemeGraph< ?, ? > graph,
+			final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection,
+			final ForkJoinPool forkJoinPool )
 	{
 		this.graph = graph;
 		this.selection = selection;
@@ -152,6 +248,16 @@ public class LineageTreeLayout
 		currentLayoutColumnRoot = RefCollections.createRefList( graph.vertices() );
 		stack = new ArrayList<>();
 		stack.add( new StackFrame( null ) );
+		incrementalUpdatePossible = false;
+		dirtyColumns = new TIntHashSet();
+		touchedVertices = RefCollections.createRefSet( graph.vertices() );
+		laidOutInUpdate = null;
+		parallelLayout = forkJoinPool == null ? null : new ParallelLineageTreeLayout( graph, forkJoinPool );
+		attributesVersion = 0;
+		currentColumn = -1;
+		numLayoutColumns = 0;
+		layoutVersion = 0;
+		graph.graphListeners().add( new LayoutUpdateTracker() );
 	}
 
 	/**
@@ -159,10 +265,94 @@ public class LineageTreeLayout
 	 * <p>
 	 * This calls {@link #layout(Collection, int)} with parameter {@code mark = -1},
 	 * that is, no vertices will me marked as ghosts.
+	 * <p>
+	 * If a {@link ForkJoinPool} was specified at construction, independent
+	 * lineage trees are laid out in parallel. The result is the same.
 	 */
 	public void layout()
 	{
-		layout( LexicographicalVertexOrder.sort( graph, graph.getRoots() ), -1 );
+		final RefList< TrackSchemeVertex > roots = LexicographicalVertexOrder.sort( graph, graph.getRoots() );
+		if ( parallelLayout != null && roots.size() > 1 )
+			layoutParallel( roots );
+		else
+			layout( roots, -1 );
+		incrementalUpdatePossible = true;
+	}
+
+	/**
+	 * Equivalent to {@code layout( roots, -1 )}, where {@code roots} are graph
+	 * roots, but lays out the trees in parallel.
+	 */
+	private void layoutParallel( final RefList< TrackSchemeVertex > roots )
+	{
+		incrementalUpdatePossible = false;
+		dirtyColumns.clear();
+		touchedVertices.clear();
+		++timestamp;
+		timepoints.clear();
+		timepointToOrderedVertices.clear();
+		currentLayoutColumnX.clear();
+		currentLayoutColumnRoot.clear();
+		mark = -1;
+		rightmost = parallelLayout.layout( roots, timestamp, timepointToOrderedVertices, currentLayoutColumnX );
+		currentLayoutColumnRoot.addAll( roots );
+		// Trees are laid out in local coordinates, with one column each.
+		final TDoubleArrayList offsets = graph.getVertexPool().layoutColumnOffsets;
+		offsets.resetQuick();
+		for ( int c = 0; c < roots.size(); ++c )
+			offsets.add( currentLayoutColumnX.get( c ) );
+		numLayoutColumns = roots.size();
+		timepoints.addAll( timepointToOrderedVertices.keys() );
+		timepoints.sort();
+		currentLayoutMinX = 0;
+		currentLayoutMaxX = rightmost - 1;
+		++layoutVersion;
+		notifyListeners();
+	}
+
+	/**
+	 * Update the layout to reflect changes of the graph since the last layout.
+	 * <p>
+	 * If the last layout was a full layout (see {@link #layout()}), only the
+	 * lineage trees touched by the changes are laid out again, and the column
+	 * offsets of the trees to their right are shifted accordingly. Otherwise,
+	 * or if the changes cannot be applied incrementally (for example, because
+	 * they touch vertices with several parents in different trees, or because
+	 * the graph was rebuilt), this falls back to a full {@link #layout()}.
+	 * <p>
+	 * The result is the same as for a full {@link #layout()}, with the
+	 * exception that the order of unchanged trees is kept, i.e., a tree whose
+	 * root label changed is not re-sorted until the next full layout. The
+	 * {@link #getCurrentLayoutTimestamp() layout timestamp} is not changed,
+	 * but the {@link #getCurrentLayoutVersion() layout version} is.
+	 */
+	public void updateLayout()
+	{
+		if ( !incrementalUpdatePossible || ( dirtyColumns.isEmpty() && touchedVertices.isEmpty() ) )
+		{
+			layout();
+			return;
+		}
+
+		final boolean success;
+		try
+		{
+			success = layoutIncremental();
+		}
+		finally
+		{
+			laidOutInUpdate = null;
+			dirtyColumns.clear();
+			touchedVertices.clear();
+		}
+
+		if ( success )
+		{
+			++layoutVersion;
+			notifyListeners();
+		}
+		else
+			layout();
 	}
 
 	/**
@@ -179,6 +369,16 @@ public class LineageTreeLayout
 		layout( layoutRoots, -1 );
 	}
 
+	/**
+	 * Notify the layout that the selection, or vertex colors changed. This
+	 * invalidates the summaries used to paint dense vertex ranges in
+	 * {@link #cropAndScale(ScreenTransform, ScreenEntities, int, int, GraphColorGenerator)}.
+	 */
+	public void attributesChanged()
+	{
+		++attributesVersion;
+	}
+
 	// TODO: add javadoc ref to context trackscheme class
 	/**
 	 * Layout graph in trackscheme coordinates starting from specified roots.
@@ -202,6 +402,40 @@ public class LineageTreeLayout
 	 */
 	public void layout( final Collection< TrackSchemeVertex > layoutRoots, final int mark )
 	{
+		layout( layoutRoots, mark, null );
+	}
+
+	/**
+	 * Layout graph in trackscheme coordinates starting from specified roots,
+	 * re-using the current layout of some lineage trees.
+	 * <p>
+	 * This is equivalent to {@link #layout(Collection, int)}, except that the
+	 * lineage trees whose graph root's pool index is contained in
+	 * {@code reusableTrees} are not laid out again. Instead, their vertices are
+	 * copied from the current layout, shifted to their new column. This is
+	 * used by {@link ContextLayout} to update the layout incrementally. The
+	 * caller must make sure that the result is the same as laying out these
+	 * trees again, that is, the vertices of reusable trees were marked in the
+	 * same way as for the current layout, and reusable trees do not share
+	 * vertices with other trees.
+	 *
+	 * @param layoutRoots
+	 *            root vertices from which to start layout.
+	 * @param mark
+	 *            timestamp value that was used to mark vertices to be laid out.
+	 *            (Ghost vertices were marked with {@code mark-1}.)
+	 * @param reusableTrees
+	 *            pool indices of the graph roots of lineage trees whose current
+	 *            layout can be re-used. May be {@code null}.
+	 */
+	public void layout( final Collection< TrackSchemeVertex > layoutRoots, final int mark, final TIntSet reusableTrees )
+	{
+		final TIntObjectMap< ReusedColumn > reusedColumns = getReusedColumns( reusableTrees );
+		graph.getVertexPool().layoutColumnOffsets.resetQuick();
+
+		incrementalUpdatePossible = false;
+		dirtyColumns.clear();
+		touchedVertices.clear();
 		++timestamp;
 		rightmost = 0;
 		timepoints.clear();
@@ -210,28 +444,174 @@ public class LineageTreeLayout
 		currentLayoutColumnRoot.clear();
 		final TrackSchemeVertex previousGraphRoot = graph.vertexRef();
 		final TrackSchemeVertex currentGraphRoot = graph.vertexRef();
+		final TrackSchemeVertex ref = graph.vertexRef();
 		this.mark = mark;
 		boolean first = true;
+		boolean reused = false;
 		currentLayoutColumnX.add( rightmost );
 		for ( final TrackSchemeVertex root : layoutRoots )
 		{
-			layoutX_iterative( root );
 			getGraphRoot( root, currentGraphRoot );
 			if ( first || !currentGraphRoot.equals( previousGraphRoot ) )
 			{
+				if ( !first )
+					currentLayoutColumnX.add( rightmost );
 				currentLayoutColumnRoot.add( currentGraphRoot );
-				currentLayoutColumnX.add( rightmost );
+				currentColumn = currentLayoutColumnRoot.size() - 1;
 				first = false;
 				previousGraphRoot.refTo( currentGraphRoot );
+
+				final ReusedColumn column = reusedColumns == null
+						? null
+						: reusedColumns.get( currentGraphRoot.getInternalPoolIndex() );
+				reused = column != null;
+				if ( reused )
+					copyColumn( column, ref );
 			}
+			if ( !reused )
+				layoutX_iterative( root, timepointToOrderedVertices );
 		}
+		if ( !first )
+			currentLayoutColumnX.add( rightmost );
+		timepoints.addAll( timepointToOrderedVertices.keys() );
+		timepoints.sort();
 		currentLayoutMinX = 0;
 		currentLayoutMaxX = rightmost - 1;
+		numLayoutColumns = currentLayoutColumnRoot.size();
 		graph.releaseRef( previousGraphRoot );
 		graph.releaseRef( currentGraphRoot );
+		graph.releaseRef( ref );
+		++layoutVersion;
 		notifyListeners();
 	}
 
+	/**
+	 * The vertices of a column of the current layout, to be copied into the
+	 * next layout by {@link LineageTreeLayout#copyColumn}.
+	 */
+	private static class ReusedColumn
+	{
+		/**
+		 * The layoutX range of the column, {@code [x0, x1)}.
+		 */
+		final double x0;
+
+		final double x1;
+
+		final int[] timepoints;
+
+		final TrackSchemeVertexList[] lists;
+
+		/**
+		 * The index range of the column in {@code lists[i]} is
+		 * {@code [ranges[2i], ranges[2i+1])}.
+		 */
+		final int[] ranges;
+
+		ReusedColumn( final double x0, final double x1, final int[] timepoints, final TrackSchemeVertexList[] lists, final int[] ranges )
+		{
+			this.x0 = x0;
+			this.x1 = x1;
+			this.timepoints = timepoints;
+			this.lists = lists;
+			this.ranges = ranges;
+		}
+	}
+
+	/**
+	 * Find the index ranges of the columns of the specified trees in the
+	 * current ordered vertex lists. This must be done before any vertex is laid
+	 * out again, because the lists are only sorted by layoutX until then. The
+	 * layoutX of the vertices of these columns is made absolute, such that it
+	 * does not depend on the column offsets of the current layout anymore.
+	 *
+	 * @return map from graph root pool index to column, or {@code null} if
+	 *         nothing can be re-used.
+	 */
+	private TIntObjectMap< ReusedColumn > getReusedColumns( final TIntSet reusableTrees )
+	{
+		if ( reusableTrees == null || reusableTrees.isEmpty() )
+			return null;
+
+		final int[] tps = timepoints.toArray();
+		final TrackSchemeVertexList[] lists = new TrackSchemeVertexList[ tps.length ];
+		for ( int i = 0; i < tps.length; ++i )
+			lists[ i ] = timepointToOrderedVertices.get( tps[ i ] );
+
+		final TIntObjectMap< ReusedColumn > columns = new TIntObjectHashMap<>();
+		final TrackSchemeVertex ref = graph.vertexRef();
+		try
+		{
+			final int numColumns = currentLayoutColumnRoot.size();
+			if ( currentLayoutColumnX.size() != numColumns + 1 )
+				return null;
+			for ( int c = 0; c < numColumns; ++c )
+			{
+				final int root = currentLayoutColumnRoot.get( c, ref ).getInternalPoolIndex();
+				if ( !reusableTrees.contains( root ) )
+					continue;
+
+				final double x0 = currentLayoutColumnX.get( c );
+				final double x1 = currentLayoutColumnX.get( c + 1 );
+				final int[] ranges = new int[ 2 * tps.length ];
+				for ( int i = 0; i < tps.length; ++i )
+				{
+					ranges[ 2 * i ] = firstIndexNotLessThan( lists[ i ], x0 );
+					ranges[ 2 * i + 1 ] = firstIndexNotLessThan( lists[ i ], x1 );
+					for ( int j = ranges[ 2 * i ]; j < ranges[ 2 * i + 1 ]; ++j )
+					{
+						final double x = lists[ i ].get( j, ref ).getLayoutX();
+						ref.setLayoutColumn( -1 );
+						ref.setLayoutX( x );
+					}
+				}
+				// a tree split over several columns cannot be re-used
+				if ( columns.put( root, new ReusedColumn( x0, x1, tps, lists, ranges ) ) != null )
+					return null;
+			}
+			return columns;
+		}
+		finally
+		{
+			graph.releaseRef( ref );
+		}
+	}
+
+	/**
+	 * Append the vertices of a column of the previous layout to the ordered
+	 * vertex lists, shifted to start at {@link #rightmost}.
+	 */
+	private void copyColumn( final ReusedColumn column, final TrackSchemeVertex ref )
+	{
+		final double shift = rightmost - column.x0;
+		for ( int i = 0; i < column.timepoints.length; ++i )
+		{
+			final int from = column.ranges[ 2 * i ];
+			final int to = column.ranges[ 2 * i + 1 ];
+			if ( to <= from )
+				continue;
+
+			final int tp = column.timepoints[ i ];
+			TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+			if ( vlist == null )
+			{
+				vlist = new TrackSchemeVertexList( graph, to - from );
+				timepointToOrderedVertices.put( tp, vlist );
+			}
+			final TrackSchemeVertexList src = column.lists[ i ];
+			for ( int j = from; j < to; ++j )
+			{
+				src.get( j, ref );
+				final double x = ref.getLayoutX() + shift;
+				ref.setLayoutColumn( currentColumn );
+				ref.setLayoutX( x );
+				ref.setLayoutTimestamp( timestamp );
+				vlist.add( ref );
+			}
+		}
+		rightmost += column.x1 - column.x0;
+	}
+
 	/**
 	 * Get the minimum layoutX coordinate assigned to any vertex in the current
 	 * layout (last call of one of the {@code layout(...)} methods).
@@ -268,6 +648,18 @@ public class LineageTreeLayout
 		return timestamp;
 	}
 
+	/**
+	 * Get a counter that is incremented whenever the layout changes. Unlike
+	 * the {@link #getCurrentLayoutTimestamp() timestamp}, this is also
+	 * incremented by incremental {@link #updateLayout() updates}.
+	 *
+	 * @return the layout version.
+	 */
+	public int getCurrentLayoutVersion()
+	{
+		return layoutVersion;
+	}
+
 	// TODO: add javadoc ref to context trackscheme class
 	/**
 	 * Get a new layout timestamp for external use. The next layout will then
@@ -357,10 +749,19 @@ public class LineageTreeLayout
 				if ( maxIndex < vertexList.size() - 1 )
 					maxIndex++;
 
-				final double minLayoutX = vertexList.getMinLayoutXDistance();
-				TIntArrayList denseRanges = vertexList.getDenseRanges( minIndex, maxIndex + 1, minLayoutX, allowedMinD, 3, v1 );
-				if ( denseRanges == null )
-					denseRanges = new TIntArrayList();
+				TIntArrayList denseRanges;
+				if ( DensityPyramid.isApplicable( allowedMinD ) )
+				{
+					// zoomed out: summarize buckets of the density pyramid
+					denseRanges = vertexList.getDensityPyramid( v1 ).getDenseRanges( minIndex, maxIndex + 1, allowedMinD );
+				}
+				else
+				{
+					final double minLayoutX = vertexList.getMinLayoutXDistance();
+					denseRanges = vertexList.getDenseRanges( minIndex, maxIndex + 1, minLayoutX, allowedMinD, 3, v1 );
+					if ( denseRanges == null )
+						denseRanges = new TIntArrayList();
+				}
 				denseRanges.add( maxIndex + 1 );
 
 				final TIntIterator riter = denseRanges.iterator();
@@ -376,11 +777,10 @@ public class LineageTreeLayout
 						final int v1si = screenVertices.size();
 						v1.setScreenVertexIndex( v1si );
 						final int id = v1.getInternalPoolIndex();
-						final String label = v1.getLabel();
 						final double x = ( v1.getLayoutX() - minX ) * xScale + decorationsOffsetX;
 						final boolean selected = selection.isSelected( v1 );
 						final boolean ghost = v1.isGhost();
-						screenVertexPool.create( sv ).init( id, label, x, y, selected, ghost, colorGenerator.color( v1 ) );
+						screenVertexPool.create( sv ).init( id, null, x, y, selected, ghost, colorGenerator.color( v1 ) );
 						screenVertices.add( sv );
 
 						minVertexScreenDist = Math.min( minVertexScreenDist, x - prevX );
@@ -398,12 +798,11 @@ public class LineageTreeLayout
 								v2si = screenVertices.size();
 								v2.setScreenVertexIndex( v2si );
 								final int nid = v2.getInternalPoolIndex();
-								final String nlabel = v2.getLabel();
 								final double nx = ( v2.getLayoutX() - minX ) * xScale + decorationsOffsetX;
 								final double ny = ( v2.getTimepoint() - minY ) * yScale + decorationsOffsetY;
 								final boolean nselected = selection.isSelected( v2 );
 								final boolean nghost = v2.isGhost();
-								screenVertexPool.create( sv ).init( nid, nlabel, nx, ny, nselected, nghost, colorGenerator.color( v2 ) );
+								screenVertexPool.create( sv ).init( nid, null, nx, ny, nselected, nghost, colorGenerator.color( v2 ) );
 								screenVertices.add( sv );
 							}
 
@@ -425,13 +824,24 @@ public class LineageTreeLayout
 						i = rangeMaxIndex;
 						final double svMinX = ( vertexList.get( rangeMinIndex, v1 ).getLayoutX() - minX ) * xScale + decorationsOffsetX;
 						final double svMaxX = ( vertexList.get( rangeMaxIndex, v1 ).getLayoutX() - minX ) * xScale + decorationsOffsetX; // TODO: make minimum width (maybe only when painting...)
-						vertexRanges.add( screenRangePool.create( sr ).init( svMinX, svMaxX, prevY, y ) );
+						final DensityPyramid pyramid = vertexList.getDensityPyramid( v1 );
+						pyramid.updateAttributes( vertexList, selection, colorGenerator, attributesVersion, v1 );
+						final boolean rselected = 2 * pyramid.getSelectedCount( rangeMinIndex, rangeMaxIndex ) > rangeMaxIndex - rangeMinIndex + 1;
+						final int rcolor = pyramid.getColor( rangeMinIndex, rangeMaxIndex );
+						vertexRanges.add( screenRangePool.create( sr ).init( svMinX, svMaxX, prevY, y, rselected, rcolor ) );
 						minVertexScreenDist = 0; // TODO: WHY = 0?
 					}
 				}
+				/*
+				 * Labels are only retrieved if vertices are large enough for
+				 * labels to be drawn.
+				 */
+				final boolean labels = minVertexScreenDist >= ScreenVertex.MIN_LABEL_VERTEX_DIST;
 				for ( int i = timepointStartScreenVertexIndex; i < screenVertices.size(); ++i )
 				{
 					screenVertices.get( i, sv ).setVertexDist( minVertexScreenDist );
+					if ( labels )
+						sv.setLabel( graph.getVertexPool().getObject( sv.getTrackSchemeVertexId(), v1 ).getLabel() );
 				}
 			}
 		}
@@ -796,8 +1206,10 @@ public class LineageTreeLayout
 	 *
 	 * @param root
 	 *            root of sub-tree to layout.
+	 * @param orderedVertices
+	 *            laid out vertices are appended to the lists in this map.
 	 */
-	private void layoutX_iterative( final TrackSchemeVertex root )
+	private void layoutX_iterative( final TrackSchemeVertex root, final TIntObjectMap< TrackSchemeVertexList > orderedVertices )
 	{
 		stack.get( 0 ).current = root;
 		int depth = 0;
@@ -815,6 +1227,7 @@ A:		while ( true )
 				final boolean terminate = v.getLayoutTimestamp() < mark - 1;
 				v.setGhost( ghost );
 				v.setLayoutTimestamp( timestamp );
+				v.setLayoutColumn( currentColumn );
 
 				if ( !terminate )
 				{
@@ -837,6 +1250,8 @@ A:		while ( true )
 						growStackIfNecessary( ++depth );
 						continue A;
 					}
+					else if ( laidOutInUpdate != null && !laidOutInUpdate.contains( f.child ) )
+						updateConflict = true;
 				}
 			}
 
@@ -857,7 +1272,9 @@ A:		while ( true )
 			}
 			v.setLayoutX( layoutX );
 
-			appendToOrderedVertices( v );
+			appendToOrderedVertices( v, orderedVertices );
+			if ( laidOutInUpdate != null )
+				laidOutInUpdate.add( v );
 
 			if ( depth == 0 )
 			{
@@ -901,6 +1318,7 @@ A:		while ( true )
 		final boolean terminate = v.getLayoutTimestamp() < mark - 1;
 		v.setGhost( ghost );
 		v.setLayoutTimestamp( timestamp );
+		v.setLayoutColumn( currentColumn );
 
 		if ( !terminate )
 		{
@@ -935,18 +1353,17 @@ A:		while ( true )
 			v.setLayoutX( ( firstChildX + lastChildX ) / 2 );
 		}
 
-		appendToOrderedVertices( v );
+		appendToOrderedVertices( v, timepointToOrderedVertices );
 	}
 
-	private void appendToOrderedVertices( final TrackSchemeVertex v )
+	private void appendToOrderedVertices( final TrackSchemeVertex v, final TIntObjectMap< TrackSchemeVertexList > orderedVertices )
 	{
 		final int tp = v.getTimepoint();
-		TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+		TrackSchemeVertexList vlist = orderedVertices.get( tp );
 		if ( vlist == null )
 		{
 			vlist = new TrackSchemeVertexList( graph );
-			timepointToOrderedVertices.put( tp, vlist );
-			timepoints.insert( -( 1 + timepoints.binarySearch( tp ) ), tp );
+			orderedVertices.put( tp, vlist );
 		}
 		vlist.add( v );
 	}
@@ -962,6 +1379,371 @@ A:		while ( true )
 			graphRoot.incomingEdges().iterator().next().getSource( graphRoot );
 	}
 
+	/**
+	 * Incrementally update the layout, re-laying out only the lineage trees in
+	 * {@link #dirtyColumns} and the new roots among {@link #touchedVertices}.
+	 *
+	 * @return {@code true} if the layout was updated successfully. If
+	 *         {@code false} is returned, the layout is in an inconsistent state
+	 *         and a full layout must be done.
+	 */
+	private boolean layoutIncremental()
+	{
+		final TrackSchemeVertex ref = graph.vertexRef();
+		try
+		{
+			/*
+			 * Find the vertices of dirty columns in the ordered vertex lists,
+			 * and mark them as not laid out. The index ranges are remembered
+			 * for removal after successful re-layout.
+			 */
+			final int[] dirty = dirtyColumns.toArray();
+			Arrays.sort( dirty );
+			final RefList< TrackSchemeVertex > staleVertices = RefCollections.createRefList( graph.vertices() );
+			final TIntObjectMap< TIntArrayList > staleRanges = new TIntObjectHashMap<>();
+			final TIntIterator tpIter = timepoints.iterator();
+			while ( tpIter.hasNext() )
+			{
+				final int tp = tpIter.next();
+				final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+				final TIntArrayList ranges = new TIntArrayList();
+				for ( final int c : dirty )
+				{
+					final int from = firstIndexNotLessThan( vlist, currentLayoutColumnX.get( c ) );
+					final int to = firstIndexNotLessThan( vlist, currentLayoutColumnX.get( c + 1 ) );
+					if ( to > from )
+					{
+						ranges.add( from );
+						ranges.add( to );
+						for ( int i = from; i < to; ++i )
+						{
+							vlist.get( i, ref ).setLayoutTimestamp( -1 );
+							staleVertices.add( ref );
+						}
+					}
+				}
+				if ( !ranges.isEmpty() )
+					staleRanges.put( tp, ranges );
+			}
+
+			/*
+			 * New roots are the touched vertices that are roots. All other
+			 * roots are roots of clean columns.
+			 */
+			final RefList< TrackSchemeVertex > newRoots = RefCollections.createRefList( graph.vertices() );
+			for ( final TrackSchemeVertex v : touchedVertices )
+				if ( v.incomingEdges().isEmpty() )
+				{
+					if ( v.getLayoutTimestamp() == timestamp )
+						return false;
+					newRoots.add( v );
+				}
+			final RefList< TrackSchemeVertex > sortedNewRoots = LexicographicalVertexOrder.sort( graph, newRoots );
+
+			/*
+			 * Layout new roots in local coordinates, starting at 0. Each new
+			 * tree gets a new layout column, whose offset moves it into place
+			 * below.
+			 */
+			final TDoubleArrayList offsets = graph.getVertexPool().layoutColumnOffsets;
+			while ( offsets.size() < numLayoutColumns )
+				offsets.add( 0 );
+			final int numNewRoots = sortedNewRoots.size();
+			final double[] localStart = new double[ numNewRoots + 1 ];
+			final int[] newRootColumn = new int[ numNewRoots ];
+			final TIntObjectMap< TrackSchemeVertexList > addedVertices = new TIntObjectHashMap<>();
+			laidOutInUpdate = RefCollections.createRefSet( graph.vertices() );
+			updateConflict = false;
+			rightmost = 0;
+			for ( int j = 0; j < numNewRoots; ++j )
+			{
+				localStart[ j ] = rightmost;
+				currentColumn = numLayoutColumns++;
+				newRootColumn[ j ] = currentColumn;
+				offsets.add( 0 );
+				layoutX_iterative( sortedNewRoots.get( j, ref ), addedVertices );
+				if ( updateConflict )
+					return false;
+			}
+			localStart[ numNewRoots ] = rightmost;
+
+			/*
+			 * All stale and touched vertices must have been laid out again.
+			 * Otherwise, they belong to other (clean) trees now.
+			 */
+			for ( final TrackSchemeVertex v : staleVertices )
+				if ( v.getLayoutTimestamp() != timestamp )
+					return false;
+			for ( final TrackSchemeVertex v : touchedVertices )
+				if ( v.getLayoutTimestamp() != timestamp )
+					return false;
+
+			/*
+			 * From here on, the update will succeed. Remove stale vertices from
+			 * ordered vertex lists.
+			 */
+			staleRanges.forEachEntry( ( tp, ranges ) -> {
+				final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+				for ( int r = ranges.size() - 2; r >= 0; r -= 2 )
+				{
+					final int from = ranges.get( r );
+					final int to = ranges.get( r + 1 );
+					vlist.getIndexCollection().remove( from, to - from );
+				}
+				vlist.invalidateCache();
+				if ( vlist.isEmpty() )
+					removeTimepoint( tp );
+				return true;
+			} );
+
+			/*
+			 * Merge new roots into the clean columns, in lexicographical order.
+			 * Compute the X offset for each new tree, and the shift for each
+			 * clean column.
+			 */
+			final int numColumns = currentLayoutColumnRoot.size();
+			final TIntArrayList cleanColumns = new TIntArrayList( numColumns );
+			for ( int c = 0; c < numColumns; ++c )
+				if ( !dirtyColumns.contains( c ) )
+					cleanColumns.add( c );
+
+			final int[] insertionIndex = new int[ numNewRoots ];
+			for ( int j = 0; j < numNewRoots; ++j )
+			{
+				final String label = sortedNewRoots.get( j, ref ).getLabel();
+				int low = j == 0 ? 0 : insertionIndex[ j - 1 ];
+				int high = cleanColumns.size();
+				while ( low < high )
+				{
+					final int mid = ( low + high ) >>> 1;
+					final String midLabel = currentLayoutColumnRoot.get( cleanColumns.get( mid ), ref ).getLabel();
+					if ( AlphanumCompare.compare( midLabel, label ) <= 0 )
+						low = mid + 1;
+					else
+						high = mid;
+				}
+				insertionIndex[ j ] = low;
+			}
+
+			final TDoubleArrayList columnX = new TDoubleArrayList( cleanColumns.size() + numNewRoots + 1 );
+			final RefList< TrackSchemeVertex > columnRoot = RefCollections.createRefList( graph.vertices(), cleanColumns.size() + numNewRoots );
+			boolean shifted = false;
+			double x = 0;
+			columnX.add( x );
+			for ( int ci = 0, j = 0; ci <= cleanColumns.size(); ++ci )
+			{
+				while ( j < numNewRoots && insertionIndex[ j ] == ci )
+				{
+					offsets.setQuick( newRootColumn[ j ], x - localStart[ j ] );
+					x += localStart[ j + 1 ] - localStart[ j ];
+					columnRoot.add( sortedNewRoots.get( j, ref ) );
+					columnX.add( x );
+					++j;
+				}
+				if ( ci < cleanColumns.size() )
+				{
+					/*
+					 * Shift clean columns by adjusting the offset of their
+					 * layout column. All vertices of a column share the
+					 * layout column of its root.
+					 */
+					final int c = cleanColumns.get( ci );
+					final double x0 = currentLayoutColumnX.get( c );
+					final double x1 = currentLayoutColumnX.get( c + 1 );
+					final double shift = x - x0;
+					currentLayoutColumnRoot.get( c, ref );
+					if ( shift != 0 )
+					{
+						final int column = ref.getLayoutColumn();
+						offsets.setQuick( column, offsets.getQuick( column ) + shift );
+						shifted = true;
+					}
+					x += x1 - x0;
+					columnRoot.add( ref );
+					columnX.add( x );
+				}
+			}
+
+			if ( shifted )
+			{
+				final TIntIterator it = timepoints.iterator();
+				while ( it.hasNext() )
+					timepointToOrderedVertices.get( it.next() ).invalidateCache();
+			}
+
+			/*
+			 * Insert new vertices, that are in place now, into the ordered
+			 * vertex lists.
+			 */
+			final TrackSchemeVertex ref2 = graph.vertexRef();
+			addedVertices.forEachEntry( ( tp, added ) -> {
+				final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+				if ( vlist == null )
+				{
+					timepointToOrderedVertices.put( tp, added );
+					timepoints.insert( -( 1 + timepoints.binarySearch( tp ) ), tp );
+					return true;
+				}
+
+				final TIntArrayList indices = vlist.getIndexCollection();
+				final TIntArrayList addedIndices = added.getIndexCollection();
+				int pos = 0;
+				for ( int a = 0; a < addedIndices.size(); )
+				{
+					pos = vlist.binarySearch( added.get( a, ref2 ).getLayoutX(), pos, vlist.size() ) + 1;
+					final double limit = pos < vlist.size()
+							? vlist.get( pos, ref2 ).getLayoutX()
+							: Double.POSITIVE_INFINITY;
+					int b = a + 1;
+					while ( b < addedIndices.size() && added.get( b, ref2 ).getLayoutX() < limit )
+						++b;
+					indices.insert( pos, addedIndices.toArray( a, b - a ) );
+					pos += b - a;
+					a = b;
+				}
+				vlist.invalidateCache();
+				return true;
+			} );
+			graph.releaseRef( ref2 );
+
+			currentLayoutColumnX.clear();
+			currentLayoutColumnX.addAll( columnX );
+			currentLayoutColumnRoot.clear();
+			currentLayoutColumnRoot.addAll( columnRoot );
+			rightmost = x;
+			currentLayoutMinX = 0;
+			currentLayoutMaxX = rightmost - 1;
+			return true;
+		}
+		finally
+		{
+			graph.releaseRef( ref );
+		}
+	}
+
+	/**
+	 * Returns the smallest index of a vertex in {@code vlist} with
+	 * {@code layoutX >= value}, or {@code vlist.size()} if there is no such
+	 * vertex.
+	 */
+	private static int firstIndexNotLessThan( final TrackSchemeVertexList vlist, final double value )
+	{
+		return vlist.binarySearch( Math.nextDown( value ) ) + 1;
+	}
+
+	private void removeTimepoint( final int tp )
+	{
+		timepointToOrderedVertices.remove( tp );
+		final int i = timepoints.binarySearch( tp );
+		if ( i >= 0 )
+			timepoints.removeAt( i );
+	}
+
+	/**
+	 * Tracks changes of the {@link TrackSchemeGraph} in terms of layout
+	 * columns and touched vertices, for {@link LineageTreeLayout#updateLayout()}.
+	 * <p>
+	 * Removed vertices are immediately removed from the ordered vertex lists,
+	 * such that the lists only contain valid vertices when the layout is
+	 * updated.
+	 */
+	private class LayoutUpdateTracker implements GraphListener< TrackSchemeVertex, TrackSchemeEdge >
+	{
+		private final TrackSchemeVertex ref = graph.vertexRef();
+
+		private final TrackSchemeVertex ref2 = graph.vertexRef();
+
+		@Override
+		public void graphRebuilt()
+		{
+			incrementalUpdatePossible = false;
+			dirtyColumns.clear();
+			touchedVertices.clear();
+		}
+
+		@Override
+		public void vertexAdded( final TrackSchemeVertex vertex )
+		{
+			if ( incrementalUpdatePossible )
+				touchedVertices.add( vertex );
+		}
+
+		@Override
+		public void vertexRemoved( final TrackSchemeVertex vertex )
+		{
+			if ( !incrementalUpdatePossible )
+				return;
+
+			markColumnDirty( vertex );
+			for ( final TrackSchemeEdge edge : vertex.incomingEdges() )
+				touch( edge.getSource( ref2 ) );
+			for ( final TrackSchemeEdge edge : vertex.outgoingEdges() )
+				touch( edge.getTarget( ref2 ) );
+			touchedVertices.remove( vertex );
+
+			if ( vertex.getLayoutTimestamp() == timestamp )
+			{
+				final int tp = vertex.getTimepoint();
+				final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+				int i = vlist == null ? -1 : vlist.binarySearch( vertex.getLayoutX() );
+				while ( i >= 0 && !vlist.get( i, ref ).equals( vertex ) )
+					--i;
+				if ( i < 0 )
+				{
+					incrementalUpdatePossible = false;
+					return;
+				}
+				vlist.getIndexCollection().removeAt( i );
+				vlist.invalidateCache();
+				if ( vlist.isEmpty() )
+					removeTimepoint( tp );
+			}
+		}
+
+		@Override
+		public void edgeAdded( final TrackSchemeEdge edge )
+		{
+			if ( incrementalUpdatePossible )
+			{
+				touch( edge.getSource( ref2 ) );
+				touch( edge.getTarget( ref2 ) );
+			}
+		}
+
+		@Override
+		public void edgeRemoved( final TrackSchemeEdge edge )
+		{
+			if ( incrementalUpdatePossible )
+			{
+				touch( edge.getSource( ref2 ) );
+				touch( edge.getTarget( ref2 ) );
+			}
+		}
+
+		private void touch( final TrackSchemeVertex v )
+		{
+			touchedVertices.add( v );
+			markColumnDirty( v );
+		}
+
+		private void markColumnDirty( final TrackSchemeVertex v )
+		{
+			if ( v.getLayoutTimestamp() != timestamp )
+				return;
+
+			int c = currentLayoutColumnX.binarySearch( v.getLayoutX() );
+			if ( c < 0 )
+				c = -c - 2;
+			if ( c < 0 || c >= currentLayoutColumnRoot.size() )
+			{
+				incrementalUpdatePossible = false;
+				return;
+			}
+			if ( dirtyColumns.add( c ) )
+				touchedVertices.add( currentLayoutColumnRoot.get( c, ref ) );
+		}
+	}
+
 	private void notifyListeners()
 	{
 		for ( final LayoutListener l : listeners.list )
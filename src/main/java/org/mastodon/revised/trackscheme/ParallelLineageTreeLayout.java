@@ -0,0 +1,436 @@
+package org.mastodon.revised.trackscheme;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.mastodon.collection.RefList;
+
+import gnu.trove.list.TDoubleList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+
+/**
+ * Parallel full layout of a list of lineage trees, used by
+ * {@link LineageTreeLayout#layout()}.
+ * <p>
+ * Separate lineage trees do not depend on each other, except for their
+ * horizontal offset. Therefore, each tree is first laid out independently on a
+ * {@link ForkJoinPool}, into local coordinates starting at {@code layoutX = 0}.
+ * Then a prefix sum over the widths of the trees gives the offset of each tree,
+ * and the final {@code layoutX} coordinates and ordered vertex lists are
+ * assembled (again in parallel).
+ * <p>
+ * Trees that share vertices with other trees (i.e., contain vertices with more
+ * than one parent) are detected during the parallel pass. These are laid out
+ * sequentially in the order of the roots afterwards, such that the result is
+ * exactly that of the sequential layout: shared vertices are laid out as part
+ * of the first tree that reaches them.
+ * <p>
+ * This only does full layouts (no ghosts and no marks), see
+ * {@link LineageTreeLayout#layout(java.util.Collection, int)}.
+ */
+class ParallelLineageTreeLayout
+{
+	/**
+	 * Maximum number of roots (or timepoints) processed sequentially by one
+	 * task.
+	 */
+	private static final int GRAIN_SIZE = 16;
+
+	private final TrackSchemeGraph< ?, ? > graph;
+
+	private final ForkJoinPool forkJoinPool;
+
+	ParallelLineageTreeLayout( final TrackSchemeGraph< ?, ? > graph, final ForkJoinPool forkJoinPool )
+	{
+		this.graph = graph;
+		this.forkJoinPool = forkJoinPool;
+	}
+
+	/**
+	 * Layout the trees starting from the specified roots, and build the
+	 * ordered vertex lists and the column coordinates.
+	 * <p>
+	 * The vertices of the {@code i}-th tree are assigned
+	 * {@link TrackSchemeVertex#getLayoutColumn() layout column} {@code i}, and
+	 * layoutX coordinates relative to {@code columnX[i]}. The caller must set
+	 * the column offsets accordingly.
+	 *
+	 * @param roots
+	 *            the roots of the trees to lay out, in the order in which they
+	 *            should appear.
+	 * @param timestamp
+	 *            the timestamp to mark laid out vertices with.
+	 * @param timepointToOrderedVertices
+	 *            map from timepoint to lists of vertices ordered by layoutX, to
+	 *            be filled. Must be empty.
+	 * @param columnX
+	 *            layoutX coordinates of column boundaries, to be filled. Must be
+	 *            empty.
+	 * @return the layoutX coordinate that would be assigned to the next leaf
+	 *         (i.e., the total width of the layout).
+	 */
+	double layout(
+			final RefList< TrackSchemeVertex > roots,
+			final int timestamp,
+			final TIntObjectMap< TrackSchemeVertexList > timepointToOrderedVertices,
+			final TDoubleList columnX )
+	{
+		final int numRoots = roots.size();
+		final TreeLayout[] trees = new TreeLayout[ numRoots ];
+
+		/*
+		 * Layout all trees that do not share vertices with other trees in
+		 * parallel.
+		 */
+		parallelFor( numRoots, ( from, to ) -> {
+			final TreeLayouter layouter = new TreeLayouter( timestamp );
+			final TrackSchemeVertex root = graph.vertexRef();
+			for ( int i = from; i < to; ++i )
+				trees[ i ] = layouter.layout( roots.get( i, root ), true );
+			graph.releaseRef( root );
+			layouter.release();
+		} );
+
+		/*
+		 * Sequentially layout the remaining (entangled) trees, in root order.
+		 */
+		final TreeLayouter layouter = new TreeLayouter( timestamp );
+		final TrackSchemeVertex root = graph.vertexRef();
+		for ( int i = 0; i < numRoots; ++i )
+			if ( trees[ i ] == null )
+				trees[ i ] = layouter.layout( roots.get( i, root ), false );
+		graph.releaseRef( root );
+		layouter.release();
+
+		/*
+		 * Prefix sums over tree widths (for tree offsets) and per-timepoint
+		 * vertex counts (for the positions of each tree in the ordered vertex
+		 * lists).
+		 */
+		int minTimepoint = Integer.MAX_VALUE;
+		int maxTimepoint = Integer.MIN_VALUE;
+		for ( final TreeLayout tree : trees )
+		{
+			minTimepoint = Math.min( minTimepoint, tree.minTimepoint );
+			maxTimepoint = Math.max( maxTimepoint, tree.minTimepoint + tree.counts.length - 1 );
+		}
+		final int tmin = minTimepoint;
+		final int numTimepoints = numRoots == 0 ? 0 : maxTimepoint - minTimepoint + 1;
+		final int[] sizes = new int[ numTimepoints ];
+		double x = 0;
+		columnX.add( x );
+		for ( final TreeLayout tree : trees )
+		{
+			x += tree.width;
+			columnX.add( x );
+
+			final int o = tree.minTimepoint - tmin;
+			tree.offsets = new int[ tree.counts.length ];
+			for ( int k = 0; k < tree.counts.length; ++k )
+			{
+				tree.offsets[ k ] = sizes[ o + k ];
+				sizes[ o + k ] += tree.counts[ k ];
+			}
+		}
+
+		/*
+		 * Assign one layout column per tree, and copy their vertices into the
+		 * ordered vertex lists. The vertices keep their local coordinates; the
+		 * caller sets the column offsets to the column coordinates.
+		 */
+		final int[][] ordered = new int[ numTimepoints ][];
+		for ( int k = 0; k < numTimepoints; ++k )
+			if ( sizes[ k ] > 0 )
+				ordered[ k ] = new int[ sizes[ k ] ];
+		parallelFor( numRoots, ( from, to ) -> {
+			final TrackSchemeVertex v = graph.vertexRef();
+			for ( int i = from; i < to; ++i )
+			{
+				final TreeLayout tree = trees[ i ];
+				for ( final int index : tree.vertices )
+				{
+					graph.getVertexPool().getObject( index, v );
+					v.setLayoutColumn( i );
+				}
+				final int o = tree.minTimepoint - tmin;
+				for ( int k = 0, start = 0; k < tree.counts.length; ++k )
+				{
+					System.arraycopy( tree.vertices, start, ordered[ o + k ], tree.offsets[ k ], tree.counts[ k ] );
+					start += tree.counts[ k ];
+				}
+			}
+			graph.releaseRef( v );
+		} );
+
+		final TrackSchemeVertexList[] lists = new TrackSchemeVertexList[ numTimepoints ];
+		parallelFor( numTimepoints, ( from, to ) -> {
+			for ( int k = from; k < to; ++k )
+			{
+				if ( ordered[ k ] != null )
+				{
+					lists[ k ] = new TrackSchemeVertexList( graph, ordered[ k ].length );
+					lists[ k ].getIndexCollection().add( ordered[ k ] );
+				}
+			}
+		} );
+		for ( int k = 0; k < numTimepoints; ++k )
+			if ( lists[ k ] != null )
+				timepointToOrderedVertices.put( tmin + k, lists[ k ] );
+
+		return x;
+	}
+
+	/**
+	 * Layout of a single tree in local coordinates.
+	 */
+	private static class TreeLayout
+	{
+		/**
+		 * Internal pool indices of the vertices of the tree, ordered by
+		 * timepoint, then by layoutX.
+		 */
+		final int[] vertices;
+
+		/**
+		 * Smallest timepoint of any vertex in the tree.
+		 */
+		final int minTimepoint;
+
+		/**
+		 * {@code counts[k]} is the number of vertices in the tree at timepoint
+		 * {@code minTimepoint + k}.
+		 */
+		final int[] counts;
+
+		/**
+		 * Number of leaves of the tree.
+		 */
+		final double width;
+
+		/**
+		 * {@code offsets[k]} is the index of the first vertex of the tree in the
+		 * ordered vertex list of timepoint {@code minTimepoint + k}.
+		 */
+		int[] offsets;
+
+		TreeLayout( final int[] vertices, final int minTimepoint, final int[] counts, final double width )
+		{
+			this.vertices = vertices;
+			this.minTimepoint = minTimepoint;
+			this.counts = counts;
+			this.width = width;
+		}
+	}
+
+	private class StackFrame
+	{
+		final TrackSchemeVertex vertex = graph.vertexRef();
+
+		Iterator< TrackSchemeEdge > edges;
+
+		int numLaidOutChildren;
+
+		double firstChildX;
+
+		double lastChildX;
+	}
+
+	/**
+	 * Lays out single trees, using the same rules as
+	 * {@link LineageTreeLayout}. Each thread uses its own {@link TreeLayouter}.
+	 */
+	private class TreeLayouter
+	{
+		private final int timestamp;
+
+		private final ArrayList< StackFrame > stack = new ArrayList<>();
+
+		private final TIntArrayList postOrder = new TIntArrayList();
+
+		private final TIntArrayList postOrderTimepoints = new TIntArrayList();
+
+		TreeLayouter( final int timestamp )
+		{
+			this.timestamp = timestamp;
+		}
+
+		private StackFrame frame( final int depth )
+		{
+			if ( stack.size() == depth )
+				stack.add( new StackFrame() );
+			return stack.get( depth );
+		}
+
+		private void enter( final StackFrame f )
+		{
+			f.vertex.setGhost( false );
+			f.vertex.setLayoutTimestamp( timestamp );
+			f.edges = f.vertex.outgoingEdges().iterator();
+			f.numLaidOutChildren = 0;
+		}
+
+		/**
+		 * Layout the tree starting at {@code root}, in local coordinates.
+		 *
+		 * @param root
+		 *            the root of the tree.
+		 * @param abortOnSharedVertex
+		 *            if {@code true}, abort when a vertex with more than one
+		 *            parent is reached. The layout timestamps of vertices
+		 *            visited so far are reset in this case.
+		 * @return the layout of the tree, or {@code null} if it was aborted.
+		 */
+		TreeLayout layout( final TrackSchemeVertex root, final boolean abortOnSharedVertex )
+		{
+			postOrder.resetQuick();
+			postOrderTimepoints.resetQuick();
+			double rightmost = 0;
+
+			int depth = 0;
+			final StackFrame rootFrame = frame( 0 );
+			rootFrame.vertex.refTo( root );
+			enter( rootFrame );
+
+A:			while ( true )
+			{
+				final StackFrame f = stack.get( depth );
+				while ( f.edges.hasNext() )
+				{
+					final TrackSchemeEdge edge = f.edges.next();
+					final StackFrame c = frame( depth + 1 );
+					edge.getTarget( c.vertex );
+					if ( abortOnSharedVertex && c.vertex.incomingEdges().size() > 1 )
+					{
+						abort( depth );
+						return null;
+					}
+					if ( c.vertex.getLayoutTimestamp() < timestamp )
+					{
+						enter( c );
+						++depth;
+						continue A;
+					}
+				}
+
+				// done. assign layoutX and backtrack
+				final double layoutX;
+				switch ( f.numLaidOutChildren )
+				{
+				case 0:
+					layoutX = rightmost;
+					rightmost += 1;
+					break;
+				case 1:
+					layoutX = f.firstChildX;
+					break;
+				default:
+					layoutX = ( f.firstChildX + f.lastChildX ) / 2;
+				}
+				f.vertex.setLayoutX( layoutX );
+				postOrder.add( f.vertex.getInternalPoolIndex() );
+				postOrderTimepoints.add( f.vertex.getTimepoint() );
+
+				if ( depth == 0 )
+					break;
+
+				final StackFrame p = stack.get( --depth );
+				if ( ++p.numLaidOutChildren == 1 )
+					p.firstChildX = layoutX;
+				else
+					p.lastChildX = layoutX;
+			}
+
+			return sortByTimepoint( rightmost );
+		}
+
+		/**
+		 * Reset the layout timestamp of all vertices visited so far.
+		 */
+		private void abort( final int depth )
+		{
+			for ( int i = 0; i <= depth; ++i )
+				stack.get( i ).vertex.setLayoutTimestamp( -1 );
+			final TrackSchemeVertex ref = graph.vertexRef();
+			for ( int i = 0; i < postOrder.size(); ++i )
+				graph.getVertexPool().getObject( postOrder.get( i ), ref ).setLayoutTimestamp( -1 );
+			graph.releaseRef( ref );
+		}
+
+		/**
+		 * Stable counting sort of {@link #postOrder} by timepoint. (Post-order
+		 * is ordered by layoutX within each timepoint.)
+		 */
+		private TreeLayout sortByTimepoint( final double width )
+		{
+			final int n = postOrder.size();
+			int tmin = Integer.MAX_VALUE;
+			int tmax = Integer.MIN_VALUE;
+			for ( int i = 0; i < n; ++i )
+			{
+				final int t = postOrderTimepoints.get( i );
+				tmin = Math.min( tmin, t );
+				tmax = Math.max( tmax, t );
+			}
+			final int[] counts = new int[ tmax - tmin + 1 ];
+			for ( int i = 0; i < n; ++i )
+				++counts[ postOrderTimepoints.get( i ) - tmin ];
+			final int[] starts = new int[ counts.length ];
+			for ( int k = 1; k < counts.length; ++k )
+				starts[ k ] = starts[ k - 1 ] + counts[ k - 1 ];
+			final int[] vertices = new int[ n ];
+			for ( int i = 0; i < n; ++i )
+				vertices[ starts[ postOrderTimepoints.get( i ) - tmin ]++ ] = postOrder.get( i );
+			return new TreeLayout( vertices, tmin, counts, width );
+		}
+
+		void release()
+		{
+			for ( final StackFrame f : stack )
+				graph.releaseRef( f.vertex );
+		}
+	}
+
+	private interface RangeTask
+	{
+		void run( int from, int to );
+	}
+
+	private void parallelFor( final int size, final RangeTask task )
+	{
+		if ( size > 0 )
+			forkJoinPool.invoke( new RangeAction( 0, size, task ) );
+	}
+
+	private static class RangeAction extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+
+		private final int to;
+
+		private final RangeTask task;
+
+		RangeAction( final int from, final int to, final RangeTask task )
+		{
+			this.from = from;
+			this.to = to;
+			this.task = task;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if ( to - from <= GRAIN_SIZE )
+				task.run( from, to );
+			else
+			{
+				final int mid = ( from + to ) >>> 1;
+				invokeAll( new RangeAction( from, mid, task ), new RangeAction( mid, to, task ) );
+			}
+		}
+	}
+}
@@ -36,6 +36,14 @@ public class ScreenEntities
 
 	private final ArrayList< ScreenColumn > columns;
 
+	private final ScreenEntitiesGrid grid;
+
+	/**
+	 * Identifies the content of these entities up to translation of the
+	 * viewport, or {@code -1} if unknown.
+	 */
+	private long renderKey;
+
 	/**
 	 * transform used to generate these {@link ScreenEntities}
 	 */
@@ -55,6 +63,8 @@ public class ScreenEntities
 		rangePool = new ScreenVertexRangePool( initialCapacity );
 		ranges = new RefArrayList< ScreenVertexRange >( rangePool, initialCapacity );
 		columns = new ArrayList<>( initialCapacity );
+		grid = new ScreenEntitiesGrid();
+		renderKey = -1;
 		screenTransform = new ScreenTransform();
 	}
 
@@ -78,6 +88,40 @@ public class ScreenEntities
 		return columns;
 	}
 
+	/**
+	 * Returns a spatial index over the vertices and edges, for picking. The
+	 * index is built if the entities changed since it was last built.
+	 *
+	 * @return the spatial index.
+	 */
+	public ScreenEntitiesGrid getGrid()
+	{
+		if ( !grid.isValid() )
+			grid.build( this );
+		return grid;
+	}
+
+	/**
+	 * Returns a key that identifies the content of these entities, up to
+	 * translation of the viewport. Two {@link ScreenEntities} with the same
+	 * non-negative key, {@link ScreenTransform#getScaleX() scale}, and style
+	 * are painted identically, except for a translation. This is used to cache
+	 * rendered tiles.
+	 *
+	 * @return the render key, or {@code -1} if these entities should not be
+	 *         cached (e.g., because they are interpolated during an
+	 *         animation).
+	 */
+	public long getRenderKey()
+	{
+		return renderKey;
+	}
+
+	public void setRenderKey( final long key )
+	{
+		renderKey = key;
+	}
+
 	public void getScreenTransform( final ScreenTransform t )
 	{
 		t.set( screenTransform );
@@ -112,6 +156,8 @@ public class ScreenEntities
 		rangePool.clear();
 		ranges.resetQuick();
 		columns.clear();
+		grid.clear();
+		renderKey = -1;
 	}
 
 	public void set( final ScreenEntities ent )
@@ -136,5 +182,8 @@ public class ScreenEntities
 		columns.addAll( ent.getColumns() );
 
 		screenTransform().set( ent.screenTransform );
+
+		grid.set( ent.grid );
+		renderKey = ent.renderKey;
 	}
 }
@@ -0,0 +1,259 @@
+package org.mastodon.revised.trackscheme;
+
+import java.util.Arrays;
+
+import org.mastodon.collection.RefList;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * A uniform grid over screen coordinates that indexes the {@link ScreenVertex}
+ * and {@link ScreenEdge} lists of a {@link ScreenEntities}. Used to find
+ * candidate vertices and edges for picking at a screen position without
+ * looking at all entities.
+ * <p>
+ * Vertices are stored in the cell containing their center. Edges are stored in
+ * all cells overlapped by the bounding box of their end points. Entities
+ * outside the grid area are stored in the nearest border cells. Each cell
+ * lists entity indices in increasing order.
+ */
+public class ScreenEntitiesGrid
+{
+	/**
+	 * Width and height of a grid cell, in pixels.
+	 */
+	public static final int CELL_SIZE = 32;
+
+	private boolean valid;
+
+	private double originX;
+
+	private double originY;
+
+	private int numCellsX;
+
+	private int numCellsY;
+
+	/**
+	 * Indices of the vertices in cell {@code c} are
+	 * {@code vertexCellItems[vertexCellStarts[c]]} up to
+	 * {@code vertexCellItems[vertexCellStarts[c+1]-1]}.
+	 */
+	private int[] vertexCellStarts = new int[ 1 ];
+
+	private int[] vertexCellItems = new int[ 0 ];
+
+	/**
+	 * Indices of the edges in cell {@code c}, analogous to
+	 * {@link #vertexCellStarts} and {@link #vertexCellItems}.
+	 */
+	private int[] edgeCellStarts = new int[ 1 ];
+
+	private int[] edgeCellItems = new int[ 0 ];
+
+	ScreenEntitiesGrid()
+	{
+		valid = false;
+	}
+
+	/**
+	 * Whether the grid has been built for the current entities.
+	 *
+	 * @return {@code true} if the grid is valid.
+	 */
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	void clear()
+	{
+		valid = false;
+	}
+
+	void set( final ScreenEntitiesGrid grid )
+	{
+		valid = grid.valid;
+		if ( valid )
+		{
+			originX = grid.originX;
+			originY = grid.originY;
+			numCellsX = grid.numCellsX;
+			numCellsY = grid.numCellsY;
+			vertexCellStarts = Arrays.copyOf( grid.vertexCellStarts, grid.vertexCellStarts.length );
+			vertexCellItems = Arrays.copyOf( grid.vertexCellItems, grid.vertexCellItems.length );
+			edgeCellStarts = Arrays.copyOf( grid.edgeCellStarts, grid.edgeCellStarts.length );
+			edgeCellItems = Arrays.copyOf( grid.edgeCellItems, grid.edgeCellItems.length );
+		}
+	}
+
+	/**
+	 * Build the grid for the vertices and edges of the specified entities.
+	 *
+	 * @param entities
+	 *            the entities to index.
+	 */
+	void build( final ScreenEntities entities )
+	{
+		final RefList< ScreenVertex > vertices = entities.getVertices();
+		final RefList< ScreenEdge > edges = entities.getEdges();
+		final ScreenVertex vs = vertices.createRef();
+		final ScreenVertex vt = vertices.createRef();
+		final ScreenEdge e = edges.createRef();
+
+		/*
+		 * Grid area: bounding box of vertex centers, restricted to a
+		 * neighborhood of the screen.
+		 */
+		final int w = entities.screenTransform().getScreenWidth();
+		final int h = entities.screenTransform().getScreenHeight();
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for ( final ScreenVertex v : vertices )
+		{
+			minX = Math.min( minX, v.getX() );
+			minY = Math.min( minY, v.getY() );
+			maxX = Math.max( maxX, v.getX() );
+			maxY = Math.max( maxY, v.getY() );
+		}
+		minX = Math.max( minX, -w );
+		minY = Math.max( minY, -h );
+		maxX = Math.min( maxX, 2 * w );
+		maxY = Math.min( maxY, 2 * h );
+		if ( vertices.isEmpty() || maxX < minX || maxY < minY )
+		{
+			minX = maxX = 0;
+			minY = maxY = 0;
+		}
+		originX = minX;
+		originY = minY;
+		numCellsX = ( int ) ( ( maxX - minX ) / CELL_SIZE ) + 1;
+		numCellsY = ( int ) ( ( maxY - minY ) / CELL_SIZE ) + 1;
+		final int numCells = numCellsX * numCellsY;
+
+		/*
+		 * Vertices.
+		 */
+		vertexCellStarts = new int[ numCells + 1 ];
+		final int numVertices = vertices.size();
+		final int[] vertexCells = new int[ numVertices ];
+		for ( int i = 0; i < numVertices; ++i )
+		{
+			vertices.get( i, vs );
+			final int c = cellY( vs.getY() ) * numCellsX + cellX( vs.getX() );
+			vertexCells[ i ] = c;
+			++vertexCellStarts[ c + 1 ];
+		}
+		for ( int c = 0; c < numCells; ++c )
+			vertexCellStarts[ c + 1 ] += vertexCellStarts[ c ];
+		vertexCellItems = new int[ numVertices ];
+		final int[] fill = Arrays.copyOf( vertexCellStarts, numCells );
+		for ( int i = 0; i < numVertices; ++i )
+			vertexCellItems[ fill[ vertexCells[ i ] ]++ ] = i;
+
+		/*
+		 * Edges. First pass counts, second pass fills.
+		 */
+		edgeCellStarts = new int[ numCells + 1 ];
+		final int numEdges = edges.size();
+		for ( int pass = 0; pass < 2; ++pass )
+		{
+			for ( int i = 0; i < numEdges; ++i )
+			{
+				edges.get( i, e );
+				vertices.get( e.getSourceScreenVertexIndex(), vs );
+				vertices.get( e.getTargetScreenVertexIndex(), vt );
+				final int cx0 = cellX( Math.min( vs.getX(), vt.getX() ) );
+				final int cx1 = cellX( Math.max( vs.getX(), vt.getX() ) );
+				final int cy0 = cellY( Math.min( vs.getY(), vt.getY() ) );
+				final int cy1 = cellY( Math.max( vs.getY(), vt.getY() ) );
+				for ( int cy = cy0; cy <= cy1; ++cy )
+					for ( int cx = cx0; cx <= cx1; ++cx )
+					{
+						final int c = cy * numCellsX + cx;
+						if ( pass == 0 )
+							++edgeCellStarts[ c + 1 ];
+						else
+							edgeCellItems[ fill[ c ]++ ] = i;
+					}
+			}
+			if ( pass == 0 )
+			{
+				for ( int c = 0; c < numCells; ++c )
+					edgeCellStarts[ c + 1 ] += edgeCellStarts[ c ];
+				edgeCellItems = new int[ edgeCellStarts[ numCells ] ];
+				System.arraycopy( edgeCellStarts, 0, fill, 0, numCells );
+			}
+		}
+
+		vertices.releaseRef( vs );
+		vertices.releaseRef( vt );
+		edges.releaseRef( e );
+		valid = true;
+	}
+
+	/**
+	 * Append the indices of all vertices stored in cells that intersect the
+	 * square of the specified radius around {@code (x, y)} to {@code indices}.
+	 *
+	 * @param x
+	 *            the x screen coordinate.
+	 * @param y
+	 *            the y screen coordinate.
+	 * @param radius
+	 *            the maximal distance of vertex centers from {@code (x, y)}.
+	 * @param indices
+	 *            list to append the candidate vertex indices to.
+	 */
+	public void getVertices( final double x, final double y, final double radius, final TIntArrayList indices )
+	{
+		collect( x, y, radius, vertexCellStarts, vertexCellItems, indices );
+	}
+
+	/**
+	 * Append the indices of all edges stored in cells that intersect the
+	 * square of the specified radius around {@code (x, y)} to {@code indices}.
+	 * The same edge index may be appended multiple times.
+	 *
+	 * @param x
+	 *            the x screen coordinate.
+	 * @param y
+	 *            the y screen coordinate.
+	 * @param radius
+	 *            the maximal distance of edges from {@code (x, y)}.
+	 * @param indices
+	 *            list to append the candidate edge indices to.
+	 */
+	public void getEdges( final double x, final double y, final double radius, final TIntArrayList indices )
+	{
+		collect( x, y, radius, edgeCellStarts, edgeCellItems, indices );
+	}
+
+	private void collect( final double x, final double y, final double radius, final int[] starts, final int[] items, final TIntArrayList indices )
+	{
+		if ( !valid )
+			return;
+		final int cx0 = cellX( x - radius );
+		final int cx1 = cellX( x + radius );
+		final int cy0 = cellY( y - radius );
+		final int cy1 = cellY( y + radius );
+		for ( int cy = cy0; cy <= cy1; ++cy )
+			for ( int cx = cx0; cx <= cx1; ++cx )
+			{
+				final int c = cy * numCellsX + cx;
+				indices.add( items, starts[ c ], starts[ c + 1 ] - starts[ c ] );
+			}
+	}
+
+	private int cellX( final double x )
+	{
+		return Math.max( 0, Math.min( numCellsX - 1, ( int ) Math.floor( ( x - originX ) / CELL_SIZE ) ) );
+	}
+
+	private int cellY( final double y )
+	{
+		return Math.max( 0, Math.min( numCellsY - 1, ( int ) Math.floor( ( y - originY ) / CELL_SIZE ) ) );
+	}
+}
@@ -102,6 +102,14 @@ public class ScreenVertex extends PoolObject< ScreenVertex, ScreenVertexPool, By
 		}
 	}
 
+	/**
+	 * Labels are only needed for vertices with a
+	 * {@link #getVertexDist() vertex distance} at least this large. For smaller
+	 * vertices, the label is not drawn, so {@link LineageTreeLayout} does not
+	 * retrieve it.
+	 */
+	public static final double MIN_LABEL_VERTEX_DIST = 15;
+
 	protected ScreenVertex( final ScreenVertexPool pool )
 	{
 		super( pool );
@@ -191,20 +199,33 @@ public class ScreenVertex extends PoolObject< ScreenVertex, ScreenVertexPool, By
 	}
 
 	/**
-	 * Get the label of the vertex. This calls
+	 * Get the label of the vertex. This is the
 	 * {@link TrackSchemeVertex#getLabel()} of the associated
-	 * {@link TrackSchemeVertex}.
+	 * {@link TrackSchemeVertex}, if the {@link #getVertexDist() vertex
+	 * distance} is large enough for labels to be drawn (see
+	 * {@link #MIN_LABEL_VERTEX_DIST}). Otherwise, it is the empty string.
 	 *
 	 * @return label of the vertex.
 	 */
 	public String getLabel()
 	{
-		return pool.label.get( this );
+		final String label = pool.label.get( this );
+		return label == null ? "" : label;
 	}
 
+	/**
+	 * Set the label of the vertex. {@code null} means that the label is not
+	 * known, because it will not be drawn.
+	 *
+	 * @param label
+	 *            the label, or {@code null}.
+	 */
 	protected void setLabel( final String label )
 	{
-		pool.label.set( this, label );
+		if ( label == null )
+			pool.label.remove( this );
+		else
+			pool.label.set( this, label );
 	}
 
 	/**
@@ -6,7 +6,9 @@ import org.mastodon.pool.Pool;
 import org.mastodon.pool.PoolObject;
 import org.mastodon.pool.PoolObjectLayout;
 import org.mastodon.pool.SingleArrayMemPool;
+import org.mastodon.pool.attributes.BooleanAttribute;
 import org.mastodon.pool.attributes.DoubleAttribute;
+import org.mastodon.pool.attributes.IntAttribute;
 import org.mastodon.revised.trackscheme.ScreenVertexRange.ScreenVertexRangePool;
 
 /**
@@ -22,6 +24,8 @@ public class ScreenVertexRange extends PoolObject< ScreenVertexRange, ScreenVert
 		final DoubleField maxX = doubleField();
 		final DoubleField minY = doubleField();
 		final DoubleField maxY = doubleField();
+		final BooleanField selected = booleanField();
+		final IntField color = intField();
 	}
 
 	public static ScreenVertexRangeLayout layout = new ScreenVertexRangeLayout();
@@ -32,6 +36,8 @@ public class ScreenVertexRange extends PoolObject< ScreenVertexRange, ScreenVert
 		final DoubleAttribute< ScreenVertexRange > maxX = new DoubleAttribute<>( layout.maxX, this );
 		final DoubleAttribute< ScreenVertexRange > minY = new DoubleAttribute<>( layout.minY, this );
 		final DoubleAttribute< ScreenVertexRange > maxY = new DoubleAttribute<>( layout.maxY, this );
+		final BooleanAttribute< ScreenVertexRange > selected = new BooleanAttribute<>( layout.selected, this );
+		final IntAttribute< ScreenVertexRange > color = new IntAttribute<>( layout.color, this );
 
 		public ScreenVertexRangePool( final int initialCapacity )
 		{
@@ -63,11 +69,36 @@ public class ScreenVertexRange extends PoolObject< ScreenVertexRange, ScreenVert
 	}
 
 	public ScreenVertexRange init( final double minX, final double maxX, final double minY, final double maxY )
+	{
+		return init( minX, maxX, minY, maxY, false, 0 );
+	}
+
+	/**
+	 * Initialize a new {@link ScreenVertexRange}.
+	 *
+	 * @param minX
+	 *            the minimum screen X.
+	 * @param maxX
+	 *            the maximum screen X.
+	 * @param minY
+	 *            the minimum screen Y.
+	 * @param maxY
+	 *            the maximum screen Y.
+	 * @param selected
+	 *            whether the majority of vertices in the range are selected.
+	 * @param color
+	 *            the average color of the colored vertices in the range, or
+	 *            {@code 0} if no vertex in the range is colored.
+	 * @return {@code this}.
+	 */
+	public ScreenVertexRange init( final double minX, final double maxX, final double minY, final double maxY, final boolean selected, final int color )
 	{
 		setMinX( minX );
 		setMaxX( maxX );
 		setMinY( minY );
 		setMaxY( maxY );
+		setSelected( selected );
+		setColor( color );
 		return this;
 	}
 
@@ -111,6 +142,38 @@ public class ScreenVertexRange extends PoolObject< ScreenVertexRange, ScreenVert
 		pool.maxY.setQuiet( this, maxY );
 	}
 
+	/**
+	 * Get the selected state of the range.
+	 *
+	 * @return {@code true} if the majority of vertices in the range are
+	 *         selected.
+	 */
+	public boolean isSelected()
+	{
+		return pool.selected.get( this );
+	}
+
+	protected void setSelected( final boolean selected )
+	{
+		pool.selected.setQuiet( this, selected );
+	}
+
+	/**
+	 * Get the aggregate color of the range.
+	 *
+	 * @return the average ARGB color of the colored vertices in the range, or
+	 *         {@code 0} if no vertex in the range is colored.
+	 */
+	public int getColor()
+	{
+		return pool.color.get( this );
+	}
+
+	protected void setColor( final int color )
+	{
+		pool.color.setQuiet( this, color );
+	}
+
 	@Override
 	protected void setToUninitializedState()
 	{}
@@ -128,6 +191,8 @@ public class ScreenVertexRange extends PoolObject< ScreenVertexRange, ScreenVert
 		setMaxX( r.getMaxX() );
 		setMinY( r.getMinY() );
 		setMaxY( r.getMaxY() );
+		setSelected( r.isSelected() );
+		setColor( r.getColor() );
 		return this;
 	}
 }
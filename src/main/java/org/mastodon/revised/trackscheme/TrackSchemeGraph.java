@@ -33,6 +33,8 @@ import org.mastodon.revised.trackscheme.wrap.ModelGraphProperties;
 import org.mastodon.spatial.HasTimepoint;
 import org.scijava.listeners.Listeners;
 
+import gnu.trove.list.array.TDoubleArrayList;
+
 /**
  * A specialized graph to be used in the TrackScheme application.
  * <p>
@@ -117,10 +119,14 @@ public class TrackSchemeGraph<
 
 	private final Listeners.List< GraphChangeListener > listeners;
 
+	private final Listeners.List< GraphListener< TrackSchemeVertex, TrackSchemeEdge > > graphListeners;
+
 	private final RefBimap< V, TrackSchemeVertex > vertexMap;
 
 	private final RefBimap< E, TrackSchemeEdge > edgeMap;
 
+	private final LexicographicalVertexOrder vertexOrder;
+
 	/**
 	 * Creates a new TrackSchemeGraph with a default initial capacity.
 	 *
@@ -200,8 +206,11 @@ public class TrackSchemeGraph<
 		tsv2 = vertexRef();
 		tse = edgeRef();
 		listeners = new Listeners.SynchronizedList<>();
+		graphListeners = new Listeners.SynchronizedList<>();
 		vertexMap = new TrackSchemeVertexBimap<>( this );
 		edgeMap = new TrackSchemeEdgeBimap<>( this );
+		vertexOrder = new LexicographicalVertexOrder( this );
+		graphListeners.add( vertexOrder );
 
 		modelGraph.addGraphListener( this );
 		modelGraph.addGraphChangeListener( this );
@@ -278,6 +287,17 @@ public class TrackSchemeGraph<
 		return sb.toString();
 	}
 
+	/**
+	 * Returns the lexicographical order of the vertices of this graph, which is
+	 * kept up to date with graph changes.
+	 *
+	 * @return the lexicographical vertex order.
+	 */
+	LexicographicalVertexOrder getVertexOrder()
+	{
+		return vertexOrder;
+	}
+
 	/**
 	 * Returns the vertex in this TrackSchemeGraph that corresponds to the model
 	 * vertex with the specified id.
@@ -311,6 +331,22 @@ public class TrackSchemeGraph<
 		return listeners;
 	}
 
+	/**
+	 * Get the list of {@link GraphListener}s. This can be used to add (or
+	 * remove) a {@link GraphListener} that will be notified when vertices and
+	 * edges are added to or removed from this TrackSchemeGraph.
+	 * <p>
+	 * Listeners are notified after a vertex or edge was added, and before a
+	 * vertex or edge is removed, i.e., the removed object and its neighborhood
+	 * are still valid when the listener is called.
+	 *
+	 * @return list of GraphListeners
+	 */
+	public Listeners< GraphListener< TrackSchemeVertex, TrackSchemeEdge > > graphListeners()
+	{
+		return graphListeners;
+	}
+
 	public ReentrantReadWriteLock getLock()
 	{
 		return lock;
@@ -435,6 +471,9 @@ public class TrackSchemeGraph<
 			super.insertEdge( tsv, e.getSourceOutIndex(), tsv2, e.getTargetInIndex(), tse ).initModelId( id );
 			idToTrackSchemeEdge.put( id, tse );
 		}
+
+		for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+			l.graphRebuilt();
 	}
 
 	@Override
@@ -444,6 +483,9 @@ public class TrackSchemeGraph<
 		super.addVertex( tsv ).initModelId( id );
 		idToTrackSchemeVertex.put( id, tsv );
 		roots.add( tsv );
+
+		for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+			l.vertexAdded( tsv );
 	}
 
 	@Override
@@ -452,6 +494,8 @@ public class TrackSchemeGraph<
 		final int id = idmap.getVertexId( vertex );
 		if ( idToTrackSchemeVertex.remove( id, tsv ) != null )
 		{
+			for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+				l.vertexRemoved( tsv );
 			if ( tsv.incomingEdges().isEmpty() )
 				roots.remove( tsv );
 			super.remove( tsv );
@@ -468,6 +512,9 @@ public class TrackSchemeGraph<
 			roots.remove( tsv2 );
 		super.insertEdge( tsv, edge.getSourceOutIndex(), tsv2, edge.getTargetInIndex(), tse ).initModelId( id );
 		idToTrackSchemeEdge.put( id, tse );
+
+		for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+			l.edgeAdded( tse );
 	}
 
 	@Override
@@ -476,6 +523,8 @@ public class TrackSchemeGraph<
 		final int id = idmap.getEdgeId( edge );
 		if ( idToTrackSchemeEdge.remove( id, tse ) != null )
 		{
+			for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+				l.edgeRemoved( tse );
 			if ( tse.getTarget( tsv ).incomingEdges().size() == 1 )
 				roots.add( tsv );
 			super.remove( tse );
@@ -520,9 +569,12 @@ public class TrackSchemeGraph<
 		final IntField layoutTimeStamp = intField();
 		final IndexField layoutInEdgeIndex = indexField();
 		final DoubleField layoutX = doubleField();
+		final IntField layoutColumn = intField();
 		final IntField timepoint = intField();
 		final IndexField screenVertexIndex = indexField();
 		final BooleanField ghost = booleanField();
+		final IndexField lexOrderRoot = indexField();
+		final IntField lexOrderIndex = intField();
 	}
 
 	static TrackSchemeVertexLayout vertexLayout = new TrackSchemeVertexLayout();
@@ -535,9 +587,20 @@ public class TrackSchemeGraph<
 		final IntAttribute< TrackSchemeVertex > layoutTimeStamp = new IntAttribute<>( vertexLayout.layoutTimeStamp, this );
 		final IndexAttribute< TrackSchemeVertex > layoutInEdgeIndex = new IndexAttribute<>( vertexLayout.layoutInEdgeIndex, this );
 		final DoubleAttribute< TrackSchemeVertex > layoutX = new DoubleAttribute<>( vertexLayout.layoutX, this );
+		final IntAttribute< TrackSchemeVertex > layoutColumn = new IntAttribute<>( vertexLayout.layoutColumn, this );
 		final IntAttribute< TrackSchemeVertex > timepoint = new IntAttribute<>( vertexLayout.timepoint, this );
 		final IndexAttribute< TrackSchemeVertex > screenVertexIndex = new IndexAttribute<>( vertexLayout.screenVertexIndex, this );
 		final BooleanAttribute< TrackSchemeVertex > ghost = new BooleanAttribute<>( vertexLayout.ghost, this );
+		final IndexAttribute< TrackSchemeVertex > lexOrderRoot = new IndexAttribute<>( vertexLayout.lexOrderRoot, this );
+		final IntAttribute< TrackSchemeVertex > lexOrderIndex = new IntAttribute<>( vertexLayout.lexOrderIndex, this );
+
+		/**
+		 * X offsets of layout columns, indexed by
+		 * {@link TrackSchemeVertex#getLayoutColumn() layout column}. Managed
+		 * by the {@link LineageTreeLayout}. Columns without an entry have
+		 * offset 0.
+		 */
+		final TDoubleArrayList layoutColumnOffsets = new TDoubleArrayList();
 
 		private TrackSchemeVertexPool( final int initialCapacity, final ModelGraphWrapper< ?, ? > modelGraphWrapper )
 		{
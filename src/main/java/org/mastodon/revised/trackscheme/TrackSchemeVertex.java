@@ -6,6 +6,8 @@ import org.mastodon.pool.ByteMappedElement;
 import org.mastodon.pool.PoolObject;
 import org.mastodon.revised.trackscheme.TrackSchemeGraph.TrackSchemeVertexPool;
 
+import gnu.trove.list.array.TDoubleArrayList;
+
 /**
  * The vertex class for TrackScheme.
  *
@@ -25,6 +27,7 @@ public class TrackSchemeVertex extends AbstractVertex< TrackSchemeVertex, TrackS
 	TrackSchemeVertex initModelId( final int modelVertexId )
 	{
 		setModelVertexId( modelVertexId );
+		setLayoutColumn( -1 );
 		setLayoutX( 0 );
 		setLayoutTimestamp( -1 );
 		setLayoutInEdgeIndex( 0 );
@@ -119,16 +122,52 @@ public class TrackSchemeVertex extends AbstractVertex< TrackSchemeVertex, TrackS
 		pool.screenVertexIndex.setQuiet( this, screenVertexIndex );
 	}
 
+	/**
+	 * Gets the X coordinate of this vertex in the layout. It is the sum of the
+	 * stored coordinate and the offset of the {@link #getLayoutColumn() layout
+	 * column}, so that incremental layouts can shift whole columns without
+	 * touching their vertices.
+	 *
+	 * @return the layout X coordinate.
+	 */
 	public double getLayoutX()
 	{
-		return pool.layoutX.get( this );
+		final double x = pool.layoutX.get( this );
+		final int column = pool.layoutColumn.get( this );
+		final TDoubleArrayList offsets = pool.layoutColumnOffsets;
+		return column >= 0 && column < offsets.size()
+				? x + offsets.getQuick( column )
+				: x;
 	}
 
+	/**
+	 * Sets the X coordinate of this vertex, relative to the offset of its
+	 * {@link #getLayoutColumn() layout column}.
+	 *
+	 * @param x
+	 *            the X coordinate relative to the column offset.
+	 */
 	protected void setLayoutX( final double x )
 	{
 		pool.layoutX.setQuiet( this, x );
 	}
 
+	/**
+	 * Gets the layout column that this vertex was laid out in, or {@code -1}
+	 * if its {@link #getLayoutX() layout X} coordinate is absolute.
+	 *
+	 * @return the layout column.
+	 */
+	int getLayoutColumn()
+	{
+		return pool.layoutColumn.get( this );
+	}
+
+	void setLayoutColumn( final int column )
+	{
+		pool.layoutColumn.setQuiet( this, column );
+	}
+
 	/**
 	 * Layout timestamp is set when this vertex is layouted (assigned a
 	 * {@link #getLayoutX() coordinate}). It is also used to mark active
@@ -181,4 +220,36 @@ public class TrackSchemeVertex extends AbstractVertex< TrackSchemeVertex, TrackS
 	{
 		pool.ghost.setQuiet( this, ghost );
 	}
+
+	/**
+	 * Gets the internal pool index of the root of the tree that this vertex
+	 * belongs to in the {@link LexicographicalVertexOrder}.
+	 *
+	 * @return the internal pool index of the root of this vertex' tree.
+	 */
+	int getLexOrderRoot()
+	{
+		return pool.lexOrderRoot.get( this );
+	}
+
+	void setLexOrderRoot( final int rootIndex )
+	{
+		pool.lexOrderRoot.setQuiet( this, rootIndex );
+	}
+
+	/**
+	 * Gets the pre-order index of this vertex in its tree in the
+	 * {@link LexicographicalVertexOrder}.
+	 *
+	 * @return the pre-order index of this vertex in its tree.
+	 */
+	int getLexOrderIndex()
+	{
+		return pool.lexOrderIndex.get( this );
+	}
+
+	void setLexOrderIndex( final int index )
+	{
+		pool.lexOrderIndex.setQuiet( this, index );
+	}
 }
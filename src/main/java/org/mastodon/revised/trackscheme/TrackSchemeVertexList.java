@@ -23,6 +23,20 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 	// TODO: needs to be reset when the list is modified.
 	private boolean cachedMinLayoutXDistanceValid;
 
+	private DensityPyramid densityPyramid;
+
+	/**
+	 * Invalidates cached values derived from the vertices
+	 * {@link TrackSchemeVertex#getLayoutX() layoutX} coordinates. Must be
+	 * called when the list is modified, or when vertices in the list are
+	 * shifted, in an incremental layout.
+	 */
+	void invalidateCache()
+	{
+		cachedMinLayoutXDistanceValid = false;
+		densityPyramid = null;
+	}
+
 	public TrackSchemeVertexList( final TrackSchemeGraph< ?, ? > graph )
 	{
 		super( graph.getVertexPool() );
@@ -168,6 +182,22 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 		}
 	}
 
+	/**
+	 * Get the {@link DensityPyramid} of this list. It is built on the first
+	 * call after the list was created or {@link #invalidateCache()
+	 * invalidated}.
+	 *
+	 * @param vref
+	 *            a vertex reference that is used internally.
+	 * @return the density pyramid of this list.
+	 */
+	DensityPyramid getDensityPyramid( final TrackSchemeVertex vref )
+	{
+		if ( densityPyramid == null )
+			densityPyramid = new DensityPyramid( this, vref );
+		return densityPyramid;
+	}
+
 	protected double getMinLayoutX()
 	{
 		if ( isEmpty() )
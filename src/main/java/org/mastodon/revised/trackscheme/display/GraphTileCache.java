@@ -0,0 +1,253 @@
+package org.mastodon.revised.trackscheme.display;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mastodon.revised.trackscheme.ScreenEntities;
+import org.mastodon.revised.trackscheme.ScreenTransform;
+import org.mastodon.revised.trackscheme.display.style.TrackSchemeStyle;
+
+/**
+ * Caches rendered tiles of the TrackScheme graph (edges, vertices, and vertex
+ * ranges, without highlight and focus), such that panning only needs to paint
+ * the newly exposed parts of the display.
+ * <p>
+ * Tiles are {@value #TILE_SIZE} pixels wide and high. They are anchored in
+ * zoomed layout coordinates, i.e., layout coordinates multiplied by the
+ * current scale. This makes tile contents independent of translation. Cached
+ * tiles are valid as long as the {@link ScreenEntities#getRenderKey() render
+ * key} of the painted entities, the scale, the header size and the style stay
+ * the same. The cache is cleared otherwise.
+ * <p>
+ * Only tiles that lie completely inside the display are cached, because
+ * {@link ScreenEntities} only contain what is visible on the display. Tiles
+ * that are partially visible at the display borders are painted every frame.
+ * When a tile is re-used at a different sub-pixel offset, its content may be
+ * off by up to one pixel.
+ */
+public class GraphTileCache
+{
+	/**
+	 * Width and height of a tile, in pixels.
+	 */
+	public static final int TILE_SIZE = 128;
+
+	/**
+	 * Tiles are evicted (least recently used first) if the cache holds more
+	 * than this many times the number of tiles visible on the display.
+	 */
+	private static final int MAX_CACHED_SCREENS = 4;
+
+	private final LinkedHashMap< Long, BufferedImage > tiles;
+
+	private int maxTiles = 1;
+
+	private long renderKey = -1;
+
+	private double scaleX;
+
+	private double scaleY;
+
+	private int headerWidth;
+
+	private int headerHeight;
+
+	private TrackSchemeStyle style;
+
+	/**
+	 * Scratch image in which missing tiles and border regions are painted.
+	 */
+	private BufferedImage scratch;
+
+	public GraphTileCache()
+	{
+		tiles = new LinkedHashMap< Long, BufferedImage >( 64, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< Long, BufferedImage > eldest )
+			{
+				return size() > maxTiles;
+			}
+		};
+	}
+
+	/**
+	 * Remove all cached tiles. Called when the graph is painted differently,
+	 * for example, because the style was modified.
+	 */
+	public synchronized void invalidate()
+	{
+		tiles.clear();
+	}
+
+	/**
+	 * Paint the graph (without highlight and focus) using cached tiles where
+	 * possible.
+	 *
+	 * @param g2
+	 *            the graphics to paint on.
+	 * @param entities
+	 *            the entities to paint. Must have a non-negative
+	 *            {@link ScreenEntities#getRenderKey() render key}.
+	 * @param paintGraph
+	 *            used to paint the graph in missing tiles.
+	 * @param style
+	 *            the style to paint with.
+	 * @param width
+	 *            the display width.
+	 * @param height
+	 *            the display height.
+	 * @param headerWidth
+	 *            the width of the timepoint header (vertical offset of the
+	 *            graph).
+	 * @param headerHeight
+	 *            the height of the column header (horizontal offset of the
+	 *            graph).
+	 * @param antialias
+	 *            whether to paint anti-aliased.
+	 */
+	public synchronized void paint(
+			final Graphics2D g2,
+			final ScreenEntities entities,
+			final PaintGraph paintGraph,
+			final TrackSchemeStyle style,
+			final int width,
+			final int height,
+			final int headerWidth,
+			final int headerHeight,
+			final boolean antialias )
+	{
+		if ( width <= 0 || height <= 0 )
+			return;
+
+		final ScreenTransform transform = new ScreenTransform();
+		entities.getScreenTransform( transform );
+		if ( entities.getRenderKey() != renderKey
+				|| transform.getScaleX() != scaleX
+				|| transform.getScaleY() != scaleY
+				|| headerWidth != this.headerWidth
+				|| headerHeight != this.headerHeight
+				|| style != this.style )
+		{
+			tiles.clear();
+			renderKey = entities.getRenderKey();
+			scaleX = transform.getScaleX();
+			scaleY = transform.getScaleY();
+			this.headerWidth = headerWidth;
+			this.headerHeight = headerHeight;
+			this.style = style;
+		}
+
+		// offset of the display in zoomed layout coordinates
+		final long ox = Math.round( transform.getMinX() * scaleX );
+		final long oy = Math.round( transform.getMinY() * scaleY );
+
+		// range of (partially) visible tiles
+		final long tx0 = Math.floorDiv( ox, TILE_SIZE );
+		final long tx1 = Math.floorDiv( ox + width - 1, TILE_SIZE );
+		final long ty0 = Math.floorDiv( oy, TILE_SIZE );
+		final long ty1 = Math.floorDiv( oy + height - 1, TILE_SIZE );
+		maxTiles = Math.max( 1, MAX_CACHED_SCREENS * ( int ) ( ( tx1 - tx0 + 1 ) * ( ty1 - ty0 + 1 ) ) );
+
+		/*
+		 * Draw cached tiles, and collect the region that has to be painted
+		 * from entities: missing tiles, and tiles that are not completely
+		 * visible.
+		 */
+		final Area missing = new Area();
+		for ( long ty = ty0; ty <= ty1; ++ty )
+		{
+			final int y = ( int ) ( ty * TILE_SIZE - oy );
+			int runStart = -1;
+			for ( long tx = tx0; tx <= tx1; ++tx )
+			{
+				final int x = ( int ) ( tx * TILE_SIZE - ox );
+				final BufferedImage tile = isInside( x, y, width, height ) ? tiles.get( key( tx, ty ) ) : null;
+				if ( tile == null )
+				{
+					if ( runStart < 0 )
+						runStart = x;
+				}
+				else
+				{
+					if ( runStart >= 0 )
+					{
+						missing.add( new Area( new Rectangle( runStart, y, x - runStart, TILE_SIZE ) ) );
+						runStart = -1;
+					}
+					g2.drawImage( tile, x, y, null );
+				}
+			}
+			if ( runStart >= 0 )
+			{
+				final int x = ( int ) ( ( tx1 + 1 ) * TILE_SIZE - ox );
+				missing.add( new Area( new Rectangle( runStart, y, x - runStart, TILE_SIZE ) ) );
+			}
+		}
+		if ( missing.isEmpty() )
+			return;
+
+		/*
+		 * Paint missing region into scratch image, and from there into the
+		 * display and into new tiles.
+		 */
+		if ( scratch == null || scratch.getWidth() != width || scratch.getHeight() != height )
+			scratch = new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB_PRE );
+		final Graphics2D sg = scratch.createGraphics();
+		sg.setClip( missing );
+		sg.setComposite( AlphaComposite.Clear );
+		sg.fillRect( 0, 0, width, height );
+		sg.setComposite( AlphaComposite.SrcOver );
+		sg.setRenderingHint( RenderingHints.KEY_ANTIALIASING,
+				antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF );
+		paintGraph.paintGraph( sg, entities, -1, -1, -1, style );
+		sg.dispose();
+
+		final Shape clip = g2.getClip();
+		final Composite composite = g2.getComposite();
+		g2.clip( missing );
+		g2.setComposite( AlphaComposite.SrcOver );
+		g2.drawImage( scratch, 0, 0, null );
+		g2.setClip( clip );
+		g2.setComposite( composite );
+
+		for ( long ty = ty0; ty <= ty1; ++ty )
+		{
+			for ( long tx = tx0; tx <= tx1; ++tx )
+			{
+				final int x = ( int ) ( tx * TILE_SIZE - ox );
+				final int y = ( int ) ( ty * TILE_SIZE - oy );
+				final Long key = key( tx, ty );
+				if ( isInside( x, y, width, height ) && !tiles.containsKey( key ) )
+				{
+					final BufferedImage tile = new BufferedImage( TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE );
+					final Graphics2D tg = tile.createGraphics();
+					tg.setComposite( AlphaComposite.Src );
+					tg.drawImage( scratch, -x, -y, null );
+					tg.dispose();
+					tiles.put( key, tile );
+				}
+			}
+		}
+	}
+
+	private static boolean isInside( final int x, final int y, final int width, final int height )
+	{
+		return x >= 0 && y >= 0 && x + TILE_SIZE <= width && y + TILE_SIZE <= height;
+	}
+
+	private static Long key( final long tx, final long ty )
+	{
+		return Long.valueOf( ( tx << 32 ) ^ ( ty & 0xffffffffL ) );
+	}
+}
@@ -130,6 +130,82 @@ public class PaintGraph
 		vertices.releaseRef( vt );
 	}
 
+	/**
+	 * Paints only the highlighted edge and the highlighted and focused
+	 * vertices. This is used to paint highlight and focus on top of cached
+	 * graph tiles, which are painted without highlight and focus (see
+	 * {@link GraphTileCache}).
+	 *
+	 * @param g2
+	 *            the graphics to paint on.
+	 * @param entities
+	 *            the entities to paint.
+	 * @param highlightedVertexId
+	 *            the id of the highlighted vertex, or {@code -1}.
+	 * @param highlightedEdgeId
+	 *            the id of the highlighted edge, or {@code -1}.
+	 * @param focusedVertexId
+	 *            the id of the focused vertex, or {@code -1}.
+	 * @param style
+	 *            the style to paint with.
+	 */
+	public void paintHighlightAndFocus(
+			final Graphics2D g2,
+			final ScreenEntities entities,
+			final int highlightedVertexId,
+			final int highlightedEdgeId,
+			final int focusedVertexId,
+			final TrackSchemeStyle style )
+	{
+		if ( highlightedVertexId < 0 && highlightedEdgeId < 0 && focusedVertexId < 0 )
+			return;
+
+		this.g2 = g2;
+		this.highlightedVertexId = highlightedVertexId;
+		this.highlightedEdgeId = highlightedEdgeId;
+		this.focusedVertexId = focusedVertexId;
+		this.style = style;
+
+		final RefList< ScreenEdge > edges = entities.getEdges();
+		final RefList< ScreenVertex > vertices = entities.getVertices();
+
+		final ScreenVertex vt = vertices.createRef();
+		final ScreenVertex vs = vertices.createRef();
+
+		if ( highlightedEdgeId >= 0 )
+		{
+			for ( final ScreenEdge edge : edges )
+			{
+				if ( edge.getTrackSchemeEdgeId() == highlightedEdgeId )
+				{
+					vertices.get( edge.getSourceScreenVertexIndex(), vs );
+					vertices.get( edge.getTargetScreenVertexIndex(), vt );
+					beforeDrawEdges();
+					drawEdge( edge, vs, vt );
+					// repaint end points over the edge
+					beforeDrawVertices();
+					drawVertex( vs );
+					drawVertex( vt );
+					break;
+				}
+			}
+		}
+
+		if ( highlightedVertexId >= 0 || focusedVertexId >= 0 )
+		{
+			beforeDrawVertices();
+			for ( final ScreenVertex vertex : vertices )
+			{
+				final int id = vertex.getTrackSchemeVertexId();
+				if ( id >= 0 && ( id == highlightedVertexId || id == focusedVertexId ) )
+					drawVertex( vertex );
+			}
+		}
+
+		vertices.releaseRef( vs );
+		vertices.releaseRef( vt );
+	}
+
 	/**
 	 * Returns the distance from a <b>screen</b> position to a specified edge.
 	 *
@@ -187,6 +263,20 @@ public class PaintGraph
 		return ( dx * dx + dy * dy < radius * radius );
 	}
 
+	/**
+	 * Returns an upper bound of the distance from the vertex center at which
+	 * {@link #isInsidePaintedVertex(double, double, ScreenVertex)} returns
+	 * {@code true}. This is used to look up candidate vertices for picking.
+	 * Classes overriding {@code isInsidePaintedVertex} should override this
+	 * accordingly.
+	 *
+	 * @return the maximal radius of painted vertices.
+	 */
+	public double getMaxPaintedVertexRadius()
+	{
+		return Math.max( maxDisplayVertexSize / 2, simplifiedVertexRadius + simplifiedVertexSelectTolerance );
+	}
+
 	/**
 	 * Configures the graphics object prior to drawing vertices.
 	 */
@@ -221,13 +311,22 @@ public class PaintGraph
 	}
 
 	/**
-	 * Paints the specified vertex range.
+	 * Paints the specified vertex range. Ranges in which the majority of
+	 * vertices is selected are painted in the selected vertex color, ranges
+	 * containing colored vertices in their average color.
 	 *
 	 * @param range
 	 *            the vertex range to paint.
 	 */
 	protected void drawVertexRange( final ScreenVertexRange range )
 	{
+		final int color = range.getColor();
+		if ( range.isSelected() )
+			g2.setColor( style.getSelectedSimplifiedVertexFillColor() );
+		else if ( color != 0 )
+			g2.setColor( new Color( color, true ) );
+		else
+			g2.setColor( style.getVertexRangeColor() );
 		final int x = ( int ) range.getMinX();
 		final int y = ( int ) range.getMinY();
 		final int w = ( int ) range.getMaxX() - x;
@@ -406,6 +505,9 @@ public class PaintGraph
 		if ( highlighted || focused || ghost )
 			g2.setStroke( style.getVertexStroke() );
 
+		// Labels need spotdiameter >= 15, i.e., vertexDist >= 15 when
+		// highlighted. Only then are labels available, see
+		// ScreenVertex.MIN_LABEL_VERTEX_DIST.
 		final int maxLabelLength = ( int ) ( spotdiameter / avgLabelLetterWidth );
 		if ( maxLabelLength > 2 && !disappear )
 		{
@@ -0,0 +1,77 @@
+package org.mastodon.revised.trackscheme.display;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+
+import org.mastodon.revised.trackscheme.display.style.TrackSchemeStyle;
+
+/**
+ * Paints {@link RenderingMetrics} as a heads-up display in the top-left corner
+ * of the TrackScheme graph area.
+ */
+public class PaintRenderingMetrics
+{
+	private static final Color BACKGROUND_COLOR = new Color( 0, 0, 0, 160 );
+
+	private static final Color TEXT_COLOR = Color.WHITE;
+
+	private static final int MARGIN = 5;
+
+	/**
+	 * Paint the metrics.
+	 *
+	 * @param g2
+	 *            the graphics to paint on.
+	 * @param metrics
+	 *            the metrics to paint.
+	 * @param headerWidth
+	 *            the width of the timepoint header.
+	 * @param headerHeight
+	 *            the height of the column header.
+	 * @param style
+	 *            the style to paint with.
+	 */
+	public void paint(
+			final Graphics2D g2,
+			final RenderingMetrics metrics,
+			final int headerWidth,
+			final int headerHeight,
+			final TrackSchemeStyle style )
+	{
+		final String[] lines;
+		synchronized ( metrics )
+		{
+			lines = new String[] {
+					String.format( "layout        %6.1f ms", metrics.getLayoutNanos() / 1e6 ),
+					String.format( "cropAndScale  %6.1f ms", metrics.getCropAndScaleNanos() / 1e6 ),
+					String.format( "paint         %6.1f ms", metrics.getPaintNanos() / 1e6 ),
+					String.format( "vertices      %6d", metrics.getNumVertices() ),
+					String.format( "edges         %6d", metrics.getNumEdges() ),
+					String.format( "ranges        %6d", metrics.getNumRanges() ),
+					String.format( "fps           %6.1f", metrics.getFramesPerSecond() )
+			};
+		}
+
+		// monospaced, such that the columns line up
+		g2.setFont( new Font( Font.MONOSPACED, Font.PLAIN, style.getHeaderFont().getSize() ) );
+		final FontMetrics fm = g2.getFontMetrics();
+		int textWidth = 0;
+		for ( final String line : lines )
+			textWidth = Math.max( textWidth, fm.stringWidth( line ) );
+		final int lineHeight = fm.getHeight();
+
+		final int x = headerWidth + MARGIN;
+		final int y = headerHeight + MARGIN;
+		g2.setColor( BACKGROUND_COLOR );
+		g2.fillRect( x, y, textWidth + 2 * MARGIN, lines.length * lineHeight + 2 * MARGIN );
+		g2.setColor( TEXT_COLOR );
+		int ytext = y + MARGIN + fm.getAscent();
+		for ( final String line : lines )
+		{
+			g2.drawString( line, x + MARGIN, ytext );
+			ytext += lineHeight;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package org.mastodon.revised.trackscheme.display;
+
+/**
+ * Timings and entity counts of one painted TrackScheme frame.
+ * <p>
+ * Layout and {@code cropAndScale} are not done for every frame: Frames that
+ * only interpolate between two states of an animation re-use the last computed
+ * {@link org.mastodon.revised.trackscheme.ScreenEntities ScreenEntities}. For
+ * these, {@link #getLayoutNanos()} and {@link #getCropAndScaleNanos()} report
+ * the most recent computation.
+ */
+public class RenderingMetrics
+{
+	/**
+	 * Receives {@link RenderingMetrics} after each painted frame.
+	 */
+	public interface RenderingMetricsListener
+	{
+		/**
+		 * Called (on the painting thread, usually the EDT) after a frame was
+		 * painted. Implementations should return quickly.
+		 *
+		 * @param metrics
+		 *            metrics of the painted frame. This is a copy that may be
+		 *            kept by the listener.
+		 */
+		void frameRendered( RenderingMetrics metrics );
+	}
+
+	private long layoutNanos;
+
+	private long cropAndScaleNanos;
+
+	private long paintNanos;
+
+	private int numVertices;
+
+	private int numEdges;
+
+	private int numRanges;
+
+	private double framesPerSecond;
+
+	public RenderingMetrics()
+	{}
+
+	public RenderingMetrics( final RenderingMetrics metrics )
+	{
+		set( metrics );
+	}
+
+	public synchronized void set( final RenderingMetrics metrics )
+	{
+		synchronized ( metrics )
+		{
+			layoutNanos = metrics.layoutNanos;
+			cropAndScaleNanos = metrics.cropAndScaleNanos;
+			paintNanos = metrics.paintNanos;
+			numVertices = metrics.numVertices;
+			numEdges = metrics.numEdges;
+			numRanges = metrics.numRanges;
+			framesPerSecond = metrics.framesPerSecond;
+		}
+	}
+
+	/**
+	 * Returns the time spent to update the layout (including context layout)
+	 * for the last computed {@code ScreenEntities}.
+	 *
+	 * @return layout time in nanoseconds.
+	 */
+	public synchronized long getLayoutNanos()
+	{
+		return layoutNanos;
+	}
+
+	/**
+	 * Returns the time spent in {@code LineageTreeLayout.cropAndScale()} for
+	 * the last computed {@code ScreenEntities}. This includes
+	 * {@code GraphColorGenerator} calls.
+	 *
+	 * @return cropAndScale time in nanoseconds.
+	 */
+	public synchronized long getCropAndScaleNanos()
+	{
+		return cropAndScaleNanos;
+	}
+
+	/**
+	 * Returns the time spent to paint the frame with Java2D (background,
+	 * graph, and headers).
+	 *
+	 * @return paint time in nanoseconds.
+	 */
+	public synchronized long getPaintNanos()
+	{
+		return paintNanos;
+	}
+
+	/**
+	 * Returns the number of screen vertices painted in the frame.
+	 *
+	 * @return the number of vertices.
+	 */
+	public synchronized int getNumVertices()
+	{
+		return numVertices;
+	}
+
+	/**
+	 * Returns the number of screen edges painted in the frame.
+	 *
+	 * @return the number of edges.
+	 */
+	public synchronized int getNumEdges()
+	{
+		return numEdges;
+	}
+
+	/**
+	 * Returns the number of dense vertex ranges painted in the frame.
+	 *
+	 * @return the number of vertex ranges.
+	 */
+	public synchronized int getNumRanges()
+	{
+		return numRanges;
+	}
+
+	/**
+	 * Returns the frame rate, averaged over the recent consecutive frames.
+	 * This is {@code 0} if the frame is not part of a sequence of frames (for
+	 * example, an animation).
+	 *
+	 * @return frames per second.
+	 */
+	public synchronized double getFramesPerSecond()
+	{
+		return framesPerSecond;
+	}
+
+	synchronized void setLayoutNanos( final long nanos )
+	{
+		layoutNanos = nanos;
+	}
+
+	synchronized void setCropAndScaleNanos( final long nanos )
+	{
+		cropAndScaleNanos = nanos;
+	}
+
+	synchronized void setFrame( final long paintNanos, final int numVertices, final int numEdges, final int numRanges, final double framesPerSecond )
+	{
+		this.paintNanos = paintNanos;
+		this.numVertices = numVertices;
+		this.numEdges = numEdges;
+		this.numRanges = numRanges;
+		this.framesPerSecond = framesPerSecond;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format( "layout %.1f ms, cropAndScale %.1f ms, paint %.1f ms, %d vertices, %d edges, %d ranges, %.1f fps",
+				layoutNanos / 1e6, cropAndScaleNanos / 1e6, paintNanos / 1e6, numVertices, numEdges, numRanges, framesPerSecond );
+	}
+}
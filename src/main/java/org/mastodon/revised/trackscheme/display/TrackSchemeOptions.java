@@ -29,6 +29,7 @@
 package org.mastodon.revised.trackscheme.display;
 
 import java.awt.event.KeyListener;
+import java.util.concurrent.ForkJoinPool;
 
 import org.mastodon.revised.trackscheme.TrackSchemeEdge;
 import org.mastodon.revised.trackscheme.TrackSchemeVertex;
@@ -168,6 +169,86 @@ public class TrackSchemeOptions
 		return this;
 	}
 
+	/**
+	 * Sets whether the layout is updated incrementally when the graph changes.
+	 * If {@code true}, only the lineage trees touched by a graph change are
+	 * laid out again. If {@code false}, the whole graph is laid out again after
+	 * each change.
+	 *
+	 * @param incremental
+	 *            whether to use incremental layout.
+	 * @return this instance.
+	 */
+	public TrackSchemeOptions incrementalLayout( final boolean incremental )
+	{
+		values.incrementalLayout = incremental;
+		return this;
+	}
+
+	/**
+	 * Sets the {@link ForkJoinPool} on which independent lineage trees are laid
+	 * out in parallel. If {@code null} (the default), the layout is computed
+	 * sequentially on the painter thread.
+	 *
+	 * @param pool
+	 *            the pool to use for parallel layout, or {@code null}.
+	 * @return this instance.
+	 */
+	public TrackSchemeOptions layoutForkJoinPool( final ForkJoinPool pool )
+	{
+		values.layoutForkJoinPool = pool;
+		return this;
+	}
+
+	/**
+	 * Sets whether TrackScheme caches rendered tiles of the graph. If
+	 * {@code true}, panning only paints the newly exposed parts of the
+	 * display, and re-uses the rest from cached tiles. Tiles are invalidated
+	 * when the layout, zoom level, style, selection, colors, or labels change.
+	 *
+	 * @param tiled
+	 *            whether to use tiled rendering.
+	 * @return this instance.
+	 */
+	public TrackSchemeOptions tiledRendering( final boolean tiled )
+	{
+		values.tiledRendering = tiled;
+		return this;
+	}
+
+	/**
+	 * Sets whether TrackScheme computes layout and screen entities in a
+	 * background thread. If {@code true}, the painter thread only animates and
+	 * paints the latest computed entities, and stays responsive while the
+	 * layout of a large graph is updated. Requests arriving while entities are
+	 * computed are coalesced into the next computation.
+	 *
+	 * @param pipelined
+	 *            whether to use pipelined rendering.
+	 * @return this instance.
+	 */
+	public TrackSchemeOptions pipelinedRendering( final boolean pipelined )
+	{
+		values.pipelinedRendering = pipelined;
+		return this;
+	}
+
+	/**
+	 * Sets whether TrackScheme shows a heads-up display with layout,
+	 * cropAndScale, and paint times, entity counts, and frame rate. (The HUD
+	 * can also be toggled later with
+	 * {@link TrackSchemeOverlay#setPerformanceHudVisible(boolean)}.)
+	 *
+	 * @param show
+	 *            whether to show the performance HUD.
+	 * @return this instance.
+	 */
+	public TrackSchemeOptions performanceHud( final boolean show )
+	{
+		values.performanceHud = show;
+		return this;
+	}
+
 	/**
 	 * Read-only {@link TrackSchemeOptions} values.
 	 */
@@ -189,6 +270,16 @@ public class TrackSchemeOptions
 
 		private GraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > graphColorGenerator = new DefaultGraphColorGenerator<>();
 
+		private boolean incrementalLayout = false;
+
+		private ForkJoinPool layoutForkJoinPool = null;
+
+		private boolean tiledRendering = false;
+
+		private boolean pipelinedRendering = false;
+
+		private boolean performanceHud = false;
+
 		public TrackSchemeOptions optionsFromValues()
 		{
 			return new TrackSchemeOptions().
@@ -198,7 +289,12 @@ public class TrackSchemeOptions
 				navigationEtiquette( navigationEtiquette ).
 				style( style ).
 				trackSchemeOverlayFactory( trackSchemeOverlayFactory ).
-				graphColorGenerator( graphColorGenerator );
+				graphColorGenerator( graphColorGenerator ).
+				incrementalLayout( incrementalLayout ).
+				layoutForkJoinPool( layoutForkJoinPool ).
+				tiledRendering( tiledRendering ).
+				pipelinedRendering( pipelinedRendering ).
+				performanceHud( performanceHud );
 		}
 
 		public int getWidth()
@@ -240,5 +336,30 @@ public class TrackSchemeOptions
 		{
 			return graphColorGenerator;
 		}
+
+		public boolean isIncrementalLayout()
+		{
+			return incrementalLayout;
+		}
+
+		public ForkJoinPool getLayoutForkJoinPool()
+		{
+			return layoutForkJoinPool;
+		}
+
+		public boolean isTiledRendering()
+		{
+			return tiledRendering;
+		}
+
+		public boolean isPipelinedRendering()
+		{
+			return pipelinedRendering;
+		}
+
+		public boolean isPerformanceHud()
+		{
+			return performanceHud;
+		}
 	}
 }
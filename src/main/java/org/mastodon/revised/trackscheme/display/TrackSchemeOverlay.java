@@ -16,8 +16,11 @@ import org.mastodon.revised.trackscheme.TrackSchemeEdge;
 import org.mastodon.revised.trackscheme.TrackSchemeGraph;
 import org.mastodon.revised.trackscheme.TrackSchemeVertex;
 import org.mastodon.revised.trackscheme.display.OffsetHeaders.OffsetHeadersListener;
+import org.mastodon.revised.trackscheme.display.RenderingMetrics.RenderingMetricsListener;
 import org.mastodon.revised.trackscheme.display.style.TrackSchemeStyle;
+import org.scijava.listeners.Listeners;
 
+import gnu.trove.list.array.TIntArrayList;
 import net.imglib2.ui.OverlayRenderer;
 
 /**
@@ -45,8 +48,13 @@ import net.imglib2.ui.OverlayRenderer;
  * to paint the graph's vertices and edges.
  * <li>{@link PaintDecorations#paintHeaders(Graphics2D, int, int, int, int, ScreenEntities, int, TrackSchemeStyle)}
  * to paint header decorations.</li>
+ * <li>{@link PaintRenderingMetrics#paint(Graphics2D, RenderingMetrics, int, int, TrackSchemeStyle)}
+ * to paint the performance HUD, if it is {@link #setPerformanceHudVisible(boolean) visible}.</li>
  * </ol>
  * <p>
+ * Timings and entity counts of each painted frame are reported to
+ * {@link #renderingMetricsListeners()}.
+ * <p>
  * It also offers facilities to interrogate what has been painted where, to
  * facilitate writing user interfaces. For instance, it can return the
  * TrackScheme edge or vertex id near a screen {@code (x, y)} coordinate.
@@ -97,11 +105,46 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 
 	private final PaintGraph paintGraph;
 
+	/**
+	 * Caches rendered graph tiles, or {@code null} if tiled rendering is
+	 * disabled.
+	 */
+	private final GraphTileCache tileCache;
+
 	/**
 	 * The {@link OverlayRenderer}s that draw above the background
 	 */
 	private final CopyOnWriteArrayList< OverlayRenderer > overlayRenderers;
 
+	/**
+	 * Metrics of the current frame. Layout and cropAndScale times are set by
+	 * the {@link TrackSchemePanel}.
+	 */
+	private final RenderingMetrics metrics;
+
+	private final Listeners.List< RenderingMetricsListener > metricsListeners;
+
+	private final PaintRenderingMetrics paintRenderingMetrics;
+
+	private volatile boolean performanceHudVisible;
+
+	/**
+	 * {@link System#nanoTime()} when the previous frame was painted.
+	 */
+	private long lastFrameNanos;
+
+	/**
+	 * Smoothed interval between consecutive frames, in nanoseconds, or
+	 * {@code 0} if there are no recent consecutive frames.
+	 */
+	private double frameIntervalNanos;
+
+	/**
+	 * Frames that are painted less than this apart are considered consecutive
+	 * for computing the frame rate.
+	 */
+	private static final long MAX_FRAME_INTERVAL_NANOS = 500_000_000L;
+
 	/**
 	 * Creates a new overlay for the specified TrackScheme graph.
 	 *
@@ -137,11 +180,23 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 		height = options.values.getHeight();
 		entities = new ScreenEntities( graph );
 		overlayRenderers = new CopyOnWriteArrayList<>();
+		if ( options.values.isTiledRendering() )
+		{
+			tileCache = new GraphTileCache();
+			style.updateListeners().add( tileCache::invalidate );
+		}
+		else
+			tileCache = null;
+		metrics = new RenderingMetrics();
+		metricsListeners = new Listeners.SynchronizedList<>();
+		paintRenderingMetrics = new PaintRenderingMetrics();
+		performanceHudVisible = options.values.isPerformanceHud();
 	}
 
 	@Override
 	public void drawOverlays( final Graphics g )
 	{
+		final long t0 = System.nanoTime();
 		final Graphics2D g2 = ( Graphics2D ) g;
 		g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
 
@@ -170,11 +225,47 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 		final boolean antialiasOffForGraph = entities.getVertices().size() > 10000;
 		if ( antialiasOffForGraph )
 			g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF );
-		paintGraph.paintGraph( g2, entities, highlightedVertexId, highlightedEdgeId, focusedVertexId, style );
+		if ( tileCache != null && entities.getRenderKey() >= 0 )
+		{
+			tileCache.paint( g2, entities, paintGraph, style, width, height, headerWidth, headerHeight, !antialiasOffForGraph );
+			paintGraph.paintHighlightAndFocus( g2, entities, highlightedVertexId, highlightedEdgeId, focusedVertexId, style );
+		}
+		else
+			paintGraph.paintGraph( g2, entities, highlightedVertexId, highlightedEdgeId, focusedVertexId, style );
 		if ( antialiasOffForGraph )
 			g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
 
 		paintDecorations.paintHeaders( g2, width, height, headerWidth, headerHeight, entities, currentTimepoint, style );
+
+		updateMetrics( t0, System.nanoTime() );
+		if ( performanceHudVisible )
+			paintRenderingMetrics.paint( g2, metrics, headerWidth, headerHeight, style );
+		if ( !metricsListeners.list.isEmpty() )
+		{
+			final RenderingMetrics copy = new RenderingMetrics( metrics );
+			metricsListeners.list.forEach( l -> l.frameRendered( copy ) );
+		}
+	}
+
+	private void updateMetrics( final long paintStartNanos, final long paintEndNanos )
+	{
+		if ( lastFrameNanos != 0 && paintStartNanos - lastFrameNanos < MAX_FRAME_INTERVAL_NANOS )
+		{
+			final long interval = paintStartNanos - lastFrameNanos;
+			frameIntervalNanos = frameIntervalNanos == 0
+					? interval
+					: 0.9 * frameIntervalNanos + 0.1 * interval;
+		}
+		else
+			frameIntervalNanos = 0;
+		lastFrameNanos = paintStartNanos;
+
+		metrics.setFrame(
+				paintEndNanos - paintStartNanos,
+				entities.getVertices().size(),
+				entities.getEdges().size(),
+				entities.getRanges().size(),
+				frameIntervalNanos == 0 ? 0 : 1e9 / frameIntervalNanos );
 	}
 
 	/**
@@ -200,31 +291,45 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 	 */
 	public TrackSchemeEdge getEdgeAt( final int x, final int y, final double tolerance, final TrackSchemeEdge ref )
 	{
+		final TIntArrayList candidates = new TIntArrayList();
+		int i = -1;
 		synchronized ( entities )
 		{
+			entities.getGrid().getEdges( x, y, tolerance, candidates );
+			if ( candidates.isEmpty() )
+				return null;
+
 			final RefList< ScreenVertex > vertices = entities.getVertices();
+			final RefList< ScreenEdge > edges = entities.getEdges();
 			final ScreenVertex vt = vertices.createRef();
 			final ScreenVertex vs = vertices.createRef();
+			final ScreenEdge e = edges.createRef();
 
-			int i = -1;
-			for ( final ScreenEdge e : entities.getEdges() )
+			// the first edge (in list order) within tolerance
+			int iBest = Integer.MAX_VALUE;
+			for ( int c = 0; c < candidates.size(); ++c )
 			{
+				final int ei = candidates.getQuick( c );
+				if ( ei >= iBest )
+					continue;
+				edges.get( ei, e );
 				vertices.get( e.getSourceScreenVertexIndex(), vs );
 				vertices.get( e.getTargetScreenVertexIndex(), vt );
 				if ( paintGraph.distanceToPaintedEdge( x, y, e, vs, vt ) <= tolerance )
 				{
+					iBest = ei;
 					i = e.getTrackSchemeEdgeId();
-					break;
 				}
 			}
 
 			vertices.releaseRef( vs );
 			vertices.releaseRef( vt );
-
-			return ( i >= 0 )
-					? graph.getEdgePool().getObjectIfExists( i, ref )
-					: null;
+			edges.releaseRef( e );
 		}
+
+		return ( i >= 0 )
+				? graph.getEdgePool().getObjectIfExists( i, ref )
+				: null;
 	}
 
 	/**
@@ -247,12 +352,24 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 	 */
 	public TrackSchemeVertex getVertexAt( final int x, final int y, final TrackSchemeVertex ref )
 	{
+		final TIntArrayList candidates = new TIntArrayList();
+		int iBest = -1;
 		synchronized ( entities )
 		{
+			entities.getGrid().getVertices( x, y, paintGraph.getMaxPaintedVertexRadius(), candidates );
+			if ( candidates.isEmpty() )
+				return null;
+
+			final RefList< ScreenVertex > vertices = entities.getVertices();
+			final ScreenVertex v = vertices.createRef();
+
+			// the closest vertex, the first one (in list order) if tied
 			double d2Best = Double.POSITIVE_INFINITY;
-			int iBest = -1;
-			for ( final ScreenVertex v : entities.getVertices() )
+			int viBest = Integer.MAX_VALUE;
+			for ( int c = 0; c < candidates.size(); ++c )
 			{
+				final int vi = candidates.getQuick( c );
+				vertices.get( vi, v );
 				if ( paintGraph.isInsidePaintedVertex( x, y, v ) )
 				{
 					final int i = v.getTrackSchemeVertexId();
@@ -261,19 +378,22 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 						final double dx = v.getX() - x;
 						final double dy = v.getY() - y;
 						final double d2 = dx * dx + dy * dy;
-						if ( d2 < d2Best )
+						if ( d2 < d2Best || ( d2 == d2Best && vi < viBest ) )
 						{
 							d2Best = d2;
+							viBest = vi;
 							iBest = i;
 						}
 					}
 				}
 			}
 
-			return ( iBest >= 0 )
-					? graph.getVertexPool().getObjectIfExists( iBest, ref )
-					: null;
+			vertices.releaseRef( v );
 		}
+
+		return ( iBest >= 0 )
+				? graph.getVertexPool().getObjectIfExists( iBest, ref )
+				: null;
 	}
 
 	@Override
@@ -393,6 +513,51 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 		overlayRenderers.remove( renderer );
 	}
 
+	/**
+	 * Sets whether timings and entity counts of each frame are painted as a
+	 * heads-up display.
+	 *
+	 * @param visible
+	 *            whether to show the performance HUD.
+	 */
+	public void setPerformanceHudVisible( final boolean visible )
+	{
+		performanceHudVisible = visible;
+	}
+
+	/**
+	 * Returns whether timings and entity counts of each frame are painted as
+	 * a heads-up display.
+	 *
+	 * @return whether the performance HUD is visible.
+	 */
+	public boolean isPerformanceHudVisible()
+	{
+		return performanceHudVisible;
+	}
+
+	/**
+	 * Get the list of {@link RenderingMetricsListener}s, which are notified
+	 * after each painted frame.
+	 *
+	 * @return the list of listeners.
+	 */
+	public Listeners< RenderingMetricsListener > renderingMetricsListeners()
+	{
+		return metricsListeners;
+	}
+
+	/**
+	 * Returns the metrics of the current frame, for recording layout and
+	 * cropAndScale times.
+	 *
+	 * @return the metrics of the current frame.
+	 */
+	RenderingMetrics getRenderingMetrics()
+	{
+		return metrics;
+	}
+
 	public static class TrackSchemeOverlayFactory
 	{
 		public TrackSchemeOverlay create(
@@ -8,6 +8,7 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.event.AdjustmentEvent;
 import java.awt.event.AdjustmentListener;
+import java.util.ArrayDeque;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.swing.Box;
@@ -62,6 +63,19 @@ public class TrackSchemePanel extends JPanel implements
 
 	private final long ANIMATION_MILLISECONDS;
 
+	/**
+	 * Whether the layout is updated incrementally on graph changes.
+	 */
+	private final boolean incrementalLayout;
+
+	/**
+	 * Incremented whenever selection, colors, labels, or the graph change, i.e.,
+	 * when {@link ScreenEntities} change in other ways than by moving the
+	 * viewport. Together with the layout version, this forms the
+	 * {@link ScreenEntities#getRenderKey() render key} of painted entities.
+	 */
+	private int entitiesVersion;
+
 	private final TrackSchemeGraph< ?, ? > graph;
 
 	/**
@@ -102,6 +116,12 @@ public class TrackSchemePanel extends JPanel implements
 
 	private final PainterThread painterThread;
 
+	/**
+	 * Computes {@link ScreenEntities} in the background, if pipelined rendering
+	 * is enabled. Otherwise {@code null}.
+	 */
+	private final ScreenEntitiesWorker entitiesWorker;
+
 	private final TrackSchemeOverlay graphOverlay;
 
 	/**
@@ -181,6 +201,7 @@ public class TrackSchemePanel extends JPanel implements
 
 		final Values options = optional.values;
 		ANIMATION_MILLISECONDS = options.getAnimationDurationMillis();
+		incrementalLayout = options.isIncrementalLayout();
 
 		graph.graphChangeListeners().add( this );
 		navigation.listeners().add( this );
@@ -216,12 +237,13 @@ public class TrackSchemePanel extends JPanel implements
 		} );
 
 		screenTransform = new ScreenTransform();
-		layout = new LineageTreeLayout( graph, selection );
+		layout = new LineageTreeLayout( graph, selection, options.getLayoutForkJoinPool() );
 		contextLayout = new ContextLayout( graph, layout );
 		colorGenerator = options.getGraphColorGenerator();
 		layout.layoutListeners().add( transformEventHandler );
 		entityAnimator = new ScreenEntityAnimator();
 		painterThread = new PainterThread( this );
+		entitiesWorker = options.isPipelinedRendering() ? new ScreenEntitiesWorker() : null;
 		flags = new Flags();
 
 		final MouseHighlightHandler highlightHandler = new MouseHighlightHandler( graphOverlay, highlight, graph );
@@ -296,14 +318,19 @@ public class TrackSchemePanel extends JPanel implements
 		setNavigationEtiquette( options.getNavigationEtiquette() );
 
 		painterThread.start();
+		if ( entitiesWorker != null )
+			entitiesWorker.start();
 	}
 
 	/**
-	 * Stop the painter thread.
+	 * Stop the painter thread (and the background worker computing
+	 * {@link ScreenEntities}, if pipelined rendering is enabled).
 	 */
 	public void stop()
 	{
 		painterThread.interrupt();
+		if ( entitiesWorker != null )
+			entitiesWorker.interrupt();
 	}
 
 	/**
@@ -333,6 +360,12 @@ public class TrackSchemePanel extends JPanel implements
 	@Override
 	public void paint()
 	{
+		if ( entitiesWorker != null )
+		{
+			paintPipelined();
+			return;
+		}
+
 		final ReentrantReadWriteLock lock = graph.getLock();
 		lock.readLock().lock();
 		try
@@ -344,77 +377,23 @@ public class TrackSchemePanel extends JPanel implements
 			}
 
 			final Flags flags = this.flags.clear();
-			if ( flags.graphChanged )
+			final EntitiesUpdate update = updateLayout( transform, flags );
+			if ( update != null )
 			{
-//				System.out.println( "paint: graphChanged" );
-				layout.layout();
-				layoutMinX = layout.getCurrentLayoutMinX();
-				layoutMaxX = layout.getCurrentLayoutMaxX();
-				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
-			}
-			else if ( flags.transformChanged )
-			{
-//				System.out.println( "paint: transformChanged" );
-//				entityAnimator.startAnimation( transform, 0 );
-				if ( context != null && contextLayout.buildContext( context, transform, false ) )
-				{
-					layoutMinX = layout.getCurrentLayoutMinX();
-					layoutMaxX = layout.getCurrentLayoutMaxX();
-					entityAnimator.continueAnimation( transform, ANIMATION_MILLISECONDS );
-				}
+				layoutMinX = update.layoutMinX;
+				layoutMaxX = update.layoutMaxX;
+				if ( update.restart )
+					entityAnimator.startAnimation( transform, update.duration );
 				else
-					entityAnimator.continueAnimation( transform, 0 );
-//					entityAnimator.startAnimation( transform, 0 );
-//				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
-			}
-			else if ( flags.selectionChanged )
-			{
-//				System.out.println( "paint: selectionChanged" );
-				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
-			}
-			else if ( flags.contextChanged )
-			{
-//				System.out.println( "paint: contextChanged" );
-				if ( context == null )
-				{
-					layout.layout();
-					layoutMinX = layout.getCurrentLayoutMinX();
-					layoutMaxX = layout.getCurrentLayoutMaxX();
-				}
-				else if ( contextLayout.buildContext( context, transform, true ) )
-				{
-					layoutMinX = layout.getCurrentLayoutMinX();
-					layoutMaxX = layout.getCurrentLayoutMaxX();
-				}
-				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
-			}
-			else if ( flags.entitiesAttributesChanged )
-			{
-//				System.out.println( "paint: entitiesAttributesChanged" ); // DEBUG
-				entityAnimator.continueAnimation( transform, 0 );
+					entityAnimator.continueAnimation( transform, update.duration );
 			}
 
 			entityAnimator.setTime( System.currentTimeMillis() );
+			entityAnimator.setRenderKey( getRenderKey() );
 			entityAnimator.setPaintEntities( graphOverlay );
 			display.repaint();
 
-			// adjust scrollbars sizes
-			final ScreenTransform t = new ScreenTransform();
-			entityAnimator.getLastComputedScreenEntities().getScreenTransform( t );
-			xScrollScale = 10000.0 / ( layoutMaxX - layoutMinX + 2 );
-			final int xval = ( int ) ( xScrollScale * t.getMinX() );
-			final int xext = ( int ) ( xScrollScale * ( t.getMaxX() - t.getMinX() ) );
-			final int xmin = ( int ) ( xScrollScale * ( layoutMinX - boundXLayoutBorder ) );
-			final int xmax = ( int ) ( xScrollScale * ( layoutMaxX + boundXLayoutBorder ) );
-			yScrollScale = 10000.0 / ( layoutMaxY - layoutMinY + 2 );
-			final int yval = ( int ) ( yScrollScale * t.getMinY() );
-			final int yext = ( int ) ( yScrollScale * ( t.getMaxY() - t.getMinY() ) );
-			final int ymin = ( int ) ( yScrollScale * ( layoutMinY - boundYLayoutBorder ) );
-			final int ymax = ( int ) ( yScrollScale * ( layoutMaxY + boundYLayoutBorder ) );
-			ignoreScrollBarChanges = true;
-			xScrollBar.setValues( xval, xext, xmin, xmax );
-			yScrollBar.setValues( yval, yext, ymin, ymax );
-			ignoreScrollBarChanges = false;
+			adjustScrollBars();
 		}
 		finally
 		{
@@ -422,6 +401,145 @@ public class TrackSchemePanel extends JPanel implements
 		}
 	}
 
+	/**
+	 * Paint in pipelined mode: {@link ScreenEntities} are computed by the
+	 * {@link #entitiesWorker}. Here, we only pick up its latest result, and
+	 * animate. The graph lock is not needed for this.
+	 */
+	private void paintPipelined()
+	{
+		if ( flags.isSet() )
+			entitiesWorker.requestUpdate();
+
+		final EntitiesUpdate update = entitiesWorker.takeResult();
+		if ( update != null )
+		{
+			layoutMinX = update.layoutMinX;
+			layoutMaxX = update.layoutMaxX;
+			final ScreenEntities recycled = update.restart
+					? entityAnimator.startAnimation( update.entities, update.duration )
+					: entityAnimator.continueAnimation( update.entities, update.duration );
+			entitiesWorker.recycle( recycled );
+		}
+
+		entityAnimator.setTime( System.currentTimeMillis() );
+		entityAnimator.setPaintEntities( graphOverlay );
+		display.repaint();
+
+		adjustScrollBars();
+	}
+
+	/**
+	 * Update the layout according to {@code flags}, and determine how to
+	 * animate to the new {@link ScreenEntities}. Must be called with the graph
+	 * read lock held.
+	 *
+	 * @param transform
+	 *            the current transform.
+	 * @param flags
+	 *            what changed since the last update.
+	 * @return how to animate to the new {@link ScreenEntities}, or
+	 *         {@code null} if nothing changed.
+	 */
+	private EntitiesUpdate updateLayout( final ScreenTransform transform, final Flags flags )
+	{
+		final long t0 = System.nanoTime();
+		if ( flags.graphChanged || flags.selectionChanged || flags.contextChanged || flags.entitiesAttributesChanged )
+		{
+			++entitiesVersion;
+			layout.attributesChanged();
+		}
+
+		final boolean restart;
+		final long duration;
+		if ( flags.graphChanged )
+		{
+//			System.out.println( "paint: graphChanged" );
+			if ( incrementalLayout )
+				layout.updateLayout();
+			else
+				layout.layout();
+			restart = true;
+			duration = ANIMATION_MILLISECONDS;
+		}
+		else if ( flags.transformChanged )
+		{
+//			System.out.println( "paint: transformChanged" );
+			restart = false;
+			if ( context != null && contextLayout.buildContext( context, transform, false ) )
+				duration = ANIMATION_MILLISECONDS;
+			else
+				duration = 0;
+		}
+		else if ( flags.selectionChanged )
+		{
+//			System.out.println( "paint: selectionChanged" );
+			restart = true;
+			duration = ANIMATION_MILLISECONDS;
+		}
+		else if ( flags.contextChanged )
+		{
+//			System.out.println( "paint: contextChanged" );
+			if ( context == null )
+				layout.layout();
+			else
+				contextLayout.buildContext( context, transform, true );
+			restart = true;
+			duration = ANIMATION_MILLISECONDS;
+		}
+		else if ( flags.entitiesAttributesChanged )
+		{
+//			System.out.println( "paint: entitiesAttributesChanged" ); // DEBUG
+			restart = false;
+			duration = 0;
+		}
+		else
+			return null;
+
+		graphOverlay.getRenderingMetrics().setLayoutNanos( System.nanoTime() - t0 );
+		return new EntitiesUpdate( restart, duration, layout.getCurrentLayoutMinX(), layout.getCurrentLayoutMaxX() );
+	}
+
+	/**
+	 * Crop and scale the layout into {@code entities}, and record the time
+	 * this takes in the {@link RenderingMetrics}. Must be called with the graph
+	 * read lock held.
+	 */
+	private void cropAndScale( final ScreenTransform transform, final ScreenEntities entities )
+	{
+		final long t0 = System.nanoTime();
+		layout.cropAndScale( transform, entities, offsetHeaders.getWidth(), offsetHeaders.getHeight(), colorGenerator );
+		graphOverlay.getRenderingMetrics().setCropAndScaleNanos( System.nanoTime() - t0 );
+	}
+
+	private long getRenderKey()
+	{
+		return ( ( long ) layout.getCurrentLayoutVersion() << 32 ) | ( entitiesVersion & 0xffffffffL );
+	}
+
+	/**
+	 * Adjust scrollbars sizes to the last computed {@link ScreenEntities}.
+	 */
+	private void adjustScrollBars()
+	{
+		final ScreenTransform t = new ScreenTransform();
+		entityAnimator.getLastComputedScreenEntities().getScreenTransform( t );
+		xScrollScale = 10000.0 / ( layoutMaxX - layoutMinX + 2 );
+		final int xval = ( int ) ( xScrollScale * t.getMinX() );
+		final int xext = ( int ) ( xScrollScale * ( t.getMaxX() - t.getMinX() ) );
+		final int xmin = ( int ) ( xScrollScale * ( layoutMinX - boundXLayoutBorder ) );
+		final int xmax = ( int ) ( xScrollScale * ( layoutMaxX + boundXLayoutBorder ) );
+		yScrollScale = 10000.0 / ( layoutMaxY - layoutMinY + 2 );
+		final int yval = ( int ) ( yScrollScale * t.getMinY() );
+		final int yext = ( int ) ( yScrollScale * ( t.getMaxY() - t.getMinY() ) );
+		final int ymin = ( int ) ( yScrollScale * ( layoutMinY - boundYLayoutBorder ) );
+		final int ymax = ( int ) ( yScrollScale * ( layoutMaxY + boundYLayoutBorder ) );
+		ignoreScrollBarChanges = true;
+		xScrollBar.setValues( xval, xext, xmin, xmax );
+		yScrollBar.setValues( yval, yext, ymin, ymax );
+		ignoreScrollBarChanges = false;
+	}
+
 	@Override
 	public void timepointChanged()
 	{
@@ -852,11 +970,33 @@ public class TrackSchemePanel extends JPanel implements
 		 */
 		public void startAnimation( final ScreenTransform transform, final long duration )
 		{
+			startAnimation( transform, null, duration );
+		}
+
+		/**
+		 * Start animation to entities that were computed elsewhere (by the
+		 * {@link ScreenEntitiesWorker}).
+		 *
+		 * @param computed
+		 *            the entities to animate to. These are taken over by the
+		 *            animator.
+		 * @param duration
+		 *            animation duration (in time units), may be 0.
+		 * @return cleared {@link ScreenEntities} that the caller can re-use.
+		 */
+		public ScreenEntities startAnimation( final ScreenEntities computed, final long duration )
+		{
+			return startAnimation( null, computed, duration );
+		}
+
+		private ScreenEntities startAnimation( final ScreenTransform transform, final ScreenEntities computed, final long duration )
+		{
+			final ScreenEntities recycled;
 			reset( duration );
 			if (duration > 0 )
 			{
 				copyIpStart();
-				layout.cropAndScale( transform, screenEntities, offsetHeaders.getWidth(), offsetHeaders.getHeight(), colorGenerator );
+				recycled = computeEntities( transform, computed );
 				swapIpEnd();
 				interpolator = new ScreenEntitiesInterpolator( screenEntitiesIpStart, screenEntitiesIpEnd );
 			}
@@ -864,31 +1004,76 @@ public class TrackSchemePanel extends JPanel implements
 			{
 				interpolator = null;
 				swapPools();
-				layout.cropAndScale( transform, screenEntities, offsetHeaders.getWidth(), offsetHeaders.getHeight(), colorGenerator );
+				recycled = computeEntities( transform, computed );
 				lastComputedScreenEntities = screenEntities;
 			}
+			return recycled;
 		}
 
 		public void continueAnimation( final ScreenTransform transform, final long duration )
+		{
+			continueAnimation( transform, null, duration );
+		}
+
+		/**
+		 * Continue animation to entities that were computed elsewhere (by the
+		 * {@link ScreenEntitiesWorker}).
+		 *
+		 * @param computed
+		 *            the entities to animate to. These are taken over by the
+		 *            animator.
+		 * @param duration
+		 *            animation duration (in time units), may be 0.
+		 * @return cleared {@link ScreenEntities} that the caller can re-use.
+		 */
+		public ScreenEntities continueAnimation( final ScreenEntities computed, final long duration )
+		{
+			return continueAnimation( null, computed, duration );
+		}
+
+		private ScreenEntities continueAnimation( final ScreenTransform transform, final ScreenEntities computed, final long duration )
 		{
 			if ( interpolator != null )
 			{
-				layout.cropAndScale( transform, screenEntities, offsetHeaders.getWidth(), offsetHeaders.getHeight(), colorGenerator );
+				final ScreenEntities recycled = computeEntities( transform, computed );
 				swapIpEnd();
 				interpolator = new ScreenEntitiesInterpolator(
 						screenEntitiesIpStart,
 						screenEntitiesIpEnd,
 						ScreenEntitiesInterpolator.getIncrementalY( screenEntitiesIpStart, screenEntitiesIpEnd ) );
+				return recycled;
 			}
 			else
 			{
-				startAnimation( transform, duration );
+				return startAnimation( transform, computed, duration );
 //				swapPools();
 //				layout.cropAndScale( transform, screenEntities );
 //				lastComputedScreenEntities = screenEntities;
 			}
 		}
 
+		/**
+		 * Fill {@link #screenEntities}, either by cropping the layout with
+		 * {@code transform}, or by taking over the {@code computed} entities.
+		 *
+		 * @return the previous (cleared) {@link #screenEntities} if
+		 *         {@code computed} was taken over, {@code null} otherwise.
+		 */
+		private ScreenEntities computeEntities( final ScreenTransform transform, final ScreenEntities computed )
+		{
+			if ( computed == null )
+			{
+				cropAndScale( transform, screenEntities );
+				// Build the picking grid here on the painter thread, such that
+				// it is not built when picking in the overlay.
+				screenEntities.getGrid();
+				return null;
+			}
+			final ScreenEntities recycled = screenEntities;
+			screenEntities = computed;
+			return recycled;
+		}
+
 		@Override
 		public void setTime( final long time )
 		{
@@ -930,6 +1115,219 @@ public class TrackSchemePanel extends JPanel implements
 		{
 			return lastComputedScreenEntities;
 		}
+
+		/**
+		 * Set the {@link ScreenEntities#getRenderKey() render key} of the
+		 * last computed entities, if they are not yet handed to the overlay
+		 * and not interpolated between two states.
+		 *
+		 * @param key
+		 *            the render key.
+		 */
+		private void setRenderKey( final long key )
+		{
+			if ( interpolator == null && lastComputedScreenEntities == screenEntities )
+				screenEntities.setRenderKey( key );
+		}
+	}
+
+	/**
+	 * Describes how to animate to updated {@link ScreenEntities}.
+	 */
+	static class EntitiesUpdate
+	{
+		/**
+		 * Whether to start a new animation, or continue the current one.
+		 */
+		final boolean restart;
+
+		/**
+		 * Animation duration, may be 0.
+		 */
+		final long duration;
+
+		final double layoutMinX;
+
+		final double layoutMaxX;
+
+		/**
+		 * The updated entities, if they were computed by the
+		 * {@link ScreenEntitiesWorker}.
+		 */
+		ScreenEntities entities;
+
+		EntitiesUpdate( final boolean restart, final long duration, final double layoutMinX, final double layoutMaxX )
+		{
+			this.restart = restart;
+			this.duration = duration;
+			this.layoutMinX = layoutMinX;
+			this.layoutMaxX = layoutMaxX;
+		}
+
+		/**
+		 * Combine with an earlier update that was not taken by the painter
+		 * thread, such that animations requested by the earlier update are not
+		 * lost.
+		 */
+		EntitiesUpdate after( final EntitiesUpdate earlier )
+		{
+			if ( earlier == null )
+				return this;
+			final EntitiesUpdate update = new EntitiesUpdate(
+					restart || earlier.restart,
+					Math.max( duration, earlier.duration ),
+					layoutMinX,
+					layoutMaxX );
+			update.entities = entities;
+			return update;
+		}
+	}
+
+	/**
+	 * Computes {@link ScreenEntities} in the background for pipelined
+	 * rendering (see {@link TrackSchemeOptions#pipelinedRendering(boolean)}).
+	 * <p>
+	 * When woken by {@link #requestUpdate()}, the worker updates the layout
+	 * and copies the visible part of it into {@link ScreenEntities}, holding
+	 * the graph read lock. The layout is stored in the vertices of the
+	 * TrackScheme graph, so this cannot be done without the lock. Everything
+	 * else, such as building the picking grid, is done on the copy after
+	 * releasing the lock.
+	 * <p>
+	 * The result is handed to the painter thread, which keeps animating the
+	 * previous result in the meantime. Every finished result is published,
+	 * even if the transform changed again while the worker was busy: requests
+	 * arriving in the meantime are coalesced into the next run, so that the
+	 * screen keeps refreshing during continuous panning or zooming.
+	 */
+	class ScreenEntitiesWorker extends Thread
+	{
+		private final ArrayDeque< ScreenEntities > freeEntities = new ArrayDeque<>();
+
+		private boolean updateRequested = false;
+
+		/**
+		 * The last update that was not yet taken by the painter thread.
+		 */
+		private EntitiesUpdate result = null;
+
+		ScreenEntitiesWorker()
+		{
+			super( "TrackScheme screen entities worker" );
+			setDaemon( true );
+		}
+
+		/**
+		 * Request the worker to compute new {@link ScreenEntities}.
+		 */
+		public synchronized void requestUpdate()
+		{
+			updateRequested = true;
+			notify();
+		}
+
+		/**
+		 * Take the last computed update, if any.
+		 *
+		 * @return the last computed update, or {@code null}.
+		 */
+		public synchronized EntitiesUpdate takeResult()
+		{
+			final EntitiesUpdate update = result;
+			result = null;
+			return update;
+		}
+
+		/**
+		 * Give {@link ScreenEntities} back to the worker for re-use.
+		 *
+		 * @param entities
+		 *            entities to re-use, may be {@code null}.
+		 */
+		public synchronized void recycle( final ScreenEntities entities )
+		{
+			if ( entities != null && freeEntities.size() < 2 )
+			{
+				entities.clear();
+				freeEntities.push( entities );
+			}
+		}
+
+		private synchronized ScreenEntities obtainEntities()
+		{
+			final ScreenEntities entities = freeEntities.poll();
+			return entities == null ? new ScreenEntities( graph, entityAnimator.capacity ) : entities;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				while ( !isInterrupted() )
+				{
+					synchronized ( this )
+					{
+						while ( !updateRequested )
+							wait();
+						updateRequested = false;
+					}
+					update();
+				}
+			}
+			catch ( final InterruptedException e )
+			{}
+		}
+
+		private void update()
+		{
+			final ScreenEntities entities = obtainEntities();
+			final EntitiesUpdate update;
+			final ReentrantReadWriteLock lock = graph.getLock();
+			lock.readLock().lock();
+			try
+			{
+				final ScreenTransform transform = new ScreenTransform();
+				synchronized ( screenTransform )
+				{
+					transform.set( screenTransform );
+				}
+
+				update = updateLayout( transform, flags.clear() );
+				if ( update == null )
+				{
+					recycle( entities );
+					return;
+				}
+
+				cropAndScale( transform, entities );
+				entities.setRenderKey( getRenderKey() );
+			}
+			finally
+			{
+				lock.readLock().unlock();
+			}
+
+			// The entities are a copy, that does not need the lock anymore.
+			entities.getGrid();
+			update.entities = entities;
+
+			synchronized ( this )
+			{
+				// Publish the result, even if it is already outdated. A newer
+				// request, if any, is served by the next run.
+				EntitiesUpdate earlier = null;
+				if ( result != null )
+				{
+					recycle( result.entities );
+					earlier = result;
+				}
+				result = update.after( earlier );
+				if ( flags.isSet() )
+					updateRequested = true;
+			}
+			painterThread.requestRepaint();
+		}
 	}
 
 	static class Flags
@@ -983,6 +1381,19 @@ public class TrackSchemePanel extends JPanel implements
 			entitiesAttributesChanged = true;
 		}
 
+		/**
+		 * @return whether any flag is set.
+		 */
+		public synchronized boolean isSet()
+		{
+			return transformChanged || selectionChanged || graphChanged || contextChanged || entitiesAttributesChanged;
+		}
+
+		public synchronized boolean isTransformChanged()
+		{
+			return transformChanged;
+		}
+
 		public synchronized Flags clear()
 		{
 			final Flags copy = new Flags( this );
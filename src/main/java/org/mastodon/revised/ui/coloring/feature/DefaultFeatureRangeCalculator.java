@@ -1,13 +1,17 @@
 package org.mastodon.revised.ui.coloring.feature;
 
 import java.util.Collection;
-import java.util.DoubleSummaryStatistics;
 
+import org.mastodon.feature.FeatureModel;
 import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureStatistics;
 
 /**
  * A {@link FeatureRangeCalculator} computing statistics over a
  * {@code Collection<O>} of objects of one specific target type {@code O}.
+ * <p>
+ * If a {@link FeatureModel} is specified, statistics are cached by the feature
+ * model, and only recomputed after the feature changed.
  *
  * @param <O>
  *            target type.
@@ -18,14 +22,31 @@ public class DefaultFeatureRangeCalculator< O > implements FeatureRangeCalculato
 
 	private final Projections projections;
 
+	private final FeatureModel featureModel;
+
 	public DefaultFeatureRangeCalculator( final Collection< O > objs, final Projections projections )
+	{
+		this( objs, projections, null );
+	}
+
+	public DefaultFeatureRangeCalculator( final Collection< O > objs, final Projections projections, final FeatureModel featureModel )
 	{
 		this.objs = objs;
 		this.projections = projections;
+		this.featureModel = featureModel;
 	}
 
 	@Override
 	public double[] computeMinMax( final FeatureProjectionId id )
+	{
+		final FeatureStatistics stats = getStatistics( id );
+		if ( null == stats )
+			return null;
+		return new double[] { stats.getMin(), stats.getMax() };
+	}
+
+	@Override
+	public FeatureStatistics getStatistics( final FeatureProjectionId id )
 	{
 		if ( objs.isEmpty() )
 			return null;
@@ -37,10 +58,8 @@ public class DefaultFeatureRangeCalculator< O > implements FeatureRangeCalculato
 		if ( null == projection )
 			return null;
 
-		final DoubleSummaryStatistics stats = objs.stream()
-				.filter( projection::isSet )
-				.mapToDouble( projection::value )
-				.summaryStatistics();
-		return new double[] { stats.getMin(), stats.getMax() };
+		return null == featureModel
+				? FeatureStatistics.compute( objs, projection )
+				: featureModel.getStatistics( projection, objs );
 	}
 }
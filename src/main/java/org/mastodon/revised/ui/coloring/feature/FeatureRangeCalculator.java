@@ -1,5 +1,7 @@
 package org.mastodon.revised.ui.coloring.feature;
 
+import org.mastodon.feature.FeatureStatistics;
+
 public interface FeatureRangeCalculator
 {
 	/**
@@ -14,4 +16,18 @@ public interface FeatureRangeCalculator
 	 *         feature on.
 	 */
 	public double[] computeMinMax( final FeatureProjectionId projection );
+
+	/**
+	 * Returns statistics (count, min, max, mean, histogram) for the specified
+	 * feature projection.
+	 *
+	 * @param projection
+	 *            the feature projection id.
+	 * @return the statistics, or <code>null</code> if they could not be
+	 *         computed (see {@link #computeMinMax(FeatureProjectionId)}).
+	 */
+	public default FeatureStatistics getStatistics( final FeatureProjectionId projection )
+	{
+		return null;
+	}
 }
@@ -82,8 +82,8 @@ public class GraphUpdateStackTest
 	public void testManyUpdates()
 	{
 		/*
-		 * Test that the many updates will be 'forgotten' at some point, because
-		 * we use a fixed-max size stack to store changes.
+		 * Test that changes are not forgotten, however many computations of
+		 * other features happen in between.
 		 */
 
 		// Compute all for FT1.
@@ -95,11 +95,8 @@ public class GraphUpdateStackTest
 		// Make one change.
 		s0.move( 10., 0 );
 
-		/*
-		 * Do plenty of computation, but without FT1. Up to 10, we should catch
-		 * up.
-		 */
-		for ( int i = 0; i < UpdateStack.BUFFER_SIZE - 1; i++ )
+		// Do plenty of computation, but without FT1.
+		for ( int i = 0; i < 100; i++ )
 			computerService.compute();
 
 		ft1.expectedVerticesSelf = new RefSetImp<>( graph.vertices().getRefPool() );
@@ -110,20 +107,22 @@ public class GraphUpdateStackTest
 		ft1.expectedEdgesNeighbor.add( e01 );
 		computerService.compute( FT1.SPEC );
 
-		// Redo one change.
+		// Make another change, interleaved with computations without FT1.
 		s1.move( 10., 0 );
-
-		/*
-		 * Do plenty of computation, but without FT1. More than 10, we should
-		 * not catch up.
-		 */
-		for ( int i = 0; i < UpdateStack.BUFFER_SIZE; i++ )
+		for ( int i = 0; i < 50; i++ )
+			computerService.compute();
+		s3.move( 10., 0 );
+		for ( int i = 0; i < 50; i++ )
 			computerService.compute();
 
-		ft1.expectedVerticesSelf = null;
-		ft1.expectedVerticesNeighbor = null;
-		ft1.expectedEdgesSelf = null;
-		ft1.expectedEdgesNeighbor = null;
+		ft1.expectedVerticesSelf.clear();
+		ft1.expectedVerticesSelf.add( s1 );
+		ft1.expectedVerticesSelf.add( s3 );
+		ft1.expectedEdgesNeighbor.clear();
+		ft1.expectedEdgesNeighbor.add( e01 );
+		ft1.expectedEdgesNeighbor.add( e12 );
+		ft1.expectedEdgesNeighbor.add( e23 );
+		ft1.expectedEdgesNeighbor.add( e34 );
 		computerService.compute( FT1.SPEC );
 	}
 
@@ -0,0 +1,50 @@
+package org.mastodon.mamut.feature;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureStatistics;
+import org.mastodon.feature.update.GraphFeatureUpdateListeners;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.Spot;
+
+public class TrackFeatureStatisticsTest
+{
+	@Test
+	public void testStatisticsFollowGraphEdits()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final FeatureModel featureModel = model.getFeatureModel();
+		graph.addGraphListener( GraphFeatureUpdateListeners.statisticsInvalidator( featureModel, TrackSizeFeature.SPEC, SpotTrackIDFeature.SPEC ) );
+
+		final Spot ref1 = graph.vertexRef();
+		final Spot ref2 = graph.vertexRef();
+		final Link eref = graph.edgeRef();
+		final Spot a = graph.addVertex( ref1 ).init( 0, new double[] { 0, 0, 0 }, 1. );
+		final Spot b = graph.addVertex( ref2 ).init( 1, new double[] { 1, 1, 1 }, 1. );
+
+		final TrackSizeFeature feature = new TrackSizeFeature( model.getTrackIndex() );
+		featureModel.declareFeature( feature );
+		final FeatureProjection< Spot > projection = feature.projections().iterator().next();
+
+		FeatureStatistics stats = featureModel.getStatistics( projection, graph.vertices() );
+		assertEquals( 1., stats.getMax(), 0. );
+
+		// Linking the two spots makes a track of size 2.
+		graph.addEdge( a, b, eref ).init();
+		stats = featureModel.getStatistics( projection, graph.vertices() );
+		assertEquals( 2., stats.getMax(), 0. );
+		assertEquals( 2., stats.getMin(), 0. );
+
+		// A new spot is a track of size 1.
+		graph.addVertex( ref1 ).init( 2, new double[] { 2, 2, 2 }, 1. );
+		stats = featureModel.getStatistics( projection, graph.vertices() );
+		assertEquals( 3, stats.getCount() );
+		assertEquals( 1., stats.getMin(), 0. );
+	}
+}
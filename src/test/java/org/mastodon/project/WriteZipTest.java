@@ -0,0 +1,98 @@
+package org.mastodon.project;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+
+public class WriteZipTest
+{
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		// Several chunks, the last one partial.
+		final byte[] large = new byte[ 3 * WriteZip.CHUNK_SIZE + 12345 ];
+		final Random random = new Random( 1 );
+		for ( int i = 0; i < large.length; i++ )
+			large[ i ] = ( byte ) ( random.nextInt( 16 ) + i % 7 );
+
+		for ( final int level : new int[] { WriteZip.STORED, Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION } )
+		{
+			final File file = File.createTempFile( "writezip", ".mastodon" );
+			file.deleteOnExit();
+			try ( final WriteZip zip = new WriteZip( file, level ) )
+			{
+				try ( final OutputStream os = zip.getOutputStream( "project.xml" ) )
+				{
+					os.write( "<MamutProject/>".getBytes() );
+				}
+				try ( final OutputStream os = zip.getOutputStream( "features/empty.raw" ) )
+				{}
+				try ( final OutputStream os = zip.getOutputStream( "model.cols" ) )
+				{
+					os.write( large );
+				}
+			}
+
+			try ( final ReadZip zip = new ReadZip( file ) )
+			{
+				assertArrayEquals( "<MamutProject/>".getBytes(), readFully( zip.getInputStream( "project.xml" ) ) );
+				assertArrayEquals( new byte[ 0 ], readFully( zip.getInputStream( "features/empty.raw" ) ) );
+				assertArrayEquals( large, readFully( zip.getInputStream( "model.cols" ) ) );
+				assertEquals( Arrays.asList( "empty.raw" ), zip.listFile( "features" ) );
+			}
+		}
+	}
+
+	@Test( expected = ZipException.class )
+	public void testDuplicateEntry() throws IOException
+	{
+		final File file = File.createTempFile( "writezip", ".mastodon" );
+		file.deleteOnExit();
+		try ( final WriteZip zip = new WriteZip( file ) )
+		{
+			// Still pending when the duplicate is requested.
+			try ( final OutputStream os = zip.getOutputStream( "model.cols" ) )
+			{
+				os.write( new byte[ 100 ] );
+			}
+			zip.getOutputStream( "model.cols" );
+		}
+	}
+
+	@Test
+	public void testCrc32Combine()
+	{
+		final byte[] data = new byte[ 1000 ];
+		new Random( 2 ).nextBytes( data );
+		final CRC32 crc = new CRC32();
+		crc.update( data );
+		final CRC32 crc1 = new CRC32();
+		crc1.update( data, 0, 300 );
+		final CRC32 crc2 = new CRC32();
+		crc2.update( data, 300, 700 );
+		assertEquals( crc.getValue(), WriteZip.crc32Combine( crc1.getValue(), crc2.getValue(), 700 ) );
+	}
+
+	private static byte[] readFully( final InputStream is ) throws IOException
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buf = new byte[ 8192 ];
+		int n;
+		while ( ( n = is.read( buf ) ) > 0 )
+			out.write( buf, 0, n );
+		is.close();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,148 @@
+package org.mastodon.revised.model.mamut;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
+import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
+import org.mastodon.revised.model.mamut.ColumnarModelIO.Block;
+import org.mastodon.revised.model.mamut.ColumnarModelIO.Directory;
+import org.mastodon.revised.model.tag.DefaultTagSetModel;
+
+public class ColumnarModelIOTest
+{
+	private static final int NT = 10;
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		final int nt = NT;
+		final ModelGraph graph = createGraph();
+		final Spot ref1 = graph.vertexRef();
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final GraphToFileIdMap< Spot, Link > saveIdmap = ColumnarModelIO.write( graph, new DefaultTagSetModel<>( graph ), bytes );
+		assertEquals( 0, saveIdmap.vertices().getId( spotAt( graph, 0, ref1 ) ) );
+
+		final ModelGraph loaded = new ModelGraph();
+		final FileIdToGraphMap< Spot, Link > loadIdmap = ColumnarModelIO.read( loaded, new DefaultTagSetModel<>( loaded ), new ByteArrayInputStream( bytes.toByteArray() ) );
+
+		assertEquals( nt, loaded.vertices().size() );
+		assertEquals( nt - 1, loaded.edges().size() );
+		final Spot lref = loaded.vertexRef();
+		final Spot lref2 = loaded.vertexRef();
+		for ( int t = 0; t < nt; t++ )
+		{
+			final Spot spot = loadIdmap.vertices().getObject( t, lref );
+			final Spot original = spotAt( graph, t, ref1 );
+			assertEquals( t, spot.getTimepoint() );
+			assertArrayEquals( new double[] { t, 2. * t, 3. * t }, new double[] { spot.getDoublePosition( 0 ), spot.getDoublePosition( 1 ), spot.getDoublePosition( 2 ) }, 0. );
+			assertEquals( original.getBoundingSphereRadiusSquared(), spot.getBoundingSphereRadiusSquared(), 0. );
+			if ( t % 2 == 0 )
+				assertEquals( "spot" + t, spot.getLabel() );
+			if ( t < nt - 1 )
+			{
+				assertEquals( 1, spot.outgoingEdges().size() );
+				assertEquals( t + 1, spot.outgoingEdges().iterator().next().getTarget( lref2 ).getTimepoint() );
+			}
+		}
+
+		// Directory allows locating the blocks of a timepoint.
+		final Directory directory = ColumnarModelIO.readDirectory( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+		assertEquals( nt, directory.getNumSpots() );
+		final List< Block > blocks = directory.getBlocks( ColumnarModelIO.SPOT_POSITION, 3, 3 );
+		assertEquals( 1, blocks.size() );
+		assertEquals( nt, blocks.get( 0 ).getCount() );
+	}
+
+	@Test
+	public void testMappedRead() throws IOException
+	{
+		final ModelGraph graph = createGraph();
+		final File file = File.createTempFile( "model", ".cols" );
+		file.deleteOnExit();
+		try ( final FileOutputStream os = new FileOutputStream( file ) )
+		{
+			ColumnarModelIO.write( graph, new DefaultTagSetModel<>( graph ), os );
+		}
+
+		final ModelGraph loaded = new ModelGraph();
+		final FileIdToGraphMap< Spot, Link > idmap = ColumnarModelIO.read( loaded, new DefaultTagSetModel<>( loaded ), FileChannel.open( file.toPath(), StandardOpenOption.READ ) );
+		assertEquals( NT, loaded.vertices().size() );
+		assertEquals( NT - 1, loaded.edges().size() );
+		final Spot ref = loaded.vertexRef();
+		assertEquals( "spot4", idmap.vertices().getObject( 4, ref ).getLabel() );
+		assertEquals( 4., idmap.vertices().getObject( 4, ref ).getDoublePosition( 0 ), 0. );
+	}
+
+	@Test
+	public void testDirectoryFile() throws IOException
+	{
+		final ModelGraph graph = createGraph();
+		final File folder = Files.createTempDirectory( "model" ).toFile();
+		folder.deleteOnExit();
+
+		// Spread the blocks over two data files.
+		final ColumnarModelIO.Writer writer = new ColumnarModelIO.Writer( graph, new DefaultTagSetModel<>( graph ) );
+		final List< Block > blocks = writer.getDirectory().getBlocks();
+		final int half = blocks.size() / 2;
+		final List< Block > relocated = new ArrayList<>();
+		relocated.addAll( writer.writeBlocks( blocks.subList( 0, half ), "a", new FileOutputStream( new File( folder, "a" ) ) ) );
+		relocated.addAll( writer.writeBlocks( blocks.subList( half, blocks.size() ), "b", new FileOutputStream( new File( folder, "b" ) ) ) );
+		final File directoryFile = new File( folder, "dir" );
+		ColumnarModelIO.writeDirectoryFile( writer.getDirectory().withBlocks( relocated ), new FileOutputStream( directoryFile ) );
+		for ( final String name : new String[] { "a", "b", "dir" } )
+			new File( folder, name ).deleteOnExit();
+
+		final ModelGraph loaded = new ModelGraph();
+		final FileIdToGraphMap< Spot, Link > idmap = ColumnarModelIO.read( loaded, new DefaultTagSetModel<>( loaded ), directoryFile );
+		assertEquals( NT, loaded.vertices().size() );
+		assertEquals( NT - 1, loaded.edges().size() );
+		final Spot ref = loaded.vertexRef();
+		assertEquals( "spot6", idmap.vertices().getObject( 6, ref ).getLabel() );
+		assertEquals( 12., idmap.vertices().getObject( 6, ref ).getDoublePosition( 1 ), 0. );
+	}
+
+	/**
+	 * Creates a graph with one spot per timepoint, linked in a single track.
+	 * Spots are added in reverse timepoint order, so that file ids differ from
+	 * pool indices.
+	 */
+	private static ModelGraph createGraph()
+	{
+		final ModelGraph graph = new ModelGraph();
+		final Spot ref1 = graph.vertexRef();
+		final Spot ref2 = graph.vertexRef();
+		final Link eref = graph.edgeRef();
+		for ( int t = NT - 1; t >= 0; t-- )
+		{
+			final Spot spot = graph.addVertex( ref1 ).init( t, new double[] { t, 2. * t, 3. * t }, 1. + t );
+			if ( t % 2 == 0 )
+				spot.setLabel( "spot" + t );
+		}
+		for ( int t = 0; t < NT - 1; t++ )
+			graph.addEdge( spotAt( graph, t, ref1 ), spotAt( graph, t + 1, ref2 ), eref ).init();
+		return graph;
+	}
+
+	private static Spot spotAt( final ModelGraph graph, final int timepoint, final Spot ref )
+	{
+		for ( final Spot spot : graph.vertices() )
+			if ( spot.getTimepoint() == timepoint )
+				return graph.vertices().getRefPool().getObject( spot.getInternalPoolIndex(), ref );
+		return null;
+	}
+}
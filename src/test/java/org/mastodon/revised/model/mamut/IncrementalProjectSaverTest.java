@@ -0,0 +1,98 @@
+package org.mastodon.revised.model.mamut;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
+import org.mastodon.project.MamutProject;
+
+public class IncrementalProjectSaverTest
+{
+	private static final int NT = 10;
+
+	/**
+	 * Saving back to a folder after saving elsewhere must not trust the
+	 * manifest of the former save to that folder.
+	 */
+	@Test
+	public void testSaveBackAfterSavingElsewhere() throws IOException
+	{
+		final Model model = createModel();
+		final File a = Files.createTempDirectory( "projectA" ).toFile();
+		final File b = Files.createTempDirectory( "projectB" ).toFile();
+
+		new IncrementalProjectSaver( project( a ), model, null ).save();
+		new IncrementalProjectSaver( project( b ), model, null ).save();
+
+		final Spot ref = model.getGraph().vertexRef();
+		spotAt( model.getGraph(), 3, ref ).setLabel( "edited" );
+
+		new IncrementalProjectSaver( project( a ), model, null ).save();
+
+		final Model loaded = new Model();
+		final FileIdToGraphMap< Spot, Link > idmap;
+		try ( final MamutProject.ProjectReader reader = project( a ).openForReading() )
+		{
+			idmap = loaded.loadRaw( reader );
+		}
+		assertEquals( NT, loaded.getGraph().vertices().size() );
+		final Spot lref = loaded.getGraph().vertexRef();
+		assertEquals( "edited", spotAt( loaded.getGraph(), 3, lref ).getLabel() );
+		assertEquals( 3, idmap.vertices().getObject( 3, lref ).getTimepoint() );
+
+		// Only the files of the last save remain.
+		final String[] modelFiles = a.list( ( dir, name ) -> name.startsWith( "model." ) );
+		assertEquals( 2, modelFiles.length );
+		assertFalse( new File( a, MamutProject.getModelDirectoryFileName( 1 ) ).exists() );
+
+		delete( a );
+		delete( b );
+	}
+
+	private static MamutProject project( final File root )
+	{
+		return new MamutProject( root, new File( root.getParentFile(), "dataset.xml" ) );
+	}
+
+	/**
+	 * Creates a model with one spot per timepoint, linked in a single track.
+	 */
+	private static Model createModel()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final Spot ref1 = graph.vertexRef();
+		final Spot ref2 = graph.vertexRef();
+		final Link eref = graph.edgeRef();
+		for ( int t = 0; t < NT; t++ )
+			graph.addVertex( ref1 ).init( t, new double[] { t, 2. * t, 3. * t }, 1. + t ).setLabel( "spot" + t );
+		for ( int t = 0; t < NT - 1; t++ )
+			graph.addEdge( spotAt( graph, t, ref1 ), spotAt( graph, t + 1, ref2 ), eref ).init();
+		return model;
+	}
+
+	private static Spot spotAt( final ModelGraph graph, final int timepoint, final Spot ref )
+	{
+		for ( final Spot spot : graph.vertices() )
+			if ( spot.getTimepoint() == timepoint )
+				return graph.vertices().getRefPool().getObject( spot.getInternalPoolIndex(), ref );
+		return null;
+	}
+
+	private static void delete( final File folder )
+	{
+		final File[] files = folder.listFiles();
+		if ( files != null )
+			for ( final File file : files )
+				if ( file.isDirectory() )
+					delete( file );
+				else
+					file.delete();
+		folder.delete();
+	}
+}
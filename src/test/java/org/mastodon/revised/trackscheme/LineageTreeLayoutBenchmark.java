@@ -0,0 +1,149 @@
+package org.mastodon.revised.trackscheme;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.graph.revised.CreateLargeModelExample;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.ModelGraphTrackSchemeProperties;
+import org.mastodon.revised.model.mamut.Spot;
+
+/**
+ * Compares the time needed to update the {@link LineageTreeLayout} after a
+ * single edit (adding a spot linked to a leaf of the first lineage tree), with
+ * a full layout and with {@link LineageTreeLayout#updateLayout()}, for
+ * increasing model sizes.
+ * <p>
+ * Extending a track does not change the width of the lineage tree. To measure
+ * the cost of shifting the trees to the right of an edit, the incremental
+ * update is also timed for edits that add a branch to the first lineage tree,
+ * widening it by one column.
+ * <p>
+ * With the incremental update, the time per edit should stay roughly constant
+ * when the model size grows, for edits that do not widen the tree.
+ * <p>
+ * Also compares the time for the initial layout, sequentially and in parallel
+ * on the common {@link ForkJoinPool}.
+ */
+public class LineageTreeLayoutBenchmark
+{
+	private static final int N_EDITS = 50;
+
+	public static void main( final String[] args )
+	{
+		for ( int nDivisions = 10; nDivisions <= 17; ++nDivisions )
+		{
+			final Model model = new CreateLargeModelExample().run( 6, nDivisions, 5 );
+			final ModelGraph modelGraph = model.getGraph();
+
+			final LineageTreeLayout parallelLayout = createLayout( model, ForkJoinPool.commonPool() );
+			final long tp0 = System.nanoTime();
+			parallelLayout.layout();
+			final long tp1 = System.nanoTime();
+
+			final LineageTreeLayout layout = createLayout( model, null );
+			final long t0 = System.nanoTime();
+			layout.layout();
+			final long t1 = System.nanoTime();
+
+			final double fullMillis = timeEdits( model, layout, false, false );
+			final double incrementalMillis = timeEdits( model, layout, true, false );
+			final double incrementalBranchMillis = timeEdits( model, layout, true, true );
+
+			System.out.println( String.format(
+					"%9d spots: initial layout %8.1f ms (parallel %8.1f ms), per edit: full layout %8.2f ms, incremental %6.3f ms, incremental with shift %6.3f ms",
+					modelGraph.vertices().size(),
+					( t1 - t0 ) / 1e6,
+					( tp1 - tp0 ) / 1e6,
+					fullMillis,
+					incrementalMillis,
+					incrementalBranchMillis ) );
+		}
+	}
+
+	/**
+	 * Create a {@link LineageTreeLayout} on a new {@link TrackSchemeGraph} wrapping
+	 * the model graph.
+	 */
+	private static LineageTreeLayout createLayout( final Model model, final ForkJoinPool forkJoinPool )
+	{
+		final ModelGraph modelGraph = model.getGraph();
+		final TrackSchemeGraph< Spot, Link > graph = new TrackSchemeGraph<>(
+				modelGraph,
+				model.getGraphIdBimap(),
+				new ModelGraphTrackSchemeProperties( modelGraph ),
+				modelGraph.getLock() );
+		return new LineageTreeLayout( graph, new SelectionModelAdapter<>(
+				new DefaultSelectionModel<>( modelGraph, model.getGraphIdBimap() ),
+				graph.getVertexMap(),
+				graph.getEdgeMap() ), forkJoinPool );
+	}
+
+	/**
+	 * Extend a track in the first lineage tree by one spot, {@link #N_EDITS}
+	 * times, and update the layout after each edit.
+	 * <p>
+	 * If {@code branch} is {@code true}, the new spot is instead linked to the
+	 * first spot of the graph, as an additional child. Each edit then adds a
+	 * leaf to the first lineage tree, shifting all trees to its right.
+	 *
+	 * @return the average time per layout update, in milliseconds.
+	 */
+	private static double timeEdits( final Model model, final LineageTreeLayout layout, final boolean incremental, final boolean branch )
+	{
+		final ModelGraph graph = model.getGraph();
+		final Spot parent = graph.vertexRef();
+		final Spot leaf = graph.vertexRef();
+		final Spot spot = graph.vertexRef();
+		final Link link = graph.edgeRef();
+		final double[] pos = new double[ 3 ];
+		final double[][] cov = new double[][] { { 3, 0, 0 }, { 0, 3, 0 }, { 0, 0, 3 } };
+
+		// find a leaf
+		parent.refTo( graph.vertices().iterator().next() );
+		leaf.refTo( parent );
+		while ( !leaf.outgoingEdges().isEmpty() )
+			leaf.outgoingEdges().iterator().next().getTarget( leaf );
+
+		long total = 0;
+		for ( int i = 0; i < N_EDITS; ++i )
+		{
+			graph.getLock().writeLock().lock();
+			try
+			{
+				final Spot source = branch ? parent : leaf;
+				source.localize( pos );
+				graph.addVertex( spot ).init( source.getTimepoint() + 1, pos, cov );
+				if ( branch )
+				{
+					graph.addEdge( parent, spot, link ).init();
+				}
+				else
+				{
+					graph.addEdge( leaf, spot, link ).init();
+					leaf.refTo( spot );
+				}
+			}
+			finally
+			{
+				graph.getLock().writeLock().unlock();
+			}
+
+			final long t0 = System.nanoTime();
+			if ( incremental )
+				layout.updateLayout();
+			else
+				layout.layout();
+			total += System.nanoTime() - t0;
+		}
+
+		graph.releaseRef( parent );
+		graph.releaseRef( leaf );
+		graph.releaseRef( spot );
+		graph.releaseRef( link );
+		return total / 1e6 / N_EDITS;
+	}
+}